@@ -20,6 +20,8 @@ package edu.cmu.tetrad.cli.data;
 
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.DataWriter;
+import edu.cmu.tetrad.io.BinaryDataReader;
+import edu.cmu.tetrad.io.BinaryDataWriter;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -43,4 +45,12 @@ public class DataSetIO {
         }
     }
 
+    public static void writeBinary(DataSet dataSet, Path path) throws IOException {
+        BinaryDataWriter.write(dataSet, path);
+    }
+
+    public static DataSet readBinary(Path path) throws IOException {
+        return new BinaryDataReader(path).readInData();
+    }
+
 }
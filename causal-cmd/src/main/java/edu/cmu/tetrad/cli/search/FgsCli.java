@@ -18,6 +18,7 @@
  */
 package edu.cmu.tetrad.cli.search;
 
+import edu.cmu.tetrad.cli.data.DataSetIO;
 import edu.cmu.tetrad.cli.data.IKnowledgeFactory;
 import edu.cmu.tetrad.cli.util.*;
 import edu.cmu.tetrad.cli.validation.DataValidation;
@@ -27,13 +28,13 @@ import edu.cmu.tetrad.cli.validation.UniqueVariableNames;
 import edu.cmu.tetrad.data.CovarianceMatrixOnTheFly;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.io.BinaryDataReader;
+import edu.cmu.tetrad.io.ConcurrentTabularContinuousDataReader;
 import edu.cmu.tetrad.io.DataReader;
-import edu.cmu.tetrad.io.TabularContinuousDataReader;
 import edu.cmu.tetrad.search.Fgs;
 import edu.cmu.tetrad.search.FgsOld;
 import edu.cmu.tetrad.search.SemBicScore;
 import java.io.BufferedOutputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.file.Files;
@@ -96,10 +97,12 @@ public class FgsCli {
         // data validations
         MAIN_OPTIONS.addOption(null, "skip-unique-var-name", false, "Skip check for unique variable names.");
         MAIN_OPTIONS.addOption(null, "skip-non-zero-variance", false, "Skip check for zero variance variables.");
+        MAIN_OPTIONS.addOption(null, "validate-sample", true, "Fail fast: validate the given number of rows of data before reading in the data. Otherwise the data is validated as it is read in.");
 
         // output results
         MAIN_OPTIONS.addOption(null, "graphml", false, "Create graphML output.");
         MAIN_OPTIONS.addOption(null, "json", false, "Create JSON output.");
+        MAIN_OPTIONS.addOption(null, "save-binary", false, "Save the data read in as a binary data file for faster reloading.");
 
         // output
         MAIN_OPTIONS.addOption("o", "out", true, "Output directory.");
@@ -119,6 +122,8 @@ public class FgsCli {
     private static boolean ignoreLinearDependence;
     private static boolean graphML;
     private static boolean isSerializeJson;
+    private static boolean saveBinary;
+    private static boolean isBinaryData;
     private static boolean verbose;
     private static int numOfThreads;
 
@@ -128,6 +133,9 @@ public class FgsCli {
 
     private static boolean skipUniqueVarName;
     private static boolean skipZeroVariance;
+    private static int validationSampleSize;
+
+    private static double[] variances;
 
     /**
      * @param args the command line arguments
@@ -151,8 +159,13 @@ public class FgsCli {
 
         Set<String> excludedVariables = (excludedVariableFile == null) ? Collections.EMPTY_SET : getExcludedVariables();
 
-        runPreDataValidations(excludedVariables, System.err);
+        if (!isBinaryData && validationSampleSize > 0) {
+            runPreDataValidations(excludedVariables, System.err);
+        }
         DataSet dataSet = readInDataSet(excludedVariables);
+        if (saveBinary) {
+            writeOutBinaryData(dataSet, Paths.get(dirOut.toString(), outputPrefix + "_data.bin"));
+        }
         runOptionalDataValidations(dataSet, System.err);
 
         Path outputFile = Paths.get(dirOut.toString(), outputPrefix + ".txt");
@@ -209,6 +222,26 @@ public class FgsCli {
         }
     }
 
+    private static void writeOutBinaryData(DataSet dataSet, Path outputFile) {
+        try {
+            String fileName = outputFile.getFileName().toString();
+
+            String msg = String.format("Writing out binary data file '%s'.", fileName);
+            System.out.printf("%s: %s%n", DateTime.printNow(), msg);
+            LOGGER.info(msg);
+
+            DataSetIO.writeBinary(dataSet, outputFile);
+
+            msg = String.format("Finished writing out binary data file '%s'.", fileName);
+            System.out.printf("%s: %s%n", DateTime.printNow(), msg);
+            LOGGER.info(msg);
+        } catch (IOException exception) {
+            String errMsg = String.format("Failed when writing out binary data file '%s'.", outputFile.getFileName().toString());
+            System.err.println(errMsg);
+            LOGGER.error(errMsg, exception);
+        }
+    }
+
     private static void writeOutJson(Graph graph, Path outputFile) {
         if (graph == null) {
             return;
@@ -310,7 +343,10 @@ public class FgsCli {
             validations.add(new UniqueVariableNames(dataSet, validationOutput ? Paths.get(dir, outputPrefix + "_duplicate_var_name.txt") : null));
         }
         if (!skipZeroVariance) {
-            validations.add(new NonZeroVariance(dataSet, numOfThreads, validationOutput ? Paths.get(dir, outputPrefix + "_zero_variance.txt") : null));
+            Path outputFile = validationOutput ? Paths.get(dir, outputPrefix + "_zero_variance.txt") : null;
+            validations.add((variances == null)
+                    ? new NonZeroVariance(dataSet, numOfThreads, outputFile)
+                    : new NonZeroVariance(dataSet.getVariableNames(), variances, outputFile));
         }
 
         boolean isValid = true;
@@ -325,16 +361,23 @@ public class FgsCli {
     private static DataSet readInDataSet(Set<String> excludedVariables) {
         DataSet dataSet = null;
 
-        DataReader dataReader = new TabularContinuousDataReader(dataFile, delimiter);
+        ConcurrentTabularContinuousDataReader tabularDataReader = isBinaryData
+                ? null
+                : new ConcurrentTabularContinuousDataReader(dataFile, delimiter, numOfThreads);
+        DataReader dataReader = isBinaryData ? new BinaryDataReader(dataFile) : tabularDataReader;
         try {
             System.out.printf("%s: Start reading in data.%n", DateTime.printNow());
             LOGGER.info("Start reading in data.");
             dataSet = dataReader.readInData(excludedVariables);
+            if (tabularDataReader != null) {
+                variances = tabularDataReader.getVariances();
+            }
             System.out.printf("%s: End reading in data.%n", DateTime.printNow());
             LOGGER.info("End reading in data.");
         } catch (IOException exception) {
             String errMsg = String.format("Failed when reading data file '%s'.", dataFile.getFileName());
             System.err.println(errMsg);
+            System.err.println(exception.getLocalizedMessage());
             LOGGER.error(errMsg, exception);
             System.exit(-128);
         }
@@ -343,7 +386,7 @@ public class FgsCli {
     }
 
     private static void runPreDataValidations(Set<String> excludedVariables, PrintStream stderr) {
-        DataValidation dataValidation = new TabularContinuousData(excludedVariables, dataFile, delimiter);
+        DataValidation dataValidation = new TabularContinuousData(excludedVariables, dataFile, delimiter, validationSampleSize);
         if (!dataValidation.validate(stderr, verbose)) {
             System.exit(-128);
         }
@@ -387,9 +430,13 @@ public class FgsCli {
         fmt.format("depth = %d%n", depth);
         fmt.format("heuristic-speedup = %s%n", heuristicSpeedup);
         fmt.format("graphml = %s%n", graphML);
+        fmt.format("save-binary = %s%n", saveBinary);
 
         fmt.format("skip-unique-var-name = %s%n", skipUniqueVarName);
         fmt.format("skip-non-zero-variance = %s%n", skipZeroVariance);
+        if (validationSampleSize > 0) {
+            fmt.format("validate-sample = %d%n", validationSampleSize);
+        }
 
         fmt.format("out = %s%n", dirOut.getFileName().toString());
         fmt.format("output-prefix = %s%n", outputPrefix);
@@ -403,6 +450,7 @@ public class FgsCli {
             CommandLineParser cmdParser = new DefaultParser();
             CommandLine cmd = cmdParser.parse(MAIN_OPTIONS, args);
             dataFile = Args.getPathFile(cmd.getOptionValue("data"), true);
+            isBinaryData = BinaryDataReader.isBinaryDataFile(dataFile);
             knowledgeFile = Args.getPathFile(cmd.getOptionValue("knowledge", null), false);
             excludedVariableFile = Args.getPathFile(cmd.getOptionValue("exclude-variables", null), false);
             delimiter = Args.getDelimiterForName(cmd.getOptionValue("delimiter", dataFile.getFileName().toString().endsWith(".csv") ? "comma" : "tab"));
@@ -412,6 +460,7 @@ public class FgsCli {
             ignoreLinearDependence = cmd.hasOption("ignore-linear-dependence");
             graphML = cmd.hasOption("graphml");
             isSerializeJson = cmd.hasOption("json");
+            saveBinary = cmd.hasOption("save-binary");
             verbose = cmd.hasOption("verbose");
             numOfThreads = Args.getInteger(cmd.getOptionValue("thread", Integer.toString(Runtime.getRuntime().availableProcessors())));
             dirOut = Args.getPathDir(cmd.getOptionValue("out", "."), false);
@@ -420,7 +469,8 @@ public class FgsCli {
 
             skipUniqueVarName = cmd.hasOption("skip-unique-var-name");
             skipZeroVariance = cmd.hasOption("skip-non-zero-variance");
-        } catch (ParseException | FileNotFoundException exception) {
+            validationSampleSize = cmd.hasOption("validate-sample") ? Args.getIntegerMin(cmd.getOptionValue("validate-sample"), 1) : 0;
+        } catch (ParseException | IOException exception) {
             System.err.println(exception.getLocalizedMessage());
             Args.showHelp("fgs", MAIN_OPTIONS);
             System.exit(-127);
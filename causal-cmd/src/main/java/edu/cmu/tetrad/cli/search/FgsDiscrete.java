@@ -18,6 +18,7 @@
  */
 package edu.cmu.tetrad.cli.search;
 
+import edu.cmu.tetrad.cli.data.DataSetIO;
 import edu.cmu.tetrad.cli.data.IKnowledgeFactory;
 import edu.cmu.tetrad.cli.util.*;
 import edu.cmu.tetrad.cli.validation.DataValidation;
@@ -26,12 +27,12 @@ import edu.cmu.tetrad.cli.validation.TabularDiscreteData;
 import edu.cmu.tetrad.cli.validation.UniqueVariableNames;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.io.BinaryDataReader;
+import edu.cmu.tetrad.io.ConcurrentVerticalTabularDiscreteDataReader;
 import edu.cmu.tetrad.io.DataReader;
-import edu.cmu.tetrad.io.VerticalTabularDiscreteDataReader;
 import edu.cmu.tetrad.search.BDeuScore;
 import edu.cmu.tetrad.search.Fgs;
 import java.io.BufferedOutputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.file.Files;
@@ -97,10 +98,12 @@ public class FgsDiscrete {
         // output results
         MAIN_OPTIONS.addOption(null, "graphml", false, "Create graphML output.");
         MAIN_OPTIONS.addOption(null, "json", false, "Create JSON output.");
+        MAIN_OPTIONS.addOption(null, "save-binary", false, "Save the data read in as a binary data file for faster reloading.");
 
         // data validations
         MAIN_OPTIONS.addOption(null, "skip-unique-var-name", false, "Skip 'unique variable name' check.");
         MAIN_OPTIONS.addOption(null, "skip-category-limit", false, "Skip 'limit number of categories' check.");
+        MAIN_OPTIONS.addOption(null, "validate-sample", true, "Fail fast: validate the given number of rows of data before reading in the data. Otherwise the data is validated as it is read in.");
 
         // output
         MAIN_OPTIONS.addOption("o", "out", true, "Output directory.");
@@ -120,6 +123,8 @@ public class FgsDiscrete {
     private static boolean heuristicSpeedup;
     private static boolean graphML;
     private static boolean isSerializeJson;
+    private static boolean saveBinary;
+    private static boolean isBinaryData;
     private static boolean verbose;
     private static int numOfThreads;
 
@@ -129,6 +134,7 @@ public class FgsDiscrete {
 
     private static boolean skipUniqueVarName;
     private static boolean skipCategoryLimit;
+    private static int validationSampleSize;
 
     /**
      * @param args the command line arguments
@@ -152,10 +158,18 @@ public class FgsDiscrete {
 
         Set<String> excludedVariables = (excludedVariableFile == null) ? Collections.EMPTY_SET : getExcludedVariables();
 
-        runPreDataValidations(excludedVariables, System.err);
+        if (!isBinaryData && validationSampleSize > 0) {
+            runPreDataValidations(excludedVariables, System.err);
+        }
 
         DataSet dataSet = readInDataSet(excludedVariables);
 
+        if (saveBinary) {
+
+            writeOutBinaryData(dataSet, Paths.get(dirOut.toString(), outputPrefix + "_data.bin"));
+
+        }
+
         runOptionalDataValidations(dataSet, System.err);
 
         Path outputFile = Paths.get(dirOut.toString(), outputPrefix + ".txt");
@@ -212,6 +226,26 @@ public class FgsDiscrete {
         }
     }
 
+    private static void writeOutBinaryData(DataSet dataSet, Path outputFile) {
+        try {
+            String fileName = outputFile.getFileName().toString();
+
+            String msg = String.format("Writing out binary data file '%s'.", fileName);
+            System.out.printf("%s: %s%n", DateTime.printNow(), msg);
+            LOGGER.info(msg);
+
+            DataSetIO.writeBinary(dataSet, outputFile);
+
+            msg = String.format("Finished writing out binary data file '%s'.", fileName);
+            System.out.printf("%s: %s%n", DateTime.printNow(), msg);
+            LOGGER.info(msg);
+        } catch (IOException exception) {
+            String errMsg = String.format("Failed when writing out binary data file '%s'.", outputFile.getFileName().toString());
+            System.err.println(errMsg);
+            LOGGER.error(errMsg, exception);
+        }
+    }
+
     private static void writeOutJson(Graph graph, Path outputFile) {
         if (graph == null) {
             return;
@@ -325,7 +359,9 @@ public class FgsDiscrete {
     private static DataSet readInDataSet(Set<String> excludedVariables) {
         DataSet dataSet = null;
 
-        DataReader dataReader = new VerticalTabularDiscreteDataReader(dataFile, delimiter);
+        DataReader dataReader = isBinaryData
+                ? new BinaryDataReader(dataFile)
+                : new ConcurrentVerticalTabularDiscreteDataReader(dataFile, delimiter, numOfThreads);
         try {
             System.out.printf("%s: Start reading in data.%n", DateTime.printNow());
             LOGGER.info("Start reading in data.");
@@ -335,6 +371,7 @@ public class FgsDiscrete {
         } catch (IOException exception) {
             String errMsg = String.format("Failed when reading data file '%s'.", dataFile.getFileName());
             System.err.println(errMsg);
+            System.err.println(exception.getLocalizedMessage());
             LOGGER.error(errMsg, exception);
             System.exit(-128);
         }
@@ -343,7 +380,7 @@ public class FgsDiscrete {
     }
 
     private static void runPreDataValidations(Set<String> excludedVariables, PrintStream stderr) {
-        DataValidation dataValidation = new TabularDiscreteData(excludedVariables, dataFile, delimiter);
+        DataValidation dataValidation = new TabularDiscreteData(excludedVariables, dataFile, delimiter, validationSampleSize);
         if (!dataValidation.validate(stderr, verbose)) {
             System.exit(-128);
         }
@@ -387,9 +424,13 @@ public class FgsDiscrete {
         fmt.format("depth = %d%n", depth);
         fmt.format("heuristic-speedup = %s%n", heuristicSpeedup);
         fmt.format("graphml = %s%n", graphML);
+        fmt.format("save-binary = %s%n", saveBinary);
 
         fmt.format("skip-unique-var-name = %s%n", skipUniqueVarName);
         fmt.format("skip-category-limit = %s%n", skipCategoryLimit);
+        if (validationSampleSize > 0) {
+            fmt.format("validate-sample = %d%n", validationSampleSize);
+        }
 
         fmt.format("out = %s%n", dirOut.getFileName().toString());
         fmt.format("output-prefix = %s%n", outputPrefix);
@@ -403,6 +444,7 @@ public class FgsDiscrete {
             CommandLineParser cmdParser = new DefaultParser();
             CommandLine cmd = cmdParser.parse(MAIN_OPTIONS, args);
             dataFile = Args.getPathFile(cmd.getOptionValue("data"), true);
+            isBinaryData = BinaryDataReader.isBinaryDataFile(dataFile);
             knowledgeFile = Args.getPathFile(cmd.getOptionValue("knowledge", null), false);
             excludedVariableFile = Args.getPathFile(cmd.getOptionValue("exclude-variables", null), false);
             delimiter = Args.getDelimiterForName(cmd.getOptionValue("delimiter", dataFile.getFileName().toString().endsWith(".csv") ? "comma" : "tab"));
@@ -412,6 +454,7 @@ public class FgsDiscrete {
             heuristicSpeedup = !cmd.hasOption("disable-heuristic-speedup");
             graphML = cmd.hasOption("graphml");
             isSerializeJson = cmd.hasOption("json");
+            saveBinary = cmd.hasOption("save-binary");
             verbose = cmd.hasOption("verbose");
             numOfThreads = Args.getInteger(cmd.getOptionValue("thread", Integer.toString(Runtime.getRuntime().availableProcessors())));
             dirOut = Args.getPathDir(cmd.getOptionValue("out", "."), false);
@@ -420,7 +463,8 @@ public class FgsDiscrete {
 
             skipUniqueVarName = cmd.hasOption("skip-unique-var-name");
             skipCategoryLimit = cmd.hasOption("skip-category-limit");
-        } catch (ParseException | FileNotFoundException exception) {
+            validationSampleSize = cmd.hasOption("validate-sample") ? Args.getIntegerMin(cmd.getOptionValue("validate-sample"), 1) : 0;
+        } catch (ParseException | IOException exception) {
             System.err.println(exception.getLocalizedMessage());
             Args.showHelp("fgs-discrete", MAIN_OPTIONS);
             System.exit(-127);
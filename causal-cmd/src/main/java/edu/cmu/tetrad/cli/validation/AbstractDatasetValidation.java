@@ -42,9 +42,19 @@ public abstract class AbstractDatasetValidation extends AbstractDataReader {
 
     protected final Set<String> excludedVariables;
 
+    /**
+     * Number of rows of data to validate. Zero or less means all of them.
+     */
+    protected final int sampleSize;
+
     public AbstractDatasetValidation(Set<String> excludedVariables, Path dataFile, char delimiter) {
+        this(excludedVariables, dataFile, delimiter, 0);
+    }
+
+    public AbstractDatasetValidation(Set<String> excludedVariables, Path dataFile, char delimiter, int sampleSize) {
         super(dataFile, delimiter);
-        this.excludedVariables = (excludedVariables == null) ? Collections.EMPTY_SET : excludedVariables;;
+        this.excludedVariables = (excludedVariables == null) ? Collections.EMPTY_SET : excludedVariables;
+        this.sampleSize = sampleSize;
     }
 
     protected VariableAnalysis analyzeVariables(PrintStream stderr) throws IOException {
@@ -45,6 +45,10 @@ public class NonZeroVariance implements DataValidation {
 
     private final int numOfThreads;
 
+    private final List<String> variables;
+
+    private final double[] variances;
+
     private final Path outputFile;
 
     /**
@@ -57,6 +61,24 @@ public class NonZeroVariance implements DataValidation {
     public NonZeroVariance(DataSet dataSet, int numOfThreads, Path outputFile) {
         this.dataSet = dataSet;
         this.numOfThreads = numOfThreads;
+        this.variables = dataSet.getVariableNames();
+        this.variances = null;
+        this.outputFile = outputFile;
+    }
+
+    /**
+     * Constructor for variances already computed, e.g. while the data was
+     * read in.
+     *
+     * @param variables names of the variables
+     * @param variances variances of the variables, in the same order
+     * @param outputFile file to write out zero-variance variables
+     */
+    public NonZeroVariance(List<String> variables, double[] variances, Path outputFile) {
+        this.dataSet = null;
+        this.numOfThreads = 1;
+        this.variables = variables;
+        this.variances = variances;
         this.outputFile = outputFile;
     }
 
@@ -66,11 +88,13 @@ public class NonZeroVariance implements DataValidation {
             stderr = System.err;
         }
 
-        RealVariance variance = new RealVarianceVectorForkJoin(dataSet.getDoubleData().toArray(), numOfThreads);
-        double[] varianceVector = variance.compute(true);
+        double[] varianceVector = variances;
+        if (varianceVector == null) {
+            RealVariance variance = new RealVarianceVectorForkJoin(dataSet.getDoubleData().toArray(), numOfThreads);
+            varianceVector = variance.compute(true);
+        }
 
         List<String> list = new LinkedList<>();
-        List<String> variables = dataSet.getVariableNames();
         int index = 0;
         for (String variable : variables) {
             if (varianceVector[index++] == 0) {
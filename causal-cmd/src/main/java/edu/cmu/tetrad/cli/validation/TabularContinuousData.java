@@ -47,6 +47,18 @@ public class TabularContinuousData extends AbstractDatasetValidation implements
         super(Collections.EMPTY_SET, dataFile, delimiter);
     }
 
+    /**
+     * Validate only the first rows of data, for a quick check of a large file.
+     *
+     * @param excludedVariables
+     * @param dataFile
+     * @param delimiter
+     * @param sampleSize number of rows of data to validate
+     */
+    public TabularContinuousData(Set<String> excludedVariables, Path dataFile, char delimiter, int sampleSize) {
+        super(excludedVariables, dataFile, delimiter, sampleSize);
+    }
+
     @Override
     public boolean validate(PrintStream stderr, boolean verbose) {
         boolean valid = true;
@@ -129,6 +141,9 @@ public class TabularContinuousData extends AbstractDatasetValidation implements
                         colCount = 0;
                         col = 0;
                         row++;
+                        if (row == sampleSize) {
+                            break;
+                        }
                     }
                 } else if (currentChar > SPACE && (currentChar != SINGLE_QUOTE && currentChar != DOUBLE_QUOTE)) {
                     dataBuilder.append((char) currentChar);
@@ -47,6 +47,18 @@ public class TabularDiscreteData extends AbstractDatasetValidation implements Da
         super(Collections.EMPTY_SET, dataFile, delimiter);
     }
 
+    /**
+     * Validate only the first rows of data, for a quick check of a large file.
+     *
+     * @param excludedVariables
+     * @param dataFile
+     * @param delimiter
+     * @param sampleSize number of rows of data to validate
+     */
+    public TabularDiscreteData(Set<String> excludedVariables, Path dataFile, char delimiter, int sampleSize) {
+        super(excludedVariables, dataFile, delimiter, sampleSize);
+    }
+
     @Override
     public boolean validate(PrintStream stderr, boolean verbose) {
         boolean valid = true;
@@ -120,6 +132,9 @@ public class TabularDiscreteData extends AbstractDatasetValidation implements Da
                         colCount = 0;
                         col = 0;
                         row++;
+                        if (row == sampleSize) {
+                            break;
+                        }
                     }
                 } else if (currentChar > SPACE && (currentChar != SINGLE_QUOTE && currentChar != DOUBLE_QUOTE)) {
                     dataBuilder.append((char) currentChar);
@@ -18,6 +18,7 @@
  */
 package edu.cmu.tetrad.cli.validation;
 
+import edu.cmu.tetrad.io.ConcurrentTabularContinuousDataReader;
 import edu.cmu.tetrad.io.DataReader;
 import edu.cmu.tetrad.io.TabularContinuousDataReader;
 import edu.cmu.tetrad.data.DataSet;
@@ -26,6 +27,8 @@ import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.ClassRule;
@@ -76,4 +79,47 @@ public class NonZeroVarianceTest {
         Assert.assertTrue(errMsg, Files.exists(outputFile, LinkOption.NOFOLLOW_LINKS));
     }
 
+    /**
+     * Test of validate method, of class NonZeroVariance, with the variances
+     * computed while the data is read in.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testValidateVariancesReadIn() throws IOException {
+        System.out.println("validate variances read in");
+
+        Path dataFile = Paths.get("test", "data", "zero_variance_vars", "sim_data_20vars_100cases.csv");
+
+        char delimiter = ',';
+        ConcurrentTabularContinuousDataReader dataReader = new ConcurrentTabularContinuousDataReader(dataFile, delimiter, 2);
+        DataSet dataSet = dataReader.readInData();
+
+        String dirOut = tmpDir.newFolder("validation_zero_variance_read_in").toString();
+        Path outputFile = Paths.get(dirOut, "output.txt");
+        DataValidation dataValidation = new NonZeroVariance(dataSet.getVariableNames(), dataReader.getVariances(), outputFile);
+        Assert.assertFalse(dataValidation.validate(System.err, false));
+
+        String errMsg = outputFile.getFileName().toString() + " does not exist.";
+        Assert.assertTrue(errMsg, Files.exists(outputFile, LinkOption.NOFOLLOW_LINKS));
+
+        Assert.assertEquals(Files.readAllLines(outputFile), zeroVarianceVariables(dataSet));
+    }
+
+    private static List<String> zeroVarianceVariables(DataSet dataSet) {
+        List<String> variables = new ArrayList<>();
+        for (int col = 0; col < dataSet.getNumColumns(); col++) {
+            double first = dataSet.getDouble(0, col);
+            boolean constant = true;
+            for (int row = 1; row < dataSet.getNumRows(); row++) {
+                constant = constant && dataSet.getDouble(row, col) == first;
+            }
+            if (constant) {
+                variables.add(dataSet.getVariable(col).getName());
+            }
+        }
+
+        return variables;
+    }
+
 }
@@ -20,6 +20,7 @@ package edu.cmu.tetrad.cli.validation;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collections;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -52,4 +53,22 @@ public class TabularContinuousDataTest {
         Assert.assertTrue(dataValidation.validate(System.err, false));
     }
 
+    /**
+     * Test of validate method, of class TabularContinuousData, validating
+     * only the first rows.
+     */
+    @Test
+    public void testValidateSample() {
+        System.out.println("validate sample");
+
+        Path badFile = Paths.get("test", "data", "missing_var_name_and_value", "sim_data_20vars_100cases.csv");
+
+        char delimiter = ',';
+        DataValidation dataValidation = new TabularContinuousData(Collections.EMPTY_SET, badFile, delimiter, 50);
+        Assert.assertTrue(dataValidation.validate(System.err, false));
+
+        dataValidation = new TabularContinuousData(Collections.EMPTY_SET, badFile, delimiter, 100);
+        Assert.assertTrue(!dataValidation.validate(System.err, false));
+    }
+
 }
@@ -21,8 +21,12 @@
 
 package edu.cmu.tetrad.data;
 
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
 import edu.cmu.tetrad.util.MultiDimIntTable;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
 
 /**
  * Stores a cell count table of arbitrary dimension. Provides methods for
@@ -66,6 +70,11 @@ public final class CellTable {
             dims[i] = variable.getNumCategories();
         }
 
+        if (dataSet instanceof BoxDataSet && ((BoxDataSet) dataSet).getDataBox() instanceof PackedIntDataBox) {
+            addToTable((PackedIntDataBox) ((BoxDataSet) dataSet).getDataBox(), indices, dims);
+            return;
+        }
+
         table.reset(dims);
 
         int[] coords = new int[indices.length];
@@ -89,6 +98,131 @@ public final class CellTable {
         }
     }
 
+    /**
+     * Resets the table to the given dimensions and counts into it the rows of
+     * the given columns of packed data, a column at a time. Rows with a missing
+     * value in any of the columns are skipped.
+     *
+     * @param data    The packed data.
+     * @param indices The columns to tabulate.
+     * @param dims    The number of categories of each of those columns.
+     */
+    public final void addToTable(PackedIntDataBox data, int[] indices, int[] dims) {
+        addToTable(data, indices, dims, indices.length, null);
+    }
+
+    /**
+     * As addToTable(data, indices, dims), except that the columns after the
+     * first numLeading have already been folded into the given cell indices
+     * (see PackedIntDataBox.updateCellIndices), so that the counting for,
+     * say, a conditioning set can be shared by the tables that condition on
+     * it. For at least PackedIntDataBox.PARALLEL_ROWS rows, given more than
+     * one processor, ranges of rows are folded and counted in parallel, into
+     * tables of their own that are then added up if the table is small enough
+     * for that to be worth it.
+     *
+     * @param trailingCellIndices The cell indices of the rows for the columns
+     *                            after the first numLeading, or null if there
+     *                            are none.
+     */
+    public final void addToTable(final PackedIntDataBox data, final int[] indices, final int[] dims,
+                                 final int numLeading, final int[] trailingCellIndices) {
+        table.reset(dims);
+
+        int trailingSize = 1;
+
+        for (int j = numLeading; j < dims.length; j++) {
+            trailingSize *= dims[j];
+        }
+
+        final int numRows = data.numRows();
+        final int _trailingSize = trailingSize;
+        final int[] cellIndices = new int[numRows];
+
+        ForkJoinPool pool = ForkJoinPoolInstance.getInstance().getPool();
+
+        if (numRows < PackedIntDataBox.PARALLEL_ROWS || pool.getParallelism() == 1) {
+            count(data, indices, dims, numLeading, trailingCellIndices, _trailingSize, cellIndices,
+                    0, numRows, table);
+            return;
+        }
+
+        final int chunk = PackedIntDataBox.PARALLEL_ROWS / 2;
+        final boolean separateTables = table.getNumCells() <= chunk / 4;
+
+        class CountTask extends RecursiveTask<MultiDimIntTable> {
+            private final int from;
+            private final int to;
+
+            CountTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected MultiDimIntTable compute() {
+                if (to - from <= chunk) {
+                    MultiDimIntTable _table = separateTables ? new MultiDimIntTable(dims) : null;
+                    count(data, indices, dims, numLeading, trailingCellIndices, _trailingSize, cellIndices,
+                            from, to, _table);
+                    return _table;
+                } else {
+                    int mid = (from + to) / 2;
+                    CountTask left = new CountTask(from, mid);
+                    CountTask right = new CountTask(mid, to);
+
+                    left.fork();
+                    MultiDimIntTable _table = right.compute();
+                    MultiDimIntTable leftTable = left.join();
+
+                    if (_table != null) {
+                        _table.add(leftTable);
+                    }
+
+                    return _table;
+                }
+            }
+        }
+
+        MultiDimIntTable counts = pool.invoke(new CountTask(0, numRows));
+
+        if (separateTables) {
+            table.add(counts);
+        } else {
+            for (int cellIndex : cellIndices) {
+                if (cellIndex >= 0) {
+                    table.increment(cellIndex, 1);
+                }
+            }
+        }
+    }
+
+    // Folds the rows from (inclusive) to to (exclusive) into their cell
+    // indices and, if a table is given, counts them into it.
+    private static void count(PackedIntDataBox data, int[] indices, int[] dims, int numLeading,
+                              int[] trailingCellIndices, int trailingSize, int[] cellIndices,
+                              int from, int to, MultiDimIntTable table) {
+        for (int j = 0; j < numLeading; j++) {
+            data.updateCellIndices(indices[j], dims[j], cellIndices, from, to);
+        }
+
+        if (trailingCellIndices != null) {
+            for (int i = from; i < to; i++) {
+                int trailing = trailingCellIndices[i];
+                cellIndices[i] = (cellIndices[i] < 0 || trailing < 0) ? -1
+                        : cellIndices[i] * trailingSize + trailing;
+            }
+        }
+
+        if (table != null) {
+            for (int i = from; i < to; i++) {
+                if (cellIndices[i] >= 0) {
+                    table.increment(cellIndices[i], 1);
+                }
+            }
+        }
+    }
+
     /**
      * @param varIndex the index of the variable in question.
      * @return the number of dimensions of the variable.
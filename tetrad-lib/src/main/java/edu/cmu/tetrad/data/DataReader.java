@@ -31,12 +31,11 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
 import java.util.regex.Pattern;
 
 /**
@@ -220,10 +219,18 @@ public final class DataReader {
         try {
             // Do first pass to get a description of the file.
             reader = new FileReader(file);
-            DataSetDescription description = doFirstTabularPass(reader);
-
-            // Close the reader and re-open for a second pass to load the data.
+            DataSetDescription description = doFirstTabularPass(reader, true);
             reader.close();
+
+            // A numeric column turned out to be discrete after its values were
+            // dropped; scan again, keeping all of the values.
+            if (description == null) {
+                reader = new FileReader(file);
+                description = doFirstTabularPass(reader, false);
+                reader.close();
+            }
+
+            // Re-open for a second pass to load the data.
             reader2 = new FileReader(file);
             DataSet dataSet = doSecondTabularPass(description, reader2);
 
@@ -260,10 +267,18 @@ public final class DataReader {
 
         // Do first pass to get a description of the file.
         CharArrayReader reader = new CharArrayReader(chars);
-        DataSetDescription description = doFirstTabularPass(reader);
-
-        // Close the reader and re-open for a second pass to load the data.
+        DataSetDescription description = doFirstTabularPass(reader, true);
         reader.close();
+
+        // A numeric column turned out to be discrete after its values were
+        // dropped; scan again, keeping all of the values.
+        if (description == null) {
+            reader = new CharArrayReader(chars);
+            description = doFirstTabularPass(reader, false);
+            reader.close();
+        }
+
+        // Re-open for a second pass to load the data.
         CharArrayReader reader2 = new CharArrayReader(chars);
         DataSet dataSet = doSecondTabularPass(description, reader2);
 
@@ -272,7 +287,14 @@ public final class DataReader {
         return dataSet;
     }
 
-    private DataSetDescription doFirstTabularPass(Reader reader) {
+    /**
+     * @param dropNumericValues True if the values of a column may be dropped
+     * once the column is known to be continuous, so long as it stays numeric.
+     * @return the description, or null if values were dropped for a column
+     * that turned out to be discrete, in which case the pass must be redone
+     * with dropNumericValues false.
+     */
+    private DataSetDescription doFirstTabularPass(Reader reader, boolean dropNumericValues) {
         DataSetDescription description;
         Lineizer lineizer = new Lineizer(reader, commentMarker);
 
@@ -455,7 +477,8 @@ public final class DataReader {
 
         // Scan for variable types.
         description = scanForDescription(varNames, lineizer,
-                delimiter, dataFirstLine, idIndex, variableSectionIncluded);
+                delimiter, dataFirstLine, idIndex, variableSectionIncluded,
+                dropNumericValues);
         return description;
     }
 
@@ -503,7 +526,21 @@ public final class DataReader {
 
 //        ShortDataBox box = new ShortDataBox(description.getNumRows(), description.getVariables().size());
 //        BoxDataSet dataSet = new BoxDataSet(box, description.getVariables());
+        // Index the categories of the discrete variables, for lookup in place.
+        TokenSet[] categories = new TokenSet[variables.size()];
+
+        for (int j = 0; j < variables.size(); j++) {
+            if (variables.get(j) instanceof DiscreteVariable) {
+                categories[j] = new TokenSet();
+
+                for (String category : ((DiscreteVariable) variables.get(j)).getCategories()) {
+                    categories[j].add(category, 0, category.length());
+                }
+            }
+        }
+
         int row = -1;
+        LineTokenizer tokenizer1 = new LineTokenizer(description.getDelimiter(), quoteChar);
 
         while (lineizer.hasMoreLines()) {
             if (dataFirstLine == null) {
@@ -519,8 +556,7 @@ public final class DataReader {
 
             ++row;
 
-            RegexTokenizer tokenizer1 = new RegexTokenizer(line2, description.getDelimiter(),
-                    quoteChar);
+            tokenizer1.reset(line2);
 
 //            if (description.isMultColumnIncluded() && tokenizer1.hasMoreTokens()) {
 //                String token = tokenizer1.nextToken().trim();
@@ -531,8 +567,8 @@ public final class DataReader {
             int col = -1;
 
             while (tokenizer1.hasMoreTokens()) {
-                String token = tokenizer1.nextToken().trim();
-                setValue(dataSet, row, ++col, token);
+                tokenizer1.nextToken();
+                setValue(dataSet, row, ++col, tokenizer1, categories);
             }
         }
 
@@ -786,8 +822,20 @@ public final class DataReader {
         return idIndex;
     }
 
-    private void setValue(DataSet dataSet, int row, int col, String s) {
-        if (s == null || s.equals("") || s.trim().equals(missingValueMarker)) {
+    /**
+     * Sets the value of the given cell from the current token of the
+     * tokenizer, trimmed, parsing it in place.
+     */
+    private void setValue(DataSet dataSet, int row, int col, LineTokenizer tokenizer,
+            TokenSet[] categories) {
+        CharSequence chars = tokenizer.getChars();
+        int start = tokenizer.getTokenStart();
+        int end = tokenizer.getTokenEnd();
+
+        while (start < end && chars.charAt(start) <= ' ') start++;
+        while (end > start && chars.charAt(end - 1) <= ' ') end--;
+
+        if (start == end || regionEquals(chars, start, end, missingValueMarker)) {
             return;
         }
 
@@ -799,14 +847,13 @@ public final class DataReader {
 
         if (node instanceof ContinuousVariable) {
             try {
-                double value = Double.parseDouble(s);
+                double value = NumberParser.parseDouble(chars, start, end);
                 dataSet.setDouble(row, col, value);
             } catch (NumberFormatException e) {
                 dataSet.setDouble(row, col, Double.NaN);
             }
         } else if (node instanceof DiscreteVariable) {
-            DiscreteVariable var = (DiscreteVariable) node;
-            int value = var.getCategories().indexOf(s.trim());
+            int value = categories[col].indexOf(chars, start, end);
 
             if (value == -1) {
                 dataSet.setInt(row, col, -99);
@@ -816,6 +863,23 @@ public final class DataReader {
         }
     }
 
+    /**
+     * @return true iff chars[start, end) equals s.
+     */
+    private static boolean regionEquals(CharSequence chars, int start, int end, String s) {
+        if (end - start != s.length()) {
+            return false;
+        }
+
+        for (int i = start; i < end; i++) {
+            if (chars.charAt(i) != s.charAt(i - start)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     /**
      * Reads a knowledge file in tetrad2 format (almost--only does temporal
      * tiers currently). Format is:
@@ -1044,7 +1108,9 @@ public final class DataReader {
     }
 
     /**
-     * Scans the file for variable definitions and number of cases.
+     * Scans the file for variable definitions and number of cases. The type
+     * of each column is inferred as its tokens are read; the values of a
+     * column are kept only while it might still be discrete.
      *
      * @param varNames Names of variables, if known. Otherwise, if null,
      * variables in the series X1, X2, ..., Xn will be made up, one for each
@@ -1053,20 +1119,26 @@ public final class DataReader {
      * @param delimiter Delimiter to tokenize tokens in each row.
      * @param firstLine Non-null if a non-variable first line had to be lineized
      * @param idIndex The index of the ID column.
+     * @param dropNumericValues True if the values of a column may be dropped
+     * once it is known to be continuous.
+     * @return the description, or null if the values of some column were
+     * dropped but the column turned out to be discrete.
      */
     private DataSetDescription scanForDescription(List<String> varNames,
             Lineizer lineizer, Pattern delimiter,
             String firstLine, int idIndex,
-            boolean variableSectionIncluded) {
+            boolean variableSectionIncluded, boolean dropNumericValues) {
 
-        // Scan file, collecting up the set of range values for each variables.
-        List<Set<String>> dataStrings = new ArrayList<>();
+        // Scan file, inferring the type of each column and collecting up the
+        // set of range values for those that may be discrete.
+        ColumnScan[] columns = new ColumnScan[varNames.size()];
 
         for (int i = 0; i < varNames.size(); i++) {
-            dataStrings.add(new HashSet<String>(varNames.size()));
+            columns[i] = new ColumnScan(getKnownVariable(varNames.get(i)) == null);
         }
 
         int row = -1;
+        LineTokenizer tokenizer = new LineTokenizer(delimiter, quoteChar);
 
         while (lineizer.hasMoreLines()) {
             String line;
@@ -1084,24 +1156,31 @@ public final class DataReader {
 
             ++row;
 
-            RegexTokenizer tokenizer
-                    = new RegexTokenizer(line, delimiter, quoteChar);
+            tokenizer.reset(line);
 
             int col = -1;
 
             while (tokenizer.hasMoreTokens()) {
-                String token = tokenizer.nextToken();
+                tokenizer.nextToken();
                 ++col;
 
-                if (col >= dataStrings.size()) {
+                if (col >= columns.length || !columns[col].scanned) {
                     continue;
                 }
 
-                if ("".equals(token) || missingValueMarker.equals(token)) {
+                CharSequence chars = tokenizer.getChars();
+                int start = tokenizer.getTokenStart();
+                int end = tokenizer.getTokenEnd();
+
+                if (start == end || regionEquals(chars, start, end, missingValueMarker)) {
                     continue;
                 }
 
-                dataStrings.get(col).add(token);
+                columns[col].add(chars, start, end);
+
+                if (dropNumericValues && col != idIndex) {
+                    columns[col].dropValuesIfContinuous(maxIntegralDiscrete);
+                }
             }
 
             if (col < varNames.size() - 1) {
@@ -1123,21 +1202,23 @@ public final class DataReader {
         // Convert these range values into variable definitions.
         List<Node> variables = new ArrayList<>();
 
-        VARNAMES:
         for (int i = 0; i < varNames.size(); i++) {
-            Set<String> strings = dataStrings.get(i);
+            ColumnScan column = columns[i];
 
             // Use known variables if they exist for the corresponding name.
-            for (Node variable : knownVariables) {
-                if (variable.getName().equals(varNames.get(i))) {
-                    variables.add(variable);
-                    continue VARNAMES;
-                }
+            Node knownVariable = getKnownVariable(varNames.get(i));
+
+            if (knownVariable != null) {
+                variables.add(knownVariable);
+                continue;
             }
 
-            if (isDouble(strings) && !isIntegral(strings) && i != idIndex) {
+            boolean tooManyDiscreteValues = column.values == null
+                    || column.values.size() > maxIntegralDiscrete;
+
+            if (column.doubles && !column.integral && i != idIndex) {
                 variables.add(new ContinuousVariable(varNames.get(i)));
-            } else if (isIntegral(strings) && tooManyDiscreteValues(strings)
+            } else if (column.integral && tooManyDiscreteValues
                     && i != idIndex) {
                 String name = varNames.get(i);
 
@@ -1152,8 +1233,10 @@ public final class DataReader {
                 }
 
                 variables.add(new ContinuousVariable(name));
+            } else if (column.values == null) {
+                return null;
             } else {
-                List<String> categories = new LinkedList<>(strings);
+                List<String> categories = new LinkedList<>(column.values.getValues());
                 categories.remove(null);
                 categories.remove("");
                 categories.remove(missingValueMarker);
@@ -1232,32 +1315,151 @@ public final class DataReader {
                 delimiter/*, multColumnIncluded*/);
     }
 
-    private boolean tooManyDiscreteValues(Set<String> strings) {
-        return strings.size() > maxIntegralDiscrete;
+    /**
+     * @return the known variable with the given name, or null if there is none.
+     */
+    private Node getKnownVariable(String name) {
+        for (Node variable : knownVariables) {
+            if (variable.getName().equals(name)) {
+                return variable;
+            }
+        }
+
+        return null;
     }
 
-    private static boolean isIntegral(Set<String> strings) {
-        for (String s : strings) {
-            try {
-                Integer.parseInt(s);
-            } catch (NumberFormatException e) {
-                return false;
+    /**
+     * Infers the type of one column from its tokens, one token at a time:
+     * whether every token parses as a double, whether every token parses as
+     * an int, and, while the column may still be discrete, the set of
+     * distinct tokens.
+     */
+    private static final class ColumnScan {
+
+        /**
+         * False if the column is a known variable and need not be scanned.
+         */
+        private final boolean scanned;
+        private boolean doubles = true;
+        private boolean integral = true;
+        private TokenSet values = new TokenSet();
+
+        private ColumnScan(boolean scanned) {
+            this.scanned = scanned;
+        }
+
+        private void add(CharSequence chars, int start, int end) {
+            if (values != null) {
+                if (values.indexOf(chars, start, end) != -1) {
+                    return;
+                }
+
+                values.add(chars, start, end);
+            }
+
+            if (doubles && !NumberParser.isDouble(chars, start, end)) {
+                doubles = false;
+            }
+
+            if (integral && !NumberParser.isInt(chars, start, end)) {
+                integral = false;
             }
         }
 
-        return true;
+        /**
+         * Drops the values if the column would be continuous were the scan to
+         * end here; it stays continuous unless a non-numeric token turns up.
+         */
+        private void dropValuesIfContinuous(int maxIntegralDiscrete) {
+            if (values != null && ((doubles && !integral)
+                    || (integral && values.size() > maxIntegralDiscrete))) {
+                values = null;
+            }
+        }
     }
 
-    private static boolean isDouble(Set<String> strings) {
-        for (String s : strings) {
-            try {
-                Double.parseDouble(s);
-            } catch (NumberFormatException e) {
-                return false;
+    /**
+     * A set of strings, kept in order of insertion, that may be probed with a
+     * range of characters without creating a String for it.
+     */
+    private static final class TokenSet {
+        private String[] values = new String[8];
+        private int[] table = new int[16];
+        private int size = 0;
+
+        /**
+         * @return the insertion index of chars[start, end), or -1 if it is not
+         * in the set.
+         */
+        public int indexOf(CharSequence chars, int start, int end) {
+            int mask = table.length - 1;
+
+            for (int slot = hash(chars, start, end) & mask; ; slot = (slot + 1) & mask) {
+                int index = table[slot] - 1;
+
+                if (index == -1) {
+                    return -1;
+                }
+
+                if (regionEquals(chars, start, end, values[index])) {
+                    return index;
+                }
             }
         }
 
-        return true;
+        /**
+         * Adds chars[start, end), which must not already be in the set.
+         */
+        public void add(CharSequence chars, int start, int end) {
+            if (2 * (size + 1) > table.length) {
+                rehash(2 * table.length);
+            }
+
+            if (size == values.length) {
+                values = Arrays.copyOf(values, 2 * size);
+            }
+
+            values[size++] = chars.subSequence(start, end).toString();
+            insert(size - 1);
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public List<String> getValues() {
+            return Arrays.asList(values).subList(0, size);
+        }
+
+        private void rehash(int capacity) {
+            table = new int[capacity];
+
+            for (int index = 0; index < size; index++) {
+                insert(index);
+            }
+        }
+
+        private void insert(int index) {
+            String value = values[index];
+            int mask = table.length - 1;
+            int slot = hash(value, 0, value.length()) & mask;
+
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+
+            table[slot] = index + 1;
+        }
+
+        private static int hash(CharSequence chars, int start, int end) {
+            int h = 0;
+
+            for (int i = start; i < end; i++) {
+                h = 31 * h + chars.charAt(i);
+            }
+
+            return h ^ (h >>> 16);
+        }
     }
 
 //    /**
@@ -0,0 +1,241 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.data;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Tokenizes lines exactly as RegexTokenizer does, but without creating a
+ * String for each token; instead, the bounds of the current token in the
+ * line are made available, so that tokens may be compared or parsed in
+ * place. One tokenizer is reused for all of the lines of a file. Whitespace
+ * and single-character delimiters are scanned for directly; any other
+ * delimiter pattern is matched as a regular expression.
+ */
+final class LineTokenizer {
+
+    /**
+     * The delimiter pattern, used if it is not a simple one.
+     */
+    private final Pattern delimiterPattern;
+
+    /**
+     * True if the delimiter is "\s+".
+     */
+    private final boolean whitespaceDelimiter;
+
+    /**
+     * The delimiter character, if the delimiter is a single literal character;
+     * otherwise -1.
+     */
+    private final int delimiterChar;
+
+    /**
+     * The quote character.
+     */
+    private final char quoteChar;
+
+    /**
+     * The matcher for the delimiter pattern, if it is not a simple one.
+     */
+    private Matcher delimiterMatcher;
+
+    /**
+     * The line being tokenized.
+     */
+    private CharSequence chars;
+
+    /**
+     * The position just after the last delimiter found.
+     */
+    private int position;
+
+    /**
+     * A flag indicating that the last token has been parsed.
+     */
+    private boolean finalTokenParsed = true;
+
+    /**
+     * The bounds of the current token, and the end of the most recently
+     * found delimiter.
+     */
+    private int tokenStart;
+    private int tokenEnd;
+    private int delimiterEnd;
+
+    public LineTokenizer(Pattern delimiterPattern, char quoteChar) {
+        String regex = delimiterPattern.pattern();
+
+        this.delimiterPattern = delimiterPattern;
+        this.quoteChar = quoteChar;
+        this.whitespaceDelimiter = "\\s+".equals(regex);
+
+        if (regex.length() == 1 && "\\[](){}.*+?^$|".indexOf(regex.charAt(0)) == -1) {
+            this.delimiterChar = regex.charAt(0);
+        } else if (regex.length() == 2 && regex.charAt(0) == '\\' && regex.charAt(1) == 't') {
+            this.delimiterChar = '\t';
+        } else {
+            this.delimiterChar = -1;
+        }
+    }
+
+    /**
+     * Starts tokenizing the given line.
+     */
+    public void reset(CharSequence line) {
+        chars = line;
+        position = 0;
+        finalTokenParsed = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) != ' ') {
+                position = i;
+                break;
+            }
+        }
+
+        if (!whitespaceDelimiter && delimiterChar == -1) {
+            delimiterMatcher = delimiterPattern.matcher(line);
+        }
+    }
+
+    /**
+     * @return true iff more tokens exist in the line.
+     */
+    public boolean hasMoreTokens() {
+        return !finalTokenParsed;
+    }
+
+    /**
+     * Advances to the next token in the line.
+     */
+    public void nextToken() {
+        int length = chars.length();
+
+        if (position != length && chars.charAt(position) == quoteChar) {
+            int end = length;
+
+            for (int i = position + 1; i < length; i++) {
+                if (chars.charAt(i) == quoteChar) {
+                    end = i + 1;
+                    break;
+                }
+            }
+
+            tokenStart = position + 1;
+            tokenEnd = Math.max(tokenStart, end - 1);
+
+            boolean match = findDelimiter(end) != -1;
+            position = match ? delimiterEnd : length;
+            finalTokenParsed = !match;
+        } else {
+            int start = findDelimiter(position);
+            boolean match = start != -1;
+
+            tokenStart = position;
+            tokenEnd = match ? start : length;
+            position = match ? delimiterEnd : length;
+            finalTokenParsed = !match;
+        }
+    }
+
+    /**
+     * @return the line being tokenized.
+     */
+    public CharSequence getChars() {
+        return chars;
+    }
+
+    /**
+     * @return the index in the line of the first character of the current
+     * token.
+     */
+    public int getTokenStart() {
+        return tokenStart;
+    }
+
+    /**
+     * @return the index in the line just after the current token.
+     */
+    public int getTokenEnd() {
+        return tokenEnd;
+    }
+
+    /**
+     * @return the current token, as a String.
+     */
+    public String getToken() {
+        return chars.subSequence(tokenStart, tokenEnd).toString();
+    }
+
+    /**
+     * @return the start of the first delimiter at or after from, or -1 if
+     * there is none. The end of the delimiter is stored in delimiterEnd.
+     */
+    private int findDelimiter(int from) {
+        int length = chars.length();
+
+        if (whitespaceDelimiter) {
+            for (int i = from; i < length; i++) {
+                if (isWhitespace(chars.charAt(i))) {
+                    int end = i + 1;
+
+                    while (end < length && isWhitespace(chars.charAt(end))) {
+                        end++;
+                    }
+
+                    delimiterEnd = end;
+                    return i;
+                }
+            }
+
+            return -1;
+        } else if (delimiterChar != -1) {
+            for (int i = from; i < length; i++) {
+                if (chars.charAt(i) == delimiterChar) {
+                    delimiterEnd = i + 1;
+                    return i;
+                }
+            }
+
+            return -1;
+        } else {
+            if (from > length || !delimiterMatcher.find(from)) {
+                return -1;
+            }
+
+            delimiterEnd = delimiterMatcher.end();
+            return delimiterMatcher.start();
+        }
+    }
+
+    /**
+     * @return true iff c matches \s.
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
+
+
@@ -61,6 +61,34 @@ public class MixedDataBox implements DataBox {
         }
     }
 
+    /**
+     * Constructs a data box directly over the given column arrays, without
+     * copying. For each column j exactly one of continuousData[j] and
+     * discreteData[j] should be non-null and of length numRows.
+     */
+    public MixedDataBox(List<Node> variables, int numRows, double[][] continuousData, int[][] discreteData) {
+        if (continuousData.length != variables.size() || discreteData.length != variables.size()) {
+            throw new IllegalArgumentException("Number of columns must equal the number of variables.");
+        }
+
+        for (int j = 0; j < variables.size(); j++) {
+            if (continuousData[j] == null && discreteData[j] == null) {
+                throw new IllegalArgumentException("No data given for column " + j + ".");
+            }
+
+            int length = continuousData[j] != null ? continuousData[j].length : discreteData[j].length;
+
+            if (length != numRows) {
+                throw new IllegalArgumentException("All columns must have same length.");
+            }
+        }
+
+        this.variables = variables;
+        this.numRows = numRows;
+        this.continuousData = continuousData;
+        this.discreteData = discreteData;
+    }
+
     /**
      * Generates a simple exemplar of this class to test serialization.
      */
@@ -0,0 +1,344 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.data;
+
+import java.math.BigInteger;
+
+/**
+ * Parses numbers directly from a range of characters in a CharSequence,
+ * without first copying the range into a String. The results are exactly
+ * those of Double.parseDouble and Integer.parseInt on the same characters;
+ * plain decimal literals of up to 19 significant digits are converted in
+ * place (Clinger's fast path, then the Eisel-Lemire algorithm), and anything
+ * else--special values, hex literals, very long mantissas, subnormals--is
+ * handed to Double.parseDouble.
+ */
+public final class NumberParser {
+
+    /**
+     * The range of decimal exponents covered by the powers of five table.
+     */
+    private static final int SMALLEST_POWER_OF_FIVE = -342;
+    private static final int LARGEST_POWER_OF_FIVE = 308;
+
+    /**
+     * The high and low 64 bits of the 128-bit normalized approximations of
+     * 5^q, for q from SMALLEST_POWER_OF_FIVE to LARGEST_POWER_OF_FIVE.
+     */
+    private static final long[] POWERS_OF_FIVE_HIGH;
+    private static final long[] POWERS_OF_FIVE_LOW;
+
+    /**
+     * Powers of ten that are exactly representable as doubles.
+     */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    static {
+        int size = LARGEST_POWER_OF_FIVE - SMALLEST_POWER_OF_FIVE + 1;
+        POWERS_OF_FIVE_HIGH = new long[size];
+        POWERS_OF_FIVE_LOW = new long[size];
+
+        BigInteger two128 = BigInteger.ONE.shiftLeft(128);
+        BigInteger five = BigInteger.valueOf(5);
+
+        for (int q = SMALLEST_POWER_OF_FIVE; q <= LARGEST_POWER_OF_FIVE; q++) {
+            BigInteger c;
+
+            if (q < 0) {
+                BigInteger power5 = five.pow(-q);
+                int z = power5.bitLength();
+                int b = q >= -27 ? z + 127 : 2 * z + 128;
+                c = BigInteger.ONE.shiftLeft(b).divide(power5).add(BigInteger.ONE);
+
+                while (c.compareTo(two128) >= 0) {
+                    c = c.shiftRight(1);
+                }
+            } else {
+                c = five.pow(q);
+                int bitLength = c.bitLength();
+                c = bitLength < 128 ? c.shiftLeft(128 - bitLength) : c.shiftRight(bitLength - 128);
+            }
+
+            POWERS_OF_FIVE_HIGH[q - SMALLEST_POWER_OF_FIVE] = c.shiftRight(64).longValue();
+            POWERS_OF_FIVE_LOW[q - SMALLEST_POWER_OF_FIVE] = c.longValue();
+        }
+    }
+
+    private NumberParser() {
+    }
+
+    /**
+     * @return the double value of chars[start, end), exactly as
+     * Double.parseDouble would return it.
+     * @throws NumberFormatException if the characters are not a number.
+     */
+    public static double parseDouble(CharSequence chars, int start, int end) {
+        while (start < end && chars.charAt(start) <= ' ') start++;
+        while (end > start && chars.charAt(end - 1) <= ' ') end--;
+
+        int i = start;
+        boolean negative = false;
+
+        if (i < end && (chars.charAt(i) == '-' || chars.charAt(i) == '+')) {
+            negative = chars.charAt(i) == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int numDigits = 0;
+        int exponent = 0;
+        boolean digitsSeen = false;
+
+        for (; i < end; i++) {
+            int d = chars.charAt(i) - '0';
+            if (d < 0 || d > 9) break;
+            digitsSeen = true;
+
+            if (mantissa == 0 && d == 0) continue;
+            if (numDigits == 19) return slowParseDouble(chars, start, end);
+
+            mantissa = 10 * mantissa + d;
+            numDigits++;
+        }
+
+        if (i < end && chars.charAt(i) == '.') {
+            for (i++; i < end; i++) {
+                int d = chars.charAt(i) - '0';
+                if (d < 0 || d > 9) break;
+                digitsSeen = true;
+                exponent--;
+
+                if (mantissa == 0 && d == 0) continue;
+                if (numDigits == 19) return slowParseDouble(chars, start, end);
+
+                mantissa = 10 * mantissa + d;
+                numDigits++;
+            }
+        }
+
+        if (!digitsSeen) {
+            return slowParseDouble(chars, start, end);
+        }
+
+        if (i < end && (chars.charAt(i) == 'e' || chars.charAt(i) == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+
+            if (i < end && (chars.charAt(i) == '-' || chars.charAt(i) == '+')) {
+                negativeExponent = chars.charAt(i) == '-';
+                i++;
+            }
+
+            int exponentStart = i;
+            int explicitExponent = 0;
+
+            for (; i < end; i++) {
+                int d = chars.charAt(i) - '0';
+                if (d < 0 || d > 9) break;
+                if (explicitExponent > 100000) return slowParseDouble(chars, start, end);
+                explicitExponent = 10 * explicitExponent + d;
+            }
+
+            if (i == exponentStart) {
+                return slowParseDouble(chars, start, end);
+            }
+
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+
+        if (i != end) {
+            return slowParseDouble(chars, start, end);
+        }
+
+        double value = toDouble(mantissa, exponent);
+
+        if (Double.isNaN(value)) {
+            return slowParseDouble(chars, start, end);
+        }
+
+        return negative ? -value : value;
+    }
+
+    /**
+     * @return true iff Double.parseDouble would accept chars[start, end).
+     */
+    public static boolean isDouble(CharSequence chars, int start, int end) {
+        try {
+            parseDouble(chars, start, end);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return true iff Integer.parseInt would accept chars[start, end).
+     */
+    public static boolean isInt(CharSequence chars, int start, int end) {
+        int i = start;
+        boolean negative = false;
+
+        if (i < end && (chars.charAt(i) == '-' || chars.charAt(i) == '+')) {
+            negative = chars.charAt(i) == '-';
+            i++;
+        }
+
+        if (i == end) {
+            return false;
+        }
+
+        long limit = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+        long value = 0;
+
+        for (; i < end; i++) {
+            char c = chars.charAt(i);
+
+            if (c > 127) {
+                return slowIsInt(chars, start, end);
+            }
+
+            if (c < '0' || c > '9') {
+                return false;
+            }
+
+            value = 10 * value + (c - '0');
+
+            if (value > limit) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return mantissa * 10^exponent, correctly rounded, or NaN if that can't
+     * be decided here.
+     */
+    private static double toDouble(long mantissa, int exponent) {
+        if (mantissa == 0) {
+            return 0.0;
+        }
+
+        // Clinger's fast path: both operands are exact, so a single
+        // multiplication or division rounds correctly.
+        if (mantissa > 0 && mantissa <= (1L << 53) && exponent >= -22 && exponent <= 22) {
+            return exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent]
+                    : mantissa / POWERS_OF_TEN[-exponent];
+        }
+
+        if (exponent < SMALLEST_POWER_OF_FIVE || exponent > LARGEST_POWER_OF_FIVE) {
+            return Double.NaN;
+        }
+
+        // Eisel-Lemire.
+        int leadingZeros = Long.numberOfLeadingZeros(mantissa);
+        long w = mantissa << leadingZeros;
+        int index = exponent - SMALLEST_POWER_OF_FIVE;
+
+        long high = multiplyHigh(w, POWERS_OF_FIVE_HIGH[index]);
+        long low = w * POWERS_OF_FIVE_HIGH[index];
+
+        if ((high & 0x1FF) == 0x1FF) {
+            long secondHigh = multiplyHigh(w, POWERS_OF_FIVE_LOW[index]);
+            low += secondHigh;
+
+            if (unsignedLessThan(low, secondHigh)) {
+                high++;
+            }
+
+            if (low == -1L) {
+                return Double.NaN;
+            }
+        }
+
+        int upperBit = (int) (high >>> 63);
+        int shift = upperBit + 9;
+        long bits = high >>> shift;
+        int power2 = (((152170 + 65536) * exponent) >> 16) + 63 + upperBit - leadingZeros + 1023;
+
+        if (power2 <= 0) {
+            return Double.NaN;
+        }
+
+        // Ties, which only occur for small exponents, round to even.
+        if ((low == 0 || low == 1) && exponent >= -4 && exponent <= 23 && (bits & 3) == 1
+                && (bits << shift) == high) {
+            bits &= ~1L;
+        }
+
+        bits += bits & 1;
+        bits >>>= 1;
+
+        if (bits >= (2L << 52)) {
+            bits = 1L << 52;
+            power2++;
+        }
+
+        if (power2 >= 0x7FF) {
+            return Double.NaN;
+        }
+
+        bits &= ~(1L << 52);
+        return Double.longBitsToDouble(bits | ((long) power2 << 52));
+    }
+
+    /**
+     * @return the high 64 bits of the unsigned 128-bit product of a and b.
+     */
+    private static long multiplyHigh(long a, long b) {
+        long aLow = a & 0xFFFFFFFFL;
+        long aHigh = a >>> 32;
+        long bLow = b & 0xFFFFFFFFL;
+        long bHigh = b >>> 32;
+
+        long lowLow = aLow * bLow;
+        long lowHigh = aLow * bHigh;
+        long highLow = aHigh * bLow;
+        long middle = (lowLow >>> 32) + (lowHigh & 0xFFFFFFFFL) + (highLow & 0xFFFFFFFFL);
+
+        return aHigh * bHigh + (lowHigh >>> 32) + (highLow >>> 32) + (middle >>> 32);
+    }
+
+    private static boolean unsignedLessThan(long a, long b) {
+        return (a ^ Long.MIN_VALUE) < (b ^ Long.MIN_VALUE);
+    }
+
+    private static double slowParseDouble(CharSequence chars, int start, int end) {
+        return Double.parseDouble(chars.subSequence(start, end).toString());
+    }
+
+    private static boolean slowIsInt(CharSequence chars, int start, int end) {
+        try {
+            Integer.parseInt(chars.subSequence(start, end).toString());
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
+
+
@@ -0,0 +1,378 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Stores a 2D array of discrete (category index) data column by column, each
+ * column packed into longs with as few bits per value as its largest value
+ * needs (1, 2, 4, 8, 16 or 32, so that no value straddles two longs). A binary
+ * column with missing values takes 2 bits per row rather than the 32 of an
+ * int box. Values must be -99 (missing) or nonnegative; a column is widened
+ * when a value too big for it is set.
+ * <p>
+ * Besides the usual DataBox methods, whole columns can be read out in bulk
+ * (getColumn) or folded into cell indices for counting (updateCellIndices),
+ * which is how the discrete scores and tests tabulate their counts.
+ */
+public class PackedIntDataBox implements DataBox {
+    static final long serialVersionUID = 23L;
+
+    /**
+     * The number of rows from which columns are folded into cell indices in
+     * parallel.
+     */
+    public static final int PARALLEL_ROWS = 1 << 15;
+
+    /**
+     * The packed columns. Value v is stored as the code v + 1, so that a code
+     * of 0 marks a missing value.
+     */
+    private final long[][] columns;
+
+    /**
+     * The number of bits used for each value of each column.
+     */
+    private final int[] bits;
+
+    /**
+     * The number of rows.
+     */
+    private final int numRows;
+
+    /**
+     * Constructs a packed box of the given dimensions consisting entirely of
+     * missing values.
+     */
+    public PackedIntDataBox(int rows, int cols) {
+        this.numRows = rows;
+        this.columns = new long[cols][];
+        this.bits = new int[cols];
+
+        for (int j = 0; j < cols; j++) {
+            bits[j] = 1;
+            columns[j] = new long[numWords(rows, 1)];
+        }
+    }
+
+    /**
+     * Constructs a packed box holding the given column-major data, which is
+     * not retained.
+     */
+    public PackedIntDataBox(int[][] data) {
+        int length = data.length == 0 ? 0 : data[0].length;
+
+        for (int[] datum : data) {
+            if (datum.length != length) {
+                throw new IllegalArgumentException("All columns must have same length.");
+            }
+        }
+
+        this.numRows = length;
+        this.columns = new long[data.length][];
+        this.bits = new int[data.length];
+
+        for (int j = 0; j < data.length; j++) {
+            pack(j, data[j]);
+        }
+    }
+
+    /**
+     * Constructs a packed copy of the given box.
+     */
+    public PackedIntDataBox(DataBox dataBox) {
+        this.numRows = dataBox.numRows();
+        this.columns = new long[dataBox.numCols()][];
+        this.bits = new int[dataBox.numCols()];
+
+        int[] column = new int[numRows];
+
+        for (int j = 0; j < dataBox.numCols(); j++) {
+            for (int i = 0; i < numRows; i++) {
+                Number value = dataBox.get(i, j);
+                column[i] = value == null ? -99 : value.intValue();
+            }
+
+            pack(j, column);
+        }
+    }
+
+    /**
+     * Generates a simple exemplar of this class to test serialization.
+     */
+    public static BoxDataSet serializableInstance() {
+        return new BoxDataSet(new ShortDataBox(4, 4), null);
+    }
+
+    /**
+     * @return the number of rows in this data box.
+     */
+    public int numRows() {
+        return numRows;
+    }
+
+    /**
+     * @return the number of columns in this data box.
+     */
+    public int numCols() {
+        return columns.length;
+    }
+
+    /**
+     * Sets the value at the given row/column to the given Number value.
+     * The value used is number.intValue(); null is stored as missing.
+     */
+    public synchronized void set(int row, int col, Number value) {
+        int code = toCode(value == null ? -99 : value.intValue());
+
+        if (bits[col] < 32 && (code >>> bits[col]) != 0) {
+            int[] column = new int[numRows];
+            getColumn(col, column);
+            column[row] = value == null ? -99 : value.intValue();
+            pack(col, column);
+            return;
+        }
+
+        int b = bits[col];
+        int shift = (row & (64 / b - 1)) * b;
+        long mask = ((1L << b) - 1) << shift;
+        long[] words = columns[col];
+        int w = row / (64 / b);
+        words[w] = (words[w] & ~mask) | (((long) code << shift) & mask);
+    }
+
+    /**
+     * @return the Number value at the given row and column. If the value
+     * is missing (-99), null, is returned.
+     */
+    public Number get(int row, int col) {
+        int b = bits[col];
+        int perWord = 64 / b;
+        long code = (columns[col][row / perWord] >>> ((row & (perWord - 1)) * b)) & ((1L << b) - 1);
+        return code == 0 ? null : (int) (code - 1);
+    }
+
+    /**
+     * Copies the values of the given column into the given array, which must
+     * have at least numRows() entries. Missing values are copied as -99.
+     */
+    public void getColumn(int col, int[] values) {
+        long[] words = columns[col];
+        int b = bits[col];
+        int perWord = 64 / b;
+        long mask = (1L << b) - 1;
+        int row = 0;
+
+        for (int w = 0; row < numRows; w++) {
+            long word = words[w];
+            int end = Math.min(numRows, row + perWord);
+
+            for (; row < end; row++) {
+                int code = (int) (word & mask);
+                word >>>= b;
+                values[row] = code == 0 ? -99 : code - 1;
+            }
+        }
+    }
+
+    /**
+     * Folds the given column into an array of cell indices, one per row: each
+     * indices[i] becomes indices[i] * dim + value(i, col). Starting from zeros
+     * and folding in columns x1,...,xk with dimensions d1,...,dk gives the
+     * row-major index of each row's cell in a d1 x ... x dk table. Rows whose
+     * value is missing (or already were) get an index of -1.
+     *
+     * @param col     The column to fold in.
+     * @param dim     The number of categories of that column.
+     * @param indices The cell indices, at least numRows() long.
+     */
+    public void updateCellIndices(int col, int dim, int[] indices) {
+        updateCellIndices(col, dim, indices, 0, numRows);
+    }
+
+    /**
+     * As updateCellIndices(col, dim, indices), for rows from (inclusive) to
+     * to (exclusive) only, so that ranges of rows can be folded in parallel.
+     */
+    public void updateCellIndices(int col, int dim, int[] indices, int from, int to) {
+        long[] words = columns[col];
+        int b = bits[col];
+        int perWord = 64 / b;
+        long mask = (1L << b) - 1;
+        int row = from;
+
+        for (int w = from / perWord; row < to; w++) {
+            long word = words[w];
+            int end = Math.min(to, (w + 1) * perWord);
+
+            if (row > w * perWord) {
+                word >>>= (row - w * perWord) * b;
+            }
+
+            for (; row < end; row++) {
+                int code = (int) (word & mask);
+                word >>>= b;
+                int index = indices[row];
+                indices[row] = (code == 0 || index < 0) ? -1 : index * dim + code - 1;
+            }
+        }
+    }
+
+    /**
+     * Folds the given columns, in order, into the cell indices. For at least
+     * PARALLEL_ROWS rows, ranges of rows are folded in parallel, if there is
+     * more than one processor.
+     */
+    public void updateCellIndices(final int[] cols, final int[] dims, final int[] indices) {
+        ForkJoinPool pool = ForkJoinPoolInstance.getInstance().getPool();
+
+        if (numRows < PARALLEL_ROWS || pool.getParallelism() == 1) {
+            for (int j = 0; j < cols.length; j++) {
+                updateCellIndices(cols[j], dims[j], indices, 0, numRows);
+            }
+
+            return;
+        }
+
+        class FoldTask extends RecursiveAction {
+            private final int from;
+            private final int to;
+
+            FoldTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from <= PARALLEL_ROWS / 2) {
+                    for (int j = 0; j < cols.length; j++) {
+                        updateCellIndices(cols[j], dims[j], indices, from, to);
+                    }
+                } else {
+                    int mid = (from + to) / 2;
+                    invokeAll(new FoldTask(from, mid), new FoldTask(mid, to));
+                }
+            }
+        }
+
+        pool.invoke(new FoldTask(0, numRows));
+    }
+
+    /**
+     * @return the number of bits used to store each value of the given column.
+     */
+    public int getBitsPerValue(int col) {
+        return bits[col];
+    }
+
+    /**
+     * @return a copy of this data box.
+     */
+    public DataBox copy() {
+        int[][] data = new int[numCols()][numRows];
+
+        for (int j = 0; j < numCols(); j++) {
+            getColumn(j, data[j]);
+        }
+
+        return new PackedIntDataBox(data);
+    }
+
+    /**
+     * @return a DataBox of type PackedIntDataBox, but with the given dimensions.
+     */
+    public DataBox like() {
+        int[] rows = new int[numRows()];
+        int[] cols = new int[numCols()];
+
+        for (int i = 0; i < numRows(); i++) rows[i] = i;
+        for (int j = 0; j < numCols(); j++) cols[j] = j;
+
+        return viewSelection(rows, cols);
+    }
+
+    @Override
+    public DataBox viewSelection(int[] rows, int[] cols) {
+        int[][] data = new int[cols.length][rows.length];
+        int[] column = new int[numRows];
+
+        for (int j = 0; j < cols.length; j++) {
+            getColumn(cols[j], column);
+
+            for (int i = 0; i < rows.length; i++) {
+                data[j][i] = column[rows[i]];
+            }
+        }
+
+        return new PackedIntDataBox(data);
+    }
+
+    /**
+     * Packs the given values into column col at the smallest width that
+     * holds them.
+     */
+    private void pack(int col, int[] values) {
+        int maxCode = 0;
+
+        for (int i = 0; i < numRows; i++) {
+            maxCode = Math.max(maxCode, toCode(values[i]));
+        }
+
+        int b = 1;
+
+        while (b < 32 && (maxCode >>> b) != 0) {
+            b <<= 1;
+        }
+
+        long[] words = new long[numWords(numRows, b)];
+        int perWord = 64 / b;
+
+        for (int i = 0; i < numRows; i++) {
+            words[i / perWord] |= (long) toCode(values[i]) << ((i & (perWord - 1)) * b);
+        }
+
+        columns[col] = words;
+        bits[col] = b;
+    }
+
+    private static int toCode(int value) {
+        if (value == -99) {
+            return 0;
+        }
+
+        if (value < 0 || value == Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Discrete values must be nonnegative or -99 (missing): " + value);
+        }
+
+        return value + 1;
+    }
+
+    private static int numWords(int rows, int bits) {
+        int perWord = 64 / bits;
+        return (rows + perWord - 1) / perWord;
+    }
+}
@@ -42,6 +42,7 @@ import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -49,6 +50,7 @@ import java.util.Formatter;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -4553,148 +4555,139 @@ public final class GraphUtils {
         return null;
     }
 
+    /**
+     * A node v is in Possible-D-Sep(x, y) iff v != x, v != y, and there is a path U from x to v, not through y, such
+     * that for every subpath &lt;a, b, c&gt; of U either b is a collider on the subpath or a is adjacent to c. The
+     * adjacents of x other than y are always in the set.
+     * <p>
+     * The search is breadth first over the edges a *-* b that can end such a path, so each edge is passed along at
+     * most once in each direction. Nodes are numbered in the order of graph.getNodes(), and the adjacencies and
+     * arrowheads of a node are read from the graph only once it is reached, so the cost is in the part of the graph
+     * that is reachable, whatever the size of the graph.
+     *
+     * @param maxPathLength The maximum number of edges on U, or -1 if unlimited.
+     * @return Possible-D-Sep(x, y), in the order of graph.getNodes().
+     */
     public static Set<Node> possibleDsep(Node x, Node y, Graph graph, int maxPathLength) {
-        Set<Node> dsep = new HashSet<>();
+        List<Node> nodes = graph.getNodes();
+        Map<Node, Integer> indices = new HashMap<>();
 
-        Queue<OrderedPair<Node>> Q = new ArrayDeque<>();
-        Set<OrderedPair<Node>> V = new HashSet<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            indices.put(nodes.get(i), i);
+        }
 
-        Map<Node, List<Node>> previous = new HashMap<>();
-        previous.put(x, null);
+        int _x = indices.get(x);
+        Integer _y = indices.get(y);
+        int yIndex = _y == null ? -1 : _y;
 
-        OrderedPair e = null;
-        int distance = 0;
+        // For each node reached, its adjacents in index order, whether each edge has an arrowhead at the node, and
+        // whether the edge has been passed along into the node.
+        int[][] adjacents = new int[nodes.size()][];
+        boolean[][] into = new boolean[nodes.size()][];
+        boolean[][] seen = new boolean[nodes.size()][];
+        boolean[] dsep = new boolean[nodes.size()];
 
-        for (Node b : graph.getAdjacentNodes(x)) {
-            if (b == y) {
+        // The queue holds the edges a *-> b passed along, as b and the position of a among the adjacents of b.
+        int[] queue = new int[16];
+        int head = 0;
+        int tail = 0;
+
+        reach(_x, graph, nodes, indices, adjacents, into, seen);
+
+        for (int b : adjacents[_x]) {
+            if (b == yIndex) {
                 continue;
             }
-            OrderedPair<Node> edge = new OrderedPair<>(x, b);
-            if (e == null) {
-                e = edge;
-            }
-            Q.offer(edge);
-            V.add(edge);
-            addToList(previous, b, x);
-            dsep.add(b);
+
+            reach(b, graph, nodes, indices, adjacents, into, seen);
+            int a = Arrays.binarySearch(adjacents[b], _x);
+            seen[b][a] = true;
+            dsep[b] = true;
+
+            if (tail + 3 > queue.length) queue = Arrays.copyOf(queue, 2 * queue.length);
+            queue[tail++] = b;
+            queue[tail++] = a;
+            queue[tail++] = 1;
         }
 
-        while (!Q.isEmpty()) {
-            OrderedPair<Node> t = Q.poll();
+        while (head < tail) {
+            int b = queue[head++];
+            int k = queue[head++];
+            int length = queue[head++];
 
-            if (e == t) {
-                e = null;
-                distance++;
-                if (distance > 0 && distance > (maxPathLength == -1 ? 1000 : maxPathLength)) {
-                    break;
-                }
+            if (maxPathLength != -1 && length >= maxPathLength) {
+                continue;
             }
 
-            Node a = t.getFirst();
-            Node b = t.getSecond();
+            int a = adjacents[b][k];
 
-            if (existOnePathWithPossibleParents(previous, b, x, b, graph)) {
-                dsep.add(b);
-            }
+            for (int j = 0; j < adjacents[b].length; j++) {
+                int c = adjacents[b][j];
 
-            for (Node c : graph.getAdjacentNodes(b)) {
-                if (c == a) {
-                    continue;
-                }
-                if (c == x) {
-                    continue;
-                }
-                if (c == y) {
+                if (c == a || c == _x || c == yIndex) {
                     continue;
                 }
 
-                addToList(previous, b, c);
+                boolean collider = into[b][k] && into[b][j];
 
-                if (graph.isDefCollider(a, b, c) || graph.isAdjacentTo(a, c)) {
-                    OrderedPair<Node> u = new OrderedPair<>(a, c);
-                    if (V.contains(u)) {
-                        continue;
-                    }
+                if (!collider && Arrays.binarySearch(adjacents[a], c) < 0) {
+                    continue;
+                }
 
-                    V.add(u);
-                    Q.offer(u);
+                reach(c, graph, nodes, indices, adjacents, into, seen);
+                int i = Arrays.binarySearch(adjacents[c], b);
 
-                    if (e == null) {
-                        e = u;
-                    }
+                if (seen[c][i]) {
+                    continue;
                 }
-            }
-        }
 
-        dsep.remove(x);
-        dsep.remove(y);
-        return dsep;
-    }
+                seen[c][i] = true;
+                dsep[c] = true;
 
-    private static boolean existOnePathWithPossibleParents(Map<Node, List<Node>> previous, Node w, Node x, Node b, Graph graph) {
-        if (w == x) {
-            return true;
-        }
-        final List<Node> p = previous.get(w);
-        if (p == null) {
-            return false;
+                if (tail + 3 > queue.length) queue = Arrays.copyOf(queue, 2 * queue.length);
+                queue[tail++] = c;
+                queue[tail++] = i;
+                queue[tail++] = length + 1;
+            }
         }
 
-        for (Node r : p) {
-            if (r == b || r == x) {
-                continue;
-            }
+        Set<Node> possibleDsep = new LinkedHashSet<>();
 
-            if ((existsSemidirectedPath(r, x, graph))
-                    || existsSemidirectedPath(r, b, graph)) {
-                if (existOnePathWithPossibleParents(previous, r, x, b, graph)) {
-                    return true;
-                }
+        for (int v = 0; v < nodes.size(); v++) {
+            if (dsep[v]) {
+                possibleDsep.add(nodes.get(v));
             }
         }
 
-        return false;
+        return possibleDsep;
     }
 
-    private static void addToList(Map<Node, List<Node>> previous, Node b, Node c) {
-        List<Node> list = previous.get(c);
-
-        if (list == null) {
-            list = new ArrayList<>();
+    // Reads the adjacents of node v from the graph, in index order, if they have not been read already, with whether
+    // each edge has an arrowhead at v.
+    private static void reach(int v, Graph graph, List<Node> nodes, Map<Node, Integer> indices,
+                              int[][] adjacents, boolean[][] into, boolean[][] seen) {
+        if (adjacents[v] != null) {
+            return;
         }
 
-        list.add(b);
-    }
-
-    private static boolean existsSemidirectedPath(Node from, Node to, Graph G) {
-        Queue<Node> Q = new LinkedList<>();
-        Set<Node> V = new HashSet<>();
-        Q.offer(from);
-        V.add(from);
-
-        while (!Q.isEmpty()) {
-            Node t = Q.remove();
-            if (t == to) {
-                return true;
-            }
+        Node node = nodes.get(v);
+        List<Node> adj = graph.getAdjacentNodes(node);
+        int[] _adj = new int[adj.size()];
 
-            for (Node u : G.getAdjacentNodes(t)) {
-                Edge edge = G.getEdge(t, u);
-                Node c = Edges.traverseSemiDirected(t, edge);
+        for (int i = 0; i < adj.size(); i++) {
+            _adj[i] = indices.get(adj.get(i));
+        }
 
-                if (c == null) {
-                    continue;
-                }
-                if (V.contains(c)) {
-                    continue;
-                }
+        Arrays.sort(_adj);
+        boolean[] _into = new boolean[_adj.length];
 
-                V.add(c);
-                Q.offer(c);
-            }
+        for (int i = 0; i < _adj.length; i++) {
+            _into[i] = graph.getEndpoint(nodes.get(_adj[i]), node) == Endpoint.ARROW;
         }
 
-        return false;
+        adjacents[v] = _adj;
+        into[v] = _into;
+        seen[v] = new boolean[_adj.length];
     }
 
     public static int getDegree(Graph graph) {
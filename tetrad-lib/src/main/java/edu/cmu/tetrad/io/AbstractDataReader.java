@@ -20,9 +20,17 @@ package edu.cmu.tetrad.io;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * This class contains all the basic functions that the data readers should
@@ -44,6 +52,11 @@ public abstract class AbstractDataReader {
 
     protected static final byte SPACE = ' ';
 
+    /**
+     * Largest number of bytes mapped at once for a chunk of lines.
+     */
+    protected static final long MAX_CHUNK_SIZE = 1 << 30;
+
     protected int lineCount;
     protected int columnCount;
 
@@ -67,7 +80,7 @@ public abstract class AbstractDataReader {
         if (columnCount == -1) {
             int count = 0;
             try (FileChannel fc = new RandomAccessFile(dataFile.toFile(), "r").getChannel()) {
-                MappedByteBuffer buffer = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+                MappedByteBuffer buffer = fc.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(fc.size(), Integer.MAX_VALUE));
                 byte currentChar = -1;
                 byte prevChar = NEW_LINE;
                 while (buffer.hasRemaining()) {
@@ -156,4 +169,209 @@ public abstract class AbstractDataReader {
         }
     }
 
+
+    /**
+     * Get the position of the first byte after the header line.
+     *
+     * @param fc
+     * @return
+     * @throws IOException
+     */
+    protected long findEndOfHeader(FileChannel fc) throws IOException {
+        MappedByteBuffer buffer = fc.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(fc.size(), Integer.MAX_VALUE));
+        skipToNextLine(buffer);
+
+        return buffer.position();
+    }
+
+    /**
+     * Split the file, from the given position to the end, into chunks that
+     * begin right after a line break. The number of data lines in each
+     * chunk is counted in parallel so that every chunk knows the row its
+     * first line belongs to.
+     *
+     * @param fc
+     * @param start position of the first data line
+     * @param numOfChunks number of chunks wanted
+     * @param pool executor used to count the lines
+     * @return the chunks, in file order
+     * @throws IOException
+     */
+    protected List<LineChunk> splitIntoLineChunks(final FileChannel fc, long start, int numOfChunks, ExecutorService pool) throws IOException {
+        long size = fc.size();
+        long length = size - start;
+        numOfChunks = (int) Math.max(numOfChunks, (length + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+        numOfChunks = (int) Math.max(1, Math.min(numOfChunks, length));
+
+        List<Long> boundaries = new ArrayList<>(numOfChunks + 1);
+        boundaries.add(start);
+        long step = length / numOfChunks;
+        for (int i = 1; i < numOfChunks; i++) {
+            long boundary = findLineStart(fc, Math.max(start + i * step, boundaries.get(boundaries.size() - 1)));
+            if (boundary > boundaries.get(boundaries.size() - 1) && boundary < size) {
+                boundaries.add(boundary);
+            }
+        }
+        boundaries.add(size);
+
+        final List<LineChunk> chunks = new ArrayList<>(boundaries.size() - 1);
+        for (int i = 0; i < boundaries.size() - 1; i++) {
+            chunks.add(new LineChunk(boundaries.get(i), boundaries.get(i + 1)));
+        }
+
+        List<Callable<Void>> tasks = new LinkedList<>();
+        for (final LineChunk chunk : chunks) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    chunk.numOfRows = countNumberOfLines(map(fc, chunk));
+                    return null;
+                }
+            });
+        }
+        invokeAll(pool, tasks);
+
+        int row = 0;
+        for (LineChunk chunk : chunks) {
+            chunk.firstRow = row;
+            row += chunk.numOfRows;
+        }
+
+        return chunks;
+    }
+
+    /**
+     * Memory-map the given chunk.
+     *
+     * @param fc
+     * @param chunk
+     * @return
+     * @throws IOException
+     */
+    protected MappedByteBuffer map(FileChannel fc, LineChunk chunk) throws IOException {
+        return fc.map(FileChannel.MapMode.READ_ONLY, chunk.start, chunk.end - chunk.start);
+    }
+
+    /**
+     * Run all the tasks and wait for them to finish. The first failure is
+     * rethrown as an IOException.
+     *
+     * @param pool
+     * @param tasks
+     * @throws IOException
+     */
+    protected void invokeAll(ExecutorService pool, List<Callable<Void>> tasks) throws IOException {
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading data.", exception);
+        } catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+            // ForkJoinPool wraps checked exceptions thrown by a Callable
+            while (cause.getClass() == RuntimeException.class && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    /**
+     * Count the data lines in the buffer, using the same rules as
+     * {@link #countNumberOfLines()}.
+     */
+    private int countNumberOfLines(ByteBuffer buffer) {
+        int count = 0;
+        byte prevChar = NEW_LINE;
+        while (buffer.hasRemaining()) {
+            byte currentChar = buffer.get();
+            if (currentChar == CARRIAGE_RETURN) {
+                currentChar = NEW_LINE;
+            }
+
+            if (currentChar == NEW_LINE && prevChar != NEW_LINE) {
+                count++;
+            }
+
+            prevChar = currentChar;
+        }
+
+        // cases where file has no newline at the end of the file
+        if (prevChar != NEW_LINE) {
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Get the position right after the first line break at or after the given
+     * position, or the end of the file if there is none.
+     */
+    private long findLineStart(FileChannel fc, long position) throws IOException {
+        long size = fc.size();
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long pos = position - 1;  // the line may start right at the position
+        while (pos < size) {
+            buffer.clear();
+            int numOfBytes = fc.read(buffer, pos);
+            if (numOfBytes <= 0) {
+                break;
+            }
+            for (int i = 0; i < numOfBytes; i++) {
+                byte b = buffer.get(i);
+                if (b == NEW_LINE || b == CARRIAGE_RETURN) {
+                    return pos + i + 1;
+                }
+            }
+            pos += numOfBytes;
+        }
+
+        return size;
+    }
+
+    /**
+     * A range of whole lines in the data file.
+     */
+    protected static final class LineChunk {
+
+        private final long start;
+        private final long end;
+        private int firstRow;
+        private int numOfRows;
+
+        public LineChunk(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+
+        /**
+         * @return the row index of the first data line in this chunk
+         */
+        public int getFirstRow() {
+            return firstRow;
+        }
+
+        public int getNumOfRows() {
+            return numOfRows;
+        }
+
+    }
+
 }
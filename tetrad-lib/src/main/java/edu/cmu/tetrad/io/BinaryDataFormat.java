@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2016 University of Pittsburgh.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package edu.cmu.tetrad.io;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Layout constants shared by {@link BinaryDataWriter} and
+ * {@link BinaryDataReader}.
+ *
+ * A file starts with a fixed-size preamble, all values little-endian:
+ * <pre>
+ * magic       4 bytes  "TDBF"
+ * version     int
+ * kind        int      KIND_TABULAR or KIND_COVARIANCE
+ * numRows     int      rows of data, or the dimension of a covariance matrix
+ * numCols     int
+ * sampleSize  int      covariance sample size, 0 for tabular data
+ * dataOffset  long     position of the first column block
+ * </pre>
+ * followed by one variable descriptor per column (type byte, name, and for
+ * discrete variables the category names), then zero padding up to
+ * dataOffset. Tabular data is stored as one block per column: numRows
+ * doubles for a continuous column, numRows ints for a discrete one, each
+ * block padded to an 8-byte boundary. A covariance matrix is stored as
+ * numCols x numCols doubles in row-major order.
+ */
+final class BinaryDataFormat {
+
+    static final byte[] MAGIC = {'T', 'D', 'B', 'F'};
+
+    static final int VERSION = 1;
+
+    static final int KIND_TABULAR = 0;
+
+    static final int KIND_COVARIANCE = 1;
+
+    static final byte CONTINUOUS = 0;
+
+    static final byte DISCRETE = 1;
+
+    static final int PREAMBLE_SIZE = 32;
+
+    static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    static final Charset CHARSET = StandardCharsets.UTF_8;
+
+    private BinaryDataFormat() {
+    }
+
+    /**
+     * Size in bytes of a column block of the given type, including padding.
+     */
+    static long blockSize(byte type, int numRows) {
+        long size = (type == DISCRETE) ? 4L * numRows : 8L * numRows;
+
+        return align(size);
+    }
+
+    static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    /**
+     * Check whether the given file starts with the binary data magic number.
+     *
+     * @param file
+     * @return true if the file is in the binary data format
+     * @throws IOException whenever unable to read file
+     */
+    static boolean hasMagic(Path file) throws IOException {
+        if (!Files.isRegularFile(file) || Files.size(file) < PREAMBLE_SIZE) {
+            return false;
+        }
+
+        try (FileChannel fc = new RandomAccessFile(file.toFile(), "r").getChannel()) {
+            ByteBuffer buffer = ByteBuffer.allocate(MAGIC.length);
+            while (buffer.hasRemaining() && fc.read(buffer) >= 0) {
+            }
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (buffer.get(i) != MAGIC[i]) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+}
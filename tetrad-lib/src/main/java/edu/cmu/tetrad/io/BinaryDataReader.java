@@ -0,0 +1,361 @@
+/*
+ * Copyright (C) 2016 University of Pittsburgh.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package edu.cmu.tetrad.io;
+
+import edu.cmu.tetrad.data.BoxDataSet;
+import edu.cmu.tetrad.data.ContinuousVariable;
+import edu.cmu.tetrad.data.CovarianceMatrix;
+import edu.cmu.tetrad.data.DataBox;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.DiscreteVariable;
+import edu.cmu.tetrad.data.DoubleDataBox;
+import edu.cmu.tetrad.data.ICovarianceMatrix;
+import edu.cmu.tetrad.data.MixedDataBox;
+import edu.cmu.tetrad.data.VerticalDoubleDataBox;
+import edu.cmu.tetrad.data.VerticalIntDataBox;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.TetradMatrix;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This data reader reads in datasets and covariance matrices written out by
+ * {@link BinaryDataWriter}. Each column block is memory-mapped and copied in
+ * bulk into its column array; no text is tokenized or parsed. Excluded
+ * variables are skipped without being read. Blocks larger than the most that
+ * can be mapped at once, such as the covariance matrix of more than about 16k
+ * variables, are mapped a window at a time.
+ */
+public class BinaryDataReader implements DataReader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BinaryDataReader.class);
+
+    /**
+     * The most bytes FileChannel.map takes, rounded down to a whole number of
+     * doubles.
+     */
+    private static final long MAX_MAP_SIZE = Integer.MAX_VALUE & ~7L;
+
+    private final Path dataFile;
+
+    private long maxMapSize = MAX_MAP_SIZE;
+
+    public BinaryDataReader(Path dataFile) {
+        this.dataFile = dataFile;
+    }
+
+    /**
+     * Check whether the given file is in the binary data format.
+     *
+     * @param file
+     * @return true if the file starts with the binary data magic number
+     * @throws IOException whenever unable to read file
+     */
+    public static boolean isBinaryDataFile(Path file) throws IOException {
+        return BinaryDataFormat.hasMagic(file);
+    }
+
+    /**
+     * @return the most bytes memory-mapped at once.
+     */
+    public long getMaxMapSize() {
+        return maxMapSize;
+    }
+
+    /**
+     * Set the most bytes memory-mapped at once. It is rounded down to a whole
+     * number of doubles, and can be at most Integer.MAX_VALUE.
+     *
+     * @param maxMapSize
+     */
+    public void setMaxMapSize(long maxMapSize) {
+        if (maxMapSize < 8 || maxMapSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Map size must be between 8 and Integer.MAX_VALUE: " + maxMapSize);
+        }
+
+        this.maxMapSize = maxMapSize & ~7L;
+    }
+
+    @Override
+    public DataSet readInData() throws IOException {
+        return readInData(Collections.EMPTY_SET);
+    }
+
+    @Override
+    public DataSet readInData(Set<String> excludedVariables) throws IOException {
+        if (excludedVariables == null) {
+            excludedVariables = Collections.EMPTY_SET;
+        }
+
+        try (FileChannel fc = new RandomAccessFile(dataFile.toFile(), "r").getChannel()) {
+            Header header = readHeader(fc, BinaryDataFormat.KIND_TABULAR);
+            int numRows = header.numRows;
+
+            List<Node> nodes = new ArrayList<>(header.variables.size());
+            List<double[]> continuousColumns = new ArrayList<>();
+            List<int[]> discreteColumns = new ArrayList<>();
+            boolean hasContinuous = false;
+            boolean hasDiscrete = false;
+
+            long position = header.dataOffset;
+            for (int col = 0; col < header.types.length; col++) {
+                byte type = header.types[col];
+                long blockSize = BinaryDataFormat.blockSize(type, numRows);
+                Node node = header.variables.get(col);
+                if (!excludedVariables.contains(node.getName())) {
+                    nodes.add(node);
+                    if (type == BinaryDataFormat.DISCRETE) {
+                        int[] column = new int[numRows];
+                        readInts(fc, position, column);
+                        discreteColumns.add(column);
+                        continuousColumns.add(null);
+                        hasDiscrete = true;
+                    } else {
+                        double[] column = new double[numRows];
+                        readDoubles(fc, position, column);
+                        continuousColumns.add(column);
+                        discreteColumns.add(null);
+                        hasContinuous = true;
+                    }
+                }
+                position += blockSize;
+            }
+
+            DataBox dataBox;
+            if (nodes.isEmpty()) {
+                dataBox = new DoubleDataBox(numRows, 0);
+            } else if (!hasDiscrete) {
+                dataBox = new VerticalDoubleDataBox(continuousColumns.toArray(new double[nodes.size()][]));
+            } else if (!hasContinuous) {
+                dataBox = new VerticalIntDataBox(discreteColumns.toArray(new int[nodes.size()][]));
+            } else {
+                dataBox = new MixedDataBox(nodes, numRows,
+                        continuousColumns.toArray(new double[nodes.size()][]),
+                        discreteColumns.toArray(new int[nodes.size()][]));
+            }
+
+            return new BoxDataSet(dataBox, nodes);
+        }
+    }
+
+    /**
+     * Read in a covariance matrix.
+     *
+     * @return
+     * @throws IOException whenever unable to read file
+     */
+    public ICovarianceMatrix readInCovarianceMatrix() throws IOException {
+        try (FileChannel fc = new RandomAccessFile(dataFile.toFile(), "r").getChannel()) {
+            Header header = readHeader(fc, BinaryDataFormat.KIND_COVARIANCE);
+            int dimension = header.types.length;
+
+            double[][] matrix = new double[dimension][dimension];
+            readDoubles(fc, header.dataOffset, matrix);
+
+            return new CovarianceMatrix(header.variables, new TetradMatrix(matrix), header.sampleSize);
+        }
+    }
+
+    /**
+     * Fill the given arrays one after another with the doubles starting at
+     * the given position, mapping at most maxMapSize bytes at a time.
+     */
+    private void readDoubles(FileChannel fc, long position, double[]... arrays) throws IOException {
+        long end = position;
+        for (double[] array : arrays) {
+            end += 8L * array.length;
+        }
+        checkSize(fc, end);
+
+        DoubleBuffer buffer = null;
+        for (double[] array : arrays) {
+            int offset = 0;
+            while (offset < array.length) {
+                if (buffer == null || !buffer.hasRemaining()) {
+                    long size = Math.min(maxMapSize, end - position);
+                    buffer = map(fc, position, size).asDoubleBuffer();
+                    position += size;
+                }
+                int length = Math.min(array.length - offset, buffer.remaining());
+                buffer.get(array, offset, length);
+                offset += length;
+            }
+        }
+    }
+
+    /**
+     * Fill the given array with the ints starting at the given position,
+     * mapping at most maxMapSize bytes at a time.
+     */
+    private void readInts(FileChannel fc, long position, int[] array) throws IOException {
+        long end = position + 4L * array.length;
+        checkSize(fc, end);
+
+        int offset = 0;
+        while (offset < array.length) {
+            long size = Math.min(maxMapSize, end - position);
+            IntBuffer buffer = map(fc, position, size).asIntBuffer();
+            position += size;
+            int length = buffer.remaining();
+            buffer.get(array, offset, length);
+            offset += length;
+        }
+    }
+
+    private void checkSize(FileChannel fc, long end) throws IOException {
+        if (end > fc.size()) {
+            String errMsg = String.format("Binary data file '%s' is truncated.", dataFile.getFileName());
+            LOGGER.error(errMsg);
+            throw new IOException(errMsg);
+        }
+    }
+
+    private MappedByteBuffer map(FileChannel fc, long position, long size) throws IOException {
+        checkSize(fc, position + size);
+
+        MappedByteBuffer buffer = fc.map(FileChannel.MapMode.READ_ONLY, position, size);
+        buffer.order(BinaryDataFormat.BYTE_ORDER);
+
+        return buffer;
+    }
+
+    private Header readHeader(FileChannel fc, int expectedKind) throws IOException {
+        if (fc.size() < BinaryDataFormat.PREAMBLE_SIZE) {
+            String errMsg = String.format("File '%s' is not a binary data file.", dataFile.getFileName());
+            LOGGER.error(errMsg);
+            throw new IOException(errMsg);
+        }
+
+        MappedByteBuffer preamble = map(fc, 0, BinaryDataFormat.PREAMBLE_SIZE);
+        for (byte b : BinaryDataFormat.MAGIC) {
+            if (preamble.get() != b) {
+                String errMsg = String.format("File '%s' is not a binary data file.", dataFile.getFileName());
+                LOGGER.error(errMsg);
+                throw new IOException(errMsg);
+            }
+        }
+
+        int version = preamble.getInt();
+        if (version != BinaryDataFormat.VERSION) {
+            String errMsg = String.format("Unsupported binary data format version %d.", version);
+            LOGGER.error(errMsg);
+            throw new IOException(errMsg);
+        }
+
+        int kind = preamble.getInt();
+        if (kind != expectedKind) {
+            String errMsg = (expectedKind == BinaryDataFormat.KIND_COVARIANCE)
+                    ? String.format("File '%s' does not contain a covariance matrix.", dataFile.getFileName())
+                    : String.format("File '%s' does not contain tabular data.", dataFile.getFileName());
+            LOGGER.error(errMsg);
+            throw new IOException(errMsg);
+        }
+
+        Header header = new Header();
+        header.numRows = preamble.getInt();
+        int numCols = preamble.getInt();
+        header.sampleSize = preamble.getInt();
+        header.dataOffset = preamble.getLong();
+
+        // Each descriptor takes at least a type byte and a name length.
+        if (header.numRows < 0 || numCols < 0 || header.dataOffset < BinaryDataFormat.PREAMBLE_SIZE
+                || header.dataOffset > fc.size() || header.dataOffset > Integer.MAX_VALUE
+                || numCols > (header.dataOffset - BinaryDataFormat.PREAMBLE_SIZE) / 5) {
+            throw corruptedHeader(null);
+        }
+
+        header.types = new byte[numCols];
+        header.variables = new ArrayList<>(numCols);
+
+        MappedByteBuffer descriptors = map(fc, BinaryDataFormat.PREAMBLE_SIZE, header.dataOffset - BinaryDataFormat.PREAMBLE_SIZE);
+        try {
+            for (int col = 0; col < numCols; col++) {
+                byte type = descriptors.get();
+                String name = readString(descriptors);
+                header.types[col] = type;
+                if (type == BinaryDataFormat.DISCRETE) {
+                    int numCategories = descriptors.getInt();
+                    if (numCategories < 0 || numCategories > descriptors.remaining() / 4) {
+                        throw corruptedHeader(null);
+                    }
+                    List<String> categories = new ArrayList<>(numCategories);
+                    for (int i = 0; i < numCategories; i++) {
+                        categories.add(readString(descriptors));
+                    }
+                    header.variables.add(new DiscreteVariable(name, categories));
+                } else if (type == BinaryDataFormat.CONTINUOUS) {
+                    header.variables.add(new ContinuousVariable(name));
+                } else {
+                    String errMsg = String.format("Unknown variable type %d at column %d.", type, col + 1);
+                    LOGGER.error(errMsg);
+                    throw new IOException(errMsg);
+                }
+            }
+        } catch (BufferUnderflowException exception) {
+            throw corruptedHeader(exception);
+        }
+
+        return header;
+    }
+
+    private String readString(MappedByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw corruptedHeader(null);
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+
+        return new String(bytes, BinaryDataFormat.CHARSET);
+    }
+
+    private IOException corruptedHeader(Exception cause) {
+        String errMsg = String.format("Binary data file '%s' has a corrupted header.", dataFile.getFileName());
+        LOGGER.error(errMsg);
+
+        return new IOException(errMsg, cause);
+    }
+
+    /**
+     * Holds the information read in from the file header.
+     */
+    private static class Header {
+
+        private int numRows;
+        private int sampleSize;
+        private long dataOffset;
+        private byte[] types;
+        private List<Node> variables;
+
+    }
+
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2016 University of Pittsburgh.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package edu.cmu.tetrad.io;
+
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.DiscreteVariable;
+import edu.cmu.tetrad.data.ICovarianceMatrix;
+import edu.cmu.tetrad.graph.Node;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Writes datasets and covariance matrices out in the binary data format
+ * described in {@link BinaryDataFormat}. The files can be read back in with
+ * {@link BinaryDataReader} without any text parsing.
+ */
+public final class BinaryDataWriter {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private BinaryDataWriter() {
+    }
+
+    /**
+     * Write out a dataset. Continuous columns are written as doubles and
+     * discrete columns as category indices; missing values are kept as NaN
+     * and {@link DiscreteVariable#MISSING_VALUE} respectively.
+     *
+     * @param dataSet dataset to write out
+     * @param file file to write to
+     * @throws IOException whenever unable to write file
+     */
+    public static void write(DataSet dataSet, Path file) throws IOException {
+        List<Node> variables = dataSet.getVariables();
+        int numRows = dataSet.getNumRows();
+        int numCols = dataSet.getNumColumns();
+
+        byte[] types = new byte[numCols];
+        for (int col = 0; col < numCols; col++) {
+            types[col] = (variables.get(col) instanceof DiscreteVariable)
+                    ? BinaryDataFormat.DISCRETE
+                    : BinaryDataFormat.CONTINUOUS;
+        }
+
+        try (FileChannel fc = openForWrite(file)) {
+            writeHeader(fc, BinaryDataFormat.KIND_TABULAR, numRows, 0, variables, types);
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(BinaryDataFormat.BYTE_ORDER);
+            for (int col = 0; col < numCols; col++) {
+                long written = 0;
+                if (types[col] == BinaryDataFormat.DISCRETE) {
+                    for (int row = 0; row < numRows; row++) {
+                        if (buffer.remaining() < 4) {
+                            drain(fc, buffer);
+                        }
+                        buffer.putInt(dataSet.getInt(row, col));
+                    }
+                    written = 4L * numRows;
+                } else {
+                    for (int row = 0; row < numRows; row++) {
+                        if (buffer.remaining() < 8) {
+                            drain(fc, buffer);
+                        }
+                        buffer.putDouble(dataSet.getDouble(row, col));
+                    }
+                    written = 8L * numRows;
+                }
+
+                // pad the column block to an 8-byte boundary
+                for (long i = written; i < BinaryDataFormat.align(written); i++) {
+                    if (!buffer.hasRemaining()) {
+                        drain(fc, buffer);
+                    }
+                    buffer.put((byte) 0);
+                }
+            }
+            drain(fc, buffer);
+        }
+    }
+
+    /**
+     * Write out a covariance matrix as a full (square) matrix of doubles.
+     *
+     * @param covMatrix covariance matrix to write out
+     * @param file file to write to
+     * @throws IOException whenever unable to write file
+     */
+    public static void write(ICovarianceMatrix covMatrix, Path file) throws IOException {
+        List<Node> variables = covMatrix.getVariables();
+        int dimension = covMatrix.getDimension();
+
+        byte[] types = new byte[dimension];  // all continuous
+
+        try (FileChannel fc = openForWrite(file)) {
+            writeHeader(fc, BinaryDataFormat.KIND_COVARIANCE, dimension, covMatrix.getSampleSize(), variables, types);
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(BinaryDataFormat.BYTE_ORDER);
+            for (int i = 0; i < dimension; i++) {
+                for (int j = 0; j < dimension; j++) {
+                    if (buffer.remaining() < 8) {
+                        drain(fc, buffer);
+                    }
+                    buffer.putDouble(covMatrix.getValue(i, j));
+                }
+            }
+            drain(fc, buffer);
+        }
+    }
+
+    private static FileChannel openForWrite(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    private static void writeHeader(FileChannel fc, int kind, int numRows, int sampleSize, List<Node> variables, byte[] types) throws IOException {
+        ByteArrayOutputStream descriptors = new ByteArrayOutputStream();
+        for (int col = 0; col < types.length; col++) {
+            Node variable = variables.get(col);
+            descriptors.write(types[col]);
+            writeString(descriptors, variable.getName());
+            if (types[col] == BinaryDataFormat.DISCRETE) {
+                List<String> categories = ((DiscreteVariable) variable).getCategories();
+                writeInt(descriptors, categories.size());
+                for (String category : categories) {
+                    writeString(descriptors, category);
+                }
+            }
+        }
+
+        long dataOffset = BinaryDataFormat.align(BinaryDataFormat.PREAMBLE_SIZE + descriptors.size());
+
+        ByteBuffer preamble = ByteBuffer.allocate(BinaryDataFormat.PREAMBLE_SIZE).order(BinaryDataFormat.BYTE_ORDER);
+        preamble.put(BinaryDataFormat.MAGIC);
+        preamble.putInt(BinaryDataFormat.VERSION);
+        preamble.putInt(kind);
+        preamble.putInt(numRows);
+        preamble.putInt(types.length);
+        preamble.putInt(sampleSize);
+        preamble.putLong(dataOffset);
+        preamble.flip();
+        writeFully(fc, preamble);
+
+        while (BinaryDataFormat.PREAMBLE_SIZE + descriptors.size() < dataOffset) {
+            descriptors.write(0);
+        }
+        writeFully(fc, ByteBuffer.wrap(descriptors.toByteArray()));
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(BinaryDataFormat.CHARSET);
+        writeInt(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        // little-endian
+        out.write(value);
+        out.write(value >>> 8);
+        out.write(value >>> 16);
+        out.write(value >>> 24);
+    }
+
+    private static void drain(FileChannel fc, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        writeFully(fc, buffer);
+        buffer.clear();
+    }
+
+    private static void writeFully(FileChannel fc, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            fc.write(buffer);
+        }
+    }
+
+}
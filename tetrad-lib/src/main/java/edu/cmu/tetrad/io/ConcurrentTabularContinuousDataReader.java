@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2016 University of Pittsburgh.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package edu.cmu.tetrad.io;
+
+import edu.cmu.tetrad.data.BoxDataSet;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.VerticalDoubleDataBox;
+import edu.cmu.tetrad.graph.Node;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This data reader reads in tabular data contains continuous variables. The
+ * file is split at line boundaries into chunks that are tokenized and parsed
+ * in parallel, each chunk writing straight into its rows of a column-major
+ * data box. Delimiter, quote and missing-value handling are the same as
+ * {@link TabularContinuousDataReader}. The variance of each variable is
+ * accumulated as its values are parsed, and is available afterward from
+ * {@link #getVariances()}.
+ */
+public class ConcurrentTabularContinuousDataReader extends AbstractContinuousDataReader implements DataReader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConcurrentTabularContinuousDataReader.class);
+
+    private final int numOfThreads;
+
+    private double[] variances;
+
+    public ConcurrentTabularContinuousDataReader(Path dataFile, char delimiter) {
+        this(dataFile, delimiter, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ConcurrentTabularContinuousDataReader(Path dataFile, char delimiter, int numOfThreads) {
+        super(dataFile, delimiter);
+        this.numOfThreads = Math.max(1, numOfThreads);
+    }
+
+    @Override
+    public DataSet readInData() throws IOException {
+        return readInData(Collections.EMPTY_SET);
+    }
+
+    @Override
+    public DataSet readInData(Set<String> excludedVariables) throws IOException {
+        if (excludedVariables == null) {
+            excludedVariables = Collections.EMPTY_SET;
+        }
+
+        ContinuousVariableAnalysis variableAnalysis = analyzeData(excludedVariables);
+        List<Node> nodes = variableAnalysis.getVariables();
+        double[][] data = extractContinuousData(variableAnalysis);
+
+        return new BoxDataSet(new VerticalDoubleDataBox(data), nodes);
+    }
+
+    /**
+     * Get the sample variances of the variables read in by the last call to
+     * readInData, in the order of the variables of the dataset.
+     *
+     * @return the variances, or null if no data has been read in
+     */
+    public double[] getVariances() {
+        return variances;
+    }
+
+    /**
+     * Read in data, column-major.
+     *
+     * @param variableAnalysis
+     * @return
+     * @throws IOException
+     */
+    protected double[][] extractContinuousData(ContinuousVariableAnalysis variableAnalysis) throws IOException {
+        int maxNumOfCols = countNumberOfColumns();
+        int numOfCols = variableAnalysis.getVariables().size();
+        int[] excludedIndices = variableAnalysis.getExcludedIndices();
+
+        ForkJoinPool pool = new ForkJoinPool(numOfThreads);
+        try (FileChannel fc = new RandomAccessFile(dataFile.toFile(), "r").getChannel()) {
+            List<LineChunk> chunks = splitIntoLineChunks(fc, findEndOfHeader(fc), numOfThreads * 4, pool);
+
+            int numOfRows = 0;
+            for (LineChunk chunk : chunks) {
+                numOfRows += chunk.getNumOfRows();
+            }
+
+            double[][] data = new double[numOfCols][numOfRows];
+
+            List<ChunkParser> parsers = new LinkedList<>();
+            for (LineChunk chunk : chunks) {
+                parsers.add(new ChunkParser(map(fc, chunk), chunk.getFirstRow(), data, maxNumOfCols, numOfCols, excludedIndices));
+            }
+            invokeAll(pool, new LinkedList<Callable<Void>>(parsers));
+
+            variances = mergeVariances(parsers, numOfCols);
+
+            return data;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Combine the per-chunk counts, means and sums of squared deviations into
+     * the sample variance of each column.
+     */
+    private static double[] mergeVariances(List<ChunkParser> parsers, int numOfCols) {
+        double[] variance = new double[numOfCols];
+        for (int col = 0; col < numOfCols; col++) {
+            long n = 0;
+            double mean = 0;
+            double m2 = 0;
+            for (ChunkParser parser : parsers) {
+                long nb = parser.counts[col];
+                if (nb > 0 && n == 0) {
+                    // Taken as is, so that a constant column keeps its mean
+                    // exactly and so a variance of exactly zero.
+                    mean = parser.means[col];
+                    m2 = parser.m2s[col];
+                    n = nb;
+                } else if (nb > 0) {
+                    double delta = parser.means[col] - mean;
+                    long total = n + nb;
+                    mean += delta * nb / total;
+                    m2 += parser.m2s[col] + delta * delta * n * nb / total;
+                    n = total;
+                }
+            }
+            variance[col] = (n > 1) ? m2 / (n - 1) : Double.NaN;
+        }
+
+        return variance;
+    }
+
+    /**
+     * Parses the lines of one chunk into the data, keeping a running mean and
+     * sum of squared deviations (Welford) for each column.
+     */
+    private class ChunkParser implements Callable<Void> {
+
+        private final MappedByteBuffer buffer;
+        private final int firstRow;
+        private final double[][] data;
+        private final int maxNumOfCols;
+        private final int numOfCols;
+        private final int[] excludedIndices;
+        private final long[] counts;
+        private final double[] means;
+        private final double[] m2s;
+
+        public ChunkParser(MappedByteBuffer buffer, int firstRow, double[][] data, int maxNumOfCols, int numOfCols, int[] excludedIndices) {
+            this.buffer = buffer;
+            this.firstRow = firstRow;
+            this.data = data;
+            this.maxNumOfCols = maxNumOfCols;
+            this.numOfCols = numOfCols;
+            this.excludedIndices = excludedIndices;
+            this.counts = new long[numOfCols];
+            this.means = new double[numOfCols];
+            this.m2s = new double[numOfCols];
+        }
+
+        @Override
+        public Void call() throws IOException {
+            int excludedIndex = 0;
+            int excludedColumn = excludedIndices[excludedIndex];
+
+            int row = firstRow;
+            int col = 0;
+            int colCount = 0;
+            byte currentChar = -1;
+            byte prevChar = NEW_LINE;
+            StringBuilder dataBuilder = new StringBuilder();
+            while (buffer.hasRemaining()) {
+                currentChar = buffer.get();
+                if (currentChar == CARRIAGE_RETURN) {
+                    currentChar = NEW_LINE;
+                }
+
+                if (currentChar == delimiter || (currentChar == NEW_LINE && prevChar != NEW_LINE)) {
+                    if (colCount == excludedColumn) {
+                        excludedIndex++;
+                        if (excludedIndex < excludedIndices.length) {
+                            excludedColumn = excludedIndices[excludedIndex];
+                        }
+                    } else {
+                        setValue(dataBuilder, row, col++, colCount);
+                    }
+                    dataBuilder.setLength(0);
+
+                    colCount++;
+                    if (currentChar == NEW_LINE) {
+                        if (col < numOfCols) {
+                            String errMsg = String.format("Insufficient number of columns at line %d.  Expect %d column(s) but found %d.", row + 2, maxNumOfCols, colCount);
+                            LOGGER.error(errMsg);
+                            throw new IOException(errMsg);
+                        }
+                        colCount = 0;
+                        col = 0;
+                        row++;
+
+                        excludedIndex = 0;
+                        excludedColumn = excludedIndices[excludedIndex];
+                    }
+                } else if (currentChar > SPACE && (currentChar != SINGLE_QUOTE && currentChar != DOUBLE_QUOTE)) {
+                    dataBuilder.append((char) currentChar);
+                }
+
+                prevChar = currentChar;
+            }
+            if (currentChar > -1 && currentChar != NEW_LINE) {
+                if (currentChar == delimiter) {
+                    String errMsg = String.format("Missing data at line %d column %d.", row + 2, col + 1);
+                    LOGGER.error(errMsg);
+                    throw new IOException(errMsg);
+                } else if (colCount != excludedColumn) {
+                    setValue(dataBuilder, row, col, colCount);
+                }
+            }
+
+            return null;
+        }
+
+        private void setValue(StringBuilder dataBuilder, int row, int col, int colCount) throws IOException {
+            if (colCount >= maxNumOfCols) {
+                String errMsg = String.format("Number of columns exceeded at line %d.  Expect %d column(s) but found %d.", row + 2, maxNumOfCols, colCount + 1);
+                LOGGER.error(errMsg);
+                throw new IOException(errMsg);
+            }
+            if (dataBuilder.length() == 0) {
+                String errMsg = String.format("Missing data at line %d column %d.", row + 2, colCount + 1);
+                LOGGER.error(errMsg);
+                throw new IOException(errMsg);
+            }
+
+            double value;
+            try {
+                value = Double.parseDouble(dataBuilder.toString());
+            } catch (NumberFormatException exception) {
+                throw new IOException(
+                        String.format("Unable to parse data at line %d column %d.", row + 2, colCount + 1),
+                        exception);
+            }
+            data[col][row] = value;
+
+            long n = ++counts[col];
+            double delta = value - means[col];
+            means[col] += delta / n;
+            m2s[col] += delta * (value - means[col]);
+        }
+
+    }
+
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2016 University of Pittsburgh.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package edu.cmu.tetrad.io;
+
+import edu.cmu.tetrad.data.BoxDataSet;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.VerticalIntDataBox;
+import edu.cmu.tetrad.graph.Node;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This data reader reads in tabular data contains discrete variables in a
+ * transposed (vertical) format. The file is split at line boundaries into
+ * chunks; the categories of each chunk are collected in parallel, merged and
+ * sorted, and then the chunks are encoded in parallel straight into their
+ * rows of a column-major data box. Delimiter, quote and missing-value
+ * handling are the same as {@link VerticalTabularDiscreteDataReader}.
+ */
+public class ConcurrentVerticalTabularDiscreteDataReader extends AbstractDiscreteDataReader implements DataReader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConcurrentVerticalTabularDiscreteDataReader.class);
+
+    private final int numOfThreads;
+
+    public ConcurrentVerticalTabularDiscreteDataReader(Path dataFile, char delimiter) {
+        this(dataFile, delimiter, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ConcurrentVerticalTabularDiscreteDataReader(Path dataFile, char delimiter, int numOfThreads) {
+        super(dataFile, delimiter);
+        this.numOfThreads = Math.max(1, numOfThreads);
+    }
+
+    @Override
+    public DataSet readInData() throws IOException {
+        return readInData(Collections.EMPTY_SET);
+    }
+
+    @Override
+    public DataSet readInData(Set<String> excludedVariables) throws IOException {
+        if (excludedVariables == null) {
+            excludedVariables = Collections.EMPTY_SET;
+        }
+
+        DiscreteVariableAnalysis variableAnalysis = new DiscreteVariableAnalysis();
+        extractVariables(excludedVariables, variableAnalysis);
+
+        ForkJoinPool pool = new ForkJoinPool(numOfThreads);
+        try (FileChannel fc = new RandomAccessFile(dataFile.toFile(), "r").getChannel()) {
+            List<LineChunk> chunks = splitIntoLineChunks(fc, findEndOfHeader(fc), numOfThreads * 4, pool);
+
+            extractVariableValues(fc, chunks, variableAnalysis, pool);
+            variableAnalysis.recategorize();
+
+            List<Node> nodes = createDiscreteVariableList(variableAnalysis);
+            int[][] data = encodeDiscreteData(fc, chunks, variableAnalysis, pool);
+
+            return new BoxDataSet(new VerticalIntDataBox(data), nodes);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Collect the values for the variables, one set per chunk, and merge them.
+     */
+    private void extractVariableValues(FileChannel fc, List<LineChunk> chunks, DiscreteVariableAnalysis variableAnalysis, ForkJoinPool pool) throws IOException {
+        DiscreteVarInfo[] variables = variableAnalysis.getDiscreteVarInfos();
+
+        List<ChunkParser> parsers = new ArrayList<>(chunks.size());
+        for (LineChunk chunk : chunks) {
+            parsers.add(new ChunkParser(map(fc, chunk), chunk.getFirstRow(), variableAnalysis, null));
+        }
+        invokeAll(pool, new LinkedList<Callable<Void>>(parsers));
+
+        for (ChunkParser parser : parsers) {
+            Set<String>[] values = parser.values;
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    for (String value : values[i]) {
+                        variables[i].setValue(value);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Encode the data, column-major.
+     */
+    private int[][] encodeDiscreteData(FileChannel fc, List<LineChunk> chunks, DiscreteVariableAnalysis variableAnalysis, ForkJoinPool pool) throws IOException {
+        int numOfRows = 0;
+        for (LineChunk chunk : chunks) {
+            numOfRows += chunk.getNumOfRows();
+        }
+
+        int[][] data = new int[variableAnalysis.getNumOfCols()][numOfRows];
+
+        List<Callable<Void>> tasks = new LinkedList<>();
+        for (LineChunk chunk : chunks) {
+            tasks.add(new ChunkParser(map(fc, chunk), chunk.getFirstRow(), variableAnalysis, data));
+        }
+        invokeAll(pool, tasks);
+
+        return data;
+    }
+
+    /**
+     * Reads the lines of one chunk. Without a data array it only collects
+     * the values seen for each variable; with one, it encodes the values into
+     * it.
+     */
+    private class ChunkParser implements Callable<Void> {
+
+        private final MappedByteBuffer buffer;
+        private final int firstRow;
+        private final DiscreteVarInfo[] variables;
+        private final int numOfCols;
+        private final int[][] data;
+        private final Set<String>[] values;
+
+        public ChunkParser(MappedByteBuffer buffer, int firstRow, DiscreteVariableAnalysis variableAnalysis, int[][] data) {
+            this.buffer = buffer;
+            this.firstRow = firstRow;
+            this.variables = variableAnalysis.getDiscreteVarInfos();
+            this.numOfCols = variableAnalysis.getNumOfCols();
+            this.data = data;
+            this.values = new Set[variables.length];
+            if (data == null) {
+                for (int i = 0; i < variables.length; i++) {
+                    if (variables[i] != null) {
+                        values[i] = new HashSet<>();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public Void call() throws IOException {
+            int maxNumOfCols = variables.length;
+
+            int colCount = 0;
+            int col = 0;
+            int row = firstRow;
+            byte currentChar = -1;
+            byte prevChar = NEW_LINE;
+            StringBuilder dataBuilder = new StringBuilder();
+            while (buffer.hasRemaining()) {
+                currentChar = buffer.get();
+                if (currentChar == CARRIAGE_RETURN) {
+                    currentChar = NEW_LINE;
+                }
+
+                if (currentChar == delimiter || (currentChar == NEW_LINE && prevChar != NEW_LINE)) {
+                    if (colCount < maxNumOfCols) {
+                        if (variables[colCount] != null) {
+                            setValue(dataBuilder.toString().trim(), row, col++, colCount);
+                        }
+                    } else {
+                        String errMsg = String.format("Number of columns exceeded at line %d.  Expect %d column(s) but found %d.", row + 2, maxNumOfCols, colCount + 1);
+                        LOGGER.error(errMsg);
+                        throw new IOException(errMsg);
+                    }
+                    dataBuilder.setLength(0);
+
+                    colCount++;
+                    if (currentChar == NEW_LINE) {
+                        if (col < numOfCols) {
+                            String errMsg = String.format("Insufficient number of columns at line %d.  Expect %d column(s) but found %d.", row + 2, numOfCols, col);
+                            LOGGER.error(errMsg);
+                            throw new IOException(errMsg);
+                        }
+                        colCount = 0;
+                        col = 0;
+                        row++;
+                    }
+                } else if (currentChar != SINGLE_QUOTE && currentChar != DOUBLE_QUOTE) {
+                    dataBuilder.append((char) currentChar);
+                }
+
+                prevChar = currentChar;
+            }
+            if (currentChar > -1 && currentChar != NEW_LINE) {
+                if (colCount < maxNumOfCols) {
+                    if (variables[colCount] != null) {
+                        if (currentChar == delimiter) {
+                            String errMsg = String.format("Missing data at line %d column %d.", row + 2, colCount + 1);
+                            LOGGER.error(errMsg);
+                            throw new IOException(errMsg);
+                        } else {
+                            setValue(dataBuilder.toString().trim(), row, col, colCount);
+                        }
+                    }
+                } else {
+                    String errMsg = String.format("Number of columns exceeded at line %d.  Expect %d column(s) but found %d.", row + 2, maxNumOfCols, colCount + 1);
+                    LOGGER.error(errMsg);
+                    throw new IOException(errMsg);
+                }
+            }
+
+            return null;
+        }
+
+        private void setValue(String value, int row, int col, int colCount) throws IOException {
+            if (value.length() == 0) {
+                String errMsg = String.format("Missing data at line %d column %d.", row + 2, colCount + 1);
+                LOGGER.error(errMsg);
+                throw new IOException(errMsg);
+            }
+
+            if (data == null) {
+                values[colCount].add(value);
+            } else {
+                data[col][row] = variables[colCount].getEncodeValue(value);
+            }
+        }
+
+    }
+
+}
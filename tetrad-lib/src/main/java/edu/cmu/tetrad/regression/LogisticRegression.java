@@ -26,6 +26,7 @@ import edu.cmu.tetrad.data.ContinuousVariable;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.DiscreteVariable;
 import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
 import edu.cmu.tetrad.util.ProbUtils;
 import edu.cmu.tetrad.util.TetradSerializable;
 import org.apache.commons.math3.distribution.ChiSquaredDistribution;
@@ -36,6 +37,8 @@ import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Implements a logistic regression algorithm based on a Javascript
@@ -46,12 +49,24 @@ import java.util.List;
  * See also  Applied Logistic Regression, by D.W. Hosmer and S. Lemeshow. 1989,
  * John Wiley & Sons, New York which Pezzullo references.  In particular see
  * pages 27-29.
+ * <p>
+ * The Newton iterations accumulate the log likelihood, gradient and Hessian
+ * over blocks of rows in parallel when there are at least PARALLEL_ROWS rows,
+ * and a fit may start from the coefficients of a nested model. The working
+ * columns are kept between fits, so an instance should be used by one thread
+ * at a time.
  *
  * @author Frank Wimberly
  */
 public class LogisticRegression implements TetradSerializable {
     static final long serialVersionUID = 23L;
 
+    /**
+     * The number of rows at or above which the Newton sums are accumulated in
+     * parallel.
+     */
+    public static final int PARALLEL_ROWS = 10000;
+
     /**
      * The data set that was supplied.
      */
@@ -69,6 +84,13 @@ public class LogisticRegression implements TetradSerializable {
 
     private int[] rows;
 
+    /**
+     * Working columns (the constant, then the standardized regressors) and
+     * target, reused from one fit to the next.
+     */
+    private transient double[][] columns;
+    private transient int[] targetBuffer;
+
     /**
      * A mixed data set. The targets of regresson must be binary. Regressors must be continuous or binary.
      * Other variables don't matter.
@@ -91,6 +113,17 @@ public class LogisticRegression implements TetradSerializable {
      * x must be binary; regressors must be continuous or binary.
      */
     public Result regress(DiscreteVariable x, List<Node> regressors) {
+        return regress(x, regressors, null);
+    }
+
+    /**
+     * x must be binary; regressors must be continuous or binary. The Newton
+     * iterations start from the coefficients of <code>nested</code>, the result
+     * of regressing x onto some of these regressors over the same rows, taking
+     * the coefficients of the other regressors to be zero. If nested is null,
+     * they start from the intercept-only model.
+     */
+    public Result regress(DiscreteVariable x, List<Node> regressors, Result nested) {
         if (!binary(x)) {
             throw new IllegalArgumentException("Target must be binary.");
         }
@@ -101,21 +134,23 @@ public class LogisticRegression implements TetradSerializable {
             }
         }
 
-        double[][] _regressors = new double[regressors.size()][getRows().length];
+        int numCases = getRows().length;
+        ensureCapacity(regressors.size() + 1, numCases);
 
         for (int j = 0; j < regressors.size(); j++) {
             int col = dataSet.getColumn(regressors.get(j));
             double[] dataCol = dataCols[col];
+            double[] column = columns[j + 1];
 
-            for (int i = 0; i < getRows().length; i++) {
-                _regressors[j][i] = dataCol[getRows()[i]];
+            for (int i = 0; i < numCases; i++) {
+                column[i] = dataCol[getRows()[i]];
             }
         }
 
-        int[] target = new int[getRows().length];
+        int[] target = targetBuffer;
         int col = dataSet.getColumn(dataSet.getVariable(x.getName()));
 
-        for (int i = 0; i < getRows().length; i++) {
+        for (int i = 0; i < numCases; i++) {
             target[i] = dataSet.getInt(getRows()[i], col);
         }
 
@@ -125,7 +160,15 @@ public class LogisticRegression implements TetradSerializable {
             regressorNames.add(node.getName());
         }
 
-        return regress(target, x.getName(), _regressors, regressorNames);
+        return regress(target, numCases, x.getName(), regressors.size(), regressorNames, nested);
+    }
+
+    private void ensureCapacity(int numColumns, int numCases) {
+        if (columns == null || columns.length < numColumns || columns[0].length < numCases) {
+            int length = columns == null ? numCases : Math.max(numCases, columns[0].length);
+            columns = new double[Math.max(numColumns, columns == null ? 0 : columns.length)][length];
+            targetBuffer = new int[length];
+        }
     }
 
     private boolean binary(Node x) {
@@ -133,61 +176,41 @@ public class LogisticRegression implements TetradSerializable {
     }
 
     /**
-     * Regresses the single-column target onto the regressors which have been
-     * previously set, generating a regression result.
+     * Regresses the single-column target onto the regressors in columns 1
+     * through numRegressors of the working columns, generating a regression
+     * result.
      * <p>
      * The target must be a two-valued variable with values 0 and 1.
      * <p>
      * This implements an iterative search.
      */
-    private Result regress(int[] target, String targetName, double[][] regressors, List<String> regressorNames) {
-
-        double[][] x;
-        double[] c1;
-
-        int numRegressors = regressors.length;
-        int numCases = target.length;
-
-        // make a new matrix x with all the columns of regressors
-        // but with first column all 1.0's.
-        x = new double[numRegressors + 1][];
-        c1 = new double[numCases];
+    private Result regress(int[] target, int numCases, String targetName, int numRegressors,
+                           List<String> regressorNames, Result nested) {
 
-        x[0] = c1;
-
-        System.arraycopy(regressors, 0, x, 1, numRegressors);
+        // the columns of the regressors, with first column all 1.0's.
+        double[][] x = columns;
 
         for (int i = 0; i < numCases; i++) {
             x[0][i] = 1.0;
-            c1[i] = 1.0;
         }
 
         double[] xMeans = new double[numRegressors + 1];
         double[] xStdDevs = new double[numRegressors + 1];
 
-        double[] y0 = new double[numCases];
-        double[] y1 = new double[numCases];
-        for (int i = 0; i < numCases; i++) {
-            y0[i] = 0;
-            y1[i] = 0;
-        }
-
         int ny0 = 0;
         int ny1 = 0;
         int nc = 0;
 
         for (int i = 0; i < numCases; i++) {
             if (target[i] == 0.0) {
-                y0[i] = 1;
                 ny0++;
             } else {
-                y1[i] = 1;
                 ny1++;
             }
-            nc += y0[i] + y1[i];
+            nc++;
             for (int j = 1; j <= numRegressors; j++) {
-                xMeans[j] += (y0[i] + y1[i]) * x[j][i];
-                xStdDevs[j] += (y0[i] + y1[i]) * x[j][i] * x[j][i];
+                xMeans[j] += x[j][i];
+                xStdDevs[j] += x[j][i] * x[j][i];
             }
         }
 
@@ -216,67 +239,26 @@ public class LogisticRegression implements TetradSerializable {
             par[j] = 0.0;
         }
 
-        double[][] arr = new double[numRegressors + 1][numRegressors + 2];
+        double llN = 0.0;
+        boolean warmStart = nested != null && ny0 > 0 && ny1 > 0
+                && startFrom(nested, regressorNames, xMeans, xStdDevs, par);
 
-        double lnV;
-        double ln1mV;
+        if (warmStart) {
+            // The deviance of the intercept-only model, at which a cold start begins.
+            llN = -2.0 * (ny1 * Math.log((double) ny1 / nc) + ny0 * Math.log((double) ny0 / nc));
+        }
+
+        double[][] arr = new double[numRegressors + 1][numRegressors + 2];
 
         double llP = 2e+10;
         double ll = 1e+10;
-        double llN = 0.0;
 
         while (Math.abs(llP - ll) > 1e-7) {   /// 1e-7
 
             llP = ll;
-            ll = 0.0;
-
-            for (int j = 0; j <= numRegressors; j++) {
-                for (int k = j; k <= numRegressors + 1; k++) {
-                    arr[j][k] = 0.0;
-                }
-            }
-
-            for (int i = 0; i < nc; i++) {
-                double q;
-                double v = par[0];
-
-                for (int j = 1; j <= numRegressors; j++) {
-                    v += par[j] * x[j][i];
-                }
-
-                if (v > 15.0) {
-                    lnV = -Math.exp(-v);
-                    ln1mV = -v;
-                    q = Math.exp(-v);
-                    v = Math.exp(lnV);
-                } else {
-                    if (v < -15.0) {
-                        lnV = v;
-                        ln1mV = -Math.exp(v);
-                        q = Math.exp(v);
-                        v = Math.exp(lnV);
-                    } else {
-                        v = 1.0 / (1 + Math.exp(-v));
-                        lnV = Math.log(v);
-                        ln1mV = Math.log(1.0 - v);
-                        q = v * (1.0 - v);
-                    }
-                }
-
-                ll = ll - 2.0 * y1[i] * lnV - 2.0 * y0[i] * ln1mV;
-
-                for (int j = 0; j <= numRegressors; j++) {
-                    double xij = x[j][i];
-                    arr[j][numRegressors + 1] +=
-                            xij * (y1[i] * (1.0 - v) + y0[i] * (-v));
-
-                    for (int k = j; k <= numRegressors; k++) {
-                        arr[j][k] += xij * x[k][i] * q * (y0[i] + y1[i]);
-                    }
-                }
-            }
+            ll = accumulate(x, target, nc, par, arr);
 
-            if (llP == 1e+10) {
+            if (llP == 1e+10 && !warmStart) {
                 llN = ll;
             }
 
@@ -348,6 +330,157 @@ public class LogisticRegression implements TetradSerializable {
         );
     }
 
+    // Sets the standardized parameters to the coefficients of the nested
+    // result, or returns false if its regressors are not among these.
+    private static boolean startFrom(Result nested, List<String> regressorNames, double[] xMeans,
+                                     double[] xStdDevs, double[] par) {
+        List<String> nestedNames = nested.getRegressorNames();
+        double[] coefs = nested.getCoefs();
+        int[] indices = new int[nestedNames.size()];
+
+        for (int k = 0; k < nestedNames.size(); k++) {
+            indices[k] = regressorNames.indexOf(nestedNames.get(k)) + 1;
+
+            if (indices[k] == 0) {
+                return false;
+            }
+        }
+
+        par[0] = coefs[0];
+
+        for (int k = 0; k < indices.length; k++) {
+            int j = indices[k];
+            par[j] = coefs[k + 1] * xStdDevs[j];
+            par[0] += coefs[k + 1] * xMeans[j];
+        }
+
+        return true;
+    }
+
+    // Fills the gradient (last column) and upper triangle of the Hessian in
+    // arr for the first numCases rows, returning -2 log likelihood. Blocks of
+    // rows are summed in parallel if there are enough of them.
+    private static double accumulate(final double[][] x, final int[] target, int numCases, final double[] par,
+                                     double[][] arr) {
+        ForkJoinPool pool = ForkJoinPoolInstance.getInstance().getPool();
+
+        if (numCases < PARALLEL_ROWS || pool.getParallelism() == 1) {
+            for (int j = 0; j < arr.length; j++) {
+                for (int k = j; k < arr[j].length; k++) {
+                    arr[j][k] = 0.0;
+                }
+            }
+
+            return sums(x, target, 0, numCases, par, arr);
+        }
+
+        final int chunk = PARALLEL_ROWS / 2;
+        final int n = arr.length;
+
+        class SumTask extends RecursiveTask<double[][]> {
+            private final int from;
+            private final int to;
+
+            SumTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            // The sums for the rows, with -2 log likelihood in the extra last row.
+            @Override
+            protected double[][] compute() {
+                if (to - from <= chunk) {
+                    double[][] _arr = new double[n + 1][n + 1];
+                    _arr[n][0] = sums(x, target, from, to, par, _arr);
+                    return _arr;
+                } else {
+                    int mid = (from + to) / 2;
+                    SumTask left = new SumTask(from, mid);
+                    SumTask right = new SumTask(mid, to);
+
+                    left.fork();
+                    double[][] _arr = right.compute();
+                    double[][] leftArr = left.join();
+
+                    for (int j = 0; j < n; j++) {
+                        for (int k = j; k <= n; k++) {
+                            _arr[j][k] += leftArr[j][k];
+                        }
+                    }
+
+                    _arr[n][0] += leftArr[n][0];
+                    return _arr;
+                }
+            }
+        }
+
+        double[][] total = pool.invoke(new SumTask(0, numCases));
+
+        for (int j = 0; j < n; j++) {
+            System.arraycopy(total[j], j, arr[j], j, n + 1 - j);
+        }
+
+        return total[n][0];
+    }
+
+    // Adds the terms of the rows from (inclusive) to to (exclusive) to the
+    // gradient and Hessian sums in arr, returning their -2 log likelihood.
+    private static double sums(double[][] x, int[] target, int from, int to, double[] par, double[][] arr) {
+        int numRegressors = par.length - 1;
+        double ll = 0.0;
+        double lnV;
+        double ln1mV;
+
+        for (int i = from; i < to; i++) {
+            double q;
+            double v = par[0];
+
+            for (int j = 1; j <= numRegressors; j++) {
+                v += par[j] * x[j][i];
+            }
+
+            if (v > 15.0) {
+                lnV = -Math.exp(-v);
+                ln1mV = -v;
+                q = Math.exp(-v);
+                v = Math.exp(lnV);
+            } else {
+                if (v < -15.0) {
+                    lnV = v;
+                    ln1mV = -Math.exp(v);
+                    q = Math.exp(v);
+                    v = Math.exp(lnV);
+                } else {
+                    v = 1.0 / (1 + Math.exp(-v));
+                    lnV = Math.log(v);
+                    ln1mV = Math.log(1.0 - v);
+                    q = v * (1.0 - v);
+                }
+            }
+
+            double residual;
+
+            if (target[i] == 0.0) {
+                ll -= 2.0 * ln1mV;
+                residual = -v;
+            } else {
+                ll -= 2.0 * lnV;
+                residual = 1.0 - v;
+            }
+
+            for (int j = 0; j <= numRegressors; j++) {
+                double xij = x[j][i];
+                arr[j][numRegressors + 1] += xij * residual;
+
+                for (int k = j; k <= numRegressors; k++) {
+                    arr[j][k] += xij * x[k][i] * q;
+                }
+            }
+        }
+
+        return ll;
+    }
+
     private double norm(double z) {
         double q = z * z;
         double piOver2 = Math.PI / 2.0;
@@ -25,14 +25,23 @@ import edu.cmu.tetrad.data.*;
 import edu.cmu.tetrad.graph.Node;
 import org.apache.commons.math3.special.Gamma;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * Calculates the BDeu score.
+ * <p>
+ * Counts are taken from the data packed by column. When there are no more
+ * parent states than records the counts go in a dense table; otherwise only
+ * the parent states that occur in the data are counted, since the others
+ * contribute nothing to the score. Optionally, counts can instead be taken
+ * from an AD leaf tree shared through AdTrees, which pays off when the same
+ * parent sets are scored many times on data without missing values.
  */
 public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
     private List<Node> variables;
-    private int[][] data;
+    private PackedIntDataBox data;
     private int sampleSize;
 
     private double samplePrior = 1;
@@ -40,36 +49,53 @@ public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
 
     private int[] numCategories;
 
+    // The data set, for the AD leaf tree.
+    private DataSet dataSet;
+
+    // If not null, counts are taken from this tree.
+    private AdLeafTree adLeafTree = null;
+
+    // Scratch arrays for counting, for each thread.
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        protected Scratch initialValue() {
+            return new Scratch(sampleSize);
+        }
+    };
+
     public BDeuScore(DataSet dataSet) {
         if (dataSet == null) {
             throw new NullPointerException("Data was not provided.");
         }
 
+        this.dataSet = dataSet;
+
         if (dataSet instanceof BoxDataSet) {
             DataBox dataBox = ((BoxDataSet) dataSet).getDataBox();
 
             this.variables = dataSet.getVariables();
 
-            if (!(dataBox instanceof VerticalIntDataBox)) {
-                dataBox = new VerticalIntDataBox(dataBox);
+            if (dataBox instanceof PackedIntDataBox) {
+                data = (PackedIntDataBox) dataBox;
+            } else if (dataBox instanceof VerticalIntDataBox) {
+                data = new PackedIntDataBox(((VerticalIntDataBox) dataBox).getVariableVectors());
+            } else {
+                data = new PackedIntDataBox(dataBox);
             }
 
-            VerticalIntDataBox box = (VerticalIntDataBox) dataBox;
-
-            data = box.getVariableVectors();
             this.sampleSize = dataSet.getNumRows();
         } else {
-            data = new int[dataSet.getNumColumns()][];
+            int[][] _data = new int[dataSet.getNumColumns()][];
             this.variables = dataSet.getVariables();
 
             for (int j = 0; j < dataSet.getNumColumns(); j++) {
-                data[j] = new int[dataSet.getNumRows()];
+                _data[j] = new int[dataSet.getNumRows()];
 
                 for (int i = 0; i < dataSet.getNumRows(); i++) {
-                    data[j][i] = dataSet.getInt(i, j);
+                    _data[j][i] = dataSet.getInt(i, j);
                 }
             }
 
+            data = new PackedIntDataBox(_data);
             this.sampleSize = dataSet.getNumRows();
         }
 
@@ -98,48 +124,58 @@ public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
         }
 
         // Number of parent states.
-        int r = 1;
+        double r = 1;
 
         for (int p = 0; p < parents.length; p++) {
             r *= dims[p];
         }
 
-        // Conditional cell coefs of data for node given parents(node).
-        int n_jk[][] = new int[r][c];
-        int n_j[] = new int[r];
+        if (adLeafTree != null) {
+            return localScoreAdLeafTree(node, parents, c, r);
+        } else if (r > sampleSize) {
+            return localScoreSparse(node, parents, dims, c, r);
+        } else {
+            return localScoreDense(node, parents, dims, c, (int) r);
+        }
+    }
 
-        int[] parentValues = new int[parents.length];
+    // Counts into a table with a row for every parent state.
+    private double localScoreDense(int node, int[] parents, int[] dims, int c, int r) {
+        Scratch scratch = this.scratch.get();
 
-        int[][] myParents = new int[parents.length][];
-        for (int i = 0; i < parents.length; i++) {
-            myParents[i] = data[parents[i]];
-        }
+        // Index of each record's cell in the (parents..., node) table, folded
+        // in a column at a time from the packed data.
+        int[] cellIndices = scratch.cellIndices();
 
-        int[] myChild = data[node];
+        for (int p = 0; p < parents.length; p++) {
+            data.updateCellIndices(parents[p], dims[p], cellIndices);
+        }
 
+        data.updateCellIndices(node, c, cellIndices);
 
-        for (int i = 0; i < sampleSize; i++) {
-            for (int p = 0; p < parents.length; p++) {
-                parentValues[p] = myParents[p][i];
-            }
+        return scoreDense(cellIndices, parents.length, c, r);
+    }
 
-            int childValue = myChild[i];
+    // Scores the counts of the given (parents..., node) cell indices.
+    private double scoreDense(int[] cellIndices, int numParents, int c, int r) {
+        Scratch scratch = this.scratch.get();
 
-            if (childValue == -99) {
-                throw new IllegalStateException("Please remove or impute missing " +
-                        "values (record " + i + " column " + i + ")");
-            }
+        // Conditional cell coefs of data for node given parents(node).
+        int n_jk[] = scratch.counts(r * c);
+        int n_j[] = scratch.rowCounts(r);
 
-            int rowIndex = getRowIndex(dims, parentValues);
+        count(cellIndices, n_jk);
 
-            n_jk[rowIndex][childValue]++;
-            n_j[rowIndex]++;
+        for (int j = 0; j < r; j++) {
+            for (int k = 0; k < c; k++) {
+                n_j[j] += n_jk[j * c + k];
+            }
         }
 
         //Finally, compute the score
         double score = 0.0;
 
-        score += getPriorForStructure(parents.length);
+        score += getPriorForStructure(numParents);
 
         final double cellPrior = getSamplePrior() / (c * r);
         final double rowPrior = getSamplePrior() / r;
@@ -148,7 +184,7 @@ public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
             score -= Gamma.logGamma(rowPrior + n_j[j]);
 
             for (int k = 0; k < c; k++) {
-                score += Gamma.logGamma(cellPrior + n_jk[j][k]);
+                score += Gamma.logGamma(cellPrior + n_jk[j * c + k]);
             }
         }
 
@@ -158,9 +194,104 @@ public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
         return score;
     }
 
+    // Counts only the parent states that occur. Whenever the index space of
+    // the parents folded in so far would exceed the number of records, the
+    // states that occur are renumbered 0, 1, ..., so the table never has more
+    // rows than there are records.
+    private double localScoreSparse(int node, int[] parents, int[] dims, int c, double r) {
+        Scratch scratch = this.scratch.get();
+        int[] cellIndices = scratch.cellIndices();
+        long size = 1;
+
+        for (int p = 0; p < parents.length; p++) {
+            if (size * dims[p] > sampleSize) {
+                size = scratch.renumber(cellIndices);
+            }
+
+            data.updateCellIndices(parents[p], dims[p], cellIndices);
+            size *= dims[p];
+        }
+
+        int numStates = scratch.renumber(cellIndices);
+        data.updateCellIndices(node, c, cellIndices);
+
+        return scoreSparse(cellIndices, numStates, parents.length, c, r);
+    }
+
+    // Scores the counts of the given (parent state, node) cell indices, for
+    // parent states numbered 0, 1, ..., numStates - 1.
+    private double scoreSparse(int[] cellIndices, int numStates, int numParents, int c, double r) {
+        int[] n_jk = scratch.get().counts(numStates * c);
+        count(cellIndices, n_jk);
+
+        double score = getPriorForStructure(numParents);
+        RowScorer scorer = new RowScorer(c, r);
+
+        for (int j = 0; j < numStates; j++) {
+            score += scorer.score(n_jk, j * c);
+        }
+
+        return score;
+    }
+
+    // Counts the records in each leaf of the AD leaf tree.
+    private double localScoreAdLeafTree(int node, int[] parents, int c, double r) {
+        List<DiscreteVariable> A = new ArrayList<>();
+
+        for (int parent : parents) {
+            A.add((DiscreteVariable) dataSet.getVariable(parent));
+        }
+
+        List<List<Integer>> cells;
+
+        synchronized (adLeafTree) {
+            cells = adLeafTree.getCellLeaves(A);
+        }
+
+        Scratch scratch = this.scratch.get();
+        int[] child = scratch.cellIndices();
+        data.getColumn(node, child);
+
+        int[] n_k = new int[c];
+        double score = getPriorForStructure(parents.length);
+        RowScorer scorer = new RowScorer(c, r);
+
+        for (List<Integer> cell : cells) {
+            if (cell.isEmpty()) continue;
+
+            Arrays.fill(n_k, 0);
+
+            for (int i : cell) {
+                if (child[i] == -99) {
+                    throw new IllegalStateException("Please remove or impute missing " +
+                            "values (record " + i + ")");
+                }
+
+                n_k[child[i]]++;
+            }
+
+            score += scorer.score(n_k, 0);
+        }
+
+        return score;
+    }
+
+    private static void count(int[] cellIndices, int[] n_jk) {
+        for (int i = 0; i < cellIndices.length; i++) {
+            int cellIndex = cellIndices[i];
+
+            if (cellIndex == -1) {
+                throw new IllegalStateException("Please remove or impute missing " +
+                        "values (record " + i + ")");
+            }
+
+            n_jk[cellIndex]++;
+        }
+    }
+
     private double getPriorForStructure(int numParents) {
         double e = getStructurePrior();
-        int vm = data.length - 1;
+        int vm = data.numCols() - 1;
         return numParents * Math.log(e / (vm)) + (vm - numParents) * Math.log(1.0 - (e / (vm)));
     }
 
@@ -174,6 +305,71 @@ public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
         return localScore(y, x) - localScore(y);
     }
 
+    /**
+     * Folds the parents z into the cell indices once and, for each x, copies
+     * them and folds in just x and y, so that the data for z are read once
+     * for all the xs rather than twice for each. Counts come out the same as
+     * for localScore; with an AD leaf tree this just calls localScoreDiff.
+     */
+    @Override
+    public double[] localScoreDiffs(int[] xs, int y, int[] z) {
+        double[] diffs = new double[xs.length];
+
+        if (adLeafTree != null) {
+            for (int i = 0; i < xs.length; i++) {
+                diffs[i] = localScoreDiff(xs[i], y, z);
+            }
+
+            return diffs;
+        }
+
+        double score = localScore(y, z);
+        int c = numCategories[y];
+
+        Scratch scratch = this.scratch.get();
+        int[] parentIndices = scratch.parentIndices();
+
+        // Parent states of z, renumbered as in localScoreSparse when there
+        // get to be more than records.
+        double r = 1;
+        long size = 1;
+
+        for (int p = 0; p < z.length; p++) {
+            int dim = numCategories[z[p]];
+
+            if (size * dim > sampleSize) {
+                size = scratch.renumber(parentIndices);
+            }
+
+            data.updateCellIndices(z[p], dim, parentIndices);
+            r *= dim;
+            size *= dim;
+        }
+
+        for (int i = 0; i < xs.length; i++) {
+            int x = xs[i];
+            int dim = numCategories[x];
+            int[] cellIndices = scratch.cellIndices(parentIndices);
+
+            if (r * dim > sampleSize) {
+                if (size * dim > sampleSize) {
+                    scratch.renumber(cellIndices);
+                }
+
+                data.updateCellIndices(x, dim, cellIndices);
+                int numStates = scratch.renumber(cellIndices);
+                data.updateCellIndices(y, c, cellIndices);
+                diffs[i] = scoreSparse(cellIndices, numStates, z.length + 1, c, r * dim) - score;
+            } else {
+                data.updateCellIndices(x, dim, cellIndices);
+                data.updateCellIndices(y, c, cellIndices);
+                diffs[i] = scoreDense(cellIndices, z.length + 1, c, (int) (r * dim)) - score;
+            }
+        }
+
+        return diffs;
+    }
+
     int[] append(int[] parents, int extra) {
         int[] all = new int[parents.length + 1];
         System.arraycopy(parents, 0, all, 0, parents.length);
@@ -222,13 +418,15 @@ public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
         throw new UnsupportedOperationException();
     }
 
-    private static int getRowIndex(int[] dim, int[] values) {
-        int rowIndex = 0;
-        for (int i = 0; i < dim.length; i++) {
-            rowIndex *= dim[i];
-            rowIndex += values[i];
-        }
-        return rowIndex;
+    /**
+     * If true, counts are taken from an AD leaf tree for the data (shared
+     * through AdTrees) rather than from the packed data. The tree keeps the
+     * records for each parent state it has seen, so repeated parent sets are
+     * counted quickly, at the cost of memory. The data must not have missing
+     * values.
+     */
+    public void setUseAdLeafTree(boolean useAdLeafTree) {
+        this.adLeafTree = useAdLeafTree ? AdTrees.getAdLeafTree(dataSet) : null;
     }
 
     @Override
@@ -276,6 +474,141 @@ public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
     public int getMaxDegree() {
         return (int) Math.ceil(Math.log(sampleSize));
     }
+
+    /**
+     * Scores one row of counts, for a parent state, given c child categories
+     * and r parent states. Rows of zeros score zero.
+     */
+    private class RowScorer {
+        private final int c;
+        private final double cellPrior;
+        private final double rowPrior;
+        private final double logGammaCellPrior;
+        private final double logGammaRowPrior;
+
+        RowScorer(int c, double r) {
+            this.c = c;
+            this.cellPrior = getSamplePrior() / (c * r);
+            this.rowPrior = getSamplePrior() / r;
+            this.logGammaCellPrior = Gamma.logGamma(cellPrior);
+            this.logGammaRowPrior = Gamma.logGamma(rowPrior);
+        }
+
+        double score(int[] n_jk, int offset) {
+            double score = logGammaRowPrior;
+            int n_j = 0;
+
+            for (int k = offset; k < offset + c; k++) {
+                if (n_jk[k] > 0) {
+                    score += Gamma.logGamma(cellPrior + n_jk[k]) - logGammaCellPrior;
+                    n_j += n_jk[k];
+                }
+            }
+
+            return score - Gamma.logGamma(rowPrior + n_j);
+        }
+    }
+
+    /**
+     * Arrays reused from one call to the next by a thread.
+     */
+    private static class Scratch {
+        private final int[] cellIndices;
+        private int[] parentIndices;
+        private int[] counts = new int[0];
+        private int[] rowCounts = new int[0];
+        private int[] keys;
+        private int[] ids;
+        private int shift;
+
+        Scratch(int sampleSize) {
+            this.cellIndices = new int[sampleSize];
+        }
+
+        // The cell index array, zeroed.
+        int[] cellIndices() {
+            Arrays.fill(cellIndices, 0);
+            return cellIndices;
+        }
+
+        // The cell index array, holding a copy of the given indices.
+        int[] cellIndices(int[] indices) {
+            System.arraycopy(indices, 0, cellIndices, 0, cellIndices.length);
+            return cellIndices;
+        }
+
+        // A second index array, zeroed, for parent indices kept while the
+        // cell index array is reused.
+        int[] parentIndices() {
+            if (parentIndices == null) {
+                parentIndices = new int[cellIndices.length];
+            } else {
+                Arrays.fill(parentIndices, 0);
+            }
+
+            return parentIndices;
+        }
+
+        // A count array of at least the given size, its first size entries zeroed.
+        int[] counts(int size) {
+            if (counts.length < size) {
+                counts = new int[size];
+            } else {
+                Arrays.fill(counts, 0, size, 0);
+            }
+
+            return counts;
+        }
+
+        int[] rowCounts(int size) {
+            if (rowCounts.length < size) {
+                rowCounts = new int[size];
+            } else {
+                Arrays.fill(rowCounts, 0, size, 0);
+            }
+
+            return rowCounts;
+        }
+
+        /**
+         * Renumbers the distinct nonnegative indices 0, 1, ..., in order of
+         * first appearance, leaving -1 (missing) alone.
+         *
+         * @return the number of distinct indices.
+         */
+        int renumber(int[] indices) {
+            if (keys == null) {
+                int capacity = Integer.highestOneBit(Math.max(2, 2 * indices.length - 1)) << 1;
+                keys = new int[capacity];
+                ids = new int[capacity];
+                shift = Integer.numberOfLeadingZeros(capacity) + 1;
+            }
+
+            Arrays.fill(keys, -1);
+            int mask = keys.length - 1;
+            int numIds = 0;
+
+            for (int i = 0; i < indices.length; i++) {
+                int index = indices[i];
+                if (index < 0) continue;
+
+                int h = (index * 0x9E3779B9) >>> shift;
+
+                while (keys[h] != -1 && keys[h] != index) {
+                    h = (h + 1) & mask;
+                }
+
+                if (keys[h] == -1) {
+                    keys[h] = index;
+                    ids[h] = numIds++;
+                }
+
+                indices[i] = ids[h];
+            }
+
+            return numIds;
+        }
+    }
 }
 
 
@@ -109,6 +109,25 @@ public class BdeuScoreImages implements IBDeuScore {
         return localScoreDiff(x, y, new int[0]);
     }
 
+    @Override
+    public double[] localScoreDiffs(int[] xs, int y, int[] z) {
+        double[] sums = new double[xs.length];
+
+        for (BDeuScore score : scores) {
+            double[] diffs = score.localScoreDiffs(xs, y, z);
+
+            for (int i = 0; i < xs.length; i++) {
+                sums[i] += diffs[i];
+            }
+        }
+
+        for (int i = 0; i < xs.length; i++) {
+            sums[i] /= scores.size();
+        }
+
+        return sums;
+    }
+
     /**
      * Calculates the sample likelihood and BIC score for i given its parents in a simple SEM model
      */
@@ -28,7 +28,7 @@ import edu.cmu.tetrad.regression.RegressionCovariance;
 import edu.cmu.tetrad.regression.RegressionResult;
 import edu.cmu.tetrad.sem.*;
 import edu.cmu.tetrad.util.ChoiceGenerator;
-import edu.cmu.tetrad.util.ProbUtils;
+import edu.cmu.tetrad.util.PValues;
 import edu.cmu.tetrad.util.TetradLogger;
 
 import java.text.DecimalFormat;
@@ -911,7 +911,7 @@ public final class BffBeam implements Bff {
             int sampleSize = scorer.getSampleSize();
 
             this.chisq = (sampleSize - 1) * getFml();
-            this.pValue = 1.0 - ProbUtils.chisqCdf(chisq, dof);
+            this.pValue = PValues.chiSquare(chisq, dof);
             this.bic = chisq - dof * Math.log(sampleSize);
             this.aic = chisq - 2 * dof;
 
@@ -0,0 +1,202 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.graph.Node;
+
+import java.util.List;
+
+/**
+ * Wraps a score, remembering local scores and score differences in a
+ * LocalScoreCache so that each is calculated only once. The cache is safe to
+ * share among threads, so this can be handed to FGS in place of the score.
+ * Score differences are cached as such, not assembled from cached local
+ * scores, since not every score calculates them that way.
+ */
+public class CachedScore implements Score {
+    private static final int[] NO_PARENTS = new int[0];
+
+    private final Score score;
+    private final LocalScoreCache cache;
+
+    public CachedScore(Score score) {
+        this(score, new LocalScoreCache());
+    }
+
+    public CachedScore(Score score, LocalScoreCache cache) {
+        if (score == null) throw new NullPointerException("Score was not provided.");
+        if (cache == null) throw new NullPointerException("Cache was not provided.");
+        this.score = score;
+        this.cache = cache;
+    }
+
+    @Override
+    public double localScore(int node, int... parents) {
+        double s = cache.get(node, parents);
+
+        if (Double.isNaN(s)) {
+            s = score.localScore(node, parents);
+            cache.add(node, parents, s);
+        }
+
+        return s;
+    }
+
+    @Override
+    public double localScoreDiff(int x, int y, int[] z) {
+        double diff = cache.get(x, y, z);
+
+        if (Double.isNaN(diff)) {
+            diff = score.localScoreDiff(x, y, z);
+            cache.add(x, y, z, diff);
+        }
+
+        return diff;
+    }
+
+    @Override
+    public double localScoreDiff(int x, int y) {
+        double diff = cache.get(x, y, NO_PARENTS);
+
+        if (Double.isNaN(diff)) {
+            diff = score.localScoreDiff(x, y);
+            cache.add(x, y, NO_PARENTS, diff);
+        }
+
+        return diff;
+    }
+
+    /**
+     * Looks each difference up in the cache, and calculates the ones that
+     * are missing in one batch.
+     */
+    @Override
+    public double[] localScoreDiffs(int[] xs, int y, int[] z) {
+        double[] diffs = new double[xs.length];
+        int[] missing = new int[xs.length];
+        int numMissing = 0;
+
+        for (int i = 0; i < xs.length; i++) {
+            diffs[i] = cache.get(xs[i], y, z);
+
+            if (Double.isNaN(diffs[i])) {
+                missing[numMissing++] = i;
+            }
+        }
+
+        if (numMissing > 0) {
+            int[] _xs = new int[numMissing];
+
+            for (int k = 0; k < numMissing; k++) {
+                _xs[k] = xs[missing[k]];
+            }
+
+            double[] _diffs = score.localScoreDiffs(_xs, y, z);
+
+            for (int k = 0; k < numMissing; k++) {
+                diffs[missing[k]] = _diffs[k];
+                cache.add(_xs[k], y, z, _diffs[k]);
+            }
+        }
+
+        return diffs;
+    }
+
+    @Override
+    public double localScore(int node, int parent) {
+        int[] parents = {parent};
+        double s = cache.get(node, parents);
+
+        if (Double.isNaN(s)) {
+            s = score.localScore(node, parent);
+            cache.add(node, parents, s);
+        }
+
+        return s;
+    }
+
+    @Override
+    public double localScore(int node) {
+        double s = cache.get(node, NO_PARENTS);
+
+        if (Double.isNaN(s)) {
+            s = score.localScore(node);
+            cache.add(node, NO_PARENTS, s);
+        }
+
+        return s;
+    }
+
+    @Override
+    public List<Node> getVariables() {
+        return score.getVariables();
+    }
+
+    @Override
+    public boolean isEffectEdge(double bump) {
+        return score.isEffectEdge(bump);
+    }
+
+    @Override
+    public double getParameter1() {
+        return score.getParameter1();
+    }
+
+    /**
+     * Sets the parameter of the wrapped score, clearing the cache.
+     */
+    @Override
+    public void setParameter1(double alpha) {
+        score.setParameter1(alpha);
+        cache.clear();
+    }
+
+    @Override
+    public int getSampleSize() {
+        return score.getSampleSize();
+    }
+
+    @Override
+    public Node getVariable(String targetName) {
+        return score.getVariable(targetName);
+    }
+
+    @Override
+    public int getMaxDegree() {
+        return score.getMaxDegree();
+    }
+
+    /**
+     * @return the wrapped score.
+     */
+    public Score getScore() {
+        return score;
+    }
+
+    /**
+     * @return the cache, for its hit, miss and eviction counts.
+     */
+    public LocalScoreCache getCache() {
+        return cache;
+    }
+}
@@ -21,8 +21,8 @@
 
 package edu.cmu.tetrad.search;
 
+import edu.cmu.tetrad.util.ProbUtils;
 import edu.cmu.tetrad.util.StatUtils;
-import org.apache.commons.math3.distribution.NormalDistribution;
 import org.apache.commons.math3.linear.RealMatrix;
 
 import java.util.*;
@@ -64,11 +64,6 @@ public final class Cci {
      */
     private Map<String, Integer> indices;
 
-    /**
-     * Constructing apache NormalDistribution takes a while, so do it once.
-     */
-    private NormalDistribution normal = new NormalDistribution(0, 1);
-
     /**
      * the most recent list of P values, for calculating Q.
      */
@@ -438,7 +433,7 @@ public final class Cci {
     }
 
     private double normalCdf(double mean, double sd, double value) {
-        return normal.cumulativeProbability((value - mean) / sd);
+        return ProbUtils.normalCdf((value - mean) / sd);
     }
 
     public double calculateFdrQ() {
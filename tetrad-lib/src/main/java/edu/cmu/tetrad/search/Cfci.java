@@ -85,6 +85,11 @@ public final class Cfci implements GraphSearch {
      */
     private int maxReachablePathLength = -1;
 
+    /**
+     * The most milliseconds spent looking for a sepset of a pair in the possible dsep search, or -1 if unlimited.
+     */
+    private long possibleDsepTimeBudget = -1;
+
     /**
      * Set of unshielded colliders from the triple orientation step.
      */
@@ -197,6 +202,7 @@ public final class Cfci implements GraphSearch {
             possibleDSep.setDepth(getDepth());
             possibleDSep.setKnowledge(getKnowledge());
             possibleDSep.setMaxPathLength(getMaxReachablePathLength());
+            possibleDSep.setTimeBudget(possibleDsepTimeBudget);
 
             // We use these sepsets though.
             sepsets.addAll(possibleDSep.search());
@@ -229,6 +235,7 @@ public final class Cfci implements GraphSearch {
         fciOrient.setCompleteRuleSetUsed(completeRuleSetUsed);
         fciOrient.setMaxPathLength(-1);
         fciOrient.setKnowledge(knowledge);
+        fciOrient.setParallel(independenceTest instanceof ThreadSafeIndependenceTest);
         fciOrient.ruleR0(graph);
         fciOrient.doFinalOrientation(graph);
 
@@ -503,6 +510,27 @@ public final class Cfci implements GraphSearch {
         return maxReachablePathLength;
     }
 
+    /**
+     * @return the most milliseconds spent looking for a sepset of a pair in the possible dsep search, or -1 if
+     * unlimited, as by default.
+     */
+    public long getPossibleDsepTimeBudget() {
+        return possibleDsepTimeBudget;
+    }
+
+    /**
+     * @param possibleDsepTimeBudget the most milliseconds spent looking for a sepset of a pair in the possible dsep
+     *                               search, or -1 if unlimited. A pair that runs out of time keeps its edge, so
+     *                               with a budget the output may depend on the speed of the machine.
+     */
+    public void setPossibleDsepTimeBudget(long possibleDsepTimeBudget) {
+        if (possibleDsepTimeBudget < -1) {
+            throw new IllegalArgumentException("Time budget must be -1 (unlimited) or >= 0: " + possibleDsepTimeBudget);
+        }
+
+        this.possibleDsepTimeBudget = possibleDsepTimeBudget;
+    }
+
     private enum TripleType {
         COLLIDER, NONCOLLIDER, AMBIGUOUS
     }
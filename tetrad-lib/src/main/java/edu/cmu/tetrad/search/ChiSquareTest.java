@@ -21,13 +21,11 @@
 
 package edu.cmu.tetrad.search;
 
-import edu.cmu.tetrad.data.CellTable;
-import edu.cmu.tetrad.data.DataSet;
-import edu.cmu.tetrad.data.DiscreteVariable;
+import edu.cmu.tetrad.data.*;
 import edu.cmu.tetrad.util.CombinationIterator;
-import edu.cmu.tetrad.util.ProbUtils;
+import edu.cmu.tetrad.util.PValues;
 
-import java.util.Arrays;
+import java.util.*;
 
 /**
  * Calculates marginal chi square test results for a discrete dataset.
@@ -42,21 +40,44 @@ public class ChiSquareTest {
      */
     private DataSet dataSet;
 
+    /**
+     * The data, packed for counting.
+     */
+    private PackedIntDataBox packedData;
+
     /**
      * The number of values for each variable in the data.
      */
     private int[] dims;
 
     /**
-     * Stores the data in the form of a cell table.
+     * Stores the data in the form of a cell table, one per thread, so that
+     * tests can be done from several threads at once.
      */
-    private CellTable cellTable;
+    private final ThreadLocal<CellTable> cellTable = new ThreadLocal<CellTable>() {
+        protected CellTable initialValue() {
+            CellTable cellTable = new CellTable(null);
+            cellTable.setMissingValue(DiscreteVariable.MISSING_VALUE);
+            return cellTable;
+        }
+    };
 
     /**
      * The significance level of the test.
      */
     private double alpha;
 
+    /**
+     * The cell indices of the rows for recently used conditioning sets, so
+     * that tests that share a conditioning set fold it in only once.
+     */
+    private final Map<List<Integer>, int[]> conditioningCells;
+
+    /**
+     * The most cell indices, over all conditioning sets, to keep.
+     */
+    private static final int MAX_CONDITIONING_CELLS = 1 << 22;
+
     //==============================CONSTRUCTORS=========================//
 
     /**
@@ -80,9 +101,16 @@ public class ChiSquareTest {
         }
 
         this.dataSet = dataSet;
+        this.packedData = packData(dataSet);
         this.alpha = alpha;
-        this.cellTable = new CellTable(null);
-        this.getCellTable().setMissingValue(DiscreteVariable.MISSING_VALUE);
+
+        final int maxConditioningSets = Math.max(1, MAX_CONDITIONING_CELLS / Math.max(1, dataSet.getNumRows()));
+
+        this.conditioningCells = new LinkedHashMap<List<Integer>, int[]>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<List<Integer>, int[]> eldest) {
+                return size() > maxConditioningSets;
+            }
+        };
     }
 
     /**
@@ -94,7 +122,7 @@ public class ChiSquareTest {
 
         // Reset the cell table for the columns referred to in
         // 'testIndices.' Do cell coefs for those columns.
-        this.getCellTable().addToTable(getDataSet(), testIndices);
+        countCells(testIndices, 2);
 
         // Indicator arrays to tell the cell table which margins
         // to calculate. For x _||_ y | z1, z2, ..., we want to
@@ -190,7 +218,7 @@ public class ChiSquareTest {
             return new ChiSquareTest.Result(xSquare, pValue, df, indep);
         }
 
-        double pValue = 1.0 - ProbUtils.chisqCdf(xSquare, df);
+        double pValue = PValues.chiSquare(xSquare, df);
         boolean indep = (pValue > this.getAlpha());
         return new ChiSquareTest.Result(xSquare, pValue, df, indep);
     }
@@ -204,7 +232,7 @@ public class ChiSquareTest {
 
         // Reset the cell table for the columns referred to in
         // 'testIndices.' Do cell coefs for those columns.
-        this.getCellTable().addToTable(getDataSet(), testIndices);
+        countCells(testIndices, 1);
 
         // Indicator arrays to tell the cell table which margins
         // to calculate. For x _||_ y | z1, z2, ..., we want to
@@ -352,6 +380,50 @@ public class ChiSquareTest {
 
     //================================PRIVATE==============================//
 
+    /**
+     * Resets the cell table and counts into it the variables at the given
+     * indices. The variables after the first numLeading are the conditioning
+     * set, whose cell indices are remembered for the next tests to use it.
+     */
+    protected void countCells(int[] testIndices, int numLeading) {
+        int[] dims = selectFromArray(getDims(), testIndices);
+
+        if (numLeading == testIndices.length) {
+            getCellTable().addToTable(getPackedData(), testIndices, dims);
+            return;
+        }
+
+        int[] z = Arrays.copyOfRange(testIndices, numLeading, testIndices.length);
+        int[] zDims = Arrays.copyOfRange(dims, numLeading, dims.length);
+
+        getCellTable().addToTable(getPackedData(), testIndices, dims, numLeading, getConditioningCells(z, zDims));
+    }
+
+    private int[] getConditioningCells(int[] z, int[] dims) {
+        List<Integer> key = new ArrayList<>(z.length);
+
+        for (int v : z) {
+            key.add(v);
+        }
+
+        synchronized (conditioningCells) {
+            int[] cells = conditioningCells.get(key);
+
+            if (cells != null) {
+                return cells;
+            }
+        }
+
+        int[] cells = new int[getPackedData().numRows()];
+        getPackedData().updateCellIndices(z, dims, cells);
+
+        synchronized (conditioningCells) {
+            conditioningCells.put(key, cells);
+        }
+
+        return cells;
+    }
+
     public int[] selectFromArray(int[] arr, int[] indices) {
         int[] retArr = new int[indices.length];
 
@@ -366,12 +438,38 @@ public class ChiSquareTest {
         return dataSet;
     }
 
+    /**
+     * @return the data, packed for counting into the cell table.
+     */
+    public PackedIntDataBox getPackedData() {
+        return packedData;
+    }
+
     public int[] getDims() {
         return dims;
     }
 
+    /**
+     * @return the cell table of the calling thread.
+     */
     public CellTable getCellTable() {
-        return cellTable;
+        return cellTable.get();
+    }
+
+    private static PackedIntDataBox packData(DataSet dataSet) {
+        if (dataSet instanceof BoxDataSet && ((BoxDataSet) dataSet).getDataBox() instanceof PackedIntDataBox) {
+            return (PackedIntDataBox) ((BoxDataSet) dataSet).getDataBox();
+        }
+
+        int[][] data = new int[dataSet.getNumColumns()][dataSet.getNumRows()];
+
+        for (int j = 0; j < dataSet.getNumColumns(); j++) {
+            for (int i = 0; i < dataSet.getNumRows(); i++) {
+                data[j][i] = dataSet.getInt(i, j);
+            }
+        }
+
+        return new PackedIntDataBox(data);
     }
 
     //===============================CLASSES==============================//
@@ -0,0 +1,175 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.ICovarianceMatrix;
+
+import java.util.Arrays;
+
+/**
+ * Calculates partial correlations from a covariance matrix using a Cholesky
+ * factor of the conditioning block. Searches such as PC test long runs of
+ * conditioning sets that share a prefix ({z1, z2, z3}, {z1, z2, z4}, ...), so
+ * each thread keeps the factor of its last conditioning set and, for the next
+ * one, keeps the rows for the shared prefix and adds a row for each new
+ * variable (O(|z|^2) per row) rather than inverting a fresh submatrix. The
+ * covariances of x and y with z are then solved against the factor.
+ * <p>
+ * The factors hold no reference to this object or to the covariance matrix,
+ * so a dropped instance, and its covariance matrix, can be collected even
+ * though the factor it left in each pool thread lives on until the thread
+ * next clears stale entries.
+ */
+public class CholeskyPartialCorrelation {
+
+    private final ICovarianceMatrix cov;
+
+    /**
+     * The factor of the last conditioning set, for each thread.
+     */
+    private final ThreadLocal<Factor> factor = new ThreadLocal<>();
+
+    public CholeskyPartialCorrelation(ICovarianceMatrix cov) {
+        this.cov = cov;
+    }
+
+    /**
+     * @return the partial correlation of x and y given z, where these are
+     * indices into the covariance matrix, or NaN if the covariance matrix of
+     * z is not positive definite.
+     */
+    public double corr(int x, int y, int[] z) {
+        Factor factor = this.factor.get();
+
+        if (factor == null) {
+            factor = new Factor();
+            this.factor.set(factor);
+        }
+
+        if (!factor.set(cov, z)) {
+            return Double.NaN;
+        }
+
+        double[] a = factor.solve(cov, x, factor.a);
+        double[] b = factor.solve(cov, y, factor.b);
+
+        double sxy = cov.getValue(x, y);
+        double sxx = cov.getValue(x, x);
+        double syy = cov.getValue(y, y);
+
+        for (int i = 0; i < z.length; i++) {
+            sxy -= a[i] * b[i];
+            sxx -= a[i] * a[i];
+            syy -= b[i] * b[i];
+        }
+
+        return sxy / Math.sqrt(sxx * syy);
+    }
+
+    /**
+     * A lower triangular L with L L' = cov(z, z) for the conditioning set z,
+     * stored by rows. Static, and given the covariance matrix on each call,
+     * so that it keeps neither alive.
+     */
+    private static class Factor {
+        private int[] z = new int[0];
+        private double[][] rows = new double[0][];
+        private int size = 0;
+        private double[] a = new double[0];
+        private double[] b = new double[0];
+
+        /**
+         * Makes this the factor for the given conditioning set, reusing the
+         * rows for the prefix it shares with the last one.
+         *
+         * @return false if cov(z, z) is not positive definite.
+         */
+        boolean set(ICovarianceMatrix cov, int[] z) {
+            if (z.length > this.z.length) {
+                this.z = Arrays.copyOf(this.z, z.length);
+                this.rows = Arrays.copyOf(this.rows, z.length);
+                this.a = new double[z.length];
+                this.b = new double[z.length];
+            }
+
+            int k = 0;
+
+            while (k < size && k < z.length && this.z[k] == z[k]) {
+                k++;
+            }
+
+            size = k;
+
+            for (; k < z.length; k++) {
+                double[] row = rows[k];
+
+                if (row == null) {
+                    row = rows[k] = new double[k + 1];
+                }
+
+                // Solve L[0..k) l = cov(z[0..k), z[k]) for the new row.
+                double d = cov.getValue(z[k], z[k]);
+
+                for (int i = 0; i < k; i++) {
+                    double[] ri = rows[i];
+                    double s = cov.getValue(z[i], z[k]);
+
+                    for (int j = 0; j < i; j++) {
+                        s -= ri[j] * row[j];
+                    }
+
+                    row[i] = s / ri[i];
+                    d -= row[i] * row[i];
+                }
+
+                if (!(d > 0)) {
+                    return false;
+                }
+
+                row[k] = Math.sqrt(d);
+                this.z[k] = z[k];
+                size = k + 1;
+            }
+
+            return true;
+        }
+
+        /**
+         * Solves L v = cov(z, x) into the given array.
+         */
+        double[] solve(ICovarianceMatrix cov, int x, double[] v) {
+            for (int i = 0; i < size; i++) {
+                double[] ri = rows[i];
+                double s = cov.getValue(z[i], x);
+
+                for (int j = 0; j < i; j++) {
+                    s -= ri[j] * v[j];
+                }
+
+                v[i] = s / ri[i];
+            }
+
+            return v;
+        }
+    }
+}
@@ -26,17 +26,28 @@ import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.DiscreteVariable;
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.util.TetradMatrix;
-import org.apache.commons.math3.stat.correlation.Covariance;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Implements a conditional Gaussian BIC score for FGS.
+ * <p>
+ * The rows of the data are partitioned by the cells of each set of discrete variables once, and the partitions are
+ * kept (up to a maximum number, least recently used first out). Each partition keeps the per-cell means and
+ * covariances of the continuous variables as they are needed, so a local score computes only the statistics it has
+ * not seen before, for any set of continuous parents. Safe to use from several threads.
  *
  * @author Joseph Ramsey
  */
 public class ConditionalGaussianLikelihood {
 
+    /**
+     * The default maximum number of partitions kept.
+     */
+    public static final int DEFAULT_MAX_PARTITIONS = 200;
+
     private DataSet dataSet;
 
     // The variables of the continuousData set.
@@ -51,14 +62,28 @@ public class ConditionalGaussianLikelihood {
     // Discrete data only.
     private int[][] discreteData;
 
+    // Partitions of the rows by sorted discrete column indices, in order of use.
+    private final Map<List<Integer>, Partition> partitions;
+
     /**
      * Constructs the score using a covariance matrix.
      */
     public ConditionalGaussianLikelihood(DataSet dataSet) {
+        this(dataSet, DEFAULT_MAX_PARTITIONS);
+    }
+
+    /**
+     * Constructs the score, keeping at most the given number of row partitions.
+     */
+    public ConditionalGaussianLikelihood(DataSet dataSet, final int maxPartitions) {
         if (dataSet == null) {
             throw new NullPointerException();
         }
 
+        if (maxPartitions < 1) {
+            throw new IllegalArgumentException("Must keep at least one partition: " + maxPartitions);
+        }
+
         this.dataSet = dataSet;
         this.variables = dataSet.getVariables();
 
@@ -94,7 +119,11 @@ public class ConditionalGaussianLikelihood {
             nodesHash.put(v, j);
         }
 
-        this.adTree = AdTrees.getAdLeafTree(dataSet);//   new AdLeafTree(dataSet);
+        this.partitions = Collections.synchronizedMap(new LinkedHashMap<List<Integer>, Partition>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<List<Integer>, Partition> eldest) {
+                return size() > maxPartitions;
+            }
+        });
     }
 
     private int getDof2(int i, int[] parents) {
@@ -166,16 +195,26 @@ public class ConditionalGaussianLikelihood {
     private Ret getJointLikelihood(List<ContinuousVariable> X, List<DiscreteVariable> A) {
         int p = X.size();
 
-//        List<List<Integer>> cells = getCellsOriginal(A);
-        List<List<Integer>> cells = adTree.getCellLeaves(A);
+        Partition partition = getPartition(A);
 
         int[] continuousCols = new int[p];
         for (int j = 0; j < p; j++) continuousCols[j] = nodesHash.get(X.get(j));
         int N = dataSet.getNumRows();
         double lik = 0;
 
-        for (List<Integer> cell : cells) {
-            int r = cell.size();
+        // Per-cell covariances of each pair of the continuous variables.
+        double[][][] covariances = new double[p][p][];
+        for (int j = 0; j < p; j++) {
+            for (int k = j; k < p; k++) {
+                covariances[j][k] = partition.getCovariances(continuousCols[j], continuousCols[k]);
+            }
+        }
+
+        double[][] sigma = new double[p][p];
+        int numCells = partition.getNumCells();
+
+        for (int c = 0; c < numCells; c++) {
+            int r = partition.getCellSize(c);
 
             if (A.size() > 0) {
                 if (r > 0) {
@@ -186,18 +225,14 @@ public class ConditionalGaussianLikelihood {
 
             if (X.size() > 0) {
                 if (r > 3 * p) {
-                    TetradMatrix subset = new TetradMatrix(r, p);
-
-                    for (int i = 0; i < r; i++) {
-                        for (int j = 0; j < p; j++) {
-                            subset.set(i, j, continuousData[continuousCols[j]][cell.get(i)]);
+                    for (int j = 0; j < p; j++) {
+                        for (int k = j; k < p; k++) {
+                            sigma[j][k] = covariances[j][k][c];
+                            sigma[k][j] = sigma[j][k];
                         }
                     }
 
-                    TetradMatrix Sigma = new TetradMatrix(new Covariance(subset.getRealMatrix(),
-                            false).getCovarianceMatrix());
-                    double det = Sigma.det();
-                    lik -= 0.5 * r * Math.log(det);
+                    lik -= 0.5 * r * logDet(sigma);
                 }
 
                 lik -= 0.5 * r * p * (1.0 + Math.log(2.0 * Math.PI));
@@ -209,6 +244,192 @@ public class ConditionalGaussianLikelihood {
         return new Ret(lik, dof);
     }
 
+    // The log determinant of a covariance matrix, by Cholesky decomposition in place if it is positive definite.
+    private static double logDet(double[][] sigma) {
+        int p = sigma.length;
+        double logDet = 0.0;
+
+        for (int j = 0; j < p; j++) {
+            double d = sigma[j][j];
+
+            for (int k = 0; k < j; k++) {
+                d -= sigma[j][k] * sigma[j][k];
+            }
+
+            if (!(d > 0)) {
+                return Math.log(new TetradMatrix(restore(sigma)).det());
+            }
+
+            double l = Math.sqrt(d);
+            sigma[j][j] = l;
+            logDet += 2.0 * Math.log(l);
+
+            for (int i = j + 1; i < p; i++) {
+                double s = sigma[i][j];
+
+                for (int k = 0; k < j; k++) {
+                    s -= sigma[i][k] * sigma[j][k];
+                }
+
+                sigma[i][j] = s / l;
+            }
+        }
+
+        return logDet;
+    }
+
+    // The matrix from its upper triangle, which the Cholesky decomposition leaves alone.
+    private static double[][] restore(double[][] sigma) {
+        int p = sigma.length;
+        double[][] restored = new double[p][p];
+
+        for (int j = 0; j < p; j++) {
+            for (int k = j; k < p; k++) {
+                restored[j][k] = sigma[j][k];
+                restored[k][j] = sigma[j][k];
+            }
+        }
+
+        return restored;
+    }
+
+    private Partition getPartition(List<DiscreteVariable> A) {
+        int[] discreteCols = new int[A.size()];
+        for (int j = 0; j < A.size(); j++) discreteCols[j] = nodesHash.get(A.get(j));
+        Arrays.sort(discreteCols);
+
+        List<Integer> key = new ArrayList<>();
+        for (int col : discreteCols) key.add(col);
+
+        Partition partition = partitions.get(key);
+
+        if (partition == null) {
+            partition = new Partition(discreteCols);
+            partitions.put(key, partition);
+        }
+
+        return partition;
+    }
+
+    /**
+     * The rows of the data grouped by the cells of a set of discrete variables, with the per-cell means and
+     * covariances of the continuous variables, computed on first use. Cells are ordered as by getRowIndex, with
+     * the variables in column order, and rows are in increasing order within each cell.
+     */
+    private class Partition {
+        private final int[] rows;
+
+        // Cell c has the rows from starts[c] up to but not including starts[c + 1].
+        private final int[] starts;
+
+        private final ConcurrentMap<Integer, double[]> means = new ConcurrentHashMap<>();
+        private final ConcurrentMap<Integer, double[]> covariances = new ConcurrentHashMap<>();
+
+        Partition(int[] discreteCols) {
+            int n = dataSet.getNumRows();
+            int[] dims = new int[discreteCols.length];
+            int numCells = 1;
+
+            for (int j = 0; j < discreteCols.length; j++) {
+                dims[j] = ((DiscreteVariable) variables.get(discreteCols[j])).getNumCategories();
+                numCells *= dims[j];
+            }
+
+            int[] cells = new int[n];
+            this.starts = new int[numCells + 1];
+
+            for (int i = 0; i < n; i++) {
+                int cell = 0;
+
+                for (int j = 0; j < discreteCols.length; j++) {
+                    cell *= dims[j];
+                    cell += discreteData[discreteCols[j]][i];
+                }
+
+                cells[i] = cell;
+                starts[cell + 1]++;
+            }
+
+            for (int c = 0; c < numCells; c++) {
+                starts[c + 1] += starts[c];
+            }
+
+            this.rows = new int[n];
+            int[] next = Arrays.copyOf(starts, numCells);
+
+            for (int i = 0; i < n; i++) {
+                rows[next[cells[i]]++] = i;
+            }
+        }
+
+        int getNumCells() {
+            return starts.length - 1;
+        }
+
+        int getCellSize(int c) {
+            return starts[c + 1] - starts[c];
+        }
+
+        // The mean of the given column in each cell.
+        double[] getMeans(int col) {
+            double[] _means = means.get(col);
+
+            if (_means == null) {
+                double[] data = continuousData[col];
+                _means = new double[getNumCells()];
+
+                for (int c = 0; c < _means.length; c++) {
+                    double sum = 0.0;
+
+                    for (int i = starts[c]; i < starts[c + 1]; i++) {
+                        sum += data[rows[i]];
+                    }
+
+                    _means[c] = sum / getCellSize(c);
+                }
+
+                means.put(col, _means);
+            }
+
+            return _means;
+        }
+
+        // The covariance (with divisor r, the cell size) of the two columns in each cell.
+        double[] getCovariances(int col1, int col2) {
+            if (col1 > col2) {
+                int t = col1;
+                col1 = col2;
+                col2 = t;
+            }
+
+            int key = col1 * variables.size() + col2;
+            double[] _covariances = covariances.get(key);
+
+            if (_covariances == null) {
+                double[] data1 = continuousData[col1];
+                double[] data2 = continuousData[col2];
+                double[] means1 = getMeans(col1);
+                double[] means2 = getMeans(col2);
+                _covariances = new double[getNumCells()];
+
+                for (int c = 0; c < _covariances.length; c++) {
+                    double sum = 0.0;
+
+                    for (int i = starts[c]; i < starts[c + 1]; i++) {
+                        int row = rows[i];
+                        sum += (data1[row] - means1[c]) * (data2[row] - means2[c]);
+                    }
+
+                    _covariances[c] = sum / getCellSize(c);
+                }
+
+                covariances.put(key, _covariances);
+            }
+
+            return _covariances;
+        }
+    }
+
     private List<List<Integer>> getCellsOriginal(List<DiscreteVariable> A) {
         int d = A.size();
 
@@ -239,8 +460,6 @@ public class ConditionalGaussianLikelihood {
         return cells;
     }
 
-    private AdLeafTree adTree;
-
     public class Ret {
         private double lik;
         private int dof;
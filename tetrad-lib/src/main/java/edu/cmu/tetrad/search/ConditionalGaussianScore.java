@@ -86,6 +86,27 @@ public class ConditionalGaussianScore implements Score {
         return localScore(y, x) - localScore(y);
     }
 
+    @Override
+    public double[] localScoreDiffs(int[] xs, int y, int[] z) {
+        double[] diffs = new double[xs.length];
+
+        if (z.length == 0) {
+            double score = localScore(y);
+
+            for (int i = 0; i < xs.length; i++) {
+                diffs[i] = localScore(y, xs[i]) - score;
+            }
+        } else {
+            double score = localScore(y, z);
+
+            for (int i = 0; i < xs.length; i++) {
+                diffs[i] = localScore(y, append(z, xs[i])) - score;
+            }
+        }
+
+        return diffs;
+    }
+
     private int[] append(int[] parents, int extra) {
         int[] all = new int[parents.length + 1];
         System.arraycopy(parents, 0, all, 0, parents.length);
@@ -27,10 +27,7 @@ import edu.cmu.tetrad.graph.*;
 import edu.cmu.tetrad.util.ChoiceGenerator;
 import edu.cmu.tetrad.util.TetradLogger;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 
 /**
  * Implements a convervative version of PC, in which the Markov condition is assumed but faithfulness is tested
@@ -399,47 +396,49 @@ Cpc implements GraphSearch {
         colliderTriples = new HashSet<>();
         noncolliderTriples = new HashSet<>();
         ambiguousTriples = new HashSet<>();
-        List<Node> nodes = graph.getNodes();
+        List<Triple> triples = UnshieldedTriples.getUnshieldedTriples(graph);
 
-        for (Node y : nodes) {
-            List<Node> adjacentNodes = graph.getAdjacentNodes(y);
+        // The triples with the same ends share their sepsets, which are found for all of the ends at once, in parallel
+        // if the test allows.
+        List<List<Node>> ends = UnshieldedTriples.getEnds(triples);
 
-            if (adjacentNodes.size() < 2) {
-                continue;
-            }
-
-            ChoiceGenerator cg = new ChoiceGenerator(adjacentNodes.size(), 2);
-            int[] combination;
+        List<List<List<Node>>> sepsetLists = UnshieldedTriples.classify(ends,
+                new UnshieldedTriples.Classifier<List<Node>, List<List<Node>>>() {
+                    public List<List<Node>> classify(List<Node> pair) {
+                        return getSepsets(pair.get(0), pair.get(1), graph);
+                    }
+                }, independenceTest instanceof ThreadSafeIndependenceTest);
 
-            while ((combination = cg.next()) != null) {
-                Node x = adjacentNodes.get(combination[0]);
-                Node z = adjacentNodes.get(combination[1]);
+        Map<List<Node>, List<List<Node>>> sepsetsByEnds = new HashMap<>();
 
-                if (this.graph.isAdjacentTo(x, z)) {
-                    continue;
-                }
+        for (int i = 0; i < ends.size(); i++) {
+            sepsetsByEnds.put(ends.get(i), sepsetLists.get(i));
+        }
 
-                List<List<Node>> sepsetsxz = getSepsets(x, z, graph);
+        for (Triple triple : triples) {
+            Node x = triple.getX();
+            Node y = triple.getY();
+            Node z = triple.getZ();
 
-                if (isColliderSepset(y, sepsetsxz)) {
-                    if (colliderAllowed(x, y, z, knowledge)) {
-                        graph.setEndpoint(x, y, Endpoint.ARROW);
-                        graph.setEndpoint(z, y, Endpoint.ARROW);
+            List<List<Node>> sepsetsxz = sepsetsByEnds.get(Arrays.asList(x, z));
 
-                        TetradLogger.getInstance().log("colliderOrientations", SearchLogUtils.colliderOrientedMsg(x, y, z));
-                    }
+            if (isColliderSepset(y, sepsetsxz)) {
+                if (colliderAllowed(x, y, z, knowledge)) {
+                    graph.setEndpoint(x, y, Endpoint.ARROW);
+                    graph.setEndpoint(z, y, Endpoint.ARROW);
 
-                    colliderTriples.add(new Triple(x, y, z));
-                } else if (isNoncolliderSepset(y, sepsetsxz)) {
-                    noncolliderTriples.add(new Triple(x, y, z));
-                } else {
-                    Triple triple = new Triple(x, y, z);
-                    ambiguousTriples.add(triple);
-                    graph.addAmbiguousTriple(triple.getX(), triple.getY(), triple.getZ());
+                    TetradLogger.getInstance().log("colliderOrientations", SearchLogUtils.colliderOrientedMsg(x, y, z));
                 }
 
-                getAllTriples().add(new Triple(x, y, z));
+                colliderTriples.add(new Triple(x, y, z));
+            } else if (isNoncolliderSepset(y, sepsetsxz)) {
+                noncolliderTriples.add(new Triple(x, y, z));
+            } else {
+                ambiguousTriples.add(triple);
+                graph.addAmbiguousTriple(triple.getX(), triple.getY(), triple.getZ());
             }
+
+            getAllTriples().add(new Triple(x, y, z));
         }
 
         TetradLogger.getInstance().log("info", "Finishing Collider Orientation.");
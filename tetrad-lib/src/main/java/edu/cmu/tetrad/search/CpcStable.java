@@ -28,10 +28,7 @@ import edu.cmu.tetrad.util.ChoiceGenerator;
 import edu.cmu.tetrad.util.TetradLogger;
 
 import java.io.PrintStream;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 
 /**
  * Implements a convervative version of PC, in which the Markov condition is assumed but faithfulness is tested
@@ -261,7 +258,6 @@ public final class CpcStable implements GraphSearch {
 
         SearchGraphUtils.pcOrientbk(knowledge, getGraph(), nodes);
 
-//            orientUnshieldedTriplesConcurrent(knowledge, getIndependenceTest(), getMaxIndegree());
         orientUnshieldedTriples(knowledge);
 
         MeekRules meekRules = new MeekRules();
@@ -284,42 +280,44 @@ public final class CpcStable implements GraphSearch {
     private void orientUnshieldedTriples(IKnowledge knowledge) {
         TetradLogger.getInstance().log("info", "Starting Collider Orientation:");
 
-        List<Node> nodes = graph.getNodes();
+        List<Triple> triples = UnshieldedTriples.getUnshieldedTriples(graph);
 
-        for (Node y : nodes) {
-            List<Node> adjacentNodes = graph.getAdjacentNodes(y);
+        // The triples with the same ends share their sepsets, which are found for all of the ends at once, in parallel
+        // if the test allows.
+        List<List<Node>> ends = UnshieldedTriples.getEnds(triples);
 
-            if (adjacentNodes.size() < 2) {
-                continue;
-            }
+        List<List<List<Node>>> sepsetLists = UnshieldedTriples.classify(ends,
+                new UnshieldedTriples.Classifier<List<Node>, List<List<Node>>>() {
+                    public List<List<Node>> classify(List<Node> pair) {
+                        return getSepsets(pair.get(0), pair.get(1), graph);
+                    }
+                }, independenceTest instanceof ThreadSafeIndependenceTest);
 
-            ChoiceGenerator cg = new ChoiceGenerator(adjacentNodes.size(), 2);
-            int[] combination;
+        Map<List<Node>, List<List<Node>>> sepsetsByEnds = new HashMap<>();
 
-            while ((combination = cg.next()) != null) {
-                Node x = adjacentNodes.get(combination[0]);
-                Node z = adjacentNodes.get(combination[1]);
+        for (int i = 0; i < ends.size(); i++) {
+            sepsetsByEnds.put(ends.get(i), sepsetLists.get(i));
+        }
 
-                if (this.graph.isAdjacentTo(x, z)) {
-                    continue;
-                }
+        for (Triple triple : triples) {
+            Node x = triple.getX();
+            Node y = triple.getY();
+            Node z = triple.getZ();
 
-                List<List<Node>> sepsetsxz = getSepsets(x, z, graph);
+            List<List<Node>> sepsetsxz = sepsetsByEnds.get(Arrays.asList(x, z));
 
-                if (isColliderSepset(y, sepsetsxz)) {
-                    if (colliderAllowed(x, y, z, knowledge)) {
-                        graph.setEndpoint(x, y, Endpoint.ARROW);
-                        graph.setEndpoint(z, y, Endpoint.ARROW);
+            if (isColliderSepset(y, sepsetsxz)) {
+                if (colliderAllowed(x, y, z, knowledge)) {
+                    graph.setEndpoint(x, y, Endpoint.ARROW);
+                    graph.setEndpoint(z, y, Endpoint.ARROW);
 
-                        TetradLogger.getInstance().log("colliderOrientations", SearchLogUtils.colliderOrientedMsg(x, y, z));
-                    }
-                } else {
-                    Triple triple = new Triple(x, y, z);
-                    graph.addAmbiguousTriple(triple.getX(), triple.getY(), triple.getZ());
+                    TetradLogger.getInstance().log("colliderOrientations", SearchLogUtils.colliderOrientedMsg(x, y, z));
                 }
-
-                getAllTriples().add(new Triple(x, y, z));
+            } else {
+                graph.addAmbiguousTriple(triple.getX(), triple.getY(), triple.getZ());
             }
+
+            getAllTriples().add(new Triple(x, y, z));
         }
 
         TetradLogger.getInstance().log("info", "Finishing Collider Orientation.");
@@ -367,91 +365,6 @@ public final class CpcStable implements GraphSearch {
     }
 
 
-//    private void orientUnshieldedTriplesConcurrent(final IKnowledge knowledge,
-//                                                   final IndependenceTest test, final int depth) {
-//        ForkJoinPool pool = ForkJoinPoolInstance.getInstance().getPool();
-//
-//        TetradLogger.getInstance().log("info", "Starting Collider Orientation:");
-//
-//        final List<Node> nodes = getGraph().getNodes();
-//
-//        final int chunk = 50;
-//
-//        class TripleTask extends RecursiveTask<Boolean> {
-//            private int chunk;
-//            private int from;
-//            private int to;
-//
-//            public TripleTask(int chunk, int from, int to) {
-//                this.chunk = chunk;
-//                this.from = from;
-//                this.to = to;
-//            }
-//
-//            @Override
-//            protected Boolean compute() {
-//                if (to - from <= chunk) {
-//                    for (int i = from; i < to; i++) {
-//                        if ((i + 1) % 1000 == 0) System.out.println((i + 1) + " triple task");
-//                        final Node y = nodes.get(i);
-//
-//                        List<Node> adjacentNodes = getGraph().getAdjacentNodes(y);
-//
-//                        if (adjacentNodes.size() < 2) {
-//                            continue;
-//                        }
-//
-//                        ChoiceGenerator cg = new ChoiceGenerator(adjacentNodes.size(), 2);
-//                        int[] combination;
-//
-//                        while ((combination = cg.next()) != null) {
-//                            final Node x = adjacentNodes.get(combination[0]);
-//                            final Node z = adjacentNodes.get(combination[1]);
-//
-//                            if (graph.isAdjacentTo(x, z)) {
-//                                continue;
-//                            }
-//
-//                            SearchGraphUtils.CpcTripleType type = SearchGraphUtils.getCpcTripleType(x, y, z, test, depth, getGraph(), verbose);
-//
-//                            if (type == SearchGraphUtils.CpcTripleType.COLLIDER) {
-//                                if (colliderAllowed(x, y, z, knowledge)) {
-//                                    getGraph().setEndpoint(x, y, Endpoint.ARROW);
-//                                    getGraph().setEndpoint(z, y, Endpoint.ARROW);
-//
-//                                    TetradLogger.getInstance().log("colliderOrientations", SearchLogUtils.colliderOrientedMsg(x, y, z));
-//                                }
-//                            } else if (type == SearchGraphUtils.CpcTripleType.AMBIGUOUS) {
-//                                Triple triple = new Triple(x, y, z);
-//                                getGraph().addAmbiguousTriple(triple.getX(), triple.getY(), triple.getZ());
-//                            }
-//                        }
-//                    }
-//
-//                    return true;
-//                } else {
-//                    List<TripleTask> tasks = new ArrayList<TripleTask>();
-//
-//                    final int mid1 = (this.to - from) / 4;
-//                    final int mid2 = mid1 + mid1;
-//                    final int mid3 = mid1 + mid1 + mid1;
-//
-//                    tasks.add(new TripleTask(chunk, from, from + mid1));
-//                    tasks.add(new TripleTask(chunk, from + mid1, from + mid2));
-//                    tasks.add(new TripleTask(chunk, from + mid2, from + mid3));
-//                    tasks.add(new TripleTask(chunk, from + mid3, to));
-//
-//                    invokeAll(tasks);
-//
-//                    return true;
-//                }
-//            }
-//        }
-//
-//        pool.invoke(new TripleTask(chunk, 0, nodes.size()));
-//        TetradLogger.getInstance().log("info", "Finishing Collider Orientation.");
-//    }
-
     private boolean colliderAllowed(Node x, Node y, Node z, IKnowledge knowledge) {
         return CpcStable.isArrowpointAllowed1(x, y, knowledge) &&
                 CpcStable.isArrowpointAllowed1(z, y, knowledge);
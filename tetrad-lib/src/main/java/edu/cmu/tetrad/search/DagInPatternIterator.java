@@ -93,10 +93,7 @@ public class DagInPatternIterator {
 //            }
 //        }
 
-        HashMap<Graph, Set<Edge>> changedEdges = new HashMap<>();
-        changedEdges.put(pattern, new HashSet<Edge>());
-
-        decoratedGraphs.add(new DecoratedGraph(pattern, getKnowledge(), changedEdges,
+        decoratedGraphs.add(new DecoratedGraph(pattern, getKnowledge(), new HashSet<Edge>(),
                 allowArbitraryOrientations));
         this.colliders = GraphUtils.listColliderTriples(pattern);
     }
@@ -174,14 +171,16 @@ public class DagInPatternIterator {
         private boolean triedLeft = false;
         private boolean triedRight = false;
         private IKnowledge knowledge;
-        private Map<Graph, Set<Edge>> changedEdges = new HashMap<>();
+
+        // The edges oriented on the way to this graph, for highlighting.
+        private Set<Edge> changedEdges;
         private boolean allowArbitraryOrientation = true;
 
-        public DecoratedGraph(Graph graph, IKnowledge knowledge, Map<Graph, Set<Edge>> changedEdges, boolean allowArbitraryOrientation) {
+        public DecoratedGraph(Graph graph, IKnowledge knowledge, Set<Edge> changedEdges, boolean allowArbitraryOrientation) {
             this.graph = graph;
             this.edge = findUndirectedEdge(graph);
             this.knowledge = knowledge;
-            this.setChangedEdges(new HashMap<>(changedEdges));
+            this.setChangedEdges(changedEdges);
             this.allowArbitraryOrientation = allowArbitraryOrientation;
         }
 
@@ -243,7 +242,7 @@ public class DagInPatternIterator {
                 graph.addDirectedEdge(edge.getNode2(), edge.getNode1());
 
                 edges.add(graph.getEdge(edge.getNode2(), edge.getNode1()));
-                edges.addAll(new HashSet<>(getChangedEdges().get(this.graph)));
+                edges.addAll(getChangedEdges());
 
                 MeekRules meek = new MeekRules();
                 meek.setKnowledge(getKnowledge());
@@ -253,7 +252,6 @@ public class DagInPatternIterator {
                 Set<Edge> changedEdges = meek.getChangedEdges().keySet();
 
                 edges.addAll(changedEdges);
-                this.getChangedEdges().put(graph, edges);
 
                 for (Edge edge : edges) {
                     graph.setHighlighted(edge, true);
@@ -261,7 +259,7 @@ public class DagInPatternIterator {
 
                 triedLeft = true;
                 fail(graph, "A");
-                return new DecoratedGraph(graph, getKnowledge(), this.getChangedEdges(),
+                return new DecoratedGraph(graph, getKnowledge(), edges,
                         isAllowArbitraryOrientation());
             }
 
@@ -274,14 +272,12 @@ public class DagInPatternIterator {
                 graph.addDirectedEdge(edge.getNode1(), edge.getNode2());
 
                 edges.add(graph.getEdge(edge.getNode1(), edge.getNode2()));
-                edges.addAll(new HashSet<>(getChangedEdges().get(this.graph)));
+                edges.addAll(getChangedEdges());
 
                 MeekRules meek = new MeekRules();
                 meek.setKnowledge(getKnowledge());
                 meek.orientImplied(graph);
 
-                this.getChangedEdges().put(graph, edges);
-
                 for (Edge edge : edges) {
                     graph.setHighlighted(edge, true);
                 }
@@ -289,7 +285,7 @@ public class DagInPatternIterator {
                 triedRight = true;
                 fail(graph, "B");
 
-                return new DecoratedGraph(graph, getKnowledge(), this.getChangedEdges(),
+                return new DecoratedGraph(graph, getKnowledge(), edges,
                         isAllowArbitraryOrientation());
             }
 
@@ -306,11 +302,11 @@ public class DagInPatternIterator {
             return knowledge;
         }
 
-        public Map<Graph, Set<Edge>> getChangedEdges() {
+        public Set<Edge> getChangedEdges() {
             return changedEdges;
         }
 
-        public void setChangedEdges(Map<Graph, Set<Edge>> changedEdges) {
+        public void setChangedEdges(Set<Edge> changedEdges) {
             this.changedEdges = changedEdges;
         }
 
@@ -23,8 +23,8 @@ package edu.cmu.tetrad.search;
 
 import edu.cmu.tetrad.data.*;
 import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.PValues;
 import edu.cmu.tetrad.util.TetradMatrix;
-import org.apache.commons.math3.distribution.ChiSquaredDistribution;
 import org.apache.commons.math3.linear.SingularMatrixException;
 
 import java.util.*;
@@ -104,9 +104,7 @@ public class DeltaSextadTest {
 //        int df = sextads.length;
         int df = dofHarman(sextads.length);
         double chisq = calcChiSquare(sextads);
-//        double cdf = ProbUtils.chisqCdf(chisq, df);
-        double cdf = new ChiSquaredDistribution(df).cumulativeProbability(chisq);
-        return 1.0 - cdf;
+        return PValues.chiSquare(chisq, df);
     }
 
     /**
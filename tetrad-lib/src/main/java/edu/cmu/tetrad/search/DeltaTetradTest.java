@@ -23,8 +23,8 @@ package edu.cmu.tetrad.search;
 
 import edu.cmu.tetrad.data.*;
 import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.PValues;
 import edu.cmu.tetrad.util.TetradMatrix;
-import org.apache.commons.math3.distribution.ChiSquaredDistribution;
 
 import java.util.*;
 
@@ -240,8 +240,7 @@ public class DeltaTetradTest {
      * @return the p value for the most recent test.
      */
     public double getPValue() {
-        double cdf = new ChiSquaredDistribution(this.df).cumulativeProbability(this.chisq);
-        return 1.0 - cdf;
+        return PValues.chiSquare(this.chisq, this.df);
     }
 
     public double getPValue(Tetrad... tetrads) {
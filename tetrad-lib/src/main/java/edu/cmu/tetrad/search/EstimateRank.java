@@ -21,7 +21,7 @@
 
 package edu.cmu.tetrad.search;
 
-import edu.cmu.tetrad.util.ProbUtils;
+import edu.cmu.tetrad.util.PValues;
 import org.apache.commons.math3.linear.*;
 
 import java.util.Arrays;
@@ -87,7 +87,8 @@ public class EstimateRank {
                 sum += Math.log(1 - Math.pow(Cors[i], 2));
             }
             double stat = -(A.length - .5 * (A[0].length + B[0].length + 3)) * sum;
-            reject = ProbUtils.chisqCdf(stat, (A[0].length - rank) * (B[0].length - rank)) > (1 - alpha);
+            int df = (A[0].length - rank) * (B[0].length - rank);
+            reject = df > 0 && stat > PValues.chiSquareCutoff(alpha, df);
             if (reject & rank < Math.min(A[0].length, B[0].length)) {
                 rank++;
             } else {
@@ -115,7 +116,8 @@ public class EstimateRank {
                 sum += Math.log(1 - Math.pow(Cors[i], 2));
             }
             double stat = -(N - .5 * (iA.length + iB.length + 3)) * sum;
-            reject = ProbUtils.chisqCdf(stat, (iA.length - rank) * (iB.length - rank)) > (1 - alpha);
+            int df = (iA.length - rank) * (iB.length - rank);
+            reject = df > 0 && stat > PValues.chiSquareCutoff(alpha, df);
             if (reject & rank < Math.min(iA.length, iB.length)) {
                 rank++;
             } else {
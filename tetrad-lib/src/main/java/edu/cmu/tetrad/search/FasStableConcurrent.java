@@ -30,8 +30,8 @@ import java.io.PrintStream;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.*;
-import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.RecursiveTask;
 
 /**
@@ -43,8 +43,18 @@ import java.util.concurrent.RecursiveTask;
  * search is different for different algorithm, depending on the assumptions of the algorithm. A mapping from {x, y} to
  * S({x, y}) is returned for edges x *-* y that have been removed.
  * </p>
- * This variant uses the PC-Stable modification, calculating independencies in parallel within each depth.
- * It uses a slightly different algorithm from FasStableConcurrent, probably better.
+ * This variant uses the PC-Stable modification, calculating independencies in parallel within each depth. Each node
+ * x is a task. Its adjacencies are fixed for the depth, and the task runs through the subsets S of adj(x) of size d
+ * once, testing X _||_ Y | S for every Y in adj(x) not in S that has no sepset yet. Tests that share a conditioning
+ * set therefore run one after another in one thread, where the test can reuse whatever it computed for S, and
+ * successive conditioning sets share prefixes. Each Y still gets the first subset of adj(x) \ {Y} in order that
+ * separates it from X, so this does the same tests as going through the subsets for each edge separately. The edges
+ * found to be independent are removed, and their sepsets recorded, in order of node name once all of the tasks for
+ * the depth are done, so the result does not depend on the number of threads or on the order of the variables.
+ * <p>
+ * The tasks run in parallel, on the pool of the calling task if there is one and otherwise on the shared pool, only if
+ * the test is a ThreadSafeIndependenceTest. Otherwise, or if verbose output, which gives the p value of each
+ * independence found, is wanted, they run one after another in the calling thread.
  *
  * @author Joseph Ramsey.
  */
@@ -71,6 +81,10 @@ public class FasStableConcurrent implements IFas {
      */
     private int numIndependenceTests;
 
+    /**
+     * The number of dependence judgements.
+     */
+    private int numDependenceJudgements;
 
     private TetradLogger logger = TetradLogger.getInstance();
 
@@ -92,21 +106,15 @@ public class FasStableConcurrent implements IFas {
      */
     private boolean verbose = false;
 
-    // The concurrency pool.
-    private ForkJoinPool pool = ForkJoinPoolInstance.getInstance().getPool();
-
     /**
      * Where verbose output is sent.
      */
     private PrintStream out = System.out;
 
-    int chunk = 50;
-
-
     //==========================CONSTRUCTORS=============================//
 
     /**
-     * Constructs a new FastAdjacencySearch.    wd
+     * Constructs a new FastAdjacencySearch.
      */
     public FasStableConcurrent(IndependenceTest test) {
         this.test = test;
@@ -133,57 +141,59 @@ public class FasStableConcurrent implements IFas {
      * @return a SepSet, which indicates which variables are independent conditional on which other variables
      */
     public Graph search() {
+        return search(test.getVariables());
+    }
+
+    /**
+     * Discovers the adjacencies among the given nodes, which must be variables of the independence test.
+     *
+     * @see #search()
+     */
+    @Override
+    public Graph search(List<Node> nodes) {
         this.logger.log("info", "Starting Fast Adjacency Search.");
 
-        // The search graph. It is assumed going in that all of the true adjacencies of x are in this graph for every node
-        // x. It is hoped (i.e. true in the large sample limit) that true adjacencies are never removed.
-        Graph graph = new EdgeListGraphSingleConnections(test.getVariables());
+        // The nodes are searched in order of name, so that the sepsets found do not depend on the order of the
+        // variables.
+        List<Node> sorted = new ArrayList<>(nodes);
+
+        Collections.sort(sorted, new Comparator<Node>() {
+            public int compare(Node o1, Node o2) {
+                return o1.getName().compareTo(o2.getName());
+            }
+        });
 
         sepsets = new SepsetMap();
 
         //this is bad when starting from init graph --AJ
         sepsets.setReturnEmptyIfNotSet(true);
 
+        numIndependenceTests = 0;
+        numDependenceJudgements = 0;
+
         int _depth = depth;
 
         if (_depth == -1) {
             _depth = 1000;
         }
 
+        // The adjacencies of each node, as sorted indices into sorted.
+        int[][] adjacencies = searchAtDepth0(sorted);
 
-        Map<Node, Set<Node>> adjacencies = new ConcurrentSkipListMap<>();
-        List<Node> nodes = graph.getNodes();
-
-        for (Node node : nodes) {
-            adjacencies.put(node, new HashSet<Node>());
-        }
-
-
-        for (int d = 0; d <= _depth; d++) {
-            boolean more;
-
-            if (d == 0) {
-                more = searchAtDepth0(nodes, test, adjacencies);
-            } else {
-                more = searchAtDepth(nodes, test, adjacencies, d);
-            }
-
-            if (!more) {
-                break;
-            }
+        for (int d = 1; d <= _depth && freeDegree(adjacencies) >= d; d++) {
+            adjacencies = searchAtDepth(sorted, adjacencies, d);
         }
 
         if (verbose) {
             out.println("Finished with search, constructing Graph...");
         }
 
-        for (int i = 0; i < nodes.size(); i++) {
-            for (int j = i + 1; j < nodes.size(); j++) {
-                Node x = nodes.get(i);
-                Node y = nodes.get(j);
+        Graph graph = new EdgeListGraphSingleConnections(nodes);
 
-                if (adjacencies.get(x).contains(y)) {
-                    graph.addUndirectedEdge(x, y);
+        for (int i = 0; i < sorted.size(); i++) {
+            for (int j : adjacencies[i]) {
+                if (j > i) {
+                    graph.addUndirectedEdge(sorted.get(i), sorted.get(j));
                 }
             }
         }
@@ -192,18 +202,11 @@ public class FasStableConcurrent implements IFas {
             out.println("Finished constructing Graph.");
         }
 
-        if (verbose) {
-            this.logger.log("info", "Finishing Fast Adjacency Search.");
-        }
+        this.logger.log("info", "Finishing Fast Adjacency Search.");
 
         return graph;
     }
 
-    @Override
-    public Graph search(List<Node> nodes) {
-        return null;
-    }
-
     @Override
     public long getElapsedTime() {
         return 0;
@@ -250,13 +253,27 @@ public class FasStableConcurrent implements IFas {
 
     //==============================PRIVATE METHODS======================/
 
-    private boolean searchAtDepth0(final List<Node> nodes, final IndependenceTest test, final Map<Node, Set<Node>> adjacencies) {
+    private int[][] searchAtDepth0(final List<Node> nodes) {
         if (verbose) {
             out.println("Searching at depth 0.");
-            System.out.println("Searching at depth 0.");
         }
 
         final List<Node> empty = Collections.emptyList();
+        final int n = nodes.size();
+
+        // The nodes of the initial graph, if there is one.
+        final Node[] initialNodes = new Node[n];
+
+        if (initialGraph != null) {
+            for (int i = 0; i < n; i++) {
+                initialNodes[i] = initialGraph.getNode(nodes.get(i).getName());
+            }
+        }
+
+        // For each i, the j > i that stay adjacent to i.
+        final int[][] dependent = new int[n][];
+        final int[] numTests = new int[n];
+        final int[] numDependent = new int[n];
 
         class Depth0Task extends RecursiveTask<Boolean> {
             private int chunk;
@@ -273,84 +290,96 @@ public class FasStableConcurrent implements IFas {
             protected Boolean compute() {
                 if (to - from <= chunk) {
                     for (int i = from; i < to; i++) {
-                        if (verbose) {
-                            if ((i + 1) % 1000 == 0) System.out.println("i = " + (i + 1));
-                        }
-
                         final Node x = nodes.get(i);
+                        int[] adjx = new int[n - i - 1];
+                        int size = 0;
 
-                        for (int j = 0; j < i; j++) {
+                        for (int j = i + 1; j < n; j++) {
                             final Node y = nodes.get(j);
 
-                            if (initialGraph != null) {
-                                Node x2 = initialGraph.getNode(x.getName());
-                                Node y2 = initialGraph.getNode(y.getName());
-
-                                if (!initialGraph.isAdjacentTo(x2, y2)) {
-                                    continue;
-                                }
+                            if (initialGraph != null && !initialGraph.isAdjacentTo(initialNodes[i], initialNodes[j])) {
+                                continue;
                             }
 
                             boolean independent;
 
                             try {
+                                numTests[i]++;
                                 independent = test.isIndependent(x, y, empty);
                             } catch (Exception e) {
                                 e.printStackTrace();
-                                independent = true;
+                                independent = false;
                             }
 
-                            numIndependenceTests++;
+                            if (!independent) {
+                                numDependent[i]++;
+                            }
 
-                            boolean noEdgeRequired =
-                                    knowledge.noEdgeRequired(x.getName(), y.getName());
+                            boolean noEdgeRequired = knowledge.isEmpty()
+                                    || knowledge.noEdgeRequired(x.getName(), y.getName());
 
                             if (independent && noEdgeRequired) {
-                                if (!sepsets.isReturnEmptyIfNotSet()) {
-                                    getSepsets().set(x, y, empty);
-                                }
-
-                                // This creates a bottleneck for the parallel search.
-//                                if (verbose) {
-//                                    TetradLogger.getInstance().log("independencies", SearchLogUtils.independenceFact(x, y, empty) + " p = " +
-//                                            nf.format(test.getPValue()));
-//
-//                                    out.println(SearchLogUtils.independenceFact(x, y, empty) + " p = " +
-//                                            nf.format(test.getPValue()));
-//                                }
-                            } else if (!forbiddenEdge(x, y)) {
-                                adjacencies.get(x).add(y);
-                                adjacencies.get(y).add(x);
-
-                                if (verbose) {
-                                    TetradLogger.getInstance().log("dependencies", SearchLogUtils.independenceFact(x, y, empty) + " p = " +
-                                            nf.format(test.getPValue()));
-                                }
+                                continue;
+                            }
+
+                            if (knowledge.isEmpty() || !forbiddenEdge(x, y)) {
+                                adjx[size++] = j;
                             }
                         }
+
+                        dependent[i] = Arrays.copyOf(adjx, size);
                     }
 
                     return true;
                 } else {
-                    List<Depth0Task> tasks = new ArrayList<>();
-
                     final int mid = (to + from) / 2;
 
                     Depth0Task left = new Depth0Task(chunk, from, mid);
-                    tasks.add(left);
+                    left.fork();
                     Depth0Task right = new Depth0Task(chunk, mid, to);
-                    tasks.add(right);
-
-                    invokeAll(tasks);
+                    right.compute();
+                    left.join();
 
                     return true;
                 }
             }
         }
 
-        pool.invoke(new Depth0Task(chunk, 0, nodes.size()));
+        if (isParallel()) {
+            ForkJoinPool pool = getPool();
+            pool.invoke(new Depth0Task(getChunk(n, pool), 0, n));
+        } else {
+            new Depth0Task(n, 0, n).compute();
+        }
+
+        int[] degrees = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            numIndependenceTests += numTests[i];
+            numDependenceJudgements += numDependent[i];
+
+            for (int j : dependent[i]) {
+                degrees[i]++;
+                degrees[j]++;
+            }
+        }
+
+        int[][] adjacencies = new int[n][];
+
+        for (int i = 0; i < n; i++) {
+            adjacencies[i] = new int[degrees[i]];
+            degrees[i] = 0;
+        }
+
+        // Adding in order of i, then j, keeps each node's adjacencies sorted.
+        for (int i = 0; i < n; i++) {
+            for (int j : dependent[i]) {
+                adjacencies[i][degrees[i]++] = j;
+                adjacencies[j][degrees[j]++] = i;
+            }
+        }
 
-        return freeDegree(nodes, adjacencies) > 0;
+        return adjacencies;
     }
 
     private boolean forbiddenEdge(Node x, Node y) {
@@ -370,50 +399,29 @@ public class FasStableConcurrent implements IFas {
         return false;
     }
 
-    private int freeDegree(List<Node> nodes, Map<Node, Set<Node>> adjacencies) {
+    // The largest number of nodes, other than some y, adjacent to a node x adjacent to y.
+    private int freeDegree(int[][] adjacencies) {
         int max = 0;
 
-        for (Node x : nodes) {
-            Set<Node> opposites = adjacencies.get(x);
-
-            for (Node y : opposites) {
-                Set<Node> adjx = new HashSet<>(opposites);
-                adjx.remove(y);
-
-                if (adjx.size() > max) {
-                    max = adjx.size();
-                }
-            }
+        for (int[] adjx : adjacencies) {
+            max = Math.max(max, adjx.length - 1);
         }
 
         return max;
     }
 
-//    private boolean freeDegreeGreaterThanDepth(Map<Node, Set<Node>> adjacencies, int depth) {
-//        for (Node x : adjacencies.keySet()) {
-//            Set<Node> opposites = adjacencies.get(x);
-//
-//            if (opposites.size() - 1 > depth) {
-//                return true;
-//            }
-//        }
-//
-//        return false;
-//    }
-
-    private boolean searchAtDepth(final List<Node> nodes, final IndependenceTest test, final Map<Node, Set<Node>> adjacencies,
-                                  final int depth) {
-
+    private int[][] searchAtDepth(final List<Node> nodes, final int[][] adjacencies, final int depth) {
         if (verbose) {
             out.println("Searching at depth " + depth);
-            System.out.println("Searching at depth " + depth);
         }
 
-        final Map<Node, Set<Node>> adjacenciesCopy = new HashMap<>();
+        final int n = nodes.size();
 
-        for (Node node : adjacencies.keySet()) {
-            adjacenciesCopy.put(node, new HashSet<>(adjacencies.get(node)));
-        }
+        // For each x, the sepsets found for the nodes adjacent to x, or null, and their p values.
+        final List<Node>[][] found = new List[n][];
+        final double[][] pValues = new double[n][];
+        final int[] numTests = new int[n];
+        final int[] numDependent = new int[n];
 
         class DepthTask extends RecursiveTask<Boolean> {
             private int chunk;
@@ -429,107 +437,176 @@ public class FasStableConcurrent implements IFas {
             @Override
             protected Boolean compute() {
                 if (to - from <= chunk) {
-                    for (int i = from; i < to; i++) {
-                        if (verbose) {
-                            if ((i + 1) % 1000 == 0) System.out.println("i = " + (i + 1));
-                        }
+                    for (int x = from; x < to; x++) {
+                        searchNode(x);
+                    }
+
+                    return true;
+                } else {
+                    final int mid = (to + from) / 2;
 
-                        Node x = nodes.get(i);
+                    DepthTask left = new DepthTask(chunk, from, mid);
+                    left.fork();
+                    DepthTask right = new DepthTask(chunk, mid, to);
+                    right.compute();
+                    left.join();
+
+                    return true;
+                }
+            }
+
+            // Tests each y adjacent to x against the subsets of the possible parents of x, one subset at a time.
+            private void searchNode(int x) {
+                Node _x = nodes.get(x);
+                int[] adjx = adjacencies[x];
+                found[x] = new List[adjx.length];
+                pValues[x] = new double[adjx.length];
 
-                        List<Node> adjx = new ArrayList<>(adjacenciesCopy.get(x));
+                boolean[] open = new boolean[adjx.length];
+                int numOpen = 0;
 
-                        EDGE:
-                        for (Node y : adjx) {
-                            List<Node> _adjx = new ArrayList<>(adjx);
-                            _adjx.remove(y);
-                            List<Node> ppx = possibleParents(x, _adjx, knowledge);
+                for (int k = 0; k < adjx.length; k++) {
+                    open[k] = knowledge.isEmpty()
+                            || knowledge.noEdgeRequired(_x.getName(), nodes.get(adjx[k]).getName());
+                    if (open[k]) numOpen++;
+                }
 
-                            if (ppx.size() >= depth) {
-                                ChoiceGenerator cg = new ChoiceGenerator(ppx.size(), depth);
-                                int[] choice;
+                int[] ppx = possibleParents(nodes, x, adjx);
 
-                                while ((choice = cg.next()) != null) {
-                                    List<Node> condSet = GraphUtils.asList(choice, ppx);
+                if (numOpen == 0 || ppx.length < depth) {
+                    return;
+                }
 
-                                    boolean independent;
+                ChoiceGenerator cg = new ChoiceGenerator(ppx.length, depth);
+                int[] choice;
+                int[] z = new int[depth];
 
-                                    try {
-                                        numIndependenceTests++;
-                                        independent = test.isIndependent(x, y, condSet);
-                                    } catch (Exception e) {
-                                        independent = false;
-                                    }
+                while (numOpen > 0 && (choice = cg.next()) != null) {
+                    List<Node> condSet = new ArrayList<>(depth);
 
-                                    boolean noEdgeRequired =
-                                            knowledge.noEdgeRequired(x.getName(), y.getName());
+                    for (int i = 0; i < depth; i++) {
+                        z[i] = ppx[choice[i]];
+                        condSet.add(nodes.get(z[i]));
+                    }
 
-                                    if (independent && noEdgeRequired) {
-                                        adjacencies.get(x).remove(y);
-                                        adjacencies.get(y).remove(x);
+                    for (int k = 0; k < adjx.length; k++) {
+                        if (!open[k] || Arrays.binarySearch(z, adjx[k]) >= 0) continue;
 
-                                        getSepsets().set(x, y, condSet);
+                        boolean independent;
 
-                                        // This creates a bottleneck for the parallel search.
-//                                        if (verbose) {
-//                                            TetradLogger.getInstance().log("independencies", SearchLogUtils.independenceFact(x, y, condSet) + " p = " +
-//                                                    nf.format(test.getPValue()));
-//                                            out.println(SearchLogUtils.independenceFactMsg(x, y, condSet, test.getPValue()));
-//                                        }
+                        try {
+                            numTests[x]++;
+                            independent = test.isIndependent(_x, nodes.get(adjx[k]), condSet);
+                        } catch (Exception e) {
+                            independent = false;
+                        }
 
-                                        continue EDGE;
-                                    }
-                                }
-                            }
+                        if (independent) {
+                            found[x][k] = new ArrayList<>(condSet);
+                            if (verbose) pValues[x][k] = test.getPValue();
+                            open[k] = false;
+                            numOpen--;
+                        } else {
+                            numDependent[x]++;
                         }
                     }
+                }
+            }
+        }
 
-                    return true;
-                } else {
-                    List<DepthTask> tasks = new ArrayList<>();
+        if (isParallel()) {
+            ForkJoinPool pool = getPool();
+            pool.invoke(new DepthTask(getChunk(n, pool), 0, n));
+        } else {
+            new DepthTask(n, 0, n).compute();
+        }
 
-                    final int mid = (to + from) / 2;
+        boolean[][] removed = new boolean[n][];
 
-                    DepthTask left = new DepthTask(chunk, from, mid);
-                    tasks.add(left);
-                    DepthTask right = new DepthTask(chunk, mid, to);
-                    tasks.add(right);
+        for (int x = 0; x < n; x++) {
+            removed[x] = new boolean[adjacencies[x].length];
+        }
 
-                    invokeAll(tasks);
+        for (int x = 0; x < n; x++) {
+            numIndependenceTests += numTests[x];
+            numDependenceJudgements += numDependent[x];
 
-                    return true;
+            for (int k = 0; k < adjacencies[x].length; k++) {
+                List<Node> condSet = found[x][k];
+                if (condSet == null) continue;
+
+                int y = adjacencies[x][k];
+                removed[x][k] = true;
+                removed[y][Arrays.binarySearch(adjacencies[y], x)] = true;
+
+                getSepsets().set(nodes.get(x), nodes.get(y), condSet);
+
+                if (verbose) {
+                    TetradLogger.getInstance().log("independencies", SearchLogUtils.independenceFact(nodes.get(x),
+                            nodes.get(y), condSet) + " p = " + nf.format(pValues[x][k]));
+                    out.println(SearchLogUtils.independenceFactMsg(nodes.get(x), nodes.get(y), condSet, pValues[x][k]));
                 }
             }
         }
 
-        pool.invoke(new DepthTask(chunk, 0, nodes.size()));
+        int[][] remaining = new int[n][];
+
+        for (int x = 0; x < n; x++) {
+            int[] adjx = new int[adjacencies[x].length];
+            int size = 0;
+
+            for (int k = 0; k < adjacencies[x].length; k++) {
+                if (!removed[x][k]) adjx[size++] = adjacencies[x][k];
+            }
+
+            remaining[x] = Arrays.copyOf(adjx, size);
+        }
 
         if (verbose) {
             System.out.println("Done with depth");
         }
 
-        return freeDegree(nodes, adjacencies) > depth;
+        return remaining;
     }
 
-    private List<Node> possibleParents(Node x, List<Node> adjx,
-                                       IKnowledge knowledge) {
-        List<Node> possibleParents = new LinkedList<>();
-        String _x = x.getName();
+    // The nodes in adjx that could be parents of x, sorted.
+    private int[] possibleParents(List<Node> nodes, int x, int[] adjx) {
+        if (knowledge.isEmpty()) {
+            return adjx;
+        }
 
-        for (Node z : adjx) {
-            String _z = z.getName();
+        int[] possibleParents = new int[adjx.length];
+        int size = 0;
+        String _x = nodes.get(x).getName();
 
-            if (possibleParentOf(_z, _x, knowledge)) {
-                possibleParents.add(z);
+        for (int z : adjx) {
+            if (possibleParentOf(nodes.get(z).getName(), _x, knowledge)) {
+                possibleParents[size++] = z;
             }
         }
 
-        return possibleParents;
+        return Arrays.copyOf(possibleParents, size);
     }
 
     private boolean possibleParentOf(String z, String x, IKnowledge knowledge) {
         return !knowledge.isForbidden(z, x) && !knowledge.isRequired(x, z);
     }
 
+    // Enough tasks per thread to even out nodes of different degrees.
+    private int getChunk(int numNodes, ForkJoinPool pool) {
+        return Math.max(1, numNodes / (8 * pool.getParallelism()));
+    }
+
+    // True if the nodes can be searched in parallel.
+    private boolean isParallel() {
+        return test instanceof ThreadSafeIndependenceTest && !verbose;
+    }
+
+    // The pool of the calling task, if there is one, otherwise the shared pool.
+    private ForkJoinPool getPool() {
+        return ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPoolInstance.getInstance().getPool();
+    }
+
     public int getNumIndependenceTests() {
         return numIndependenceTests;
     }
@@ -541,7 +618,7 @@ public class FasStableConcurrent implements IFas {
 
     @Override
     public List<Node> getNodes() {
-        return null;
+        return test.getVariables();
     }
 
     @Override
@@ -583,7 +660,7 @@ public class FasStableConcurrent implements IFas {
 
     @Override
     public int getNumDependenceJudgments() {
-        return 0;
+        return numDependenceJudgements;
     }
 
     public void setOut(PrintStream out) {
@@ -595,5 +672,3 @@ public class FasStableConcurrent implements IFas {
         return out;
     }
 }
-
-
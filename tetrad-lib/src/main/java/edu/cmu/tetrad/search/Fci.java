@@ -89,6 +89,11 @@ public final class Fci implements GraphSearch {
      */
     private int maxPathLength = -1;
 
+    /**
+     * The most milliseconds spent looking for a sepset of a pair in the possible dsep search, or -1 if unlimited.
+     */
+    private long possibleDsepTimeBudget = -1;
+
     /**
      * The depth for the fast adjacency search.
      */
@@ -198,14 +203,17 @@ public final class Fci implements GraphSearch {
 
         graph.reorientAllWith(Endpoint.CIRCLE);
 
-        SepsetProducer sp = new SepsetsPossibleDsep(graph, independenceTest, knowledge, depth, maxPathLength);
+        SepsetsPossibleDsep sp = new SepsetsPossibleDsep(graph, independenceTest, knowledge, depth, maxPathLength);
+        sp.setTimeBudget(possibleDsepTimeBudget);
         sp.setVerbose(verbose);
 
         // The original FCI, with or without JiJi Zhang's orientation rules
         //        // Optional step: Possible Dsep. (Needed for correctness but very time consuming.)
         if (isPossibleDsepSearchDone()) {
 //            long time1 = System.currentTimeMillis();
-            new FciOrient(new SepsetsSet(this.sepsets, independenceTest)).ruleR0(graph);
+            FciOrient r0 = new FciOrient(new SepsetsSet(this.sepsets, independenceTest));
+            r0.setParallel(independenceTest instanceof ThreadSafeIndependenceTest);
+            r0.ruleR0(graph);
 
             for (Edge edge : new ArrayList<>(graph.getEdges())) {
                 Node x = edge.getNode1();
@@ -258,6 +266,7 @@ public final class Fci implements GraphSearch {
         fciOrient.setCompleteRuleSetUsed(completeRuleSetUsed);
         fciOrient.setMaxPathLength(maxPathLength);
         fciOrient.setKnowledge(knowledge);
+        fciOrient.setParallel(independenceTest instanceof ThreadSafeIndependenceTest);
         fciOrient.ruleR0(graph);
         fciOrient.doFinalOrientation(graph);
         return graph;
@@ -321,6 +330,27 @@ public final class Fci implements GraphSearch {
         this.maxPathLength = maxPathLength;
     }
 
+    /**
+     * @return the most milliseconds spent looking for a sepset of a pair in the possible dsep search, or -1 if
+     * unlimited, as by default.
+     */
+    public long getPossibleDsepTimeBudget() {
+        return possibleDsepTimeBudget;
+    }
+
+    /**
+     * @param possibleDsepTimeBudget the most milliseconds spent looking for a sepset of a pair in the possible dsep
+     *                               search, or -1 if unlimited. A pair that runs out of time keeps its edge, so
+     *                               with a budget the output may depend on the speed of the machine.
+     */
+    public void setPossibleDsepTimeBudget(long possibleDsepTimeBudget) {
+        if (possibleDsepTimeBudget < -1) {
+            throw new IllegalArgumentException("Time budget must be -1 (unlimited) or >= 0: " + possibleDsepTimeBudget);
+        }
+
+        this.possibleDsepTimeBudget = possibleDsepTimeBudget;
+    }
+
     /**
      * True iff verbose output should be printed.
      */
@@ -28,6 +28,7 @@ import edu.cmu.tetrad.data.KnowledgeEdge;
 import edu.cmu.tetrad.graph.Endpoint;
 import edu.cmu.tetrad.graph.Graph;
 import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.graph.Triple;
 import edu.cmu.tetrad.sem.DagScorer;
 import edu.cmu.tetrad.util.ChoiceGenerator;
 import edu.cmu.tetrad.util.TetradLogger;
@@ -89,6 +90,11 @@ public final class FciOrient {
     private Graph dag;
     private boolean skipDiscriminatingPathRule;
 
+    /**
+     * True if the sepsets may be consulted from several threads at once.
+     */
+    private boolean parallel = false;
+
     //============================CONSTRUCTORS============================//
 
     /**
@@ -177,53 +183,50 @@ public final class FciOrient {
      * <p>
      * Zhang's step F3, rule R0.
      */
-    public void ruleR0(Graph graph) {
+    public void ruleR0(final Graph graph) {
         graph.reorientAllWith(Endpoint.CIRCLE);
         fciOrientbk(knowledge, graph, graph.getNodes());
 
-        List<Node> nodes = graph.getNodes();
+        List<Triple> triples = UnshieldedTriples.getUnshieldedTriples(graph);
+
+        // The sepsets are consulted for all of the triples at once, in parallel if allowed. Orienting a collider only
+        // adds arrowheads, so a triple that is a collider already will still be one when it is reached below.
+        List<Boolean> colliders = UnshieldedTriples.classify(triples,
+                new UnshieldedTriples.Classifier<Triple, Boolean>() {
+                    public Boolean classify(Triple triple) {
+                        Node a = triple.getX();
+                        Node b = triple.getY();
+                        Node c = triple.getZ();
+                        return !graph.isDefCollider(a, b, c) && sepsets.isCollider(a, b, c);
+                    }
+                }, parallel);
 
-        for (Node b : nodes) {
-            List<Node> adjacentNodes = graph.getAdjacentNodes(b);
+        for (int i = 0; i < triples.size(); i++) {
+            Node a = triples.get(i).getX();
+            Node b = triples.get(i).getY();
+            Node c = triples.get(i).getZ();
 
-            if (adjacentNodes.size() < 2) {
+            if (graph.isDefCollider(a, b, c)) {
                 continue;
             }
 
-            ChoiceGenerator cg = new ChoiceGenerator(adjacentNodes.size(), 2);
-            int[] combination;
-
-            while ((combination = cg.next()) != null) {
-                Node a = adjacentNodes.get(combination[0]);
-                Node c = adjacentNodes.get(combination[1]);
-
-                // Skip triples that are shielded.
-                if (graph.isAdjacentTo(a, c)) {
+            if (colliders.get(i)) {
+                if (!isArrowpointAllowed(a, b, graph)) {
                     continue;
                 }
 
-                if (graph.isDefCollider(a, b, c)) {
+                if (!isArrowpointAllowed(c, b, graph)) {
                     continue;
                 }
 
-                if (sepsets.isCollider(a, b, c)) {
-                    if (!isArrowpointAllowed(a, b, graph)) {
-                        continue;
-                    }
-
-                    if (!isArrowpointAllowed(c, b, graph)) {
-                        continue;
-                    }
-
-                    graph.setEndpoint(a, b, Endpoint.ARROW);
-                    graph.setEndpoint(c, b, Endpoint.ARROW);
-                    if (verbose) {
-                        logger.log("colliderOrientations", SearchLogUtils.colliderOrientedMsg(a, b, c));
-                        System.out.println(SearchLogUtils.colliderOrientedMsg(a, b, c));
-                        String location = "R0";
+                graph.setEndpoint(a, b, Endpoint.ARROW);
+                graph.setEndpoint(c, b, Endpoint.ARROW);
+                if (verbose) {
+                    logger.log("colliderOrientations", SearchLogUtils.colliderOrientedMsg(a, b, c));
+                    System.out.println(SearchLogUtils.colliderOrientedMsg(a, b, c));
+                    String location = "R0";
 
-                        printWrongColliderMessage(a, b, c, location, graph);
-                    }
+                    printWrongColliderMessage(a, b, c, location, graph);
                 }
             }
         }
@@ -315,6 +318,113 @@ public final class FciOrient {
         }
     }
 
+    /**
+     * Does the final orientation of each of the given graphs, in parallel if this orienter is set to be. The graphs
+     * should be the connected components of one graph, with the edges of each node in the same order as there. No
+     * rule then relates nodes in different graphs, and the result is the same as that of doFinalOrientation on the
+     * whole graph. The passes of the rules are kept in step across the graphs, since whether R4 is tried in a pass
+     * depends on whether anything changed anywhere in the pass.
+     */
+    public void doFinalOrientation(final List<Graph> graphs) {
+        final List<FciOrient> orients = new ArrayList<>();
+        List<Integer> indices = new ArrayList<>();
+
+        for (int i = 0; i < graphs.size(); i++) {
+            orients.add(copy());
+            indices.add(i);
+        }
+
+        boolean changeFlag = true;
+        boolean firstTime = true;
+
+        while (changeFlag) {
+            changeFlag = applyRules(Rules.R1_R3, orients, graphs, indices);
+
+            // R4 requires an arrow orientation.
+            if (changeFlag || (firstTime && !knowledge.isEmpty())) {
+                changeFlag = applyRules(Rules.R4, orients, graphs, indices);
+                firstTime = false;
+            }
+
+            if (verbose) {
+                System.out.println("Epoch");
+            }
+        }
+
+        if (completeRuleSetUsed) {
+            applyRules(Rules.R5, orients, graphs, indices);
+
+            changeFlag = true;
+
+            while (changeFlag) {
+                changeFlag = applyRules(Rules.R6_R7, orients, graphs, indices);
+            }
+
+            changeFlag = true;
+
+            while (changeFlag) {
+                changeFlag = applyRules(Rules.R8_R10, orients, graphs, indices);
+            }
+        }
+    }
+
+    // The stages of the final orientation, as they are done in each graph for doFinalOrientation(List).
+    private enum Rules {R1_R3, R4, R5, R6_R7, R8_R10}
+
+    // Applies the given rules to each graph with its own orienter, in parallel if allowed, and returns true if
+    // anything changed in any of them. Rules that start a pass clear the change flags first; R4 keeps them, as in the
+    // serial loop.
+    private boolean applyRules(final Rules rules, final List<FciOrient> orients, final List<Graph> graphs,
+                               List<Integer> indices) {
+        List<Boolean> changed = UnshieldedTriples.classify(indices, new UnshieldedTriples.Classifier<Integer, Boolean>() {
+            public Boolean classify(Integer i) {
+                FciOrient orient = orients.get(i);
+                Graph graph = graphs.get(i);
+
+                switch (rules) {
+                    case R1_R3:
+                        orient.changeFlag = false;
+                        orient.rulesR1R2cycle(graph);
+                        orient.ruleR3(graph);
+                        break;
+                    case R4:
+                        orient.ruleR4B(graph);
+                        break;
+                    case R5:
+                        orient.ruleR5(graph);
+                        break;
+                    case R6_R7:
+                        orient.changeFlag = false;
+                        orient.ruleR6R7(graph);
+                        break;
+                    case R8_R10:
+                        orient.changeFlag = false;
+                        orient.rulesR8R9R10(graph);
+                        break;
+                }
+
+                return orient.changeFlag;
+            }
+        }, parallel);
+
+        return changed.contains(true);
+    }
+
+    // An orienter with the same settings as this one, for one of the graphs in doFinalOrientation(List).
+    private FciOrient copy() {
+        FciOrient orient = new FciOrient(sepsets);
+        orient.knowledge = knowledge;
+        orient.completeRuleSetUsed = completeRuleSetUsed;
+        orient.possibleDsepSearchDone = possibleDsepSearchDone;
+        orient.maxPathLength = maxPathLength;
+        orient.verbose = verbose;
+        orient.truePag = truePag;
+        orient.dag = dag;
+        orient.skipDiscriminatingPathRule = skipDiscriminatingPathRule;
+        orient.parallel = parallel;
+        return orient;
+    }
+
     //Does all 3 of these rules at once instead of going through all
     // triples multiple times per iteration of doFinalOrientation.
 
@@ -1379,6 +1489,23 @@ public final class FciOrient {
     public void skipDiscriminatingPathRule(boolean skip) {
         this.skipDiscriminatingPathRule = skip;
     }
+
+    /**
+     * @return true if the colliders of R0, and the graphs given to doFinalOrientation(List), are to be done in
+     * parallel. False by default.
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * @param parallel set to true if the colliders of R0, and the graphs given to doFinalOrientation(List), are to be
+     *                 done in parallel. The sepset producer, and any independence test it uses, must then be safe to
+     *                 call from several threads.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
 }
 
 
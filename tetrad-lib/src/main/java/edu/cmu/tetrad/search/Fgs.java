@@ -28,11 +28,14 @@ import edu.cmu.tetrad.util.ForkJoinPoolInstance;
 import edu.cmu.tetrad.util.TaskManager;
 import edu.cmu.tetrad.util.TetradLogger;
 
-import java.io.PrintStream;
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -123,18 +126,31 @@ public final class Fgs implements GraphSearch, GraphScorer {
      */
     private boolean verbose = false;
 
-    // Potential arrows sorted by bump high to low. The first one is a candidate for adding to the graph.
-    private SortedSet<Arrow> sortedArrows = null;
+    // Potential arrows, highest bump first. The first one is a candidate for adding to the graph.
+    private ArrowQueue arrowQueue = null;
 
-    // Arrows added to sortedArrows for each <i, j>.
-    private Map<OrderedPair<Node>, Set<Arrow>> lookupArrows = null;
+    /**
+     * The largest number of potential arrows kept in memory, or -1 for no limit.
+     */
+    private int maxArrowsInMemory = -1;
 
-    // A utility map to help with orientation.
-    private Map<Node, Set<Node>> neighbors = null;
+    // The number of times the arrows for each <i, j>, keyed by i * n + j, have been cleared. Arrows made
+    // before the last clearing are stale and are skipped when they come off the queue.
+    private ConcurrentMap<Long, Integer> arrowVersions = null;
+
+    // The neighbors of each node when its arrows were last calculated, to help with orientation.
+    private int[][] neighbors = null;
 
     // Map from variables to their column indices in the data set.
     private ConcurrentMap<Node, Integer> hashIndices;
 
+    // Map from variables to their indices in the list of variables. The search works on these
+    // indices; nodes are used only for input and output.
+    private Map<Node, Integer> variableIndices;
+
+    // The column index in the data set of each variable, by index in the list of variables.
+    private int[] scoreIndices;
+
     // The static ForkJoinPool instance.
     private ForkJoinPool pool = ForkJoinPoolInstance.getInstance().getPool();
 
@@ -142,7 +158,7 @@ public final class Fgs implements GraphSearch, GraphScorer {
     private double totalScore;
 
     // A graph where X--Y means that X and Y have non-zero total effect on one another.
-    private Graph effectEdgesGraph;
+    private IndexedPattern effectEdgesGraph;
 
     // The minimum number of operations to do before parallelizing.
     private final int minChunk = 100;
@@ -153,12 +169,20 @@ public final class Fgs implements GraphSearch, GraphScorer {
     // A initial adjacencies graph.
     private Graph adjacencies = null;
 
+    // The adjacencies and bound graphs, over the variable indices, for the current search.
+    private IndexedPattern adjacencyPattern = null;
+    private IndexedPattern boundPattern = null;
+
     // The graph being constructed.
-    private Graph graph;
+    private IndexedPattern graph;
 
-    // Arrows with the same totalScore are stored in this list to distinguish their order in sortedArrows.
-    // The ordering doesn't matter; it just have to be transitive.
-    int arrowIndex = 0;
+    // Edges removed in the backward search.
+    private IndexedPattern removedEdges;
+
+    // Visit stamps and queue for the cycle check.
+    private int[] pathStamps;
+    private int[] pathQueue;
+    private int pathStamp = 0;
 
     // The final totalScore after search.
     private double modelScore;
@@ -174,8 +198,25 @@ public final class Fgs implements GraphSearch, GraphScorer {
     // Bounds the degree of the graph.
     private int maxDegree = -1;
 
+    /**
+     * A pattern found by an earlier search on earlier data, to start from, and the score it was found with.
+     */
+    private Graph previousPattern = null;
+    private Score previousScore = null;
+
+    /**
+     * Nodes whose local scores per sample change by no more than this are taken to be settled in a warm start.
+     */
+    private double warmStartTolerance = 0.01;
+
+    // In a warm start, the nodes whose local scores have changed, or whose neighborhoods the search has
+    // changed; only arrows into or out of these are calculated when initializing. Null otherwise.
+    private boolean[] changedNodes = null;
+
     final int maxThreads = ForkJoinPoolInstance.getInstance().getPool().getParallelism();
 
+    private static final int[] EMPTY = new int[0];
+
     //===========================CONSTRUCTORS=============================//
 
     /**
@@ -187,7 +228,7 @@ public final class Fgs implements GraphSearch, GraphScorer {
     public Fgs(Score score) {
         if (score == null) throw new NullPointerException();
         setScore(score);
-        this.graph = new EdgeListGraphSingleConnections(getVariables());
+        this.graph = new IndexedPattern(getVariables().size());
     }
 
     //==========================PUBLIC METHODS==========================//
@@ -215,45 +256,65 @@ public final class Fgs implements GraphSearch, GraphScorer {
     public Graph search() {
         topGraphs.clear();
 
-        lookupArrows = new ConcurrentHashMap<>();
         final List<Node> nodes = new ArrayList<>(variables);
-        graph = new EdgeListGraphSingleConnections(nodes);
+        Graph graph = new EdgeListGraphSingleConnections(nodes);
+        adjacencyPattern = null;
+        boundPattern = null;
 
         if (adjacencies != null) {
             adjacencies = GraphUtils.replaceNodes(adjacencies, nodes);
+            adjacencyPattern = IndexedPattern.fromGraph(adjacencies, variableIndices);
         }
 
-        if (initialGraph != null) {
+        if (boundGraph != null) {
+            boundPattern = IndexedPattern.fromGraph(boundGraph, variableIndices);
+        }
+
+        if (previousPattern != null) {
+            graph = new EdgeListGraphSingleConnections(previousPattern);
+            graph = GraphUtils.replaceNodes(graph, nodes);
+        } else if (initialGraph != null) {
             graph = new EdgeListGraphSingleConnections(initialGraph);
             graph = GraphUtils.replaceNodes(graph, nodes);
         }
 
         addRequiredEdges(graph);
 
-        if (faithfulnessAssumed) {
-            initializeForwardEdgesFromEmptyGraph(getVariables());
-
-            // Do forward search.
-            this.mode = Mode.heuristicSpeedup;
-            fes();
-            bes();
-
-            this.mode = Mode.coverNoncolliders;
-            initializeTwoStepEdges(getVariables());
-            fes();
-            bes();
-        } else {
-            initializeForwardEdgesFromEmptyGraph(getVariables());
+        this.graph = IndexedPattern.fromGraph(graph, variableIndices);
+        this.pathStamps = new int[nodes.size()];
+        this.pathQueue = new int[nodes.size()];
+        this.pathStamp = 0;
+        this.changedNodes = previousPattern == null ? null : findChangedNodes(previousPattern);
+
+        // Spilled arrows are deleted however the search ends.
+        try {
+            if (faithfulnessAssumed) {
+                initializeForwardEdges();
+
+                // Do forward search.
+                this.mode = Mode.heuristicSpeedup;
+                fes();
+                bes();
+
+                this.mode = Mode.coverNoncolliders;
+                initializeTwoStepEdges();
+                fes();
+                bes();
+            } else {
+                initializeForwardEdges();
 
-            // Do forward search.
-            this.mode = Mode.heuristicSpeedup;
-            fes();
-            bes();
+                // Do forward search.
+                this.mode = Mode.heuristicSpeedup;
+                fes();
+                bes();
 
-            this.mode = Mode.allowUnfaithfulness;
-            initializeForwardEdgesFromExistingGraph(getVariables());
-            fes();
-            bes();
+                this.mode = Mode.allowUnfaithfulness;
+                initializeForwardEdgesFromExistingGraph();
+                fes();
+                bes();
+            }
+        } finally {
+            discardArrows();
         }
 
         long start = System.currentTimeMillis();
@@ -261,14 +322,16 @@ public final class Fgs implements GraphSearch, GraphScorer {
 
         long endTime = System.currentTimeMillis();
         this.elapsedTime = endTime - start;
-        this.logger.log("graph", "\nReturning this graph: " + graph);
+
+        Graph pattern = this.graph.toGraph(nodes);
+        this.logger.log("graph", "\nReturning this graph: " + pattern);
 
         this.logger.log("info", "Elapsed time = " + (elapsedTime) / 1000. + " s");
         this.logger.flush();
 
         this.modelScore = totalScore;
 
-        return graph;
+        return pattern;
     }
 
     /**
@@ -416,6 +479,27 @@ public final class Fgs implements GraphSearch, GraphScorer {
         this.cycleBound = cycleBound;
     }
 
+    /**
+     * @return the largest number of potential arrows kept in memory, or -1 for no limit.
+     */
+    public int getMaxArrowsInMemory() {
+        return maxArrowsInMemory;
+    }
+
+    /**
+     * Sets the largest number of potential arrows kept in memory. Beyond this, the less promising
+     * half of them is written to a temporary file, sorted, and read back through memory-mapped
+     * segments of the file as the search gets to it, so that searches over very many variables
+     * slow down rather than run out of memory. The result is the same either way.
+     *
+     * @param maxArrowsInMemory The limit, at least 2, or -1 for no limit, the default.
+     */
+    public void setMaxArrowsInMemory(int maxArrowsInMemory) {
+        if (!(maxArrowsInMemory == -1 || maxArrowsInMemory >= 2))
+            throw new IllegalArgumentException("Max arrows in memory needs to be -1 or >= 2: " + maxArrowsInMemory);
+        this.maxArrowsInMemory = maxArrowsInMemory;
+    }
+
     /**
      * Creates a new processors pool with the specified number of threads.
      */
@@ -489,6 +573,69 @@ public final class Fgs implements GraphSearch, GraphScorer {
         this.maxDegree = maxDegree;
     }
 
+    /**
+     * Starts the next search from a pattern found by an earlier search, over the same variables but on
+     * earlier data, instead of from the empty graph; this takes the place of the initial graph. The
+     * score for this search should be over the updated data, for instance a SemBicScore of a
+     * covariance matrix over all of the rows so far.
+     * <p>
+     * For each node, the local score per sample given its parents in a DAG in the previous pattern is
+     * calculated under the previous score and under this one. Only arrows into or out of nodes for
+     * which these differ by more than the warm start tolerance are calculated at first; the others
+     * are taken to be settled, unless the search changes their neighborhoods. Effect edges, likewise,
+     * are looked for only from changed nodes; deletions are considered for every edge. When the
+     * structure is stable this is much faster than searching from scratch, at the price of missing
+     * additions that do not show up in those local scores.
+     *
+     * @param previousPattern The pattern to start from, or null to search from scratch.
+     * @param previousScore   The score the previous pattern was found with. Its variables must include
+     *                        those of this search, by name.
+     */
+    public void setWarmStart(Graph previousPattern, Score previousScore) {
+        if (previousPattern == null) {
+            this.previousPattern = null;
+            this.previousScore = null;
+            return;
+        }
+
+        if (previousScore == null) throw new NullPointerException("Previous score not provided.");
+
+        previousPattern = GraphUtils.replaceNodes(previousPattern, variables);
+
+        if (!new HashSet<>(previousPattern.getNodes()).equals(new HashSet<>(variables))) {
+            throw new IllegalArgumentException("Variables aren't the same.");
+        }
+
+        for (Node node : variables) {
+            if (previousScore.getVariable(node.getName()) == null) {
+                throw new IllegalArgumentException("Previous score does not have variable " + node);
+            }
+        }
+
+        this.previousPattern = previousPattern;
+        this.previousScore = previousScore;
+    }
+
+    /**
+     * @return the largest change in the local score per sample of a node for which the node is
+     * taken to be settled in a warm start.
+     */
+    public double getWarmStartTolerance() {
+        return warmStartTolerance;
+    }
+
+    /**
+     * Sets the largest change in the local score per sample of a node for which the node is taken to
+     * be settled in a warm start. The default is 0.01.
+     */
+    public void setWarmStartTolerance(double warmStartTolerance) {
+        if (!(warmStartTolerance >= 0)) {
+            throw new IllegalArgumentException("Tolerance must be >= 0: " + warmStartTolerance);
+        }
+
+        this.warmStartTolerance = warmStartTolerance;
+    }
+
     //===========================PRIVATE METHODS========================//
 
     //Sets the discrete scoring function to use.
@@ -505,11 +652,129 @@ public final class Fgs implements GraphSearch, GraphScorer {
 
         buildIndexing(totalScore.getVariables());
 
+        this.variableIndices = new HashMap<>();
+        this.scoreIndices = new int[variables.size()];
+
+        for (int i = 0; i < variables.size(); i++) {
+            variableIndices.put(variables.get(i), i);
+            scoreIndices[i] = hashIndices.get(variables.get(i));
+        }
+
+        this.removedEdges = new IndexedPattern(variables.size());
+
         this.maxDegree = score.getMaxDegree();
     }
 
     final int[] count = new int[1];
 
+    // The local score of each node given its parents in a DAG in the previous pattern, per sample, is
+    // compared under the previous score and this one; returns the nodes for which these differ by
+    // more than the tolerance.
+    private boolean[] findChangedNodes(Graph previousPattern) {
+        final Graph dag = new EdgeListGraph(previousPattern);
+        SearchGraphUtils.pdagToDag(dag);
+
+        final Map<String, Integer> previousIndices = new HashMap<>();
+        List<Node> previousVariables = previousScore.getVariables();
+
+        for (int i = 0; i < previousVariables.size(); i++) {
+            previousIndices.put(previousVariables.get(i).getName(), i);
+        }
+
+        final boolean[] changed = new boolean[variables.size()];
+
+        pool.invoke(new ForEachNodeTask(getMinChunk(variables.size()), 0, variables.size()) {
+            void visit(int y) {
+                Node node = variables.get(y);
+                List<Node> parents = dag.getParents(node);
+                int[] parentIndices = new int[parents.size()];
+                int[] previousParentIndices = new int[parents.size()];
+
+                for (int k = 0; k < parents.size(); k++) {
+                    parentIndices[k] = scoreIndices[variableIndices.get(parents.get(k))];
+                    previousParentIndices[k] = previousIndices.get(parents.get(k).getName());
+                }
+
+                double now = score.localScore(scoreIndices[y], parentIndices) / score.getSampleSize();
+                double before = previousScore.localScore(previousIndices.get(node.getName()), previousParentIndices)
+                        / previousScore.getSampleSize();
+
+                changed[y] = !(Math.abs(now - before) <= warmStartTolerance);
+            }
+        });
+
+        if (verbose) {
+            int numChanged = 0;
+            for (boolean c : changed) if (c) numChanged++;
+            out.println("Warm start: " + numChanged + " of " + changed.length + " nodes changed");
+        }
+
+        return changed;
+    }
+
+    // True unless this is a warm start and the node is settled.
+    private boolean isChanged(int node) {
+        return changedNodes == null || changedNodes[node];
+    }
+
+    // Marks the given nodes as changed, in a warm start.
+    private void markChanged(int[] nodes) {
+        if (changedNodes == null) return;
+
+        for (int node : nodes) {
+            changedNodes[node] = true;
+        }
+    }
+
+    // Visits the nodes from, ..., to - 1, in parallel.
+    private abstract class ForEachNodeTask extends RecursiveTask<Boolean> {
+        private final int chunk;
+        private final int from;
+        private final int to;
+
+        ForEachNodeTask(int chunk, int from, int to) {
+            this.chunk = chunk;
+            this.from = from;
+            this.to = to;
+        }
+
+        abstract void visit(int node);
+
+        @Override
+        protected Boolean compute() {
+            if (TaskManager.getInstance().isCanceled()) return false;
+
+            if (to - from <= chunk) {
+                for (int i = from; i < to; i++) {
+                    visit(i);
+                }
+
+                return true;
+            } else {
+                final int mid = (to + from) / 2;
+                final ForEachNodeTask outer = this;
+
+                ForEachNodeTask left = new ForEachNodeTask(chunk, from, mid) {
+                    void visit(int node) {
+                        outer.visit(node);
+                    }
+                };
+
+                ForEachNodeTask right = new ForEachNodeTask(chunk, mid, to) {
+                    void visit(int node) {
+                        outer.visit(node);
+                    }
+                };
+
+                left.fork();
+                right.compute();
+                left.join();
+
+                return true;
+            }
+        }
+    }
+
     public int getMinChunk(int n) {
         return Math.max(n / maxThreads, minChunk);
     }
@@ -517,58 +782,67 @@ public final class Fgs implements GraphSearch, GraphScorer {
     class NodeTaskEmptyGraph extends RecursiveTask<Boolean> {
         private final int from;
         private final int to;
-        private final List<Node> nodes;
-        private final Set<Node> emptySet;
 
-        public NodeTaskEmptyGraph(int from, int to, List<Node> nodes, Set<Node> emptySet) {
+        public NodeTaskEmptyGraph(int from, int to) {
             this.from = from;
             this.to = to;
-            this.nodes = nodes;
-            this.emptySet = emptySet;
         }
 
         @Override
         protected Boolean compute() {
-            for (int i = from; i < to; i++) {
-                if ((i + 1) % 1000 == 0) {
+            int numNodes = variables.size();
+
+            for (int y = from; y < to; y++) {
+                if ((y + 1) % 1000 == 0) {
                     count[0] += 1000;
                     out.println("Initializing effect edges: " + (count[0]));
                 }
 
-                Node y = nodes.get(i);
-                neighbors.put(y, emptySet);
+                neighbors[y] = EMPTY;
 
-                for (int j = i + 1; j < nodes.size(); j++) {
-                    Node x = nodes.get(j);
+                int[] xs = new int[numNodes - y - 1];
+                int numXs = 0;
 
+                for (int x = y + 1; x < numNodes; x++) {
                     if (existsKnowledge()) {
-                        if (getKnowledge().isForbidden(x.getName(), y.getName()) && getKnowledge().isForbidden(y.getName(), x.getName())) {
-                            continue;
-                        }
-
-                        if (!validSetByKnowledge(y, emptySet)) {
+                        if (isForbidden(x, y) && isForbidden(y, x)) {
                             continue;
                         }
                     }
 
-                    if (adjacencies != null && !adjacencies.isAdjacentTo(x, y)) {
+                    if (adjacencyPattern != null && !adjacencyPattern.isAdjacentTo(x, y)) {
                         continue;
                     }
 
-                    int child = hashIndices.get(y);
-                    int parent = hashIndices.get(x);
-                    double bump = score.localScoreDiff(parent, child);
+                    if (boundPattern != null && !boundPattern.isAdjacentTo(x, y)) continue;
+
+                    xs[numXs++] = x;
+                }
+
+                // Score all of the candidate parents of y at once.
+                int[] parents = new int[numXs];
+
+                for (int j = 0; j < numXs; j++) {
+                    parents[j] = scoreIndices[xs[j]];
+                }
 
-                    if (boundGraph != null && !boundGraph.isAdjacentTo(x, y)) continue;
+                double[] bumps = score.localScoreDiffs(parents, scoreIndices[y], EMPTY);
 
-                    if (bump > 0) {
-                        final Edge edge = Edges.undirectedEdge(x, y);
-                        effectEdgesGraph.addEdge(edge);
+                synchronized (effectEdgesGraph) {
+                    for (int j = 0; j < numXs; j++) {
+                        if (bumps[j] > 0) {
+                            effectEdgesGraph.addUndirectedEdge(xs[j], y);
+                        }
                     }
+                }
+
+                for (int j = 0; j < numXs; j++) {
+                    int x = xs[j];
+                    double bump = bumps[j];
 
                     if (bump > 0.0) {
-                        addArrow(x, y, emptySet, emptySet, bump);
-                        addArrow(y, x, emptySet, emptySet, bump);
+                        addArrow(x, y, EMPTY, EMPTY, bump);
+                        addArrow(y, x, EMPTY, EMPTY, bump);
                     }
                 }
             }
@@ -577,18 +851,111 @@ public final class Fgs implements GraphSearch, GraphScorer {
         }
     }
 
-    private void initializeForwardEdgesFromEmptyGraph(final List<Node> nodes) {
-//        if (verbose) {
-//            System.out.println("heuristicSpeedup = true");
-//        }
+    private void initializeForwardEdges() {
+        if (changedNodes == null) {
+            initializeForwardEdgesFromEmptyGraph();
+        } else {
+            initializeForwardEdgesFromPreviousPattern();
+        }
+    }
 
-        sortedArrows = new ConcurrentSkipListSet<>();
-        lookupArrows = new ConcurrentHashMap<>();
-        neighbors = new ConcurrentHashMap<>();
-        final Set<Node> emptySet = new HashSet<>();
+    // For a warm start. The effect edges are the adjacencies of the previous pattern together with
+    // those found from the changed nodes, and arrows are calculated, given the previous pattern,
+    // only into and out of the changed nodes.
+    private void initializeForwardEdgesFromPreviousPattern() {
+        final int numNodes = variables.size();
+
+        this.mode = Mode.heuristicSpeedup;
+        resetArrows();
+        neighbors = new int[numNodes][];
+
+        long start = System.currentTimeMillis();
+        this.effectEdgesGraph = new IndexedPattern(numNodes);
+
+        for (int x = 0; x < numNodes; x++) {
+            for (int y : graph.getAdjacents(x)) {
+                if (x < y) effectEdgesGraph.addUndirectedEdge(x, y);
+            }
+        }
+
+        pool.invoke(new ForEachNodeTask(getMinChunk(numNodes), 0, numNodes) {
+            void visit(int y) {
+                if (!isChanged(y)) return;
+
+                int[] xs = new int[numNodes];
+                int numXs = 0;
+
+                for (int x = 0; x < numNodes; x++) {
+                    if (x == y || (isChanged(x) && x < y)) continue;
+
+                    // Other nodes are adding to effectEdgesGraph, so look at the previous pattern,
+                    // which nothing changes here; adjacencies added since are checked below.
+                    if (graph.isAdjacentTo(x, y)) continue;
+
+                    if (existsKnowledge()) {
+                        if (isForbidden(x, y) && isForbidden(y, x)) {
+                            continue;
+                        }
+                    }
+
+                    if (adjacencyPattern != null && !adjacencyPattern.isAdjacentTo(x, y)) continue;
+                    if (boundPattern != null && !boundPattern.isAdjacentTo(x, y)) continue;
+
+                    xs[numXs++] = x;
+                }
+
+                int[] parents = new int[numXs];
+
+                for (int j = 0; j < numXs; j++) {
+                    parents[j] = scoreIndices[xs[j]];
+                }
+
+                double[] bumps = score.localScoreDiffs(parents, scoreIndices[y], EMPTY);
+
+                synchronized (effectEdgesGraph) {
+                    for (int j = 0; j < numXs; j++) {
+                        if (bumps[j] > 0 && !effectEdgesGraph.isAdjacentTo(xs[j], y)) {
+                            effectEdgesGraph.addUndirectedEdge(xs[j], y);
+                        }
+                    }
+                }
+            }
+        });
+
+        pool.invoke(new ForEachNodeTask(getMinChunk(numNodes), 0, numNodes) {
+            void visit(int y) {
+                neighbors[y] = getNeighbors(y);
+
+                for (int x : effectEdgesGraph.getAdjacents(y)) {
+                    if (!isChanged(x) && !isChanged(y)) continue;
+                    if (graph.isAdjacentTo(x, y)) continue;
+
+                    if (existsKnowledge()) {
+                        if (isForbidden(x, y) && isForbidden(y, x)) {
+                            continue;
+                        }
+                    }
+
+                    calculateArrowsForward(x, y);
+                }
+            }
+        });
+
+        long stop = System.currentTimeMillis();
+
+        if (verbose) {
+            out.println("Elapsed initializeForwardEdgesFromPreviousPattern = " + (stop - start) + " ms");
+        }
+    }
+
+    private void initializeForwardEdgesFromEmptyGraph() {
+        final int numNodes = variables.size();
+
+        resetArrows();
+        neighbors = new int[numNodes][];
 
         long start = System.currentTimeMillis();
-        this.effectEdgesGraph = new EdgeListGraphSingleConnections(nodes);
+        this.effectEdgesGraph = new IndexedPattern(numNodes);
 
         class InitializeFromEmptyGraphTask extends RecursiveTask<Boolean> {
 
@@ -599,11 +966,10 @@ public final class Fgs implements GraphSearch, GraphScorer {
             protected Boolean compute() {
                 Queue<NodeTaskEmptyGraph> tasks = new ArrayDeque<>();
 
-                int numNodesPerTask = Math.max(100, nodes.size() / maxThreads);
+                int numNodesPerTask = Math.max(100, numNodes / maxThreads);
 
-                for (int i = 0; i < nodes.size(); i += numNodesPerTask) {
-                    NodeTaskEmptyGraph task = new NodeTaskEmptyGraph(i, Math.min(nodes.size(), i + numNodesPerTask),
-                            nodes, emptySet);
+                for (int i = 0; i < numNodes; i += numNodesPerTask) {
+                    NodeTaskEmptyGraph task = new NodeTaskEmptyGraph(i, Math.min(numNodes, i + numNodesPerTask));
                     tasks.add(task);
                     task.fork();
 
@@ -637,30 +1003,15 @@ public final class Fgs implements GraphSearch, GraphScorer {
         }
     }
 
-    private void initializeTwoStepEdges(final List<Node> nodes) {
-//        if (verbose) {
-//            System.out.println("heuristicSpeedup = false");
-//        }
-
+    private void initializeTwoStepEdges() {
         count[0] = 0;
 
-        sortedArrows = new ConcurrentSkipListSet<>();
-        lookupArrows = new ConcurrentHashMap<>();
-        neighbors = new ConcurrentHashMap<>();
-
-        if (this.effectEdgesGraph == null) {
-            this.effectEdgesGraph = new EdgeListGraph(nodes);
-        }
+        final int numNodes = variables.size();
 
-        if (initialGraph != null) {
-            for (Edge edge : initialGraph.getEdges()) {
-                if (!effectEdgesGraph.isAdjacentTo(edge.getNode1(), edge.getNode2())) {
-                    effectEdgesGraph.addUndirectedEdge(edge.getNode1(), edge.getNode2());
-                }
-            }
-        }
+        resetArrows();
+        neighbors = new int[numNodes][];
 
-        final Set<Node> emptySet = new HashSet<>(0);
+        addInitialGraphEffectEdges();
 
         class InitializeFromExistingGraphTask extends RecursiveTask<Boolean> {
             private int chunk;
@@ -678,50 +1029,26 @@ public final class Fgs implements GraphSearch, GraphScorer {
                 if (TaskManager.getInstance().isCanceled()) return false;
 
                 if (to - from <= chunk) {
-                    for (int i = from; i < to; i++) {
-                        if ((i + 1) % 1000 == 0) {
+                    for (int y = from; y < to; y++) {
+                        if ((y + 1) % 1000 == 0) {
                             count[0] += 1000;
                             out.println("Initializing effect edges: " + (count[0]));
                         }
 
-                        Node y = nodes.get(i);
-
-                        Set<Node> g = new HashSet<>();
-
-                        for (Node n : graph.getAdjacentNodes(y)) {
-                            for (Node m : graph.getAdjacentNodes(n)) {
-                                if (m == y) continue;
-
-                                if (graph.isAdjacentTo(y, m)) {
-                                    continue;
-                                }
-
-                                if (graph.isDefCollider(m, n, y)) {
-                                    continue;
-                                }
-
-                                g.add(m);
-                            }
-                        }
-
-                        for (Node x : g) {
-                            if (x == y) throw new IllegalArgumentException();
+                        if (!isChanged(y)) continue;
 
+                        for (int x : getTwoStepNodes(y)) {
                             if (existsKnowledge()) {
-                                if (getKnowledge().isForbidden(x.getName(), y.getName()) && getKnowledge().isForbidden(y.getName(), x.getName())) {
-                                    continue;
-                                }
-
-                                if (!validSetByKnowledge(y, emptySet)) {
+                                if (isForbidden(x, y) && isForbidden(y, x)) {
                                     continue;
                                 }
                             }
 
-                            if (adjacencies != null && !adjacencies.isAdjacentTo(x, y)) {
+                            if (adjacencyPattern != null && !adjacencyPattern.isAdjacentTo(x, y)) {
                                 continue;
                             }
 
-                            if (removedEdges.contains(Edges.undirectedEdge(x, y))) {
+                            if (removedEdges.isAdjacentTo(x, y)) {
                                 continue;
                             }
 
@@ -745,33 +1072,18 @@ public final class Fgs implements GraphSearch, GraphScorer {
             }
         }
 
-        pool.invoke(new InitializeFromExistingGraphTask(getMinChunk(nodes.size()), 0, nodes.size()));
+        pool.invoke(new InitializeFromExistingGraphTask(getMinChunk(numNodes), 0, numNodes));
     }
 
-    private void initializeForwardEdgesFromExistingGraph(final List<Node> nodes) {
-//        if (verbose) {
-//            System.out.println("heuristicSpeedup = false");
-//        }
-
+    private void initializeForwardEdgesFromExistingGraph() {
         count[0] = 0;
 
-        sortedArrows = new ConcurrentSkipListSet<>();
-        lookupArrows = new ConcurrentHashMap<>();
-        neighbors = new ConcurrentHashMap<>();
-
-        if (this.effectEdgesGraph == null) {
-            this.effectEdgesGraph = new EdgeListGraph(nodes);
-        }
+        final int numNodes = variables.size();
 
-        if (initialGraph != null) {
-            for (Edge edge : initialGraph.getEdges()) {
-                if (!effectEdgesGraph.isAdjacentTo(edge.getNode1(), edge.getNode2())) {
-                    effectEdgesGraph.addUndirectedEdge(edge.getNode1(), edge.getNode2());
-                }
-            }
-        }
+        resetArrows();
+        neighbors = new int[numNodes][];
 
-        final Set<Node> emptySet = new HashSet<>(0);
+        addInitialGraphEffectEdges();
 
         class InitializeFromExistingGraphTask extends RecursiveTask<Boolean> {
             private int chunk;
@@ -789,31 +1101,26 @@ public final class Fgs implements GraphSearch, GraphScorer {
                 if (TaskManager.getInstance().isCanceled()) return false;
 
                 if (to - from <= chunk) {
-                    for (int i = from; i < to; i++) {
-                        if ((i + 1) % 1000 == 0) {
+                    for (int y = from; y < to; y++) {
+                        if ((y + 1) % 1000 == 0) {
                             count[0] += 1000;
                             out.println("Initializing effect edges: " + (count[0]));
                         }
 
-                        Node y = nodes.get(i);
-                        Set<Node> D = new HashSet<>();
-                        List<Node> cond = new ArrayList<>();
-                        D.addAll(GraphUtils.getDconnectedVars(y, cond, graph));
-                        D.remove(y);
-                        D.removeAll(effectEdgesGraph.getAdjacentNodes(y));
+                        if (!isChanged(y)) continue;
 
-                        for (Node x : D) {
-                            if (existsKnowledge()) {
-                                if (getKnowledge().isForbidden(x.getName(), y.getName()) && getKnowledge().isForbidden(y.getName(), x.getName())) {
-                                    continue;
-                                }
+                        for (int x : getDconnectedNodes(y)) {
+                            if (effectEdgesGraph.isAdjacentTo(x, y)) {
+                                continue;
+                            }
 
-                                if (!validSetByKnowledge(y, emptySet)) {
+                            if (existsKnowledge()) {
+                                if (isForbidden(x, y) && isForbidden(y, x)) {
                                     continue;
                                 }
                             }
 
-                            if (adjacencies != null && !adjacencies.isAdjacentTo(x, y)) {
+                            if (adjacencyPattern != null && !adjacencyPattern.isAdjacentTo(x, y)) {
                                 continue;
                             }
 
@@ -837,7 +1144,26 @@ public final class Fgs implements GraphSearch, GraphScorer {
             }
         }
 
-        pool.invoke(new InitializeFromExistingGraphTask(getMinChunk(nodes.size()), 0, nodes.size()));
+        pool.invoke(new InitializeFromExistingGraphTask(getMinChunk(numNodes), 0, numNodes));
+    }
+
+    // Adds the adjacencies of the initial graph, if there is one, to the effect edges graph.
+    private void addInitialGraphEffectEdges() {
+        if (this.effectEdgesGraph == null) {
+            this.effectEdgesGraph = new IndexedPattern(variables.size());
+        }
+
+        if (initialGraph != null) {
+            for (Edge edge : initialGraph.getEdges()) {
+                Integer x = variableIndices.get(edge.getNode1());
+                Integer y = variableIndices.get(edge.getNode2());
+                if (x == null || y == null || x.equals(y)) continue;
+
+                if (!effectEdgesGraph.isAdjacentTo(x, y)) {
+                    effectEdgesGraph.addUndirectedEdge(x, y);
+                }
+            }
+        }
     }
 
     private void fes() {
@@ -845,33 +1171,36 @@ public final class Fgs implements GraphSearch, GraphScorer {
 
         int maxDegree = this.maxDegree == -1 ? 1000 : this.maxDegree;
 
-        while (!sortedArrows.isEmpty()) {
-            Arrow arrow = sortedArrows.first();
-            sortedArrows.remove(arrow);
+        Arrow arrow;
+
+        while ((arrow = arrowQueue.poll()) != null) {
+            if (isStale(arrow)) continue;
 
-            Node x = arrow.getA();
-            Node y = arrow.getB();
+            int x = arrow.getA();
+            int y = arrow.getB();
 
             if (graph.isAdjacentTo(x, y)) {
                 continue;
             }
 
-            if (!arrow.getNaYX().equals(getNaYX(x, y))) {
+            int[] naYX = getNaYX(x, y);
+
+            if (!Arrays.equals(arrow.getNaYX(), naYX)) {
                 continue;
             }
 
-            if (!getTNeighbors(x, y).containsAll(arrow.getHOrT())) {
+            if (!containsAll(getTNeighbors(x, y), arrow.getHOrT())) {
                 continue;
             }
 
-            if (!validInsert(x, y, arrow.getHOrT(), getNaYX(x, y))) {
+            if (!validInsert(x, y, arrow.getHOrT(), naYX)) {
                 continue;
             }
 
             if (graph.getDegree(x) > maxDegree - 1) continue;
             if (graph.getDegree(y) > maxDegree - 1) continue;
 
-            Set<Node> T = arrow.getHOrT();
+            int[] T = arrow.getHOrT();
             double bump = arrow.getBump();
 
             boolean inserted = insert(x, y, T, bump);
@@ -879,57 +1208,42 @@ public final class Fgs implements GraphSearch, GraphScorer {
 
             totalScore += bump;
 
-            Set<Node> visited = reapplyOrientation(x, y, null);
-            Set<Node> toProcess = new HashSet<>();
-
-            for (Node node : visited) {
-                final Set<Node> neighbors1 = getNeighbors(node);
-                final Set<Node> storedNeighbors = this.neighbors.get(node);
-
-                if (!(neighbors1.equals(storedNeighbors))) {
-                    toProcess.add(node);
-                }
-            }
-
-            toProcess.add(x);
-            toProcess.add(y);
+            int[] visited = reapplyOrientation(x, y, EMPTY);
+            int[] toProcess = getChangedNodes(visited, x, y, EMPTY);
+            markChanged(toProcess);
 
             storeGraph();
-            reevaluateForward(toProcess, arrow);
+            reevaluateForward(toProcess);
         }
     }
 
     private void bes() {
         TetradLogger.getInstance().log("info", "** BACKWARD EQUIVALENCE SEARCH");
 
-        sortedArrows = new ConcurrentSkipListSet<>();
-        lookupArrows = new ConcurrentHashMap<>();
-        neighbors = new ConcurrentHashMap<>();
+        resetArrows();
+        neighbors = new int[variables.size()][];
 
         initializeArrowsBackward();
 
-        while (!sortedArrows.isEmpty()) {
-            Arrow arrow = sortedArrows.first();
-            sortedArrows.remove(arrow);
+        Arrow arrow;
 
-            Node x = arrow.getA();
-            Node y = arrow.getB();
+        while ((arrow = arrowQueue.poll()) != null) {
+            if (isStale(arrow)) continue;
 
-            if (!arrow.getNaYX().equals(getNaYX(x, y))) {
+            int x = arrow.getA();
+            int y = arrow.getB();
+
+            if (!Arrays.equals(arrow.getNaYX(), getNaYX(x, y))) {
                 continue;
             }
 
             if (!graph.isAdjacentTo(x, y)) continue;
 
-            Edge edge = graph.getEdge(x, y);
-            if (edge.pointsTowards(x)) continue;
-
-            HashSet<Node> diff = new HashSet<>(arrow.getNaYX());
-            diff.removeAll(arrow.getHOrT());
+            if (graph.isParentOf(y, x)) continue;
 
             if (!validDelete(x, y, arrow.getHOrT(), arrow.getNaYX())) continue;
 
-            Set<Node> H = arrow.getHOrT();
+            int[] H = arrow.getHOrT();
             double bump = arrow.getBump();
 
             boolean deleted = delete(x, y, H, bump, arrow.getNaYX());
@@ -939,46 +1253,67 @@ public final class Fgs implements GraphSearch, GraphScorer {
 
             clearArrow(x, y);
 
-            Set<Node> visited = reapplyOrientation(x, y, H);
+            int[] visited = reapplyOrientation(x, y, H);
+            int[] toProcess = getChangedNodes(visited, x, y, getCommonAdjacents(x, y));
+            markChanged(toProcess);
 
-            Set<Node> toProcess = new HashSet<>();
+            storeGraph();
+            reevaluateBackward(toProcess);
+        }
 
-            for (Node node : visited) {
-                final Set<Node> neighbors1 = getNeighbors(node);
-                final Set<Node> storedNeighbors = this.neighbors.get(node);
+        int[] allNodes = new int[variables.size()];
 
-                if (!(neighbors1.equals(storedNeighbors))) {
-                    toProcess.add(node);
-                }
-            }
+        for (int i = 0; i < allNodes.length; i++) {
+            allNodes[i] = i;
+        }
 
-            toProcess.add(x);
-            toProcess.add(y);
-            toProcess.addAll(getCommonAdjacents(x, y));
+        meekOrientRestricted(allNodes);
+    }
 
-            storeGraph();
-            reevaluateBackward(toProcess);
+    // The nodes adjacent to both x and y.
+    private int[] getCommonAdjacents(int x, int y) {
+        int[] common = new int[Math.min(graph.getDegree(x), graph.getDegree(y))];
+        int size = 0;
+
+        for (int k = 0; k < graph.getDegree(x); k++) {
+            int z = graph.getAdjacent(x, k);
+
+            if (graph.isAdjacentTo(y, z)) {
+                common[size++] = z;
+            }
         }
 
-        meekOrientRestricted(getVariables(), getKnowledge());
+        return Arrays.copyOf(common, size);
     }
 
-    private Set<Node> getCommonAdjacents(Node x, Node y) {
-        Set<Node> commonChildren = new HashSet<>(graph.getAdjacentNodes(x));
-        commonChildren.retainAll(graph.getAdjacentNodes(y));
-        return commonChildren;
-    }
+    // The visited nodes whose neighbors have changed since their arrows were calculated, together
+    // with x, y and the given others, in increasing order.
+    private int[] getChangedNodes(int[] visited, int x, int y, int[] others) {
+        int[] toProcess = new int[visited.length + 2 + others.length];
+        int size = 0;
+
+        for (int node : visited) {
+            if (!Arrays.equals(getNeighbors(node), this.neighbors[node])) {
+                toProcess[size++] = node;
+            }
+        }
 
-    private Set<Node> reapplyOrientation(Node x, Node y, Set<Node> newArrows) {
-        Set<Node> toProcess = new HashSet<>();
-        toProcess.add(x);
-        toProcess.add(y);
+        toProcess[size++] = x;
+        toProcess[size++] = y;
 
-        if (newArrows != null) {
-            toProcess.addAll(newArrows);
+        for (int node : others) {
+            toProcess[size++] = node;
         }
 
-        return meekOrientRestricted(new ArrayList<>(toProcess), getKnowledge());
+        return sortedUnique(toProcess, size);
+    }
+
+    private int[] reapplyOrientation(int x, int y, int[] newArrows) {
+        int[] toProcess = new int[newArrows.length + 2];
+        toProcess[0] = x;
+        toProcess[1] = y;
+        System.arraycopy(newArrows, 0, toProcess, 2, newArrows.length);
+        return meekOrientRestricted(toProcess);
     }
 
     // Returns true if knowledge is not empty.
@@ -986,46 +1321,45 @@ public final class Fgs implements GraphSearch, GraphScorer {
         return !knowledge.isEmpty();
     }
 
+    // Returns true if the knowledge forbids x-->y.
+    private boolean isForbidden(int x, int y) {
+        return knowledge.isForbidden(variables.get(x).getName(), variables.get(y).getName());
+    }
 
     // Initiaizes the sorted arrows lists for the backward search.
     private void initializeArrowsBackward() {
-        for (Edge edge : graph.getEdges()) {
-            Node x = edge.getNode1();
-            Node y = edge.getNode2();
+        long[] pairs = new long[2 * graph.getNumEdges()];
+        int size = 0;
 
-            if (existsKnowledge()) {
-                if (!getKnowledge().noEdgeRequired(x.getName(), y.getName())) {
-                    continue;
+        for (int x = 0; x < variables.size(); x++) {
+            for (int y : graph.getAdjacents(x)) {
+                if (y < x) continue;
+
+                if (existsKnowledge()) {
+                    if (!getKnowledge().noEdgeRequired(variables.get(x).getName(), variables.get(y).getName())) {
+                        continue;
+                    }
                 }
-            }
 
-            clearArrow(x, y);
-            clearArrow(y, x);
+                if (!graph.isParentOf(y, x)) pairs[size++] = getPair(x, y);
+                if (!graph.isParentOf(x, y)) pairs[size++] = getPair(y, x);
 
-            if (edge.pointsTowards(y)) {
-                calculateArrowsBackward(x, y);
-            } else if (edge.pointsTowards(x)) {
-                calculateArrowsBackward(y, x);
-            } else {
-                calculateArrowsBackward(x, y);
-                calculateArrowsBackward(y, x);
+                this.neighbors[x] = getNeighbors(x);
+                this.neighbors[y] = getNeighbors(y);
             }
-
-            this.neighbors.put(x, getNeighbors(x));
-            this.neighbors.put(y, getNeighbors(y));
         }
+
+        rescoreDeletions(pairs, size);
     }
 
     // Calcuates new arrows based on changes in the graph for the forward search.
-    private void reevaluateForward(final Set<Node> nodes, final Arrow arrow) {
+    private void reevaluateForward(final int[] nodes) {
         class AdjTask extends RecursiveTask<Boolean> {
-            private final List<Node> nodes;
             private int from;
             private int to;
             private int chunk;
 
-            public AdjTask(int chunk, List<Node> nodes, int from, int to) {
-                this.nodes = nodes;
+            public AdjTask(int chunk, int from, int to) {
                 this.from = from;
                 this.to = to;
                 this.chunk = chunk;
@@ -1035,51 +1369,43 @@ public final class Fgs implements GraphSearch, GraphScorer {
             protected Boolean compute() {
                 if (to - from <= chunk) {
                     for (int _w = from; _w < to; _w++) {
-                        Node x = nodes.get(_w);
+                        int x = nodes[_w];
 
-                        List<Node> adj;
+                        int[] adj;
 
                         if (mode == Mode.heuristicSpeedup) {
-                            adj = effectEdgesGraph.getAdjacentNodes(x);
+                            adj = effectEdgesGraph.getAdjacents(x);
                         } else if (mode == Mode.coverNoncolliders) {
-                            Set<Node> g = new HashSet<>();
-
-                            for (Node n : graph.getAdjacentNodes(x)) {
-                                for (Node m : graph.getAdjacentNodes(n)) {
-                                    if (graph.isAdjacentTo(x, m)) {
-                                        continue;
-                                    }
-
-                                    if (graph.isDefCollider(m, n, x)) {
-                                        continue;
-                                    }
-
-                                    g.add(m);
-                                }
-                            }
-
-                            adj = new ArrayList<>(g);
+                            adj = getTwoStepNodes(x);
                         } else if (mode == Mode.allowUnfaithfulness) {
-                            HashSet<Node> D = new HashSet<>();
-                            D.addAll(GraphUtils.getDconnectedVars(x, new ArrayList<Node>(), graph));
-                            D.remove(x);
-                            adj = new ArrayList<>(D);
+                            adj = getDconnectedNodes(x);
                         } else {
                             throw new IllegalStateException();
                         }
 
-                        for (Node w : adj) {
-                            if (adjacencies != null && !(adjacencies.isAdjacentTo(w, x))) {
+                        int[] ws = new int[adj.length];
+                        int numWs = 0;
+
+                        for (int w : adj) {
+                            if (adjacencyPattern != null && !(adjacencyPattern.isAdjacentTo(w, x))) {
                                 continue;
                             }
 
                             if (w == x) continue;
 
                             if (!graph.isAdjacentTo(w, x)) {
-                                clearArrow(w, x);
-                                calculateArrowsForward(w, x);
+                                ws[numWs++] = w;
                             }
                         }
+
+                        ws = Arrays.copyOf(ws, numWs);
+                        double[] bumps = insertEvalsGivenParents(ws, x);
+
+                        for (int k = 0; k < ws.length; k++) {
+                            int w = ws[k];
+                            clearArrow(w, x);
+                            calculateArrowsForward(w, x, bumps[k]);
+                        }
                     }
 
                     return true;
@@ -1088,8 +1414,8 @@ public final class Fgs implements GraphSearch, GraphScorer {
 
                     List<AdjTask> tasks = new ArrayList<>();
 
-                    tasks.add(new AdjTask(chunk, nodes, from, from + mid));
-                    tasks.add(new AdjTask(chunk, nodes, from + mid, to));
+                    tasks.add(new AdjTask(chunk, from, from + mid));
+                    tasks.add(new AdjTask(chunk, from + mid, to));
 
                     invokeAll(tasks);
 
@@ -1098,48 +1424,140 @@ public final class Fgs implements GraphSearch, GraphScorer {
             }
         }
 
-        final AdjTask task = new AdjTask(getMinChunk(nodes.size()), new ArrayList<>(nodes), 0, nodes.size());
+        final AdjTask task = new AdjTask(getMinChunk(nodes.length), 0, nodes.length);
         pool.invoke(task);
     }
 
+    // The nodes m not adjacent to y with y?-?n?-?m for some n, where n is not a collider on
+    // the path. These are candidates for covering noncolliders.
+    private int[] getTwoStepNodes(int y) {
+        int[] found = new int[16];
+        int size = 0;
+
+        for (int k = 0; k < graph.getDegree(y); k++) {
+            int n = graph.getAdjacent(y, k);
+
+            for (int l = 0; l < graph.getDegree(n); l++) {
+                int m = graph.getAdjacent(n, l);
+
+                if (m == y || graph.isAdjacentTo(y, m)) {
+                    continue;
+                }
+
+                if (graph.isDefCollider(m, n, y)) {
+                    continue;
+                }
+
+                if (size == found.length) {
+                    found = Arrays.copyOf(found, 2 * size);
+                }
+
+                found[size++] = m;
+            }
+        }
+
+        return sortedUnique(found, size);
+    }
+
+    // The nodes other than x d-connected to x given the empty set, that is, the nodes reachable
+    // from x by a path with no collider on it. Steps along the path are kept as a * n + b for
+    // the edge a?-?b traversed from a.
+    private int[] getDconnectedNodes(int x) {
+        int numNodes = variables.size();
+        boolean[] reached = new boolean[numNodes];
+        Set<Long> visited = new HashSet<>();
+        Queue<Long> queue = new ArrayDeque<>();
+
+        for (int k = 0; k < graph.getDegree(x); k++) {
+            int b = graph.getAdjacent(x, k);
+            long step = (long) x * numNodes + b;
+            visited.add(step);
+            queue.offer(step);
+            reached[b] = true;
+        }
+
+        while (!queue.isEmpty()) {
+            long step = queue.poll();
+            int a = (int) (step / numNodes);
+            int b = (int) (step % numNodes);
+            boolean intoB = graph.isParentOf(a, b);
+
+            for (int k = 0; k < graph.getDegree(b); k++) {
+                int c = graph.getAdjacent(b, k);
+                if (c == a) continue;
+
+                if (intoB && graph.getKind(b, k) == IndexedPattern.IN) {
+                    continue;
+                }
+
+                long next = (long) b * numNodes + c;
+
+                if (visited.add(next)) {
+                    queue.offer(next);
+                    reached[c] = true;
+                }
+            }
+        }
+
+        reached[x] = false;
+        int size = 0;
+
+        for (boolean r : reached) {
+            if (r) size++;
+        }
+
+        int[] dconnected = new int[size];
+        size = 0;
+
+        for (int i = 0; i < numNodes; i++) {
+            if (reached[i]) dconnected[size++] = i;
+        }
+
+        return dconnected;
+    }
+
     // Calculates the new arrows for an a->b edge.
-    private void calculateArrowsForward(Node a, Node b) {
+    private void calculateArrowsForward(int a, int b) {
+        calculateArrowsForward(a, b, Double.NaN);
+    }
+
+    // Calculates the new arrows for an a->b edge, given the bump for Insert(a, b, {})
+    // when NaYX is empty, if that has already been calculated (otherwise NaN).
+    private void calculateArrowsForward(int a, int b, double emptyInsertBump) {
         if (mode == Mode.heuristicSpeedup && !effectEdgesGraph.isAdjacentTo(a, b)) return;
-        if (adjacencies != null && !adjacencies.isAdjacentTo(a, b)) return;
-        this.neighbors.put(b, getNeighbors(b));
+        if (adjacencyPattern != null && !adjacencyPattern.isAdjacentTo(a, b)) return;
+        this.neighbors[b] = getNeighbors(b);
 
         if (a == b) throw new IllegalArgumentException();
 
         if (existsKnowledge()) {
-            if (getKnowledge().isForbidden(a.getName(), b.getName())) {
+            if (isForbidden(a, b)) {
                 return;
             }
         }
 
-        Set<Node> naYX = getNaYX(a, b);
+        int[] naYX = getNaYX(a, b);
         if (!isClique(naYX)) return;
 
-        List<Node> TNeighbors = getTNeighbors(a, b);
+        int[] tNeighbors = getTNeighbors(a, b);
 
-        Set<Set<Node>> previousCliques = new HashSet<>();
-        previousCliques.add(new HashSet<Node>());
-        Set<Set<Node>> newCliques = new HashSet<>();
+        List<int[]> previousCliques = new ArrayList<>();
+        previousCliques.add(EMPTY);
+        List<int[]> newCliques = new ArrayList<>();
 
         FOR:
-        for (int i = 0; i <= TNeighbors.size(); i++) {
-            final ChoiceGenerator gen = new ChoiceGenerator(TNeighbors.size(), i);
+        for (int i = 0; i <= tNeighbors.length; i++) {
+            final ChoiceGenerator gen = new ChoiceGenerator(tNeighbors.length, i);
             int[] choice;
 
             while ((choice = gen.next()) != null) {
-                Set<Node> T = GraphUtils.asSet(choice, TNeighbors);
-
-                Set<Node> union = new HashSet<>(naYX);
-                union.addAll(T);
+                int[] T = select(tNeighbors, choice);
+                int[] union = union(naYX, T);
 
                 boolean foundAPreviousClique = false;
 
-                for (Set<Node> clique : previousCliques) {
-                    if (union.containsAll(clique)) {
+                for (int[] clique : previousCliques) {
+                    if (containsAll(union, clique)) {
                         foundAPreviousClique = true;
                         break;
                     }
@@ -1152,119 +1570,125 @@ public final class Fgs implements GraphSearch, GraphScorer {
                 if (!isClique(union)) continue;
                 newCliques.add(union);
 
-                double bump = insertEval(a, b, T, naYX, hashIndices);
+                double bump = union.length == 0 && !Double.isNaN(emptyInsertBump)
+                        ? emptyInsertBump : insertEval(a, b, T, naYX);
 
                 if (bump > 0.0) {
                     addArrow(a, b, naYX, T, bump);
                 }
-
-//                if (mode == Mode.heuristicSpeedup && union.isEmpty() && score.isEffectEdge(bump) &&
-//                        !effectEdgesGraph.isAdjacentTo(a, b) && graph.getParents(b).isEmpty()) {
-//                    effectEdgesGraph.addUndirectedEdge(a, b);
-//                }
             }
 
             previousCliques = newCliques;
-            newCliques = new HashSet<>();
+            newCliques = new ArrayList<>();
         }
     }
 
-    private void addArrow(Node a, Node b, Set<Node> naYX, Set<Node> hOrT, double bump) {
-        Arrow arrow = new Arrow(bump, a, b, hOrT, naYX, arrowIndex++);
-        sortedArrows.add(arrow);
-        addLookupArrow(a, b, arrow);
+    private void addArrow(int a, int b, int[] naYX, int[] hOrT, double bump) {
+        arrowQueue.offer(new Arrow(bump, a, b, hOrT, naYX, getArrowVersion(a, b)));
+    }
+
+    // Reevaluates arrows after removing an edge from the graph, for the deletions into or out of
+    // the nodes whose neighborhoods may have changed.
+    private void reevaluateBackward(int[] toProcess) {
+        long[] pairs = new long[16];
+        int size = 0;
+
+        for (int r : toProcess) {
+            this.neighbors[r] = getNeighbors(r);
+
+            for (int k = 0; k < graph.getDegree(r); k++) {
+                int w = graph.getAdjacent(r, k);
+                byte kind = graph.getKind(r, k);
+
+                if (size + 2 > pairs.length) {
+                    pairs = Arrays.copyOf(pairs, 2 * pairs.length);
+                }
+
+                if (kind == IndexedPattern.IN) {
+                    pairs[size++] = getPair(w, r);
+                } else if (kind == IndexedPattern.UNDIRECTED) {
+                    pairs[size++] = getPair(w, r);
+                    pairs[size++] = getPair(r, w);
+                }
+            }
+        }
+
+        rescoreDeletions(pairs, size);
     }
 
-    // Reevaluates arrows after removing an edge from the graph.
-    private void reevaluateBackward(Set<Node> toProcess) {
+    // Clears the arrows for each of the given pairs a->b, keyed by a * n + b, and for b->a, and then
+    // calculates new arrows for removing a->b, for all of the pairs in parallel. A pair may be given
+    // more than once; it is scored once. The clearing is all done before any scoring, so that arrows
+    // calculated for one pair are not made stale by the clearing for another.
+    private void rescoreDeletions(long[] pairs, int size) {
+        final long[] unique = sortedUnique(pairs, size);
+        final int numNodes = variables.size();
+
+        for (long pair : unique) {
+            int a = (int) (pair / numNodes);
+            int b = (int) (pair % numNodes);
+            clearArrow(a, b);
+            clearArrow(b, a);
+        }
+
         class BackwardTask extends RecursiveTask<Boolean> {
-            private final Node r;
-            private List<Node> adj;
-            private Map<Node, Integer> hashIndices;
             private int chunk;
             private int from;
             private int to;
 
-            public BackwardTask(Node r, List<Node> adj, int chunk, int from, int to,
-                                Map<Node, Integer> hashIndices) {
-                this.adj = adj;
-                this.hashIndices = hashIndices;
+            public BackwardTask(int chunk, int from, int to) {
                 this.chunk = chunk;
                 this.from = from;
                 this.to = to;
-                this.r = r;
             }
 
             @Override
             protected Boolean compute() {
                 if (to - from <= chunk) {
-                    for (int _w = from; _w < to; _w++) {
-                        final Node w = adj.get(_w);
-                        Edge e = graph.getEdge(w, r);
-
-                        if (e != null) {
-                            if (e.pointsTowards(r)) {
-                                clearArrow(w, r);
-                                clearArrow(r, w);
-
-                                calculateArrowsBackward(w, r);
-                            } else if (Edges.isUndirectedEdge(graph.getEdge(w, r))) {
-                                clearArrow(w, r);
-                                clearArrow(r, w);
-
-                                calculateArrowsBackward(w, r);
-                                calculateArrowsBackward(r, w);
-                            }
-                        }
+                    for (int i = from; i < to; i++) {
+                        calculateArrowsBackward((int) (unique[i] / numNodes), (int) (unique[i] % numNodes));
                     }
 
                     return true;
                 } else {
-                    int mid = (to - from) / 2;
-
-                    List<BackwardTask> tasks = new ArrayList<>();
+                    int mid = (to + from) / 2;
 
-                    tasks.add(new BackwardTask(r, adj, chunk, from, from + mid, hashIndices));
-                    tasks.add(new BackwardTask(r, adj, chunk, from + mid, to, hashIndices));
+                    BackwardTask left = new BackwardTask(chunk, from, mid);
+                    BackwardTask right = new BackwardTask(chunk, mid, to);
 
-                    invokeAll(tasks);
+                    left.fork();
+                    right.compute();
+                    left.join();
 
                     return true;
                 }
             }
         }
 
-        for (Node r : toProcess) {
-            this.neighbors.put(r, getNeighbors(r));
-            List<Node> adjacentNodes = graph.getAdjacentNodes(r);
-            pool.invoke(new BackwardTask(r, adjacentNodes, getMinChunk(adjacentNodes.size()), 0,
-                    adjacentNodes.size(), hashIndices));
-        }
+        // Each deletion is scored for every subset of NaYX, so even a few are worth splitting up.
+        int chunk = Math.max(1, unique.length / (4 * maxThreads));
+        pool.invoke(new BackwardTask(chunk, 0, unique.length));
     }
 
     // Calculates the arrows for the removal in the backward direction.
-    private void calculateArrowsBackward(Node a, Node b) {
+    private void calculateArrowsBackward(int a, int b) {
         if (existsKnowledge()) {
-            if (!getKnowledge().noEdgeRequired(a.getName(), b.getName())) {
+            if (!getKnowledge().noEdgeRequired(variables.get(a).getName(), variables.get(b).getName())) {
                 return;
             }
         }
 
-        Set<Node> naYX = getNaYX(a, b);
+        int[] naYX = getNaYX(a, b);
 
-        List<Node> _naYX = new ArrayList<>(naYX);
-
-        final int _depth = _naYX.size();
+        final int _depth = naYX.length;
 
         for (int i = 0; i <= _depth; i++) {
-            final ChoiceGenerator gen = new ChoiceGenerator(_naYX.size(), i);
+            final ChoiceGenerator gen = new ChoiceGenerator(naYX.length, i);
             int[] choice;
 
             while ((choice = gen.next()) != null) {
-                Set<Node> diff = GraphUtils.asSet(choice, _naYX);
-
-                Set<Node> h = new HashSet<>(_naYX);
-                h.removeAll(diff);
+                int[] diff = select(naYX, choice);
+                int[] h = minus(naYX, diff);
 
                 if (existsKnowledge()) {
                     if (!validSetByKnowledge(b, h)) {
@@ -1272,7 +1696,7 @@ public final class Fgs implements GraphSearch, GraphScorer {
                     }
                 }
 
-                double bump = deleteEval(a, b, diff, naYX, hashIndices);
+                double bump = deleteEval(a, b, diff);
 
                 if (bump > 0.0) {
                     addArrow(a, b, naYX, h, bump);
@@ -1289,132 +1713,525 @@ public final class Fgs implements GraphSearch, GraphScorer {
     // associated sets needed to make this determination. For both forward and backward direction, NaYX is needed.
     // For the forward direction, T neighbors are needed; for the backward direction, H neighbors are needed.
     // See Chickering (2002). The totalScore difference resulting from added in the edge (hypothetically) is recorded
-    // as the "bump".
-    private static class Arrow implements Comparable<Arrow> {
+    // as the "bump". Nodes are given by their indices in the list of variables; the sets are sorted arrays.
+    private static class Arrow {
         private double bump;
-        private Node a;
-        private Node b;
-        private Set<Node> hOrT;
-        private Set<Node> naYX;
-        private int index = 0;
+        private int a;
+        private int b;
+        private int[] hOrT;
+        private int[] naYX;
+        private int version;
 
-        public Arrow(double bump, Node a, Node b, Set<Node> hOrT, Set<Node> naYX, int index) {
+        public Arrow(double bump, int a, int b, int[] hOrT, int[] naYX, int version) {
             this.bump = bump;
             this.a = a;
             this.b = b;
             this.hOrT = hOrT;
             this.naYX = naYX;
-            this.index = index;
+            this.version = version;
         }
 
         public double getBump() {
             return bump;
         }
 
-        public Node getA() {
+        public int getA() {
             return a;
         }
 
-        public Node getB() {
+        public int getB() {
             return b;
         }
 
-        public Set<Node> getHOrT() {
+        public int[] getHOrT() {
             return hOrT;
         }
 
-        public Set<Node> getNaYX() {
+        public int[] getNaYX() {
             return naYX;
         }
 
-        // Sorting by bump, high to low. The problem is the SortedSet contains won't add a new element if it compares
-        // to zero with an existing element, so for the cases where the comparison is to zero (i.e. have the same
-        // bump, we need to determine as quickly as possible a determinate ordering (fixed) ordering for two variables.
-        // The fastest way to do this is using a hash code, though it's still possible for two Arrows to have the
-        // same hash code but not be equal. If we're paranoid, in this case we calculate a determinate comparison
-        // not equal to zero by keeping a list. This last part is commened out by default.
-        public int compareTo(Arrow arrow) {
-            if (arrow == null) throw new NullPointerException();
+        // The version of the arrows for <a, b> when this one was made.
+        public int getVersion() {
+            return version;
+        }
+
+        public String toString() {
+            return "Arrow<" + a + "->" + b + " bump = " + bump + " t/h = " + Arrays.toString(hOrT)
+                    + " naYX = " + Arrays.toString(naYX) + ">";
+        }
+    }
+
+    // A binary max-heap of arrows by bump, ties going to the arrow that reached the heap first. The heap
+    // is kept in parallel arrays so that sifting compares primitives. Arrows may be offered from any
+    // thread, without locking; they wait in a lock-free queue and are moved into the heap at the next
+    // poll. Stale arrows are not removed, only skipped by the caller as they come off.
+    //
+    // If the heap is limited in size, its lower half is spilled to disk whenever it fills up, as a run
+    // of arrows in order, and arrows are polled from whichever of the heap and the runs has the highest
+    // next one, so they come off in the same order as they would with no limit. Offering threads then
+    // also move waiting arrows into the heap, so that these do not pile up either.
+    private static class ArrowQueue {
+
+        // Beyond this many runs, they are merged into one.
+        private static final int MAX_RUNS = 16;
+
+        private final Queue<Arrow> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger numPending = new AtomicInteger();
+        private final int maxInMemory;
+        private final List<ArrowRun> runs = new ArrayList<>();
+        private Arrow[] arrows = new Arrow[64];
+        private double[] bumps = new double[64];
+        private long[] orders = new long[64];
+        private int size = 0;
+        private long nextOrder = 0;
+
+        // @param maxInMemory The most arrows to keep in the heap, or -1 for no limit.
+        public ArrowQueue(int maxInMemory) {
+            this.maxInMemory = maxInMemory;
+        }
+
+        public void offer(Arrow arrow) {
+            pending.offer(arrow);
+
+            if (maxInMemory != -1 && numPending.incrementAndGet() > maxInMemory) {
+                drain();
+            }
+        }
+
+        // Removes and returns the arrow with the highest bump, or null if there are none.
+        public synchronized Arrow poll() {
+            drain();
+
+            ArrowRun highest = null;
+            boolean found = size > 0;
+            double bump = found ? bumps[0] : 0;
+            long order = found ? orders[0] : 0;
+
+            for (ArrowRun run : runs) {
+                if (!found || above(run.getBump(), run.getOrder(), bump, order)) {
+                    highest = run;
+                    bump = run.getBump();
+                    order = run.getOrder();
+                    found = true;
+                }
+            }
+
+            if (!found) {
+                return null;
+            }
+
+            if (highest != null) {
+                Arrow arrow = highest.next();
+
+                if (highest.isEmpty()) {
+                    highest.close();
+                    runs.remove(highest);
+                }
+
+                return arrow;
+            }
+
+            Arrow top = arrows[0];
+            size--;
+
+            if (size > 0) {
+                set(0, arrows[size], bumps[size], orders[size]);
+                siftDown(0);
+            }
+
+            arrows[size] = null;
+            return top;
+        }
+
+        // Deletes the files of any runs still on disk.
+        public synchronized void close() {
+            for (ArrowRun run : runs) {
+                run.close();
+            }
+
+            runs.clear();
+        }
+
+        private synchronized void drain() {
+            Arrow arrow;
+
+            while ((arrow = pending.poll()) != null) {
+                if (maxInMemory != -1) numPending.decrementAndGet();
+                push(arrow);
+            }
+        }
+
+        private void push(Arrow arrow) {
+            if (size == arrows.length) {
+                arrows = Arrays.copyOf(arrows, 2 * size);
+                bumps = Arrays.copyOf(bumps, 2 * size);
+                orders = Arrays.copyOf(orders, 2 * size);
+            }
 
-            final int compare = Double.compare(arrow.getBump(), getBump());
+            int i = size++;
+            double bump = arrow.getBump();
+            long order = nextOrder++;
 
-            if (compare == 0) {
-                return Integer.compare(getIndex(), arrow.getIndex());
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!above(bump, order, bumps[parent], orders[parent])) break;
+                set(i, arrows[parent], bumps[parent], orders[parent]);
+                i = parent;
             }
 
-            return compare;
+            set(i, arrow, bump, order);
+
+            if (maxInMemory != -1 && size > maxInMemory) {
+                spill();
+            }
         }
 
-        public String toString() {
-            return "Arrow<" + a + "->" + b + " bump = " + bump + " t/h = " + hOrT + " naYX = " + naYX + ">";
+        private void siftDown(int i) {
+            Arrow arrow = arrows[i];
+            double bump = bumps[i];
+            long order = orders[i];
+            int half = size >>> 1;
+
+            while (i < half) {
+                int child = 2 * i + 1;
+                int right = child + 1;
+
+                if (right < size && above(bumps[right], orders[right], bumps[child], orders[child])) {
+                    child = right;
+                }
+
+                if (!above(bumps[child], orders[child], bump, order)) break;
+                set(i, arrows[child], bumps[child], orders[child]);
+                i = child;
+            }
+
+            set(i, arrow, bump, order);
+        }
+
+        // Writes the lower half of the heap to a new run.
+        private void spill() {
+            int total = size;
+
+            // Heapsort, lowest first, then reverse. An array in order, highest first, is a heap.
+            while (size > 1) {
+                swap(0, size - 1);
+                size--;
+                siftDown(0);
+            }
+
+            for (int i = 0, j = total - 1; i < j; i++, j--) {
+                swap(i, j);
+            }
+
+            int keep = total / 2;
+
+            try {
+                runs.add(ArrowRun.write(arrows, orders, keep, total));
+
+                if (runs.size() > MAX_RUNS) {
+                    ArrowRun merged = ArrowRun.merge(runs);
+                    runs.clear();
+                    runs.add(merged);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Could not spill arrows to disk.", e);
+            }
+
+            Arrays.fill(arrows, keep, total, null);
+            size = keep;
+        }
+
+        // True if an arrow with bump1 and order1 belongs above one with bump2 and order2.
+        private static boolean above(double bump1, long order1, double bump2, long order2) {
+            return bump1 > bump2 || (bump1 == bump2 && order1 < order2);
         }
 
-        public int getIndex() {
-            return index;
+        private void set(int i, Arrow arrow, double bump, long order) {
+            arrows[i] = arrow;
+            bumps[i] = bump;
+            orders[i] = order;
+        }
+
+        private void swap(int i, int j) {
+            Arrow arrow = arrows[i];
+            double bump = bumps[i];
+            long order = orders[i];
+            set(i, arrows[j], bumps[j], orders[j]);
+            set(j, arrow, bump, order);
         }
     }
 
-    // Get all adj that are connected to Y by an undirected edge and not adjacent to X.
-    private List<Node> getTNeighbors(Node x, Node y) {
-        List<Edge> yEdges = graph.getEdges(y);
-        List<Node> tNeighbors = new ArrayList<>();
+    // Arrows in a temporary file, highest first, each with the order in which it reached the queue.
+    // The file is read back through memory-mapped segments, so only the part being read need be in
+    // memory. Each arrow is stored as its bump, order, a, b, version, the lengths of hOrT and naYX,
+    // and then their elements.
+    private static class ArrowRun {
 
-        for (Edge edge : yEdges) {
-            if (!Edges.isUndirectedEdge(edge)) {
-                continue;
+        private static final int HEADER_BYTES = 8 + 8 + 5 * 4;
+        private static final long SEGMENT_BYTES = 1 << 26;
+
+        private final File file;
+        private final FileChannel channel;
+        private final long length;
+        private MappedByteBuffer segment = null;
+        private long segmentStart = 0;
+        private long position = 0;
+
+        private ArrowRun(File file) throws IOException {
+            this.file = file;
+            this.channel = new RandomAccessFile(file, "r").getChannel();
+
+            try {
+                this.length = channel.size();
+            } catch (IOException e) {
+                channel.close();
+                throw e;
             }
+        }
 
-            Node z = edge.getDistalNode(y);
+        // Writes arrows[from], ..., arrows[to - 1], which must be in order, to a new run.
+        public static ArrowRun write(Arrow[] arrows, long[] orders, int from, int to) throws IOException {
+            File file = newFile();
 
-            if (graph.isAdjacentTo(z, x)) {
-                continue;
+            try {
+                try (DataOutputStream out = newOutput(file)) {
+                    for (int i = from; i < to; i++) {
+                        write(out, arrows[i], orders[i]);
+                    }
+                }
+
+                return new ArrowRun(file);
+            } catch (IOException | RuntimeException e) {
+                file.delete();
+                throw e;
+            }
+        }
+
+        // Merges the given runs into a new one, closing them. If this fails, they are left open.
+        public static ArrowRun merge(List<ArrowRun> runs) throws IOException {
+            File file = newFile();
+
+            try {
+                try (DataOutputStream out = newOutput(file)) {
+                    while (true) {
+                        ArrowRun highest = null;
+
+                        for (ArrowRun run : runs) {
+                            if (run.isEmpty()) continue;
+
+                            if (highest == null || ArrowQueue.above(run.getBump(), run.getOrder(),
+                                    highest.getBump(), highest.getOrder())) {
+                                highest = run;
+                            }
+                        }
+
+                        if (highest == null) break;
+
+                        long order = highest.getOrder();
+                        write(out, highest.next(), order);
+                    }
+                }
+
+                ArrowRun merged = new ArrowRun(file);
+
+                for (ArrowRun run : runs) {
+                    run.close();
+                }
+
+                return merged;
+            } catch (IOException | RuntimeException e) {
+                file.delete();
+                throw e;
+            }
+        }
+
+        public boolean isEmpty() {
+            return position >= length;
+        }
+
+        // The bump of the next arrow.
+        public double getBump() {
+            map(HEADER_BYTES);
+            return segment.getDouble(offset());
+        }
+
+        // The order of the next arrow.
+        public long getOrder() {
+            map(HEADER_BYTES);
+            return segment.getLong(offset() + 8);
+        }
+
+        // Reads the next arrow.
+        public Arrow next() {
+            map(HEADER_BYTES);
+            int i = offset();
+            double bump = segment.getDouble(i);
+            int a = segment.getInt(i + 16);
+            int b = segment.getInt(i + 20);
+            int version = segment.getInt(i + 24);
+            int[] hOrT = new int[segment.getInt(i + 28)];
+            int[] naYX = new int[segment.getInt(i + 32)];
+
+            map(HEADER_BYTES + 4 * (hOrT.length + naYX.length));
+            i = offset() + HEADER_BYTES;
+
+            for (int k = 0; k < hOrT.length; k++, i += 4) hOrT[k] = segment.getInt(i);
+            for (int k = 0; k < naYX.length; k++, i += 4) naYX[k] = segment.getInt(i);
+
+            position += HEADER_BYTES + 4 * (hOrT.length + naYX.length);
+            return new Arrow(bump, a, b, hOrT, naYX, version);
+        }
+
+        public void close() {
+            segment = null;
+
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing was written, so the file can be deleted anyway.
+            }
+
+            file.delete();
+        }
+
+        // Makes sure that the next numBytes bytes are mapped.
+        private void map(int numBytes) {
+            if (segment != null && position + numBytes <= segmentStart + segment.limit()) return;
+
+            try {
+                segmentStart = position;
+                long size = Math.min(Math.max(SEGMENT_BYTES, numBytes), length - position);
+                segment = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            } catch (IOException e) {
+                throw new RuntimeException("Could not read spilled arrows.", e);
             }
+        }
+
+        private int offset() {
+            return (int) (position - segmentStart);
+        }
+
+        private static File newFile() throws IOException {
+            return File.createTempFile("fgs-arrows", ".run");
+        }
 
-            tNeighbors.add(z);
+        private static DataOutputStream newOutput(File file) throws IOException {
+            return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
         }
 
-        return tNeighbors;
+        private static void write(DataOutputStream out, Arrow arrow, long order) throws IOException {
+            out.writeDouble(arrow.getBump());
+            out.writeLong(order);
+            out.writeInt(arrow.getA());
+            out.writeInt(arrow.getB());
+            out.writeInt(arrow.getVersion());
+            out.writeInt(arrow.getHOrT().length);
+            out.writeInt(arrow.getNaYX().length);
+            for (int t : arrow.getHOrT()) out.writeInt(t);
+            for (int z : arrow.getNaYX()) out.writeInt(z);
+        }
     }
 
-    // Get all adj that are connected to Y.
-    private Set<Node> getNeighbors(Node y) {
-        List<Edge> yEdges = graph.getEdges(y);
-        Set<Node> neighbors = new HashSet<>();
+    // Get all adj that are connected to Y by an undirected edge and not adjacent to X.
+    private int[] getTNeighbors(int x, int y) {
+        int[] tNeighbors = new int[graph.getDegree(y)];
+        int size = 0;
 
-        for (Edge edge : yEdges) {
-            if (!Edges.isUndirectedEdge(edge)) {
+        for (int k = 0; k < graph.getDegree(y); k++) {
+            if (graph.getKind(y, k) != IndexedPattern.UNDIRECTED) {
                 continue;
             }
 
-            Node z = edge.getDistalNode(y);
+            int z = graph.getAdjacent(y, k);
+
+            if (graph.isAdjacentTo(z, x)) {
+                continue;
+            }
 
-            neighbors.add(z);
+            tNeighbors[size++] = z;
         }
 
-        return neighbors;
+        return Arrays.copyOf(tNeighbors, size);
+    }
+
+    // Get all adj that are connected to Y by an undirected edge.
+    private int[] getNeighbors(int y) {
+        return graph.getNeighbors(y);
     }
 
     // Evaluate the Insert(X, Y, T) operator (Definition 12 from Chickering, 2002).
-    private double insertEval(Node x, Node y, Set<Node> t, Set<Node> naYX,
-                              Map<Node, Integer> hashIndices) {
+    private double insertEval(int x, int y, int[] t, int[] naYX) {
         if (x == y) throw new IllegalArgumentException();
-        Set<Node> set = new HashSet<>(naYX);
-        set.addAll(t);
-        set.addAll(graph.getParents(y));
-        return scoreGraphChange(y, set, x, hashIndices);
+
+        // NaYX and T are neighbors of y and the others its parents, so these are disjoint.
+        int[] parents = graph.getParents(y);
+        int[] set = new int[naYX.length + t.length + parents.length];
+        System.arraycopy(naYX, 0, set, 0, naYX.length);
+        System.arraycopy(t, 0, set, naYX.length, t.length);
+        System.arraycopy(parents, 0, set, naYX.length + t.length, parents.length);
+
+        return scoreGraphChange(y, set, x);
+    }
+
+    // Evaluates Insert(W, Y, {}) for each of the ws for which NaYX is empty, in one batch,
+    // since the conditioning set is then just the parents of y for all of them. The
+    // others, which calculateArrowsForward skips or evaluates itself, get NaN.
+    private double[] insertEvalsGivenParents(int[] ws, int y) {
+        double[] bumps = new double[ws.length];
+        Arrays.fill(bumps, Double.NaN);
+
+        int[] xs = new int[ws.length];
+        int[] positions = new int[ws.length];
+        int count = 0;
+
+        for (int k = 0; k < ws.length; k++) {
+            int w = ws[k];
+
+            if (mode == Mode.heuristicSpeedup && !effectEdgesGraph.isAdjacentTo(w, y)) continue;
+            if (existsKnowledge() && isForbidden(w, y)) continue;
+            if (getNaYX(w, y).length != 0) continue;
+
+            xs[count] = scoreIndices[w];
+            positions[count++] = k;
+        }
+
+        if (count == 0) {
+            return bumps;
+        }
+
+        int[] parents = graph.getParents(y);
+        int[] parentIndices = new int[parents.length];
+
+        for (int k = 0; k < parents.length; k++) {
+            parentIndices[k] = scoreIndices[parents[k]];
+        }
+
+        double[] _bumps = score.localScoreDiffs(Arrays.copyOf(xs, count), scoreIndices[y], parentIndices);
+
+        for (int k = 0; k < count; k++) {
+            bumps[positions[k]] = _bumps[k];
+        }
+
+        return bumps;
     }
 
     // Evaluate the Delete(X, Y, T) operator (Definition 12 from Chickering, 2002).
-    private double deleteEval(Node x, Node y, Set<Node> diff, Set<Node> naYX,
-                              Map<Node, Integer> hashIndices) {
-        Set<Node> set = new HashSet<>(diff);
-        set.addAll(graph.getParents(y));
-        set.remove(x);
-        return -scoreGraphChange(y, set, x, hashIndices);
+    private double deleteEval(int x, int y, int[] diff) {
+        int[] parents = graph.getParents(y);
+        int[] set = new int[diff.length + parents.length];
+        System.arraycopy(diff, 0, set, 0, diff.length);
+        int size = diff.length;
+
+        for (int parent : parents) {
+            if (parent != x) set[size++] = parent;
+        }
+
+        return -scoreGraphChange(y, Arrays.copyOf(set, size), x);
     }
 
     // Do an actual insertion. (Definition 12 from Chickering, 2002).
-    private boolean insert(Node x, Node y, Set<Node> T, double bump) {
+    private boolean insert(int x, int y, int[] T, double bump) {
         if (graph.isAdjacentTo(x, y)) {
             return false; // The initial graph may already have put this edge in the graph.
         }
@@ -1422,19 +2239,19 @@ public final class Fgs implements GraphSearch, GraphScorer {
         Edge trueEdge = null;
 
         if (trueGraph != null) {
-            Node _x = trueGraph.getNode(x.getName());
-            Node _y = trueGraph.getNode(y.getName());
+            Node _x = trueGraph.getNode(variables.get(x).getName());
+            Node _y = trueGraph.getNode(variables.get(y).getName());
             trueEdge = trueGraph.getEdge(_x, _y);
         }
 
-        if (boundGraph != null && !boundGraph.isAdjacentTo(x, y)) return false;
+        if (boundPattern != null && !boundPattern.isAdjacentTo(x, y)) return false;
 
         graph.addDirectedEdge(x, y);
 
         if (verbose) {
             String label = trueGraph != null && trueEdge != null ? "*" : "";
-            TetradLogger.getInstance().log("insertedEdges", graph.getNumEdges() + ". INSERT " + graph.getEdge(x, y) +
-                    " " + T + " " + bump + " " + label);
+            TetradLogger.getInstance().log("insertedEdges", graph.getNumEdges() + ". INSERT " + getEdge(x, y) +
+                    " " + asNodes(T) + " " + bump + " " + label);
         }
 
         int numEdges = graph.getNumEdges();
@@ -1445,20 +2262,20 @@ public final class Fgs implements GraphSearch, GraphScorer {
 
         if (verbose) {
             String label = trueGraph != null && trueEdge != null ? "*" : "";
-            out.println(graph.getNumEdges() + ". INSERT " + graph.getEdge(x, y) +
-                    " " + T + " " + bump + " " + label
-                    + " degree = " + GraphUtils.getDegree(graph)
-                    + " indegree = " + GraphUtils.getIndegree(graph));
+            out.println(graph.getNumEdges() + ". INSERT " + getEdge(x, y) +
+                    " " + asNodes(T) + " " + bump + " " + label
+                    + " degree = " + getMaxDegree(false)
+                    + " indegree = " + getMaxDegree(true));
         }
 
-        for (Node _t : T) {
+        for (int _t : T) {
             graph.removeEdge(_t, y);
-            if (boundGraph != null && !boundGraph.isAdjacentTo(_t, y)) continue;
+            if (boundPattern != null && !boundPattern.isAdjacentTo(_t, y)) continue;
 
             graph.addDirectedEdge(_t, y);
 
             if (verbose) {
-                String message = "--- Directing " + graph.getEdge(_t, y);
+                String message = "--- Directing " + getEdge(_t, y);
                 TetradLogger.getInstance().log("directedEdges", message);
                 out.println(message);
             }
@@ -1467,25 +2284,18 @@ public final class Fgs implements GraphSearch, GraphScorer {
         return true;
     }
 
-    Set<Edge> removedEdges = new HashSet<>();
-
     // Do an actual deletion (Definition 13 from Chickering, 2002).
-    private boolean delete(Node x, Node y, Set<Node> H, double bump, Set<Node> naYX) {
+    private boolean delete(int x, int y, int[] H, double bump, int[] naYX) {
         Edge trueEdge = null;
 
         if (trueGraph != null) {
-            Node _x = trueGraph.getNode(x.getName());
-            Node _y = trueGraph.getNode(y.getName());
+            Node _x = trueGraph.getNode(variables.get(x).getName());
+            Node _y = trueGraph.getNode(variables.get(y).getName());
             trueEdge = trueGraph.getEdge(_x, _y);
         }
 
-        Edge oldxy = graph.getEdge(x, y);
-
-        Set<Node> diff = new HashSet<>(naYX);
-        diff.removeAll(H);
-
-        graph.removeEdge(oldxy);
-        removedEdges.add(Edges.undirectedEdge(x, y));
+        graph.removeEdge(x, y);
+        removedEdges.addUndirectedEdge(x, y);
 
 //        if (verbose) {
         int numEdges = graph.getNumEdges();
@@ -1494,38 +2304,39 @@ public final class Fgs implements GraphSearch, GraphScorer {
 
         if (verbose) {
             String label = trueGraph != null && trueEdge != null ? "*" : "";
-            String message = (graph.getNumEdges()) + ". DELETE " + x + "-->" + y +
-                    " H = " + H + " NaYX = " + naYX + " diff = " + diff + " (" + bump + ") " + label;
+            String message = (graph.getNumEdges()) + ". DELETE " + variables.get(x) + "-->" + variables.get(y) +
+                    " H = " + asNodes(H) + " NaYX = " + asNodes(naYX) + " diff = " + asNodes(minus(naYX, H))
+                    + " (" + bump + ") " + label;
             TetradLogger.getInstance().log("deletedEdges", message);
             out.println(message);
         }
 
-        for (Node h : H) {
+        for (int h : H) {
             if (graph.isParentOf(h, y) || graph.isParentOf(h, x)) continue;
 
-            Edge oldyh = graph.getEdge(y, h);
+            Edge oldyh = verbose ? getEdge(y, h) : null;
 
-            graph.removeEdge(oldyh);
+            graph.removeEdge(y, h);
 
-            graph.addEdge(Edges.directedEdge(y, h));
+            graph.addDirectedEdge(y, h);
 
             if (verbose) {
                 TetradLogger.getInstance().log("directedEdges", "--- Directing " + oldyh + " to " +
-                        graph.getEdge(y, h));
-                out.println("--- Directing " + oldyh + " to " + graph.getEdge(y, h));
+                        getEdge(y, h));
+                out.println("--- Directing " + oldyh + " to " + getEdge(y, h));
             }
 
-            Edge oldxh = graph.getEdge(x, h);
+            if (graph.isUndirected(x, h)) {
+                Edge oldxh = verbose ? getEdge(x, h) : null;
 
-            if (Edges.isUndirectedEdge(oldxh)) {
-                graph.removeEdge(oldxh);
+                graph.removeEdge(x, h);
 
-                graph.addEdge(Edges.directedEdge(x, h));
+                graph.addDirectedEdge(x, h);
 
                 if (verbose) {
                     TetradLogger.getInstance().log("directedEdges", "--- Directing " + oldxh + " to " +
-                            graph.getEdge(x, h));
-                    out.println("--- Directing " + oldxh + " to " + graph.getEdge(x, h));
+                            getEdge(x, h));
+                    out.println("--- Directing " + oldxh + " to " + getEdge(x, h));
                 }
             }
         }
@@ -1535,45 +2346,43 @@ public final class Fgs implements GraphSearch, GraphScorer {
 
     // Test if the candidate insertion is a valid operation
     // (Theorem 15 from Chickering, 2002).
-    private boolean validInsert(Node x, Node y, Set<Node> T, Set<Node> naYX) {
+    private boolean validInsert(int x, int y, int[] T, int[] naYX) {
         boolean violatesKnowledge = false;
 
         if (existsKnowledge()) {
-            if (knowledge.isForbidden(x.getName(), y.getName())) {
+            if (isForbidden(x, y)) {
                 violatesKnowledge = true;
             }
 
-            for (Node t : T) {
-                if (knowledge.isForbidden(t.getName(), y.getName())) {
+            for (int t : T) {
+                if (isForbidden(t, y)) {
                     violatesKnowledge = true;
                 }
             }
         }
 
-        Set<Node> union = new HashSet<>(T);
-        union.addAll(naYX);
+        int[] union = union(T, naYX);
         boolean clique = isClique(union);
         boolean noCycle = !existsUnblockedSemiDirectedPath(y, x, union, cycleBound);
         return clique && noCycle && !violatesKnowledge;
     }
 
-    private boolean validDelete(Node x, Node y, Set<Node> H, Set<Node> naYX) {
+    private boolean validDelete(int x, int y, int[] H, int[] naYX) {
         boolean violatesKnowledge = false;
 
         if (existsKnowledge()) {
-            for (Node h : H) {
-                if (knowledge.isForbidden(x.getName(), h.getName())) {
+            for (int h : H) {
+                if (isForbidden(x, h)) {
                     violatesKnowledge = true;
                 }
 
-                if (knowledge.isForbidden(y.getName(), h.getName())) {
+                if (isForbidden(y, h)) {
                     violatesKnowledge = true;
                 }
             }
         }
 
-        Set<Node> diff = new HashSet<>(naYX);
-        diff.removeAll(H);
+        int[] diff = minus(naYX, H);
         return isClique(diff) && !violatesKnowledge;
     }
 
@@ -1643,9 +2452,9 @@ public final class Fgs implements GraphSearch, GraphScorer {
     // Use background knowledge to decide if an insert or delete operation does not orient edges in a forbidden
     // direction according to prior knowledge. If some orientation is forbidden in the subset, the whole subset is
     // forbidden.
-    private boolean validSetByKnowledge(Node y, Set<Node> subset) {
-        for (Node node : subset) {
-            if (getKnowledge().isForbidden(node.getName(), y.getName())) {
+    private boolean validSetByKnowledge(int y, int[] subset) {
+        for (int node : subset) {
+            if (isForbidden(node, y)) {
                 return false;
             }
         }
@@ -1654,29 +2463,26 @@ public final class Fgs implements GraphSearch, GraphScorer {
 
     // Find all adj that are connected to Y by an undirected edge that are adjacent to X (that is, by undirected or
     // directed edge).
-    private Set<Node> getNaYX(Node x, Node y) {
-        List<Node> adj = graph.getAdjacentNodes(y);
-        Set<Node> nayx = new HashSet<>();
+    private int[] getNaYX(int x, int y) {
+        int[] nayx = new int[graph.getDegree(y)];
+        int size = 0;
 
-        for (Node z : adj) {
+        for (int k = 0; k < graph.getDegree(y); k++) {
+            int z = graph.getAdjacent(y, k);
             if (z == x) continue;
-            Edge yz = graph.getEdge(y, z);
-            if (!Edges.isUndirectedEdge(yz)) continue;
+            if (graph.getKind(y, k) != IndexedPattern.UNDIRECTED) continue;
             if (!graph.isAdjacentTo(z, x)) continue;
-            nayx.add(z);
+            nayx[size++] = z;
         }
 
-        return nayx;
+        return Arrays.copyOf(nayx, size);
     }
 
-    Set<Edge> cliqueEdges = new HashSet<>();
-
     // Returns true iif the given set forms a clique in the given graph.
-    private boolean isClique(Set<Node> nodes) {
-        List<Node> _nodes = new ArrayList<>(nodes);
-        for (int i = 0; i < _nodes.size() - 1; i++) {
-            for (int j = i + 1; j < _nodes.size(); j++) {
-                if (!graph.isAdjacentTo(_nodes.get(i), _nodes.get(j))) {
+    private boolean isClique(int[] nodes) {
+        for (int i = 0; i < nodes.length - 1; i++) {
+            for (int j = i + 1; j < nodes.length; j++) {
+                if (!graph.isAdjacentTo(nodes[i], nodes[j])) {
                     return false;
                 }
             }
@@ -1686,43 +2492,49 @@ public final class Fgs implements GraphSearch, GraphScorer {
     }
 
     // Returns true if a path consisting of undirected and directed edges toward 'to' exists of
-    // length at most 'bound'. Cycle checker in other words.
-    private boolean existsUnblockedSemiDirectedPath(Node from, Node to, Set<Node> cond, int bound) {
-        Queue<Node> Q = new LinkedList<>();
-        Set<Node> V = new HashSet<>();
-        Q.offer(from);
-        V.add(from);
-        Node e = null;
+    // length at most 'bound'. Cycle checker in other words. The nodes in cond, which is sorted,
+    // are not passed through.
+    private boolean existsUnblockedSemiDirectedPath(int from, int to, int[] cond, int bound) {
+        if (++pathStamp == Integer.MAX_VALUE) {
+            Arrays.fill(pathStamps, 0);
+            pathStamp = 1;
+        }
+
+        int head = 0;
+        int tail = 0;
+        pathQueue[tail++] = from;
+        pathStamps[from] = pathStamp;
+        int e = -1;
         int distance = 0;
 
-        while (!Q.isEmpty()) {
-            Node t = Q.remove();
+        while (head < tail) {
+            int t = pathQueue[head++];
             if (t == to) {
                 return true;
             }
 
             if (e == t) {
-                e = null;
+                e = -1;
                 distance++;
                 if (distance > (bound == -1 ? 1000 : bound)) return false;
             }
 
-            for (Node u : graph.getAdjacentNodes(t)) {
-                Edge edge = graph.getEdge(t, u);
-                Node c = traverseSemiDirected(t, edge);
-                if (c == null) continue;
-                if (cond.contains(c)) continue;
+            for (int k = 0; k < graph.getDegree(t); k++) {
+                if (graph.getKind(t, k) == IndexedPattern.IN) continue;
+
+                int c = graph.getAdjacent(t, k);
+                if (Arrays.binarySearch(cond, c) >= 0) continue;
 
                 if (c == to) {
                     return true;
                 }
 
-                if (!V.contains(c)) {
-                    V.add(c);
-                    Q.offer(c);
+                if (pathStamps[c] != pathStamp) {
+                    pathStamps[c] = pathStamp;
+                    pathQueue[tail++] = c;
 
-                    if (e == null) {
-                        e = u;
+                    if (e == -1) {
+                        e = c;
                     }
                 }
             }
@@ -1731,32 +2543,11 @@ public final class Fgs implements GraphSearch, GraphScorer {
         return false;
     }
 
-    // Used to find semidirected paths for cycle checking.
-    private static Node traverseSemiDirected(Node node, Edge edge) {
-        if (node == edge.getNode1()) {
-            if (edge.getEndpoint1() == Endpoint.TAIL) {
-                return edge.getNode2();
-            }
-        } else if (node == edge.getNode2()) {
-            if (edge.getEndpoint2() == Endpoint.TAIL) {
-                return edge.getNode1();
-            }
-        }
-        return null;
-    }
-
-    // Runs Meek rules on just the changed adj.
-    private Set<Node> reorientNode(List<Node> nodes) {
-        addRequiredEdges(graph);
-        return meekOrientRestricted(nodes, getKnowledge());
-    }
-
     // Runs Meek rules on just the changed adj.
-    private Set<Node> meekOrientRestricted(List<Node> nodes, IKnowledge knowledge) {
-        MeekRules rules = new MeekRules();
-        rules.setKnowledge(knowledge);
+    private int[] meekOrientRestricted(int[] nodes) {
+        IndexedMeekRules rules = new IndexedMeekRules(graph, variables, existsKnowledge() ? knowledge : null);
         rules.setUndirectUnforcedEdges(true);
-        rules.orientImplied(graph, nodes);
+        rules.orientImplied(nodes);
         return rules.getVisited();
     }
 
@@ -1771,30 +2562,165 @@ public final class Fgs implements GraphSearch, GraphScorer {
         }
     }
 
-    // Removes information associated with an edge x->y.
-    private synchronized void clearArrow(Node x, Node y) {
-        final OrderedPair<Node> pair = new OrderedPair<>(x, y);
-        final Set<Arrow> lookupArrows = this.lookupArrows.get(pair);
+    // Starts over with no arrows, discarding any spilled to disk.
+    private void resetArrows() {
+        discardArrows();
+        arrowQueue = new ArrowQueue(maxArrowsInMemory);
+        arrowVersions = new ConcurrentHashMap<>();
+    }
+
+    // Deletes the temporary files of the arrow queue, if it has any.
+    private void discardArrows() {
+        if (arrowQueue != null) {
+            arrowQueue.close();
+        }
+    }
+
+    // Removes information associated with an edge x->y, by making its arrows stale. Each pair is only
+    // cleared from one task at a time, but different pairs may be cleared concurrently.
+    private void clearArrow(int x, int y) {
+        final Long pair = getPair(x, y);
+
+        while (true) {
+            Integer version = arrowVersions.get(pair);
+
+            if (version == null) {
+                if (arrowVersions.putIfAbsent(pair, 1) == null) return;
+            } else if (arrowVersions.replace(pair, version, version + 1)) {
+                return;
+            }
+        }
+    }
+
+    // The current version of the arrows for x->y.
+    private int getArrowVersion(int x, int y) {
+        Integer version = arrowVersions.get(getPair(x, y));
+        return version == null ? 0 : version;
+    }
+
+    // True if the arrow's pair has been cleared since the arrow was made.
+    private boolean isStale(Arrow arrow) {
+        return arrow.getVersion() != getArrowVersion(arrow.getA(), arrow.getB());
+    }
+
+    //===========================INDEX SET UTILITIES===================//
+
+    // The key for the ordered pair a->b.
+    private long getPair(int a, int b) {
+        return (long) a * variables.size() + b;
+    }
+
+    // The given number of elements of a, sorted, without duplicates.
+    private static long[] sortedUnique(long[] a, int size) {
+        long[] sorted = Arrays.copyOf(a, size);
+        Arrays.sort(sorted);
+        int unique = 0;
+
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[unique++] = sorted[i];
+            }
+        }
+
+        return unique == sorted.length ? sorted : Arrays.copyOf(sorted, unique);
+    }
+
+    // The given number of elements of a, sorted, without duplicates.
+    private static int[] sortedUnique(int[] a, int size) {
+        int[] sorted = Arrays.copyOf(a, size);
+        Arrays.sort(sorted);
+        int unique = 0;
+
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[unique++] = sorted[i];
+            }
+        }
+
+        return unique == sorted.length ? sorted : Arrays.copyOf(sorted, unique);
+    }
+
+    // The elements of a at the given (increasing) positions.
+    private static int[] select(int[] a, int[] positions) {
+        int[] selected = new int[positions.length];
+
+        for (int i = 0; i < positions.length; i++) {
+            selected[i] = a[positions[i]];
+        }
+
+        return selected;
+    }
+
+    // The union of the sorted, disjoint arrays a and b, sorted.
+    private static int[] union(int[] a, int[] b) {
+        if (b.length == 0) return a;
+        if (a.length == 0) return b;
+
+        int[] union = new int[a.length + b.length];
+        int i = 0, j = 0, k = 0;
+
+        while (i < a.length && j < b.length) {
+            union[k++] = a[i] < b[j] ? a[i++] : b[j++];
+        }
+
+        while (i < a.length) union[k++] = a[i++];
+        while (j < b.length) union[k++] = b[j++];
+
+        return union;
+    }
+
+    // The elements of the sorted array a not in the sorted array b.
+    private static int[] minus(int[] a, int[] b) {
+        int[] minus = new int[a.length];
+        int size = 0;
+
+        for (int x : a) {
+            if (Arrays.binarySearch(b, x) < 0) {
+                minus[size++] = x;
+            }
+        }
+
+        return Arrays.copyOf(minus, size);
+    }
+
+    // True if the sorted array a contains every element of the sorted array b.
+    private static boolean containsAll(int[] a, int[] b) {
+        int i = 0;
 
-        if (lookupArrows != null) {
-            sortedArrows.removeAll(lookupArrows);
+        for (int x : b) {
+            while (i < a.length && a[i] < x) i++;
+            if (i == a.length || a[i] != x) return false;
         }
 
-        this.lookupArrows.remove(pair);
+        return true;
+    }
+
+    // The edge between x and y in the graph, for output.
+    private Edge getEdge(int x, int y) {
+        Node _x = variables.get(x);
+        Node _y = variables.get(y);
+
+        if (graph.isParentOf(x, y)) return Edges.directedEdge(_x, _y);
+        if (graph.isParentOf(y, x)) return Edges.directedEdge(_y, _x);
+        if (graph.isUndirected(x, y)) return Edges.undirectedEdge(_x, _y);
+        return null;
+    }
+
+    private List<Node> asNodes(int[] indices) {
+        List<Node> nodes = new ArrayList<>();
+        for (int i : indices) nodes.add(variables.get(i));
+        return nodes;
     }
 
-    // Adds the given arrow for the adjacency i->j. These all are for i->j but may have
-    // different T or H or NaYX sets, and so different bumps.
-    private void addLookupArrow(Node i, Node j, Arrow arrow) {
-        OrderedPair<Node> pair = new OrderedPair<>(i, j);
-        Set<Arrow> arrows = lookupArrows.get(pair);
+    // The maximum degree, or indegree, of a node in the graph, for output.
+    private int getMaxDegree(boolean indegree) {
+        int max = 0;
 
-        if (arrows == null) {
-            arrows = new ConcurrentSkipListSet<>();
-            lookupArrows.put(pair, arrows);
+        for (int i = 0; i < variables.size(); i++) {
+            max = Math.max(max, indegree ? graph.getParents(i).length : graph.getDegree(i));
         }
 
-        arrows.add(arrow);
+        return max;
     }
 
     //===========================SCORING METHODS===================//
@@ -1825,21 +2751,17 @@ public final class Fgs implements GraphSearch, GraphScorer {
         return _score;
     }
 
-    private double scoreGraphChange(Node y, Set<Node> parents,
-                                    Node x, Map<Node, Integer> hashIndices) {
-        int yIndex = hashIndices.get(y);
-
+    private double scoreGraphChange(int y, int[] parents, int x) {
         if (x == y) throw new IllegalArgumentException();
-        if (parents.contains(y)) throw new IllegalArgumentException();
 
-        int[] parentIndices = new int[parents.size()];
+        int[] parentIndices = new int[parents.length];
 
-        int count = 0;
-        for (Node parent : parents) {
-            parentIndices[count++] = hashIndices.get(parent);
+        for (int k = 0; k < parents.length; k++) {
+            if (parents[k] == y) throw new IllegalArgumentException();
+            parentIndices[k] = scoreIndices[parents[k]];
         }
 
-        return score.localScoreDiff(hashIndices.get(x), yIndex, parentIndices);
+        return score.localScoreDiff(scoreIndices[x], scoreIndices[y], parentIndices);
     }
 
     private List<Node> getVariables() {
@@ -1849,7 +2771,7 @@ public final class Fgs implements GraphSearch, GraphScorer {
     // Stores the graph, if its totalScore knocks out one of the top ones.
     private void storeGraph() {
         if (getNumPatternsToStore() > 0) {
-            Graph graphCopy = new EdgeListGraphSingleConnections(graph);
+            Graph graphCopy = graph.toGraph(new ArrayList<>(variables));
             topGraphs.addLast(new ScoredGraph(graphCopy, totalScore));
         }
 
@@ -27,8 +27,9 @@ import edu.cmu.tetrad.util.ChoiceGenerator;
 import edu.cmu.tetrad.util.TetradLogger;
 
 import java.io.PrintStream;
-import java.util.Iterator;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 
 /**
@@ -114,27 +115,24 @@ public final class GFci implements GraphSearch {
         graph = fgs.search();
         Graph fgsGraph = new EdgeListGraphSingleConnections(graph);
 
-        sepsets = new SepsetsGreedy(fgsGraph, independenceTest, null, maxIndegree);
+        sepsets = new CachedSepsets(fgsGraph, independenceTest, maxIndegree);
 
-        for (Node b : nodes) {
-            List<Node> adjacentNodes = fgsGraph.getAdjacentNodes(b);
-
-            if (adjacentNodes.size() < 2) {
-                continue;
-            }
+        // The sepsets of the shielded pairs are found all at once, in parallel if the test allows, and kept, so that
+        // the pruning below and R0 after it both look them up. A pair is pruned just as when the sepsets are found one
+        // at a time.
+        final List<List<Node>> pairs = new ArrayList<>(shieldedPairs(fgsGraph, nodes));
+        boolean parallel = independenceTest instanceof ThreadSafeIndependenceTest;
 
-            ChoiceGenerator cg = new ChoiceGenerator(adjacentNodes.size(), 2);
-            int[] combination;
-
-            while ((combination = cg.next()) != null) {
-                Node a = adjacentNodes.get(combination[0]);
-                Node c = adjacentNodes.get(combination[1]);
-
-                if (graph.isAdjacentTo(a, c) && fgsGraph.isAdjacentTo(a, c)) {
-                    if (sepsets.getSepset(a, c) != null) {
-                        graph.removeEdge(a, c);
+        List<Boolean> separated = UnshieldedTriples.classify(pairs,
+                new UnshieldedTriples.Classifier<List<Node>, Boolean>() {
+                    public Boolean classify(List<Node> pair) {
+                        return sepsets.getSepset(pair.get(0), pair.get(1)) != null;
                     }
-                }
+                }, parallel);
+
+        for (int i = 0; i < pairs.size(); i++) {
+            if (separated.get(i)) {
+                graph.removeEdge(pairs.get(i).get(0), pairs.get(i).get(1));
             }
         }
 
@@ -144,7 +142,26 @@ public final class GFci implements GraphSearch {
         fciOrient.setKnowledge(getKnowledge());
         fciOrient.setCompleteRuleSetUsed(completeRuleSetUsed);
         fciOrient.setMaxPathLength(maxPathLength);
-        fciOrient.doFinalOrientation(graph);
+        fciOrient.setParallel(parallel);
+
+        List<Graph> components = components(graph);
+
+        if (components.size() < 2) {
+            fciOrient.doFinalOrientation(graph);
+        } else {
+            fciOrient.doFinalOrientation(components);
+
+            for (Graph component : components) {
+                for (Edge edge : component.getEdges()) {
+                    Edge _edge = graph.getEdge(edge.getNode1(), edge.getNode2());
+
+                    if (!edge.equals(_edge)) {
+                        graph.removeEdge(_edge);
+                        graph.addEdge(edge);
+                    }
+                }
+            }
+        }
 
         GraphUtils.replaceNodes(graph, independenceTest.getVariables());
 
@@ -179,6 +196,113 @@ public final class GFci implements GraphSearch {
         return maxIndegree;
     }
 
+    // The pairs (a, c) of adjacents of some b in the FGS graph that are themselves adjacent, in the order in which they
+    // come up when the adjacents of each node are taken two at a time, without repeats.
+    private Set<List<Node>> shieldedPairs(Graph fgsGraph, List<Node> nodes) {
+        Set<List<Node>> pairs = new LinkedHashSet<>();
+
+        for (Node b : nodes) {
+            List<Node> adjacentNodes = fgsGraph.getAdjacentNodes(b);
+
+            if (adjacentNodes.size() < 2) {
+                continue;
+            }
+
+            ChoiceGenerator cg = new ChoiceGenerator(adjacentNodes.size(), 2);
+            int[] combination;
+
+            while ((combination = cg.next()) != null) {
+                Node a = adjacentNodes.get(combination[0]);
+                Node c = adjacentNodes.get(combination[1]);
+
+                if (fgsGraph.isAdjacentTo(a, c)) {
+                    pairs.add(Arrays.asList(a, c));
+                }
+            }
+        }
+
+        return pairs;
+    }
+
+    // The connected components of the graph with at least three nodes; no orientation rule applies to the others. The
+    // nodes of each are in the order of the graph, and the edges of each node are in the same order as in the graph,
+    // since the rules visit them in that order.
+    private List<Graph> components(Graph graph) {
+        List<Node> nodes = graph.getNodes();
+        Set<Node> visited = new HashSet<>();
+        List<Graph> components = new ArrayList<>();
+
+        for (Node node : nodes) {
+            if (!visited.add(node)) {
+                continue;
+            }
+
+            Set<Node> members = new HashSet<>();
+            LinkedList<Node> queue = new LinkedList<>();
+            members.add(node);
+            queue.add(node);
+
+            while (!queue.isEmpty()) {
+                for (Node adj : graph.getAdjacentNodes(queue.removeFirst())) {
+                    if (visited.add(adj)) {
+                        members.add(adj);
+                        queue.add(adj);
+                    }
+                }
+            }
+
+            if (members.size() < 3) {
+                continue;
+            }
+
+            List<Node> componentNodes = new ArrayList<>();
+
+            for (Node member : nodes) {
+                if (members.contains(member)) {
+                    componentNodes.add(member);
+                }
+            }
+
+            components.add(component(graph, componentNodes));
+        }
+
+        return components;
+    }
+
+    // Copies the edges among the given nodes into a new graph, adding each edge once it is first in the remaining edges
+    // of both of its nodes, so that each node ends up with its edges in the same order as in the graph.
+    private Graph component(Graph graph, List<Node> nodes) {
+        Graph component = new EdgeListGraphSingleConnections(nodes);
+        Map<Node, Integer> next = new HashMap<>();
+        LinkedList<Node> queue = new LinkedList<>(nodes);
+
+        for (Node node : nodes) {
+            next.put(node, 0);
+        }
+
+        while (!queue.isEmpty()) {
+            Node node = queue.removeFirst();
+            List<Edge> edges = graph.getEdges(node);
+
+            while (next.get(node) < edges.size()) {
+                Edge edge = edges.get(next.get(node));
+                Node other = edge.getDistalNode(node);
+                List<Edge> otherEdges = graph.getEdges(other);
+
+                if (!edge.equals(otherEdges.get(next.get(other)))) {
+                    break;
+                }
+
+                component.addEdge(edge);
+                next.put(node, next.get(node) + 1);
+                next.put(other, next.get(other) + 1);
+                queue.add(other);
+            }
+        }
+
+        return component;
+    }
+
     // Due to Spirtes.
     public void modifiedR0(Graph fgsGraph) {
         graph.reorientAllWith(Endpoint.CIRCLE);
@@ -360,6 +484,40 @@ public final class GFci implements GraphSearch {
         logger.log("info", "Finishing BK Orientation.");
     }
 
+
+    // Greedy sepsets for a graph that no longer changes, kept as they are found so that each is looked for only once.
+    // Safe to use from several threads if the independence test is.
+    private static class CachedSepsets extends SepsetsGreedy {
+        // Stands for a pair with no sepset. It is a list of its own, so that no empty sepset is taken for it.
+        private static final List<Node> NO_SEPSET = new ArrayList<>(0);
+        private final ConcurrentMap<List<Node>, List<Node>> sepsets = new ConcurrentHashMap<>();
+
+        public CachedSepsets(Graph graph, IndependenceTest independenceTest, int depth) {
+            super(graph, independenceTest, null, depth);
+        }
+
+        public List<Node> getSepset(Node i, Node k) {
+            List<Node> pair = Arrays.asList(i, k);
+            List<Node> sepset = sepsets.get(pair);
+
+            if (sepset == null) {
+                sepset = super.getSepset(i, k);
+                sepsets.putIfAbsent(pair, sepset == null ? NO_SEPSET : sepset);
+            }
+
+            return sepset == NO_SEPSET ? null : sepset;
+        }
+
+        public boolean isCollider(Node i, Node j, Node k) {
+            List<Node> set = getSepset(i, k);
+            return set != null && !set.contains(j);
+        }
+
+        public boolean isNoncollider(Node i, Node j, Node k) {
+            List<Node> set = getSepset(i, k);
+            return set != null && set.contains(j);
+        }
+    }
 }
 
 
@@ -23,7 +23,7 @@ package edu.cmu.tetrad.search;
 
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.util.CombinationIterator;
-import edu.cmu.tetrad.util.ProbUtils;
+import edu.cmu.tetrad.util.PValues;
 
 import java.util.Arrays;
 
@@ -86,7 +86,7 @@ public final class GSquareTest extends ChiSquareTest {
 
         // Reset the cell table for the columns referred to in
         // 'testIndices.' Do cell coefs for those columns.
-        getCellTable().addToTable(getDataSet(), testIndices);
+        countCells(testIndices, 2);
 
         // Indicator arrays to tell the cell table which margins
         // to calculate. For x _||_ y | z1, z2, ..., we want to
@@ -183,7 +183,7 @@ public final class GSquareTest extends ChiSquareTest {
             df = 1;
         }
 
-        double pValue = 1.0 - ProbUtils.chisqCdf(g2, df);
+        double pValue = PValues.chiSquare(g2, df);
         boolean indep = (pValue > getAlpha());
         return new GSquareTest.Result(g2, pValue, df, indep);
     }
@@ -87,6 +87,17 @@ public class GraphScore implements Score {
 //        return localScore(y, x) - localScore(y);
     }
 
+    @Override
+    public double[] localScoreDiffs(int[] xs, int y, int[] z) {
+        double[] diffs = new double[xs.length];
+
+        for (int i = 0; i < xs.length; i++) {
+            diffs[i] = localScoreDiff(xs[i], y, z);
+        }
+
+        return diffs;
+    }
+
     private double locallyConsistentScoringCriterion(int x, int y, int[] z) {
         Node _y = variables.get(y);
         Node _x = variables.get(x);
@@ -0,0 +1,411 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.DataModel;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.ICovarianceMatrix;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.TetradMatrix;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wraps an independence test, remembering the result of each test it has
+ * done so that searches that ask the same question more than once (FAS
+ * followed by FCI orientation, for instance) only compute it once. Results
+ * are keyed by the indices of x and y and the sorted indices of z, so the
+ * order of the conditioning set doesn't matter; x and y are not swapped, since
+ * not every test is symmetric in them.
+ * <p>
+ * The cache is split into stripes, each locked separately, so that it can be
+ * shared by searches that test in parallel. When it is full the least
+ * recently used results are evicted. Counts of hits, misses and evictions are
+ * kept. Changing alpha clears the cache.
+ * <p>
+ * Most tests keep the result of their last test in a field, so unless the
+ * wrapped test is a ThreadSafeIndependenceTest, a miss runs the test and
+ * reads its p value and score while holding a lock on it. This test may then
+ * be called from several threads at once in either case.
+ */
+public final class IndTestCached implements ThreadSafeIndependenceTest {
+
+    /**
+     * The default maximum number of results kept.
+     */
+    public static final int DEFAULT_MAX_SIZE = 1000000;
+
+    private static final int NUM_STRIPES = 64;
+
+    /**
+     * The test being wrapped.
+     */
+    private final IndependenceTest test;
+
+    /**
+     * The maximum number of results kept.
+     */
+    private final int maxSize;
+
+    private final Map<Node, Integer> indexMap = new ConcurrentHashMap<>();
+    private final Stripe[] stripes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * The result of the last test done by each thread, for getPValue and
+     * getScore.
+     */
+    private final ThreadLocal<Result> lastResult = new ThreadLocal<>();
+
+    //==========================CONSTRUCTORS=============================//
+
+    /**
+     * Constructs a cache of at most DEFAULT_MAX_SIZE results around the
+     * given test.
+     */
+    public IndTestCached(IndependenceTest test) {
+        this(test, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Constructs a cache of at most maxSize results around the given test.
+     */
+    public IndTestCached(IndependenceTest test, int maxSize) {
+        if (test == null) {
+            throw new NullPointerException("Test must not be null.");
+        }
+
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache size must be at least 1: " + maxSize);
+        }
+
+        this.test = test;
+        this.maxSize = maxSize;
+
+        this.stripes = new Stripe[Math.min(NUM_STRIPES, maxSize)];
+
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe(maxSize / stripes.length + (i < maxSize % stripes.length ? 1 : 0));
+        }
+
+        List<Node> variables = test.getVariables();
+
+        for (int i = 0; i < variables.size(); i++) {
+            indexMap.put(variables.get(i), i);
+        }
+    }
+
+    //==========================PUBLIC METHODS=============================//
+
+    /**
+     * @return a cached test, with an empty cache of the same size, around
+     * the wrapped test's test for the given variables.
+     */
+    public IndependenceTest indTestSubset(List<Node> vars) {
+        return new IndTestCached(test.indTestSubset(vars), maxSize);
+    }
+
+    /**
+     * @return true iff x _||_ y | z, from the cache if this question has been
+     * asked before and otherwise from the wrapped test.
+     */
+    public boolean isIndependent(Node x, Node y, List<Node> z) {
+        Key key = key(x, y, z);
+
+        if (key == null) {
+            Result result = test(x, y, z);
+            lastResult.set(result);
+            return result.independent;
+        }
+
+        Stripe stripe = stripes[(key.hashCode() & 0x7fffffff) % stripes.length];
+        Result result;
+
+        synchronized (stripe) {
+            result = stripe.get(key);
+        }
+
+        if (result != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            result = test(x, y, z);
+
+            synchronized (stripe) {
+                stripe.put(key, result);
+            }
+        }
+
+        lastResult.set(result);
+        return result.independent;
+    }
+
+    public boolean isIndependent(Node x, Node y, Node... z) {
+        return isIndependent(x, y, Arrays.asList(z));
+    }
+
+    public boolean isDependent(Node x, Node y, List<Node> z) {
+        return !isIndependent(x, y, z);
+    }
+
+    public boolean isDependent(Node x, Node y, Node... z) {
+        return isDependent(x, y, Arrays.asList(z));
+    }
+
+    /**
+     * @return the p value of the last test done by this thread.
+     */
+    public double getPValue() {
+        Result result = lastResult.get();
+        return result == null ? test.getPValue() : result.pValue;
+    }
+
+    /**
+     * @return the score of the last test done by this thread.
+     */
+    public double getScore() {
+        Result result = lastResult.get();
+        return result == null ? test.getScore() : result.score;
+    }
+
+    /**
+     * Sets the significance level of the wrapped test, clearing the cache.
+     */
+    public void setAlpha(double alpha) {
+        test.setAlpha(alpha);
+        clear();
+    }
+
+    public double getAlpha() {
+        return test.getAlpha();
+    }
+
+    public List<Node> getVariables() {
+        return test.getVariables();
+    }
+
+    public Node getVariable(String name) {
+        return test.getVariable(name);
+    }
+
+    public List<String> getVariableNames() {
+        return test.getVariableNames();
+    }
+
+    public boolean determines(List<Node> z, Node y) {
+        return test.determines(z, y);
+    }
+
+    public DataModel getData() {
+        return test.getData();
+    }
+
+    public ICovarianceMatrix getCov() {
+        return test.getCov();
+    }
+
+    public List<DataSet> getDataSets() {
+        return test.getDataSets();
+    }
+
+    public int getSampleSize() {
+        return test.getSampleSize();
+    }
+
+    public List<TetradMatrix> getCovMatrices() {
+        return test.getCovMatrices();
+    }
+
+    /**
+     * @return the wrapped test.
+     */
+    public IndependenceTest getTest() {
+        return test;
+    }
+
+    /**
+     * Removes all results from the cache. The counts are kept.
+     */
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    /**
+     * @return the number of results in the cache.
+     */
+    public int size() {
+        int size = 0;
+
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * @return the maximum number of results kept.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of tests answered from the cache.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of tests passed to the wrapped test.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of results evicted to stay within the maximum size.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return a string representation of this test.
+     */
+    public String toString() {
+        return test.toString() + " (cached)";
+    }
+
+    //==========================PRIVATE METHODS============================//
+
+    /**
+     * @return the result of the wrapped test, with the p value and score read
+     * off it before any other thread can test.
+     */
+    private Result test(Node x, Node y, List<Node> z) {
+        if (test instanceof ThreadSafeIndependenceTest) {
+            boolean independent = test.isIndependent(x, y, z);
+            return new Result(independent, test.getPValue(), test.getScore());
+        }
+
+        synchronized (test) {
+            boolean independent = test.isIndependent(x, y, z);
+            return new Result(independent, test.getPValue(), test.getScore());
+        }
+    }
+
+    /**
+     * @return the key for the given test, or null if some variable is not
+     * one of the test's.
+     */
+    private Key key(Node x, Node y, List<Node> z) {
+        int[] indices = new int[z.size() + 2];
+
+        Integer _x = indexMap.get(x);
+        Integer _y = indexMap.get(y);
+
+        if (_x == null || _y == null) {
+            return null;
+        }
+
+        indices[0] = _x;
+        indices[1] = _y;
+
+        for (int i = 0; i < z.size(); i++) {
+            Integer _z = indexMap.get(z.get(i));
+
+            if (_z == null) {
+                return null;
+            }
+
+            indices[i + 2] = _z;
+        }
+
+        Arrays.sort(indices, 2, indices.length);
+        return new Key(indices);
+    }
+
+    private static final class Key {
+        private final int[] indices;
+        private final int hashCode;
+
+        Key(int[] indices) {
+            this.indices = indices;
+            this.hashCode = Arrays.hashCode(indices);
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(indices, ((Key) o).indices);
+        }
+    }
+
+    private static final class Result {
+        private final boolean independent;
+        private final double pValue;
+        private final double score;
+
+        Result(boolean independent, double pValue, double score) {
+            this.independent = independent;
+            this.pValue = pValue;
+            this.score = score;
+        }
+    }
+
+    /**
+     * One stripe of the cache, in least recently used order.
+     */
+    private final class Stripe extends LinkedHashMap<Key, Result> {
+        private final int maxSize;
+
+        Stripe(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        protected boolean removeEldestEntry(Map.Entry<Key, Result> eldest) {
+            if (size() > maxSize) {
+                evictions.incrementAndGet();
+                return true;
+            }
+
+            return false;
+        }
+    }
+}
@@ -42,7 +42,7 @@ import java.util.*;
  * @author Joseph Ramsey
  * @see ChiSquareTest
  */
-public final class IndTestChiSquare implements IndependenceTest {
+public final class IndTestChiSquare implements ThreadSafeIndependenceTest {
 
     /**
      * The X Square tester.
@@ -60,20 +60,10 @@ public final class IndTestChiSquare implements IndependenceTest {
     private final DataSet dataSet;
 
     /**
-     * The G Square value associted with a particular call of isIndependent. Set in that method and not in the
-     * constructor.
+     * The result of the most recent call of isIndependent by each thread, so that the test can be used from several
+     * threads at once. Set in that method and not in the constructor.
      */
-    private double xSquare;
-
-    /**
-     * The degrees of freedom associated with a particular call of isIndependent. Set in the method and not in the
-     * constructor.
-     */
-    private int df;
-
-    /**
-     */
-    private double pValue;
+    private final ThreadLocal<ChiSquareTest.Result> result = new ThreadLocal<>();
 
     /**
      * The lower bound of percentages of observation of some category in the data, given some particular combination of
@@ -151,7 +141,8 @@ public final class IndTestChiSquare implements IndependenceTest {
      * @return the G Square value.
      */
     public double getXSquare() {
-        return xSquare;
+        ChiSquareTest.Result result = this.result.get();
+        return result == null ? 0.0 : result.getXSquare();
     }
 
     /**
@@ -159,14 +150,16 @@ public final class IndTestChiSquare implements IndependenceTest {
      * @ return degrees of freedom
      */
     public int getDf() {
-        return df;
+        ChiSquareTest.Result result = this.result.get();
+        return result == null ? 0 : result.getDf();
     }
 
     /**
      * @return the p value associated with the most recent call of isIndependent.
      */
     public double getPValue() {
-        return pValue;
+        ChiSquareTest.Result result = this.result.get();
+        return result == null ? 0.0 : result.getPValue();
     }
 
     /**
@@ -210,17 +203,19 @@ public final class IndTestChiSquare implements IndependenceTest {
         }
 
         ChiSquareTest.Result result = chiSquareTest.calcChiSquare(testIndices);
-        this.xSquare = result.getXSquare();
-        this.df = result.getDf();
-        this.pValue = result.getPValue();
+        this.result.set(result);
 
-        if (result.isIndep()) {
+        // The number format is shared, so it is used by one thread at a time.
+        if (result.isIndep() && TetradLogger.getInstance().isEventActive("independencies")) {
             StringBuilder sb = new StringBuilder();
             sb.append("INDEPENDENCE ACCEPTED: ");
             sb.append(SearchLogUtils.independenceFact(x, y, z));
-            sb.append("\tp = ").append(nf.format(result.getPValue())).append(
-                    "\tx^2 = ").append(nf.format(result.getXSquare())).append(
-                    "\tdf = ").append(result.getDf());
+
+            synchronized (nf) {
+                sb.append("\tp = ").append(nf.format(result.getPValue())).append(
+                        "\tx^2 = ").append(nf.format(result.getXSquare())).append(
+                        "\tdf = ").append(result.getDf());
+            }
 
             TetradLogger.getInstance().log("independencies", sb.toString());
         }
@@ -234,8 +229,12 @@ public final class IndTestChiSquare implements IndependenceTest {
 //            TetradLogger.getInstance().independenceDetails(sb.toString());
 //        }
 
+        HashSet<IndependenceFact> facts = this.facts;
+
         if (facts != null) {
-            this.facts.add(new IndependenceFact(x, y, z));
+            synchronized (facts) {
+                facts.add(new IndependenceFact(x, y, z));
+            }
         }
 
         return result.isIndep();
@@ -24,9 +24,9 @@ package edu.cmu.tetrad.search;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.ICovarianceMatrix;
 import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.PValues;
 import edu.cmu.tetrad.util.TetradMatrix;
 import org.apache.commons.collections4.map.HashedMap;
-import org.apache.commons.math3.distribution.ChiSquaredDistribution;
 
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
@@ -94,13 +94,17 @@ public class IndTestConditionalGaussianLRT implements IndependenceTest {
         ConditionalGaussianLikelihood.Ret ret2 = likelihood.getLikelihoodRatio(_x, list2);
 
         double lik = ret1.getLik() - ret2.getLik();
-        double dof = ret1.getDof() - ret2.getDof();
+        int dof = ret1.getDof() - ret2.getDof();
 
 //        if (dof <= 1) dof = 1;
 
-        double p = 1.0 - new ChiSquaredDistribution(dof).cumulativeProbability(2.0 * lik);
+        // With no additional parameters the two models coincide.
+        if (dof < 1) {
+            return true;
+        }
 
-        return p > alpha;
+        // p > alpha just when the statistic falls below the cutoff.
+        return 2.0 * lik < PValues.chiSquareCutoff(alpha, dof);
     }
 
     public boolean isIndependent(Node x, Node y, Node... z) {
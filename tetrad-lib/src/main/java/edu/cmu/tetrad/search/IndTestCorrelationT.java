@@ -189,7 +189,7 @@ public final class IndTestCorrelationT implements IndependenceTest {
         r = StatUtils.partialCorrelation(submatrix);
 
         double t = Math.sqrt(n - 2) * (r / Math.sqrt(1. - r * r));
-        pValue = 2.0 * (1.0 - gettDistribution().cumulativeProbability(abs(t)));
+        pValue = PValues.tTwoTailed(t, gettDistribution().getDegreesOfFreedom());
 
         boolean independent = pValue > alpha;
 
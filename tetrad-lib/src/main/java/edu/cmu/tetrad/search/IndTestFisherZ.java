@@ -40,13 +40,19 @@ import static java.lang.Math.abs;
  * @author Joseph Ramsey
  * @author Frank Wimberly adapted IndTestCramerT for Fisher's Z
  */
-public final class IndTestFisherZ implements IndependenceTest {
+public final class IndTestFisherZ implements ThreadSafeIndependenceTest {
 
     /**
      * The covariance matrix.
      */
     private final ICovarianceMatrix covMatrix;
 
+    /**
+     * Calculates partial correlations from the covariance matrix, reusing the factor of the conditioning set across
+     * tests.
+     */
+    private final CholeskyPartialCorrelation partialCorrelations;
+
 //    /**
 //     * The matrix out of the cov matrix.
 //     */
@@ -81,7 +87,16 @@ public final class IndTestFisherZ implements IndependenceTest {
     private Map<Node, Integer> indexMap;
     private Map<String, Node> nameMap;
     private boolean verbose = true;
-    private double fisherZ = Double.NaN;
+
+    /**
+     * The Fisher Z of the last test done by each thread, for getScore.
+     */
+    private final ThreadLocal<double[]> fisherZ = new ThreadLocal<double[]>() {
+        protected double[] initialValue() {
+            return new double[]{Double.NaN};
+        }
+    };
+
     private double cutoff = Double.NaN;
 
     //==========================CONSTRUCTORS=============================//
@@ -103,6 +118,7 @@ public final class IndTestFisherZ implements IndependenceTest {
         }
 
         this.covMatrix = new CovarianceMatrixOnTheFly(dataSet);
+        this.partialCorrelations = new CholeskyPartialCorrelation(covMatrix);
         List<Node> nodes = covMatrix.getVariables();
 
         this.variables = Collections.unmodifiableList(nodes);
@@ -123,6 +139,7 @@ public final class IndTestFisherZ implements IndependenceTest {
     public IndTestFisherZ(TetradMatrix data, List<Node> variables, double alpha) {
         this.dataSet = ColtDataSet.makeContinuousData(variables, data);
         this.covMatrix = new CovarianceMatrix(dataSet);
+        this.partialCorrelations = new CholeskyPartialCorrelation(covMatrix);
         this.variables = Collections.unmodifiableList(variables);
         this.indexMap = indexMap(variables);
         this.nameMap = nameMap(variables);
@@ -135,6 +152,7 @@ public final class IndTestFisherZ implements IndependenceTest {
      */
     public IndTestFisherZ(ICovarianceMatrix covMatrix, double alpha) {
         this.covMatrix = covMatrix;
+        this.partialCorrelations = new CholeskyPartialCorrelation(covMatrix);
         this.variables = covMatrix.getVariables();
         this.indexMap = indexMap(variables);
         this.nameMap = nameMap(variables);
@@ -192,7 +210,7 @@ public final class IndTestFisherZ implements IndependenceTest {
         double fisherZ = Math.sqrt(n - 3 - z.size()) * 0.5 * (Math.log(1.0 + r) - Math.log(1.0 - r));
 //        fisherZ /= 2.0;
 
-        this.fisherZ = fisherZ;
+        this.fisherZ.get()[0] = fisherZ;
 
 //        double pValue = 2.0 * (1.0 - value);//  RandomUtil.getInstance().normalCdf(0, 1, key));// abs(fisherZ)));
 //        double pValue = 2.0 * (1.0 - RandomUtil.getInstance().normalCdf(0, 1, abs(fisherZ)));
@@ -231,12 +249,9 @@ public final class IndTestFisherZ implements IndependenceTest {
             double c = covMatrix.getValue(indexMap.get(y), indexMap.get(y));
             return -a / Math.sqrt(b * c);
         } else {
-            int[] indices = new int[z.size() + 2];
-            indices[0] = indexMap.get(x);
-            indices[1] = indexMap.get(y);
-            for (int i = 0; i < z.size(); i++) indices[i + 2] = indexMap.get(z.get(i));
-            TetradMatrix submatrix = covMatrix.getSubmatrix(indices).getMatrix();
-            return StatUtils.partialCorrelation(submatrix);
+            int[] indices = new int[z.size()];
+            for (int i = 0; i < z.size(); i++) indices[i] = indexMap.get(z.get(i));
+            return partialCorrelations.corr(indexMap.get(x), indexMap.get(y), indices);
         }
     }
 
@@ -429,7 +444,7 @@ public final class IndTestFisherZ implements IndependenceTest {
 
     @Override
     public double getScore() {
-        return Math.abs(fisherZ) - cutoff;
+        return Math.abs(fisherZ.get()[0]) - cutoff;
     }
 
     public boolean isVerbose() {
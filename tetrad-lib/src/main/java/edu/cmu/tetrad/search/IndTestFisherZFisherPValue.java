@@ -23,7 +23,7 @@ package edu.cmu.tetrad.search;
 
 import edu.cmu.tetrad.data.*;
 import edu.cmu.tetrad.graph.Node;
-import edu.cmu.tetrad.util.ProbUtils;
+import edu.cmu.tetrad.util.PValues;
 import edu.cmu.tetrad.util.RandomUtil;
 import edu.cmu.tetrad.util.TetradLogger;
 import edu.cmu.tetrad.util.TetradMatrix;
@@ -140,7 +140,7 @@ public final class IndTestFisherZFisherPValue implements IndependenceTest {
         if (tf == 0) throw new IllegalArgumentException(
                 "For the Fisher method, all component p values in the calculation may not be zero, " +
                         "\nsince not all p values can be ignored. Maybe try calculating AR residuals.");
-        double p = 1.0 - ProbUtils.chisqCdf(tf, 2 * n);
+        double p = PValues.chiSquare(tf, 2 * n);
         this.pValue = p;
 
         boolean independent = p > alpha;
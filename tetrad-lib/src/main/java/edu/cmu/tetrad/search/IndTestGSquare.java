@@ -44,7 +44,7 @@ import java.util.List;
  * @author Joseph Ramsey
  * @see GSquareTest
  */
-public final class IndTestGSquare implements IndependenceTest {
+public final class IndTestGSquare implements ThreadSafeIndependenceTest {
 
     /**
      * The G Square tester.
@@ -67,15 +67,10 @@ public final class IndTestGSquare implements IndependenceTest {
     private double alpha;
 
     /**
-     * The G Square value associted with a particular call of isIndependent. Set in that method and not in the
-     * constructor.
+     * The result of the most recent call of isIndependent by each thread, so that the test can be used from several
+     * threads at once. Set in that method and not in the constructor.
      */
-    private double gSquare;
-
-    /**
-     * The p value associated with the most recent call of isIndependent.
-     */
-    private double pValue;
+    private final ThreadLocal<GSquareTest.Result> result = new ThreadLocal<>();
 
     /**
      * The lower bound of percentages of observation of some category in the data, given some particular combination of
@@ -150,14 +145,16 @@ public final class IndTestGSquare implements IndependenceTest {
      * @return the G Square value.
      */
     public double getGSquare() {
-        return gSquare;
+        GSquareTest.Result result = this.result.get();
+        return result == null ? 0.0 : result.getGSquare();
     }
 
     /**
      * @return the p value associated with the most recent call of isIndependent.
      */
     public double getPValue() {
-        return pValue;
+        GSquareTest.Result result = this.result.get();
+        return result == null ? 0.0 : result.getPValue();
     }
 
     /**
@@ -209,24 +206,20 @@ public final class IndTestGSquare implements IndependenceTest {
         //        System.out.println("Testing " + x + " _||_ " + y + " | " + z);
 
         GSquareTest.Result result = gSquareTest.calcGSquare(testIndices);
-        this.gSquare = result.getGSquare();
-        this.pValue = result.getPValue();
+        this.result.set(result);
 
-        if (result.isIndep()) {
+        // The number format is shared, so it is used by one thread at a time.
+        if (TetradLogger.getInstance().isEventActive("independencies")) {
             StringBuilder sb = new StringBuilder();
-            sb.append("INDEPENDENCE ACCEPTED: ");
+            sb.append(result.isIndep() ? "INDEPENDENCE ACCEPTED: " : "Not independent: ");
             sb.append(SearchLogUtils.independenceFact(x, y, z));
-            sb.append("\tp = ").append(nf.format(result.getPValue())).append(
-                    "\tg^2 = ").append(nf.format(result.getGSquare())).append(
-                    "\tdf = ").append(result.getDf());
-            TetradLogger.getInstance().log("independencies", sb.toString());
-        } else {
-            StringBuilder sb = new StringBuilder();
-            sb.append("Not independent: ");
-            sb.append(SearchLogUtils.independenceFact(x, y, z));
-            sb.append("\tp = ").append(nf.format(result.getPValue())).append(
-                    "\tg^2 = ").append(nf.format(result.getGSquare())).append(
-                    "\tdf = ").append(result.getDf());
+
+            synchronized (nf) {
+                sb.append("\tp = ").append(nf.format(result.getPValue())).append(
+                        "\tg^2 = ").append(nf.format(result.getGSquare())).append(
+                        "\tdf = ").append(result.getDf());
+            }
+
             TetradLogger.getInstance().log("independencies", sb.toString());
         }
 
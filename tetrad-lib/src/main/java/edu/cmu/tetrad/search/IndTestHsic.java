@@ -30,6 +30,7 @@ import edu.cmu.tetrad.search.kernel.Kernel;
 import edu.cmu.tetrad.search.kernel.KernelGaussian;
 import edu.cmu.tetrad.search.kernel.KernelUtils;
 import edu.cmu.tetrad.util.NumberFormatUtil;
+import edu.cmu.tetrad.util.RandomUtil;
 import edu.cmu.tetrad.util.TetradLogger;
 import edu.cmu.tetrad.util.TetradMatrix;
 
@@ -37,7 +38,11 @@ import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Checks the conditional independence X _||_ Y | S, where S is a set of continuous variable, and X and Y are discrete
@@ -100,6 +105,16 @@ public final class IndTestHsic implements IndependenceTest {
     private double useIncompleteCholesky = 1e-18;
     private boolean verbose = false;
 
+    /**
+     * The maximum rank of the low-rank Gram matrix factors, or 0 if they are not used.
+     */
+    private int rank = 0;
+
+    /**
+     * Centered low-rank Gram matrix factors, by set of variables, reused across tests.
+     */
+    private Map<Set<Node>, double[][]> factors;
+
     //==========================CONSTRUCTORS=============================//
 
     /**
@@ -167,6 +182,10 @@ public final class IndTestHsic implements IndependenceTest {
      * @return true iff x _||_ y | z.
      */
     public boolean isIndependent(Node y, Node x, List<Node> z) {
+        if (rank > 0) {
+            lowRankTest(y, x, z);
+            return judge(x, y, z);
+        }
 
         int m = sampleSize();
 
@@ -315,6 +334,10 @@ public final class IndTestHsic implements IndependenceTest {
         evalCdf /= (double) this.perms;
         this.pValue = 1.0 - evalCdf;
 
+        return judge(x, y, z);
+    }
+
+    private boolean judge(Node x, Node y, List<Node> z) {
         // reject if pvalue <= alpha
         if (this.pValue <= this.alpha) {
             TetradLogger.getInstance().log("dependencies", SearchLogUtils
@@ -328,6 +351,226 @@ public final class IndTestHsic implements IndependenceTest {
         return true;
     }
 
+    /**
+     * Computes HSIC and its permutation p-value from low-rank factors G of the Gram matrices, with every trace reduced
+     * to products of the small factor cross-products G'G, so that nothing of size m x m is formed. The null
+     * distribution permutes the rows of the factor for Y (within clusters of Z, if Z is not empty), which leaves the
+     * factors themselves, and so the bandwidths, fixed across permutations.
+     */
+    private void lowRankTest(Node y, Node x, List<Node> z) {
+        int m = sampleSize();
+        double[][] gy = factor(Collections.singletonList(y));
+        double[][] gx = factor(Collections.singletonList(x));
+        double[] nullapprox = new double[this.perms];
+        int[] perm = new int[m];
+        double[][] gyn = new double[gy.length][m];
+
+        if (z.isEmpty()) {
+            double scale = Math.pow(m - 1, 2);
+            this.hsic = frobeniusSquared(crossProduct(gy, gx)) / scale;
+
+            for (int i = 0; i < this.perms; i++) {
+                for (int j = 0; j < m; j++) {
+                    perm[j] = j;
+                }
+                shuffle(perm, 0, m);
+                permuteRows(gy, perm, gyn);
+                nullapprox[i] = frobeniusSquared(crossProduct(gyn, gx)) / scale;
+            }
+        } else {
+            double[][] gz = factor(z);
+            int kz = gz.length;
+
+            // With M = (Gz'Gz + rI)^-1, Gz'(Kz + rI)^-2 Gz = M Gz'Gz M.
+            double[][] gztz = crossProduct(gz, gz);
+            TetradMatrix Gztzr = new TetradMatrix(gztz);
+            for (int i = 0; i < kz; i++) {
+                Gztzr.set(i, i, gztz[i][i] + this.regularizer);
+            }
+            TetradMatrix M = Gztzr.inverse();
+            TetradMatrix Q = M.times(new TetradMatrix(gztz)).times(M);
+            TetradMatrix Gztx = new TetradMatrix(crossProduct(gz, gx));
+            TetradMatrix QGztx = Q.times(Gztx);
+            double[][] qztx = QGztx.toArray();
+            double[][] qztxxtzq = QGztx.times(QGztx.transpose()).toArray();
+
+            // beta z estimate: the sum of squares of the off-diagonal entries of Kz
+            double betaz = frobeniusSquared(gztz);
+            for (int i = 0; i < m; i++) {
+                double kii = 0.0;
+                for (int k = 0; k < kz; k++) {
+                    kii += gz[k][i] * gz[k][i];
+                }
+                betaz -= kii * kii;
+            }
+            double scale = m / (betaz * (m - 1));
+
+            this.hsic = conditionalHsic(crossProduct(gy, gx), crossProduct(gy, gz),
+                    qztx, qztxxtzq) * scale;
+
+            // shuffle Y within clusters of Z, with no more clusters than the rank of the factors
+            KMeans kmeans = KMeans.randomClusters(Math.min(m / 3, rank));
+            kmeans.cluster(dataSet.subsetColumns(z).getDoubleData());
+            List<List<Integer>> clusterAssign = kmeans.getClusters();
+            int[][] clusters = new int[clusterAssign.size()][];
+            for (int j = 0; j < clusters.length; j++) {
+                clusters[j] = new int[clusterAssign.get(j).size()];
+                int k = 0;
+                for (int row : clusterAssign.get(j)) {
+                    clusters[j][k++] = row;
+                }
+            }
+            int[] members = new int[m];
+
+            for (int i = 0; i < this.perms; i++) {
+                for (int[] cluster : clusters) {
+                    System.arraycopy(cluster, 0, members, 0, cluster.length);
+                    shuffle(members, 0, cluster.length);
+                    for (int k = 0; k < cluster.length; k++) {
+                        perm[members[k]] = cluster[k];
+                    }
+                }
+                permuteRows(gy, perm, gyn);
+                nullapprox[i] = conditionalHsic(crossProduct(gyn, gx), crossProduct(gyn, gz),
+                        qztx, qztxxtzq) * scale;
+            }
+        }
+
+        // permutation test to get p-value
+        double evalCdf = 0.0;
+        for (int i = 0; i < this.perms; i++) {
+            if (nullapprox[i] <= this.hsic) {
+                evalCdf += 1.0;
+            }
+        }
+
+        evalCdf /= (double) this.perms;
+        this.pValue = 1.0 - evalCdf;
+    }
+
+    // tr(Kx Ky) - 2 tr(Ky Kz R^2 Kz Kx) + tr(Ky Kz R^2 Kz Kx Kz R^2 Kz), R = (Kz + rI)^-1, from the cross-products.
+    private static double conditionalHsic(double[][] gytx, double[][] gytz, double[][] qztx, double[][] qztxxtzq) {
+        int ky = gytx.length;
+        int kx = ky == 0 ? 0 : gytx[0].length;
+        int kz = qztx.length;
+
+        double first = frobeniusSquared(gytx);
+
+        double second = 0.0;
+        for (int a = 0; a < ky; a++) {
+            for (int b = 0; b < kx; b++) {
+                double w = 0.0;
+                for (int c = 0; c < kz; c++) {
+                    w += gytz[a][c] * qztx[c][b];
+                }
+                second += gytx[a][b] * w;
+            }
+        }
+
+        double third = 0.0;
+        for (int c = 0; c < kz; c++) {
+            for (int d = 0; d < kz; d++) {
+                double u = 0.0;
+                for (int a = 0; a < ky; a++) {
+                    u += gytz[a][c] * gytz[a][d];
+                }
+                third += u * qztxxtzq[d][c];
+            }
+        }
+
+        return first - 2 * second + third;
+    }
+
+    /**
+     * Returns the centered low-rank Gram matrix factor for the given variables, computing it on first use. Gaussian
+     * kernels with median distance bandwidths are used, with the tensor product kernel for more than one variable.
+     */
+    private double[][] factor(List<Node> nodes) {
+        Set<Node> key = new HashSet<>(nodes);
+        double[][] g = factors.get(key);
+
+        if (g == null) {
+            List<Kernel> kernels = new ArrayList<>();
+            for (Node node : nodes) {
+                Kernel kernel = new KernelGaussian(1);
+                kernel.setDefaultBw(this.dataSet, node);
+                kernels.add(kernel);
+            }
+
+            g = KernelUtils.lowRankGramFactor(kernels, this.dataSet, nodes,
+                    Math.max(useIncompleteCholesky, 0), rank);
+
+            // centering the factor, H G, centers the Gram matrix, H K H.
+            for (double[] column : g) {
+                double mean = 0.0;
+                for (double v : column) {
+                    mean += v;
+                }
+                mean /= column.length;
+                for (int i = 0; i < column.length; i++) {
+                    column[i] -= mean;
+                }
+            }
+
+            factors.put(key, g);
+        }
+
+        return g;
+    }
+
+    // a' b, for factors stored by column.
+    private static double[][] crossProduct(double[][] a, double[][] b) {
+        double[][] c = new double[a.length][b.length];
+
+        for (int p = 0; p < a.length; p++) {
+            double[] ap = a[p];
+
+            for (int q = 0; q < b.length; q++) {
+                double[] bq = b[q];
+                double sum = 0.0;
+
+                for (int i = 0; i < bq.length; i++) {
+                    sum += ap[i] * bq[i];
+                }
+
+                c[p][q] = sum;
+            }
+        }
+
+        return c;
+    }
+
+    // row i of into is row perm[i] of g.
+    private static void permuteRows(double[][] g, int[] perm, double[][] into) {
+        for (int k = 0; k < g.length; k++) {
+            double[] column = g[k];
+            double[] permuted = into[k];
+
+            for (int i = 0; i < perm.length; i++) {
+                permuted[i] = column[perm[i]];
+            }
+        }
+    }
+
+    private static double frobeniusSquared(double[][] a) {
+        double sum = 0.0;
+        for (double[] row : a) {
+            for (double v : row) {
+                sum += v * v;
+            }
+        }
+        return sum;
+    }
+
+    private static void shuffle(int[] a, int from, int to) {
+        for (int i = to - 1; i > from; i--) {
+            int j = from + RandomUtil.getInstance().nextInt(i - from + 1);
+            int t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+    }
+
     /**
      * Empirical unconditional Hilbert-Schmidt Dependence Measure for X and Y
      *
@@ -707,6 +950,33 @@ public final class IndTestHsic implements IndependenceTest {
         this.useIncompleteCholesky = precision;
     }
 
+    /**
+     * Sets the maximum rank of the Gram matrix approximations. A value > 0 computes a low-rank factor of at most this
+     * rank for each Gram matrix, by incomplete Cholesky with the precision set above, and evaluates the test in O(m
+     * rank^2) time and O(m rank) memory per factor, instead of O(m^2) memory for the Gram matrices themselves; the
+     * factors are cached and reused across tests. A value of 0 (the default) uses the Gram matrices.
+     */
+    public void setRank(int rank) {
+        if (rank < 0) {
+            throw new IllegalArgumentException("Rank must be >= 0: " + rank);
+        }
+
+        this.rank = rank;
+        final int maxFactors = 2 * this.variables.size();
+        this.factors = new LinkedHashMap<Set<Node>, double[][]>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Set<Node>, double[][]> eldest) {
+                return size() > maxFactors;
+            }
+        };
+    }
+
+    /**
+     * Gets the maximum rank of the Gram matrix approximations, or 0 if they are not used.
+     */
+    public int getRank() {
+        return this.rank;
+    }
+
     /**
      * Set the number of bootstrap samples to use
      */
@@ -36,10 +36,9 @@ import edu.cmu.tetrad.regression.RegressionDataset;
 import edu.cmu.tetrad.regression.RegressionResult;
 import edu.cmu.tetrad.search.IndependenceTest;
 import edu.cmu.tetrad.search.SearchLogUtils;
-import edu.cmu.tetrad.util.ProbUtils;
+import edu.cmu.tetrad.util.PValues;
 import edu.cmu.tetrad.util.TetradLogger;
 import edu.cmu.tetrad.util.TetradMatrix;
-import org.apache.commons.math3.distribution.ChiSquaredDistribution;
 
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
@@ -258,7 +257,7 @@ public class IndTestMixedMultipleTTest implements IndependenceTest {
                     //double val = 1-result1.getProbs()[i+1];
 
                     //this is exactly the same test as the linear case
-                    double val = (1.0 - ProbUtils.tCdf(wald, n - k)) * 2;
+                    double val = PValues.tTwoTailed(wald, n - k);
                     //System.out.println(_x.getName() + "\t" + yzDumList.get(coefIndex-1).getName() + "\t" + val + "\t" + (n-k));
                     //if(val <= 0) System.out.println("Zero p-val t-test: p " + val + " stat " + wald + " k " + k + " n " + n);
                     sumLnP[j] += Math.log(val);
@@ -272,7 +271,7 @@ public class IndTestMixedMultipleTTest implements IndependenceTest {
             if(sumLnP[i]==Double.NEGATIVE_INFINITY) pVec[i] = 0.0;
             else {
                 int df = 2 * variablesPerNode.get(x).size() * variablesPerNode.get(yzList.get(i)).size();
-                pVec[i] = 1.0 - new ChiSquaredDistribution(df).cumulativeProbability(-2 * sumLnP[i]);
+                pVec[i] = PValues.chiSquare(-2 * sumLnP[i], df);
             }
         }
 
@@ -434,7 +433,7 @@ public class IndTestMixedMultipleTTest implements IndependenceTest {
             if(pVec[i]==Double.NEGATIVE_INFINITY)
                 pVec[i] = 0.0;
             else
-                pVec[i] = 1.0 - new ChiSquaredDistribution(2 * curDummy.size()).cumulativeProbability(-2 * pVec[i]);
+                pVec[i] = PValues.chiSquare(-2 * pVec[i], 2 * curDummy.size());
         }
 
         return pVec;
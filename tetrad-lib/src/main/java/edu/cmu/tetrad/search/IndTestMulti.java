@@ -24,7 +24,7 @@ package edu.cmu.tetrad.search;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.ICovarianceMatrix;
 import edu.cmu.tetrad.graph.Node;
-import edu.cmu.tetrad.util.ProbUtils;
+import edu.cmu.tetrad.util.PValues;
 import edu.cmu.tetrad.util.TetradLogger;
 import edu.cmu.tetrad.util.TetradMatrix;
 
@@ -121,7 +121,7 @@ public final class IndTestMulti implements IndependenceTest {
 //            }
         }
 
-        double p = 1.0 - ProbUtils.chisqCdf(tf, 2 * numPValues);
+        double p = PValues.chiSquare(tf, 2 * numPValues);
         this.p = p;
 
         return (p > alpha);
@@ -29,9 +29,9 @@ import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.regression.LogisticRegression;
 import edu.cmu.tetrad.regression.RegressionDataset;
 import edu.cmu.tetrad.regression.RegressionResult;
+import edu.cmu.tetrad.util.PValues;
 import edu.cmu.tetrad.util.TetradLogger;
 import edu.cmu.tetrad.util.TetradMatrix;
-import org.apache.commons.math3.distribution.ChiSquaredDistribution;
 
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
@@ -183,7 +183,8 @@ public class IndTestMultinomialLogisticRegression implements IndependenceTest {
                 regressors1.addAll(variablesPerNode.get(_z));
             }
 
-            LogisticRegression.Result result1 = logisticRegression.regress((DiscreteVariable) _x, regressors1);
+            LogisticRegression.Result result1 = logisticRegression.regress((DiscreteVariable) _x, regressors1,
+                    result0);
 
             // Returns -2 LL
             double ll0 = result0.getLogLikelihood();
@@ -191,7 +192,7 @@ public class IndTestMultinomialLogisticRegression implements IndependenceTest {
 
             double chisq = (ll0 - ll1);
             int df = variablesPerNode.get(y).size();
-            double p = 1.0 - new ChiSquaredDistribution(df).cumulativeProbability(chisq);
+            double p = PValues.chiSquare(chisq, df);
             pValues.add(p);
         }
 
@@ -26,7 +26,7 @@ import edu.cmu.tetrad.data.ICovarianceMatrix;
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.util.IndexedMatrix;
 import edu.cmu.tetrad.util.MatrixUtils;
-import edu.cmu.tetrad.util.ProbUtils;
+import edu.cmu.tetrad.util.PValues;
 import edu.cmu.tetrad.util.TetradMatrix;
 
 import java.util.ArrayList;
@@ -228,7 +228,7 @@ public final class IndTestTimeSeries implements IndependenceTest {
         //        System.out.println("chi square = " + chiSquare);
 
         // Compare chi square value to cutoff.
-        double pValue = 1.0 - ProbUtils.chisqCdf(chiSquare, 1);
+        double pValue = PValues.chiSquare(chiSquare, 1);
         return pValue > this.alpha;
     }
 //
@@ -619,18 +619,7 @@ public final class IndTestTimeSeries implements IndependenceTest {
      * @return the chi square cutoff value for the given degrees of freedom and significance level.
      */
     public double chiSquareCutoff() {
-        double d = 0.0;
-        for (int mantissa = 0; mantissa >= -15; mantissa--) {
-            double increment = Math.pow(10, mantissa);
-            while (d < 1000.0) {
-                d += increment;
-                if (ProbUtils.chisqCdf(d, 1.0) > 1.0 - getAlpha()) {
-                    d -= increment;
-                    break;
-                }
-            }
-        }
-        return d;
+        return PValues.chiSquareCutoff(getAlpha(), 1);
     }
 
     /**
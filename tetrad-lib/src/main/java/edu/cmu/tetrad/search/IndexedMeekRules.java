@@ -0,0 +1,560 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.IKnowledge;
+import edu.cmu.tetrad.graph.Edges;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Meek's rules R1-R3, as in MeekRules, applied to an IndexedPattern. Starting from a list of
+ * nodes, a stack of nodes whose edges have changed is worked off until no rule applies, so
+ * only nodes near newly oriented edges are looked at again. Optionally, parents of a node
+ * that are not forced by an unshielded collider are first made undirected again, as FGS does
+ * after each insertion or deletion.
+ * <p>
+ * Adjacents are visited in the order the pattern gives, which for a pattern made by
+ * IndexedPattern.fromGraphInOrder is the order MeekRules would visit them in on the graph,
+ * so that the two orient the same edges even where the order matters. The changes made are
+ * recorded, in order, so that they can be made to the graph as well.
+ * <p>
+ * The rules only look along edges, so what they do in one connected component of the pattern
+ * does not depend on any other. If set to run in parallel, the starting nodes are divided by
+ * component and the components are oriented concurrently, each just as it would be alone.
+ * <p>
+ * MeekRules never applies its fourth rule, since it decides whether to use it before any
+ * knowledge is set; so neither does this.
+ */
+final class IndexedMeekRules {
+
+    private final IndexedPattern graph;
+    private final List<Node> nodes;
+    private final IKnowledge knowledge;
+
+    // True if unforced parents should be undirected before orienting.
+    private boolean undirectUnforcedEdges = false;
+
+    // True if components should be oriented in parallel.
+    private boolean parallel = false;
+
+    // Triples <a, b, c> that are not to be taken as unshielded noncolliders, as (a * n + b) * n + c.
+    private Set<Long> ambiguousTriples = null;
+
+    // The nodes actually visited, shared by all components.
+    private final boolean[] visited;
+    private int[] visitedList = new int[16];
+    private int numVisited = 0;
+
+    // The changes made, in order, three entries each: a, c, and 1 if a-->c was made or 0 if a---c.
+    private int[] changes = new int[16];
+    private int numChanges = 0;
+
+    /**
+     * @param graph     The pattern to orient, in place.
+     * @param nodes     The nodes of the pattern, node i being nodes.get(i), for the knowledge.
+     * @param knowledge Background knowledge, or null.
+     */
+    IndexedMeekRules(IndexedPattern graph, List<Node> nodes, IKnowledge knowledge) {
+        this.graph = graph;
+        this.nodes = nodes;
+        this.knowledge = knowledge;
+        this.visited = new boolean[graph.getNumNodes()];
+    }
+
+    void setUndirectUnforcedEdges(boolean undirectUnforcedEdges) {
+        this.undirectUnforcedEdges = undirectUnforcedEdges;
+    }
+
+    void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Marks the triple &lt;a, b, c&gt;, and so &lt;c, b, a&gt;, as ambiguous; the rules will
+     * not take it as an unshielded noncollider.
+     */
+    void addAmbiguousTriple(int a, int b, int c) {
+        if (ambiguousTriples == null) ambiguousTriples = new HashSet<>();
+        ambiguousTriples.add(tripleKey(a, b, c));
+        ambiguousTriples.add(tripleKey(c, b, a));
+    }
+
+    /**
+     * Orients the edges implied by the rules, starting from the given nodes.
+     */
+    void orientImplied(int[] start) {
+        int[][] components = parallel ? getComponents(start) : null;
+
+        if (components == null || components.length < 2) {
+            Run run = new Run();
+            run.orientImplied(start);
+            collect(run);
+            return;
+        }
+
+        Run[] runs = new Run[components.length];
+        ForkJoinPool pool = ForkJoinPoolInstance.getInstance().getPool();
+        int chunk = Math.max(1, components.length / (4 * pool.getParallelism()));
+        pool.invoke(new OrientTask(components, runs, chunk, 0, components.length));
+
+        for (Run run : runs) {
+            collect(run);
+        }
+    }
+
+    /**
+     * @return the nodes visited by the last call to orientImplied, the starting nodes and
+     * those of every edge changed.
+     */
+    int[] getVisited() {
+        return Arrays.copyOf(visitedList, numVisited);
+    }
+
+    /**
+     * Makes the changes made to the pattern to the given graph as well, in the same order,
+     * removing each edge changed and adding it back. Its nodes must be those given in the
+     * constructor.
+     */
+    void applyChanges(Graph graph) {
+        for (int i = 0; i < numChanges; i += 3) {
+            Node a = nodes.get(changes[i]);
+            Node c = nodes.get(changes[i + 1]);
+            graph.removeEdge(a, c);
+
+            if (changes[i + 2] == 1) {
+                graph.addEdge(Edges.directedEdge(a, c));
+            } else {
+                graph.addUndirectedEdge(a, c);
+            }
+        }
+    }
+
+    //==============================PRIVATE METHODS========================//
+
+    private void collect(Run run) {
+        visitedList = append(visitedList, numVisited, run.visitedList, run.numVisited);
+        numVisited += run.numVisited;
+        changes = append(changes, numChanges, run.changes, run.numChanges);
+        numChanges += run.numChanges;
+    }
+
+    // The starting nodes, grouped by connected component, each group in the order given.
+    private int[][] getComponents(int[] start) {
+        int[] component = new int[graph.getNumNodes()];
+        Arrays.fill(component, -1);
+        int[] queue = new int[graph.getNumNodes()];
+        List<int[]> groups = new ArrayList<>();
+        int[] sizes = new int[start.length];
+
+        for (int node : start) {
+            if (component[node] == -1) {
+                int id = groups.size();
+                int head = 0, tail = 0;
+                queue[tail++] = node;
+                component[node] = id;
+
+                while (head < tail) {
+                    int t = queue[head++];
+
+                    for (int k = 0; k < graph.getDegree(t); k++) {
+                        int u = graph.getAdjacent(t, k);
+
+                        if (component[u] == -1) {
+                            component[u] = id;
+                            queue[tail++] = u;
+                        }
+                    }
+                }
+
+                groups.add(new int[4]);
+            }
+
+            int id = component[node];
+            int[] group = groups.get(id);
+
+            if (sizes[id] == group.length) {
+                group = Arrays.copyOf(group, 2 * group.length);
+                groups.set(id, group);
+            }
+
+            group[sizes[id]++] = node;
+        }
+
+        int[][] components = new int[groups.size()][];
+
+        for (int id = 0; id < components.length; id++) {
+            components[id] = Arrays.copyOf(groups.get(id), sizes[id]);
+        }
+
+        return components;
+    }
+
+    private long tripleKey(int a, int b, int c) {
+        long n = graph.getNumNodes();
+        return (a * n + b) * n + c;
+    }
+
+    private String name(int node) {
+        return nodes.get(node).getName();
+    }
+
+    private static int[] append(int[] a, int size, int[] b, int bSize) {
+        if (size + bSize > a.length) {
+            a = Arrays.copyOf(a, Math.max(2 * a.length, size + bSize));
+        }
+
+        System.arraycopy(b, 0, a, size, bSize);
+        return a;
+    }
+
+    // Orients the components from..to-1, splitting the range until it is no more than chunk.
+    private class OrientTask extends RecursiveTask<Boolean> {
+        private final int[][] components;
+        private final Run[] runs;
+        private final int chunk;
+        private final int from;
+        private final int to;
+
+        OrientTask(int[][] components, Run[] runs, int chunk, int from, int to) {
+            this.components = components;
+            this.runs = runs;
+            this.chunk = chunk;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Boolean compute() {
+            if (to - from <= chunk) {
+                for (int i = from; i < to; i++) {
+                    runs[i] = new Run();
+                    runs[i].orientImplied(components[i]);
+                }
+            } else {
+                int mid = (to + from) / 2;
+                OrientTask left = new OrientTask(components, runs, chunk, from, mid);
+                OrientTask right = new OrientTask(components, runs, chunk, mid, to);
+
+                left.fork();
+                right.compute();
+                left.join();
+            }
+
+            return true;
+        }
+    }
+
+    // One pass of the rules from a list of starting nodes, with its own stack; different runs
+    // may go on concurrently in different components.
+    private class Run {
+
+        // Directed edges a-->c, as a * n + c, already oriented by the rules.
+        private final Set<Long> oriented = new HashSet<>();
+
+        // The stack of nodes to be visited.
+        private int[] directStack = new int[16];
+        private int stackSize = 0;
+
+        private int[] visitedList = new int[16];
+        private int numVisited = 0;
+
+        private int[] changes = new int[16];
+        private int numChanges = 0;
+
+        void orientImplied(int[] start) {
+            for (int node : start) {
+                visit(node);
+            }
+
+            if (undirectUnforcedEdges) {
+                for (int node : start) {
+                    undirectUnforcedEdges(node);
+
+                    for (int adj : graph.getAdjacentsInOrder(node)) {
+                        push(adj);
+                    }
+                }
+            }
+
+            for (int node : start) {
+                runMeekRules(node);
+            }
+
+            while (stackSize > 0) {
+                int node = directStack[--stackSize];
+
+                if (undirectUnforcedEdges) {
+                    undirectUnforcedEdges(node);
+                }
+
+                runMeekRules(node);
+            }
+        }
+
+        private void runMeekRules(int node) {
+            meekR1(node);
+            meekR2(node);
+            meekR3(node);
+        }
+
+        // Meek's rule R1: if a-->b, b---c, and a not adj to c, then b-->c.
+        private void meekR1(int b) {
+            int[] adjacents = graph.getAdjacentsInOrder(b);
+
+            for (int i = 0; i < adjacents.length; i++) {
+                for (int j = i + 1; j < adjacents.length; j++) {
+                    r1Helper(adjacents[i], b, adjacents[j]);
+                    r1Helper(adjacents[j], b, adjacents[i]);
+                }
+            }
+        }
+
+        private void r1Helper(int a, int b, int c) {
+            if (!graph.isAdjacentTo(a, c) && graph.isParentOf(a, b) && graph.isUndirected(b, c)) {
+                if (!isUnshieldedNoncollider(a, b, c)) {
+                    return;
+                }
+
+                if (isArrowpointAllowed(b, c)) {
+                    direct(b, c);
+                }
+            }
+        }
+
+        // If a-->b-->c, a---c, then a-->c.
+        private void meekR2(int c) {
+            int[] adjacents = graph.getAdjacentsInOrder(c);
+
+            for (int i = 0; i < adjacents.length; i++) {
+                for (int j = i + 1; j < adjacents.length; j++) {
+                    int a = adjacents[i];
+                    int b = adjacents[j];
+
+                    r2Helper(a, b, c);
+                    r2Helper(b, a, c);
+                    r2Helper(a, c, b);
+                    r2Helper(c, a, b);
+                }
+            }
+        }
+
+        private void r2Helper(int a, int b, int c) {
+            if (graph.isParentOf(a, b) && graph.isParentOf(b, c) && graph.isUndirected(a, c)) {
+                if (isArrowpointAllowed(a, c)) {
+                    direct(a, c);
+                }
+            }
+        }
+
+        // Meek's rule R3. If d---a, d---b, d---c, b-->a, c-->a, b not adj to c, then d-->a.
+        private void meekR3(int a) {
+            int[] adjacents = graph.getAdjacentsInOrder(a);
+
+            if (adjacents.length < 3) {
+                return;
+            }
+
+            for (int d : adjacents) {
+                if (!graph.isUndirected(a, d)) continue;
+
+                for (int i = 0; i < adjacents.length; i++) {
+                    if (adjacents[i] == d) continue;
+
+                    for (int j = i + 1; j < adjacents.length; j++) {
+                        if (adjacents[j] == d) continue;
+
+                        int b = adjacents[i];
+                        int c = adjacents[j];
+
+                        if (isKite(a, d, b, c) && isArrowpointAllowed(d, a)) {
+                            if (!isUnshieldedNoncollider(c, d, b)) {
+                                continue;
+                            }
+
+                            direct(d, a);
+                        }
+                    }
+                }
+            }
+        }
+
+        private boolean isKite(int a, int d, int b, int c) {
+            return graph.isUndirected(d, c)
+                    && graph.isUndirected(d, b)
+                    && graph.isParentOf(b, a)
+                    && graph.isParentOf(c, a)
+                    && graph.isUndirected(d, a);
+        }
+
+        private void direct(int a, int c) {
+            if (knowledge != null && knowledge.isForbidden(name(a), name(c))) {
+                return;
+            }
+
+            visit(a);
+            visit(c);
+
+            graph.addDirectedEdge(a, c);
+            record(a, c, 1);
+
+            oriented.add(edgeKey(a, c));
+
+            push(c);
+        }
+
+        private boolean isUnshieldedNoncollider(int a, int b, int c) {
+            if (!graph.isAdjacentTo(a, b)) {
+                return false;
+            }
+
+            if (!graph.isAdjacentTo(c, b)) {
+                return false;
+            }
+
+            if (graph.isAdjacentTo(a, c)) {
+                return false;
+            }
+
+            if (ambiguousTriples != null && ambiguousTriples.contains(tripleKey(a, b, c))) {
+                return false;
+            }
+
+            return !(graph.isArrowheadAt(a, b) && graph.isArrowheadAt(c, b));
+        }
+
+        private boolean isArrowpointAllowed(int from, int to) {
+            if (knowledge == null) return true;
+            return !knowledge.isRequired(name(to), name(from)) &&
+                    !knowledge.isForbidden(name(from), name(to));
+        }
+
+        private void undirectUnforcedEdges(int y) {
+            int[] adjacents = graph.getAdjacentsInOrder(y);
+            int[] parentsToUndirect = new int[adjacents.length];
+            int numToUndirect = 0;
+
+            NEXT_EDGE:
+            for (int x : adjacents) {
+                if (!graph.isParentOf(x, y)) continue;
+
+                for (int parent : adjacents) {
+                    if (parent != x && graph.isParentOf(parent, y) && !graph.isAdjacentTo(parent, x)) {
+                        oriented.add(edgeKey(x, y));
+                        continue NEXT_EDGE;
+                    }
+                }
+
+                parentsToUndirect[numToUndirect++] = x;
+            }
+
+            if (numToUndirect > 1) {
+                inHashSetOrder(parentsToUndirect, numToUndirect);
+            }
+
+            boolean didit = false;
+
+            for (int i = 0; i < numToUndirect; i++) {
+                int x = parentsToUndirect[i];
+                boolean mustOrient = knowledge != null && (knowledge.isRequired(name(x), name(y)) ||
+                        knowledge.isForbidden(name(y), name(x)));
+
+                if (!oriented.contains(edgeKey(x, y)) && !mustOrient) {
+                    graph.addUndirectedEdge(x, y);
+                    record(x, y, 0);
+                    visit(x);
+                    visit(y);
+                    didit = true;
+                }
+            }
+
+            if (didit) {
+                for (int adj : graph.getAdjacentsInOrder(y)) {
+                    push(adj);
+                }
+
+                push(y);
+            }
+        }
+
+        // Puts the first size of the given nodes in the order MeekRules takes them in, that of a
+        // HashSet of them, since the order edges are changed in is the order they are visited in
+        // later.
+        private void inHashSetOrder(int[] nodes, int size) {
+            Set<Node> set = new HashSet<>();
+
+            for (int i = 0; i < size; i++) {
+                set.add(IndexedMeekRules.this.nodes.get(nodes[i]));
+            }
+
+            int[] unordered = Arrays.copyOf(nodes, size);
+            int i = 0;
+
+            for (Node node : set) {
+                for (int candidate : unordered) {
+                    if (IndexedMeekRules.this.nodes.get(candidate) == node) {
+                        nodes[i++] = candidate;
+                        break;
+                    }
+                }
+            }
+        }
+
+        private void push(int node) {
+            if (stackSize == directStack.length) {
+                directStack = Arrays.copyOf(directStack, 2 * stackSize);
+            }
+
+            directStack[stackSize++] = node;
+        }
+
+        private void visit(int node) {
+            if (visited[node]) return;
+            visited[node] = true;
+
+            if (numVisited == visitedList.length) {
+                visitedList = Arrays.copyOf(visitedList, 2 * numVisited);
+            }
+
+            visitedList[numVisited++] = node;
+        }
+
+        private void record(int a, int c, int directed) {
+            if (numChanges + 3 > changes.length) {
+                changes = Arrays.copyOf(changes, 2 * changes.length);
+            }
+
+            changes[numChanges++] = a;
+            changes[numChanges++] = c;
+            changes[numChanges++] = directed;
+        }
+
+        private long edgeKey(int a, int c) {
+            return (long) a * graph.getNumNodes() + c;
+        }
+    }
+}
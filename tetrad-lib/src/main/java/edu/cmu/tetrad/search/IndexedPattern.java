@@ -0,0 +1,442 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.graph.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A graph of directed and undirected edges over the nodes 0,...,n-1, for searches that need
+ * fast adjacency queries on patterns. Each node keeps its adjacents in a sorted int array,
+ * together with the kind of each edge as seen from that node, so that adjacency and edge
+ * queries are binary searches and no Node or Edge objects are made. Conversion to and from
+ * Graph happens only at the boundaries of a search.
+ * <p>
+ * Patterns made by fromGraphInOrder keep every edge with its endpoints and also remember the
+ * order of each node's edges in the graph, so that a search can visit adjacents in just the
+ * order it would have on the graph; an edge whose kind is changed moves to the end, as it would
+ * in the graph if removed and added again.
+ * <p>
+ * This is not synchronized. Any number of threads may read it between modifications, and
+ * threads may change the kinds of existing edges concurrently as long as no two touch the same
+ * node.
+ */
+public final class IndexedPattern {
+
+    // The kind of the edge i?-?j, as seen from i, is 3 times the mark at i plus the mark at j,
+    // a mark being 0 for a tail, 1 for an arrowhead and 2 for anything else.
+    public static final byte UNDIRECTED = 0;
+    public static final byte OUT = 1;
+    public static final byte IN = 3;
+    public static final byte BIDIRECTED = 4;
+
+    private static final int[] EMPTY = new int[0];
+    private static final byte[] NO_KINDS = new byte[0];
+    private static final long[] NO_RANKS = new long[0];
+
+    private final int[][] adjacents;
+    private final byte[][] kinds;
+    private final int[] degrees;
+    private int numEdges;
+
+    // For patterns that keep the order of edges, the position of each edge in the order of its
+    // node's edges; null otherwise.
+    private final long[][] ranks;
+    private final AtomicLong nextRank = new AtomicLong();
+
+    /**
+     * An empty pattern over numNodes nodes.
+     */
+    public IndexedPattern(int numNodes) {
+        this(numNodes, false);
+    }
+
+    private IndexedPattern(int numNodes, boolean keepOrder) {
+        this.adjacents = new int[numNodes][];
+        this.kinds = new byte[numNodes][];
+        this.degrees = new int[numNodes];
+        this.ranks = keepOrder ? new long[numNodes][] : null;
+
+        for (int i = 0; i < numNodes; i++) {
+            adjacents[i] = EMPTY;
+            kinds[i] = NO_KINDS;
+            if (keepOrder) ranks[i] = NO_RANKS;
+        }
+    }
+
+    /**
+     * A copy of the given pattern.
+     */
+    public IndexedPattern(IndexedPattern pattern) {
+        int numNodes = pattern.getNumNodes();
+        this.adjacents = new int[numNodes][];
+        this.kinds = new byte[numNodes][];
+        this.degrees = Arrays.copyOf(pattern.degrees, numNodes);
+        this.numEdges = pattern.numEdges;
+        this.ranks = pattern.ranks == null ? null : new long[numNodes][];
+        this.nextRank.set(pattern.nextRank.get());
+
+        for (int i = 0; i < numNodes; i++) {
+            adjacents[i] = Arrays.copyOf(pattern.adjacents[i], degrees[i]);
+            kinds[i] = Arrays.copyOf(pattern.kinds[i], degrees[i]);
+            if (ranks != null) ranks[i] = Arrays.copyOf(pattern.ranks[i], degrees[i]);
+        }
+    }
+
+    /**
+     * The pattern with the edges of the given graph whose endpoints are both in the given
+     * index map. Directed edges stay directed; all others become undirected.
+     */
+    public static IndexedPattern fromGraph(Graph graph, Map<Node, Integer> indices) {
+        IndexedPattern pattern = new IndexedPattern(indices.size());
+
+        for (Edge edge : graph.getEdges()) {
+            Integer i = indices.get(edge.getNode1());
+            Integer j = indices.get(edge.getNode2());
+            if (i == null || j == null || i.equals(j) || pattern.isAdjacentTo(i, j)) continue;
+
+            if (Edges.isDirectedEdge(edge)) {
+                if (edge.pointsTowards(edge.getNode2())) {
+                    pattern.addDirectedEdge(i, j);
+                } else {
+                    pattern.addDirectedEdge(j, i);
+                }
+            } else {
+                pattern.addUndirectedEdge(i, j);
+            }
+        }
+
+        return pattern;
+    }
+
+    /**
+     * The pattern with all of the edges of the given graph, with their endpoints, keeping the
+     * order of each node's edges; node i is the node with index i in the given map, which must
+     * index every node of the graph. Returns null if some two nodes have more than one edge
+     * between them.
+     */
+    public static IndexedPattern fromGraphInOrder(Graph graph, Map<Node, Integer> indices) {
+        IndexedPattern pattern = new IndexedPattern(indices.size(), true);
+        long maxDegree = 0;
+
+        for (Node node : graph.getNodes()) {
+            int i = indices.get(node);
+            List<Edge> edges = graph.getEdges(node);
+            maxDegree = Math.max(maxDegree, edges.size());
+
+            for (int rank = 0; rank < edges.size(); rank++) {
+                Edge edge = edges.get(rank);
+                Node other = edge.getDistalNode(node);
+                int j = indices.get(other);
+                int k = pattern.find(i, j);
+
+                if (k >= 0) {
+                    // Seen already from the other end.
+                    if (pattern.ranks[i][k] != -1) return null;
+                    pattern.ranks[i][k] = rank;
+                    continue;
+                }
+
+                if (i == j) return null;
+
+                byte kind = kind(edge.getProximalEndpoint(node), edge.getProximalEndpoint(other));
+                pattern.insert(i, -k - 1, j, kind, rank);
+                pattern.insert(j, -pattern.find(j, i) - 1, i, reverse(kind), -1);
+                pattern.numEdges++;
+            }
+        }
+
+        pattern.nextRank.set(maxDegree);
+        return pattern;
+    }
+
+    /**
+     * @return the kind of an edge with the given endpoints at i and at j, as seen from i.
+     */
+    public static byte kind(Endpoint atI, Endpoint atJ) {
+        return (byte) (3 * mark(atI) + mark(atJ));
+    }
+
+    /**
+     * @return the given kind of edge as seen from its other end.
+     */
+    public static byte reverse(byte kind) {
+        return (byte) (3 * (kind % 3) + kind / 3);
+    }
+
+    /**
+     * @return a graph over the given nodes, node i being nodes.get(i), with the edges of this
+     * pattern.
+     */
+    public Graph toGraph(List<Node> nodes) {
+        Graph graph = new EdgeListGraphSingleConnections(nodes);
+
+        for (int i = 0; i < adjacents.length; i++) {
+            for (int k = 0; k < degrees[i]; k++) {
+                int j = adjacents[i][k];
+
+                if (kinds[i][k] == OUT) {
+                    graph.addDirectedEdge(nodes.get(i), nodes.get(j));
+                } else if (kinds[i][k] == UNDIRECTED && i < j) {
+                    graph.addUndirectedEdge(nodes.get(i), nodes.get(j));
+                } else if (kinds[i][k] != IN && i < j) {
+                    graph.addEdge(new Edge(nodes.get(i), nodes.get(j), endpoint(kinds[i][k] / 3),
+                            endpoint(kinds[i][k] % 3)));
+                }
+            }
+        }
+
+        return graph;
+    }
+
+    public int getNumNodes() {
+        return adjacents.length;
+    }
+
+    public int getNumEdges() {
+        return numEdges;
+    }
+
+    public int getDegree(int i) {
+        return degrees[i];
+    }
+
+    /**
+     * @return the k'th adjacent of i, in increasing order, for 0 &lt;= k &lt; getDegree(i).
+     */
+    public int getAdjacent(int i, int k) {
+        return adjacents[i][k];
+    }
+
+    /**
+     * @return the kind of the edge from i to its k'th adjacent.
+     */
+    public byte getKind(int i, int k) {
+        return kinds[i][k];
+    }
+
+    public boolean isAdjacentTo(int i, int j) {
+        return find(i, j) >= 0;
+    }
+
+    /**
+     * @return true iff i--&gt;j.
+     */
+    public boolean isParentOf(int i, int j) {
+        int k = find(i, j);
+        return k >= 0 && kinds[i][k] == OUT;
+    }
+
+    /**
+     * @return true iff i---j.
+     */
+    public boolean isUndirected(int i, int j) {
+        int k = find(i, j);
+        return k >= 0 && kinds[i][k] == UNDIRECTED;
+    }
+
+    /**
+     * @return true iff a--&gt;b&lt;--c.
+     */
+    public boolean isDefCollider(int a, int b, int c) {
+        return isParentOf(a, b) && isParentOf(c, b);
+    }
+
+    /**
+     * @return true iff there is an edge between i and j with an arrowhead at j.
+     */
+    public boolean isArrowheadAt(int i, int j) {
+        int k = find(i, j);
+        return k >= 0 && kinds[i][k] % 3 == 1;
+    }
+
+    /**
+     * @return the adjacents of i, in increasing order.
+     */
+    public int[] getAdjacents(int i) {
+        return Arrays.copyOf(adjacents[i], degrees[i]);
+    }
+
+    /**
+     * @return the adjacents of i, in the order of its edges if this pattern keeps that order,
+     * otherwise in increasing order.
+     */
+    public int[] getAdjacentsInOrder(int i) {
+        if (ranks == null) return getAdjacents(i);
+
+        // Sort positions by rank, packed together; ranks stay well below 2^40.
+        long[] packed = new long[degrees[i]];
+
+        for (int k = 0; k < packed.length; k++) {
+            packed[k] = (ranks[i][k] << 22) | k;
+        }
+
+        Arrays.sort(packed);
+        int[] ordered = new int[packed.length];
+
+        for (int k = 0; k < packed.length; k++) {
+            ordered[k] = adjacents[i][(int) (packed[k] & 0x3FFFFF)];
+        }
+
+        return ordered;
+    }
+
+    /**
+     * @return the nodes j with j--&gt;i, in increasing order.
+     */
+    public int[] getParents(int i) {
+        return select(i, IN);
+    }
+
+    /**
+     * @return the nodes j with i--&gt;j, in increasing order.
+     */
+    public int[] getChildren(int i) {
+        return select(i, OUT);
+    }
+
+    /**
+     * @return the nodes j with i---j, in increasing order.
+     */
+    public int[] getNeighbors(int i) {
+        return select(i, UNDIRECTED);
+    }
+
+    public void addDirectedEdge(int i, int j) {
+        addEdge(i, j, OUT, IN);
+    }
+
+    public void addUndirectedEdge(int i, int j) {
+        addEdge(i, j, UNDIRECTED, UNDIRECTED);
+    }
+
+    /**
+     * Removes the edge between i and j, if there is one.
+     */
+    public void removeEdge(int i, int j) {
+        int k = find(i, j);
+        if (k < 0) return;
+        remove(i, k);
+        remove(j, find(j, i));
+        numEdges--;
+    }
+
+    //==============================PRIVATE METHODS========================//
+
+    private int find(int i, int j) {
+        return Arrays.binarySearch(adjacents[i], 0, degrees[i], j);
+    }
+
+    private int[] select(int i, byte kind) {
+        int[] _adjacents = adjacents[i];
+        byte[] _kinds = kinds[i];
+        int count = 0;
+
+        for (int k = 0; k < degrees[i]; k++) {
+            if (_kinds[k] == kind) count++;
+        }
+
+        if (count == 0) return EMPTY;
+
+        int[] selected = new int[count];
+        count = 0;
+
+        for (int k = 0; k < degrees[i]; k++) {
+            if (_kinds[k] == kind) selected[count++] = _adjacents[k];
+        }
+
+        return selected;
+    }
+
+    // Changing the kind of an existing edge changes nothing shared, so this may be done for
+    // different nodes concurrently.
+    private void addEdge(int i, int j, byte fromI, byte fromJ) {
+        if (i == j) throw new IllegalArgumentException("Self loop: " + i);
+
+        int k = find(i, j);
+        long rank = ranks == null ? 0 : nextRank.getAndIncrement();
+
+        if (k >= 0) {
+            int l = find(j, i);
+            kinds[i][k] = fromI;
+            kinds[j][l] = fromJ;
+
+            if (ranks != null) {
+                ranks[i][k] = rank;
+                ranks[j][l] = rank;
+            }
+
+            return;
+        }
+
+        insert(i, -k - 1, j, fromI, rank);
+        insert(j, -find(j, i) - 1, i, fromJ, rank);
+        numEdges++;
+    }
+
+    private void insert(int i, int k, int j, byte kind, long rank) {
+        int degree = degrees[i];
+
+        if (degree == adjacents[i].length) {
+            int capacity = Math.max(4, 2 * degree);
+            adjacents[i] = Arrays.copyOf(adjacents[i], capacity);
+            kinds[i] = Arrays.copyOf(kinds[i], capacity);
+            if (ranks != null) ranks[i] = Arrays.copyOf(ranks[i], capacity);
+        }
+
+        System.arraycopy(adjacents[i], k, adjacents[i], k + 1, degree - k);
+        System.arraycopy(kinds[i], k, kinds[i], k + 1, degree - k);
+        adjacents[i][k] = j;
+        kinds[i][k] = kind;
+
+        if (ranks != null) {
+            System.arraycopy(ranks[i], k, ranks[i], k + 1, degree - k);
+            ranks[i][k] = rank;
+        }
+
+        degrees[i]++;
+    }
+
+    private void remove(int i, int k) {
+        int tail = degrees[i] - k - 1;
+        System.arraycopy(adjacents[i], k + 1, adjacents[i], k, tail);
+        System.arraycopy(kinds[i], k + 1, kinds[i], k, tail);
+        if (ranks != null) System.arraycopy(ranks[i], k + 1, ranks[i], k, tail);
+        degrees[i]--;
+    }
+
+    private static Endpoint endpoint(int mark) {
+        if (mark == 0) return Endpoint.TAIL;
+        if (mark == 1) return Endpoint.ARROW;
+        return Endpoint.CIRCLE;
+    }
+
+    private static int mark(Endpoint endpoint) {
+        if (endpoint == Endpoint.TAIL) return 0;
+        if (endpoint == Endpoint.ARROW) return 1;
+        return 2;
+    }
+}
@@ -19,50 +19,214 @@
 // Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
 ///////////////////////////////////////////////////////////////////////////////
 
-package edu.cmu.tetrad.search;
 
-import org.apache.commons.collections4.map.MultiKeyMap;
+package edu.cmu.tetrad.search;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Stores a map from (variable, parents) to score.
+ * Stores a map from (variable, parents) to score, safe to share among
+ * threads. The order of the parents doesn't matter.
+ * <p>
+ * Keys are reduced to 64-bit fingerprints (so two keys could in principle
+ * collide, with probability about 2^-64 per pair), kept in primitive arrays
+ * organized as buckets of 8 slots. A full bucket evicts one of its entries by
+ * the CLOCK rule: entries used since the hand last passed are skipped once.
+ * Buckets are locked in stripes, and nothing is allocated by get or add.
  *
  * @author Joseph Ramsey
  */
 public class LocalScoreCache {
-    private MultiKeyMap map;
+
+    /**
+     * The default maximum number of scores kept.
+     */
+    public static final int DEFAULT_MAX_SIZE = 1 << 20;
+
+    private static final int WAYS = 8;
+    private static final int NUM_LOCKS = 64;
+
+    // Fingerprints of the keys, 0 for an empty slot.
+    private final long[] keys;
+    private final double[] scores;
+
+    // Whether each entry has been used since the clock hand last passed it.
+    private final boolean[] referenced;
+
+    // The clock hand of each bucket.
+    private final byte[] hands;
+
+    private final int bucketMask;
+    private final Object[] locks = new Object[NUM_LOCKS];
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
 
     public LocalScoreCache() {
-        map = new MultiKeyMap();
+        this(DEFAULT_MAX_SIZE);
     }
 
-    public void add(int variable, int[] parents, double score) {
-        Set<Integer> _parents = new HashSet<>(parents.length);
+    /**
+     * @param maxSize The maximum number of scores kept, rounded up to a power
+     *                of 2 (and at least 8).
+     */
+    public LocalScoreCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache size must be at least 1: " + maxSize);
+        }
 
-        for (int parent : parents) {
-            _parents.add(parent);
+        int capacity = Math.max(WAYS, Integer.highestOneBit(maxSize - 1) << 1);
+
+        keys = new long[capacity];
+        scores = new double[capacity];
+        referenced = new boolean[capacity];
+        hands = new byte[capacity / WAYS];
+        bucketMask = capacity / WAYS - 1;
+
+        for (int i = 0; i < NUM_LOCKS; i++) {
+            locks[i] = new Object();
         }
+    }
 
-        map.put(variable, _parents, score);
+    public void add(int variable, int[] parents, double score) {
+        put(fingerprint(-1, variable, parents), score);
     }
 
+    /**
+     * @return the score for the given variable and parents, or NaN if it is
+     * not in the cache.
+     */
     public double get(int variable, int[] parents) {
-        Set<Integer> _parents = new HashSet<>(parents.length);
+        return get(fingerprint(-1, variable, parents));
+    }
 
-        for (int parent : parents) {
-            _parents.add(parent);
-        }
+    /**
+     * Stores a score difference, the change in the score of y when x is added
+     * to its parents z.
+     */
+    public void add(int x, int y, int[] z, double diff) {
+        put(fingerprint(x, y, z), diff);
+    }
 
-        Double _score = (Double) map.get(variable, _parents);
-        return _score == null ? Double.NaN : (_score);
+    /**
+     * @return the score difference for adding x to the parents z of y, or NaN
+     * if it is not in the cache.
+     */
+    public double get(int x, int y, int[] z) {
+        return get(fingerprint(x, y, z));
     }
 
     public void clear() {
-        map.clear();
+        for (int b = 0; b < hands.length; b++) {
+            synchronized (locks[b & (NUM_LOCKS - 1)]) {
+                Arrays.fill(keys, b * WAYS, (b + 1) * WAYS, 0L);
+                Arrays.fill(referenced, b * WAYS, (b + 1) * WAYS, false);
+                hands[b] = 0;
+            }
+        }
+    }
+
+    /**
+     * @return the number of scores the cache can hold.
+     */
+    public int getCapacity() {
+        return keys.length;
     }
-}
 
+    /**
+     * @return the number of lookups that found a score.
+     */
+    public long getHits() {
+        return hits.get();
+    }
 
+    /**
+     * @return the number of lookups that found no score.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
 
+    /**
+     * @return the number of scores evicted to make room for others.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    //==========================PRIVATE METHODS============================//
+
+    private double get(long key) {
+        int bucket = (int) (key >>> 32) & bucketMask;
+
+        synchronized (locks[bucket & (NUM_LOCKS - 1)]) {
+            for (int i = bucket * WAYS; i < (bucket + 1) * WAYS; i++) {
+                if (keys[i] == key) {
+                    referenced[i] = true;
+                    hits.incrementAndGet();
+                    return scores[i];
+                }
+            }
+        }
+
+        misses.incrementAndGet();
+        return Double.NaN;
+    }
+
+    private void put(long key, double score) {
+        int bucket = (int) (key >>> 32) & bucketMask;
+        int start = bucket * WAYS;
+
+        synchronized (locks[bucket & (NUM_LOCKS - 1)]) {
+            int empty = -1;
+
+            for (int i = start; i < start + WAYS; i++) {
+                if (keys[i] == key) {
+                    scores[i] = score;
+                    return;
+                } else if (keys[i] == 0 && empty == -1) {
+                    empty = i;
+                }
+            }
+
+            if (empty == -1) {
+                int hand = hands[bucket];
+
+                while (referenced[start + hand]) {
+                    referenced[start + hand] = false;
+                    hand = (hand + 1) & (WAYS - 1);
+                }
+
+                empty = start + hand;
+                hands[bucket] = (byte) ((hand + 1) & (WAYS - 1));
+                evictions.incrementAndGet();
+            }
+
+            keys[empty] = key;
+            scores[empty] = score;
+            referenced[empty] = false;
+        }
+    }
+
+    // Combines the parents by adding their hashes, so that their order
+    // doesn't matter.
+    private static long fingerprint(int extra, int variable, int[] parents) {
+        long sum = 0;
+
+        for (int parent : parents) {
+            sum += mix(parent + 0x632BE59BD9B4E019L);
+        }
+
+        long key = mix(mix(((long) extra << 32) ^ (variable & 0xFFFFFFFFL)) + parents.length + sum);
+        return key == 0 ? 1 : key;
+    }
+
+    // The finalizer of SplitMix64.
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
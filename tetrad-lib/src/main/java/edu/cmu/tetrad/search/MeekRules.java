@@ -35,6 +35,12 @@ import java.util.*;
  * orienting.
  * <p>
  * For now, the fourth rule is always performed.
+ * <p>
+ * The rules are applied to an int-indexed copy of the graph by IndexedMeekRules, which keeps
+ * the order of each node's edges so as to orient just as these rules would on the graph
+ * itself; the changes are then made to the graph. For large graphs, connected components are
+ * oriented in parallel. Graphs with more than one edge between some two nodes are oriented
+ * directly, as are all graphs if the indexed copy is turned off.
  *
  * @author Joseph Ramsey
  */
@@ -75,6 +81,12 @@ public class MeekRules implements ImpliedOrientation {
     // True if unforced parents should be undirected before orienting.
     private boolean undirectUnforcedEdges = false;
 
+    // True if the rules are to be applied to an indexed copy of the graph.
+    private boolean indexed = true;
+
+    // Graphs with at least this many nodes have their components oriented in parallel.
+    private static final int PARALLEL_THRESHOLD = 500;
+
     /**
      * Constructs the <code>MeekRules</code> with no logging.
      */
@@ -93,7 +105,11 @@ public class MeekRules implements ImpliedOrientation {
         this.visited.addAll(nodes);
 
         TetradLogger.getInstance().log("impliedOrientations", "Starting Orientation Step D.");
-        orientUsingMeekRulesLocally(knowledge, graph);
+
+        if (!indexed || !orientIndexed(graph)) {
+            orientUsingMeekRulesLocally(knowledge, graph);
+        }
+
         TetradLogger.getInstance().log("impliedOrientations", "Finishing Orientation Step D.");
 
     }
@@ -135,8 +151,65 @@ public class MeekRules implements ImpliedOrientation {
         this.undirectUnforcedEdges = undirectUnforcedEdges;
     }
 
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    /**
+     * Sets whether the rules are applied to an int-indexed copy of the graph, as by default, or to
+     * the graph itself. Either way the same edges are oriented.
+     */
+    public void setIndexed(boolean indexed) {
+        this.indexed = indexed;
+    }
+
     //============================== Private Methods ===================================//
 
+    // Orients an indexed copy of the graph and makes the same changes to the graph. Returns false,
+    // doing nothing, if the graph cannot be indexed.
+    private boolean orientIndexed(Graph graph) {
+        List<Node> graphNodes = graph.getNodes();
+        Map<Node, Integer> indices = new HashMap<>();
+
+        for (int i = 0; i < graphNodes.size(); i++) {
+            indices.put(graphNodes.get(i), i);
+        }
+
+        IndexedPattern pattern = IndexedPattern.fromGraphInOrder(graph, indices);
+        if (pattern == null) return false;
+
+        IndexedMeekRules rules = new IndexedMeekRules(pattern, graphNodes, knowledge);
+        rules.setUndirectUnforcedEdges(undirectUnforcedEdges);
+        rules.setParallel(graphNodes.size() >= PARALLEL_THRESHOLD);
+
+        for (Triple triple : graph.getAmbiguousTriples()) {
+            Integer x = indices.get(triple.getX());
+            Integer y = indices.get(triple.getY());
+            Integer z = indices.get(triple.getZ());
+
+            if (x != null && y != null && z != null) {
+                rules.addAmbiguousTriple(x, y, z);
+            }
+        }
+
+        int[] start = new int[nodes.size()];
+        int numStart = 0;
+
+        for (Node node : nodes) {
+            Integer i = indices.get(node);
+            if (i != null) start[numStart++] = i;
+        }
+
+        rules.orientImplied(Arrays.copyOf(start, numStart));
+        rules.applyChanges(graph);
+
+        for (int i : rules.getVisited()) {
+            visited.add(graphNodes.get(i));
+        }
+
+        return true;
+    }
+
     private void orientUsingMeekRulesLocally(IKnowledge knowledge, Graph graph) {
 
         oriented = new HashSet<>();
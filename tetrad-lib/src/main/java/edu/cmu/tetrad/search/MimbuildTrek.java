@@ -26,9 +26,9 @@ import edu.cmu.tetrad.data.ICovarianceMatrix;
 import edu.cmu.tetrad.data.IKnowledge;
 import edu.cmu.tetrad.data.Knowledge2;
 import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.util.PValues;
 import edu.cmu.tetrad.util.TetradMatrix;
 import org.apache.commons.math3.analysis.MultivariateFunction;
-import org.apache.commons.math3.distribution.ChiSquaredDistribution;
 import org.apache.commons.math3.optim.InitialGuess;
 import org.apache.commons.math3.optim.MaxEval;
 import org.apache.commons.math3.optim.PointValuePair;
@@ -350,7 +350,7 @@ public class MimbuildTrek {
 
         int df = (p) * (p + 1) / 2 - (numParams);
         double x = (N - 1) * minimum;
-        this.pValue = 1.0 - new ChiSquaredDistribution(df).cumulativeProbability(x);
+        this.pValue = PValues.chiSquare(x, df);
 
         return latentscov;
     }
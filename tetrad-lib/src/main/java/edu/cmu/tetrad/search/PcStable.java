@@ -207,6 +207,13 @@ public class PcStable implements GraphSearch {
      * All of the given nodes must be in the domain of the given conditional independence test.
      */
     public Graph search(List<Node> nodes) {
+        return search(new FasStableConcurrent(initialGraph, getIndependenceTest()), nodes);
+    }
+
+    /**
+     * Runs PC over the given nodes as in search(List), using the given adjacency search.
+     */
+    public Graph search(IFas fas, List<Node> nodes) {
         this.logger.log("info", "Starting PC algorithm");
         this.logger.log("info", "Independence test = " + getIndependenceTest() + ".");
 
@@ -226,7 +233,6 @@ public class PcStable implements GraphSearch {
 
         graph = new EdgeListGraph(nodes);
 
-        IFas fas = new FasStableConcurrent(initialGraph, getIndependenceTest());
         fas.setKnowledge(getKnowledge());
         fas.setDepth(getDepth());
         fas.setVerbose(verbose);
@@ -0,0 +1,304 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.IKnowledge;
+import edu.cmu.tetrad.data.Knowledge2;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.ChoiceGenerator;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Looks for a sepset of x and y among the subsets of Possible-D-Sep(x, y), for step D of FCI. The subsets are taken
+ * in order of size and then in the order ChoiceGenerator gives them, and the first one that makes x and y independent
+ * is the sepset, as when they are tested one at a time. If the independence test is a ThreadSafeIndependenceTest they
+ * are tested in blocks on the fork/join pool the search runs in, or else on the shared one; once a subset in a block
+ * is found to separate x and y, the subsets after it in the block are skipped, and the first one found in the block is
+ * taken, so the sepset does not depend on the number of threads. Other tests are called one subset at a time.
+ * <p>
+ * Possible-D-Sep(x, y) can be most of the graph, so there are two budgets. The maximum path length bounds the paths
+ * from x along which Possible-D-Sep(x, y) is collected, and the time budget bounds the time spent testing subsets for
+ * one pair; a pair that runs out of time is taken to have no sepset, so its edge is kept. This holds even if a subset
+ * in the block being tested when the time ran out separates x and y, since with more threads that subset might not
+ * have been reached in time.
+ */
+public class PossibleDsepConcurrent {
+
+    /**
+     * The graph, whose adjacencies are read for each pair.
+     */
+    private final Graph graph;
+
+    /**
+     * The independence test.
+     */
+    private final IndependenceTest test;
+
+    /**
+     * The background knowledge.
+     */
+    private IKnowledge knowledge = new Knowledge2();
+
+    /**
+     * The largest sepset considered, or -1 if unlimited.
+     */
+    private int depth = -1;
+
+    /**
+     * The longest path along which Possible-D-Sep is collected, or -1 if unlimited.
+     */
+    private int maxPathLength = -1;
+
+    /**
+     * The most milliseconds spent testing subsets for a pair, or -1 if unlimited.
+     */
+    private long timeBudget = -1;
+
+    /**
+     * The number of pairs that ran out of time.
+     */
+    private final AtomicInteger numTimedOut = new AtomicInteger();
+
+    public PossibleDsepConcurrent(Graph graph, IndependenceTest test) {
+        if (graph == null) throw new NullPointerException("Graph must not be null.");
+        if (test == null) throw new NullPointerException("Independence test must not be null.");
+        this.graph = graph;
+        this.test = test;
+    }
+
+    //============================== Public Methods =========================//
+
+    /**
+     * @return a sepset of x and y from among the subsets of Possible-D-Sep(x, y), or, failing that, of
+     * Possible-D-Sep(y, x), or null if there is none.
+     */
+    public List<Node> getSepset(Node x, Node y) {
+        List<Node> condSet = getCondSet(x, y);
+
+        if (condSet == null) {
+            condSet = getCondSet(y, x);
+        }
+
+        return condSet;
+    }
+
+    /**
+     * @return Possible-D-Sep(x, y) in the graph as it is now, within the maximum path length, in the order of the
+     * nodes of the graph.
+     */
+    public List<Node> getPossibleDsep(Node x, Node y) {
+        return new ArrayList<>(GraphUtils.possibleDsep(x, y, graph, maxPathLength));
+    }
+
+    public IKnowledge getKnowledge() {
+        return knowledge;
+    }
+
+    public void setKnowledge(IKnowledge knowledge) {
+        this.knowledge = knowledge == null ? new Knowledge2() : knowledge;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public void setDepth(int depth) {
+        if (depth < -1) {
+            throw new IllegalArgumentException("Depth must be -1 (unlimited) or >= 0: " + depth);
+        }
+
+        this.depth = depth;
+    }
+
+    public int getMaxPathLength() {
+        return maxPathLength;
+    }
+
+    public void setMaxPathLength(int maxPathLength) {
+        if (maxPathLength < -1) {
+            throw new IllegalArgumentException("Max path length must be -1 (unlimited) or >= 0: " + maxPathLength);
+        }
+
+        this.maxPathLength = maxPathLength == Integer.MAX_VALUE ? -1 : maxPathLength;
+    }
+
+    /**
+     * @return the most milliseconds spent testing subsets for one pair, or -1 if unlimited.
+     */
+    public long getTimeBudget() {
+        return timeBudget;
+    }
+
+    /**
+     * @param timeBudget the most milliseconds spent testing subsets for one pair, or -1 if unlimited. A pair that runs
+     *                   out of time is taken to have no sepset.
+     */
+    public void setTimeBudget(long timeBudget) {
+        if (timeBudget < -1) {
+            throw new IllegalArgumentException("Time budget must be -1 (unlimited) or >= 0: " + timeBudget);
+        }
+
+        this.timeBudget = timeBudget;
+    }
+
+    /**
+     * @return the number of pairs so far that ran out of time before a sepset was found.
+     */
+    public int getNumTimedOut() {
+        return numTimedOut.get();
+    }
+
+    //============================== Private Methods =========================//
+
+    private List<Node> getCondSet(Node x, Node y) {
+        if (!knowledge.noEdgeRequired(x.getName(), y.getName())) {
+            return null;
+        }
+
+        List<Node> possParents = possibleParents(x, getPossibleDsep(x, y));
+        long deadline = timeBudget == -1 ? Long.MAX_VALUE : System.currentTimeMillis() + timeBudget;
+        int _depth = depth == -1 ? 1000 : depth;
+        boolean parallel = test instanceof ThreadSafeIndependenceTest;
+        ForkJoinPool pool = ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool()
+                : ForkJoinPoolInstance.getInstance().getPool();
+        int blockSize = parallel ? 8 * pool.getParallelism() : 1;
+
+        for (int d = 0; d <= Math.min(_depth, possParents.size()); d++) {
+            ChoiceGenerator cg = new ChoiceGenerator(possParents.size(), d);
+            List<int[]> block = new ArrayList<>();
+            int[] choice;
+
+            do {
+                choice = cg.next();
+
+                if (choice != null) {
+                    block.add(choice.clone());
+                }
+
+                if (block.size() == blockSize || (choice == null && !block.isEmpty())) {
+                    AtomicBoolean timedOut = new AtomicBoolean(false);
+                    int first = testBlock(x, y, possParents, block, deadline, timedOut, pool);
+
+                    if (timedOut.get()) {
+                        numTimedOut.incrementAndGet();
+                        return null;
+                    }
+
+                    if (first != -1) {
+                        return GraphUtils.asList(block.get(first), possParents);
+                    }
+
+                    block.clear();
+                }
+            } while (choice != null);
+        }
+
+        return null;
+    }
+
+    // Tests x _||_ y | S for the subsets S of possParents in the block, in parallel in the given pool, and returns the
+    // position in the block of the first one that separates them, or -1 if there is none.
+    private int testBlock(final Node x, final Node y, final List<Node> possParents, final List<int[]> block,
+                          final long deadline, final AtomicBoolean timedOut, ForkJoinPool pool) {
+        final AtomicInteger first = new AtomicInteger(Integer.MAX_VALUE);
+
+        class TestTask extends RecursiveTask<Boolean> {
+            private final int from;
+            private final int to;
+
+            public TestTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected Boolean compute() {
+                if (to - from <= 1) {
+                    for (int i = from; i < to; i++) {
+                        if (i > first.get() || timedOut.get()) break;
+
+                        if (System.currentTimeMillis() > deadline) {
+                            timedOut.set(true);
+                            break;
+                        }
+
+                        if (test.isIndependent(x, y, GraphUtils.asList(block.get(i), possParents))) {
+                            int f;
+
+                            do {
+                                f = first.get();
+                            } while (i < f && !first.compareAndSet(f, i));
+                        }
+                    }
+
+                    return true;
+                } else {
+                    final int mid = (to + from) / 2;
+
+                    TestTask left = new TestTask(from, mid);
+                    left.fork();
+                    TestTask right = new TestTask(mid, to);
+                    right.compute();
+                    left.join();
+
+                    return true;
+                }
+            }
+        }
+
+        if (block.size() == 1) {
+            new TestTask(0, 1).compute();
+        } else {
+            pool.invoke(new TestTask(0, block.size()));
+        }
+
+        return first.get() == Integer.MAX_VALUE ? -1 : first.get();
+    }
+
+    /**
+     * Removes from the list of nodes any that cannot be parents of x given the background knowledge.
+     */
+    private List<Node> possibleParents(Node x, List<Node> nodes) {
+        List<Node> possibleParents = new ArrayList<>();
+        String _x = x.getName();
+
+        for (Node z : nodes) {
+            String _z = z.getName();
+
+            if (!(knowledge.isForbidden(_z, _x) || knowledge.isRequired(_x, _z))) {
+                possibleParents.add(z);
+            }
+        }
+
+        return possibleParents;
+    }
+}
@@ -22,17 +22,12 @@
 package edu.cmu.tetrad.search;
 
 import edu.cmu.tetrad.data.IKnowledge;
-import edu.cmu.tetrad.data.Knowledge2;
 import edu.cmu.tetrad.graph.Edge;
 import edu.cmu.tetrad.graph.Graph;
-import edu.cmu.tetrad.graph.GraphUtils;
 import edu.cmu.tetrad.graph.Node;
-import edu.cmu.tetrad.util.ChoiceGenerator;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
 
 /**
  * This class implements the Possible-D-Sep search step of Spirtes, et al's (1993) FCI algorithm (pp 144-145).
@@ -48,16 +43,13 @@ import java.util.Set;
 public class PossibleDsepFci {
 
     private Graph graph;
-    private IndependenceTest test;
 
     private SepsetMap sepset;
-    private int depth = -1;
 
     /**
-     * The background knowledge.
+     * Finds the sepsets from among the subsets of Possible-D-Sep, in parallel.
      */
-    private IKnowledge knowledge = new Knowledge2();
-    private int maxReachablePathLength = -1;
+    private PossibleDsepConcurrent possibleDsep;
 
     /**
      * Creates a new SepSet and assumes that none of the variables have yet been checked.
@@ -76,10 +68,8 @@ public class PossibleDsepFci {
         }
 
         this.graph = graph;
-        this.test = test;
         this.sepset = new SepsetMap();
-
-        setMaxPathLength(maxReachablePathLength);
+        this.possibleDsep = new PossibleDsepConcurrent(graph, test);
     }
 
     //============================== Public Methods =========================//
@@ -101,12 +91,6 @@ public class PossibleDsepFci {
             List<Node> condSet = getSepset(x, y);
 
             if (condSet != null) {
-                for (Node n : condSet) {
-                    if (!(graph.getAdjacentNodes(n).contains(x) || graph.getAdjacentNodes(n).contains(y))) {
-                        System.out.println("Not adjacent");
-                    }
-                }
-
                 graph.removeEdge(x, y);
                 sepset.set(x, y, condSet);
                 System.out.println("Removed " + x + "--- " + y + " sepset = " + condSet);
@@ -117,120 +101,43 @@ public class PossibleDsepFci {
         return sepset;
     }
 
-    public List<Node> getSepset(Node node1, Node node2) {
-        List<Node> condSet = getCondSet(node1, node2, maxReachablePathLength);
-
-        if (sepset == null) {
-            condSet = getCondSet(node2, node1, maxReachablePathLength);
-        }
-
-        return condSet;
-    }
-
-    private List<Node> getCondSet(Node node1, Node node2, int maxPathLength) {
-        final Set<Node> possibleDsepSet = getPossibleDsep(node1, node2, maxPathLength);
-        List<Node> possibleDsep = new ArrayList<>(possibleDsepSet);
-        boolean noEdgeRequired = getKnowledge().noEdgeRequired(node1.getName(), node2.getName());
-
-        List<Node> possParents = possibleParents(node1, possibleDsep, getKnowledge());
-
-        int _depth = getDepth() == -1 ? 1000 : getDepth();
-
-        for (int d = 0; d <= Math.min(_depth, possParents.size()); d++) {
-            ChoiceGenerator cg = new ChoiceGenerator(possParents.size(), d);
-            int[] choice;
-
-            while ((choice = cg.next()) != null) {
-                List<Node> condSet = GraphUtils.asList(choice, possParents);
-                boolean independent = test.isIndependent(node1, node2, condSet);
-
-                if (independent && noEdgeRequired) {
-                    return condSet;
-                }
-            }
-        }
-
-        return null;
-    }
-
     /**
-     * Removes from the list of nodes any that cannot be parents of x given the background knowledge.
+     * @return a sepset of node1 and node2 from among the subsets of Possible-D-Sep(node1, node2), or, failing that, of
+     * Possible-D-Sep(node2, node1), or null if there is none.
      */
-    private List<Node> possibleParents(Node x, List<Node> nodes,
-                                       IKnowledge knowledge) {
-        List<Node> possibleParents = new LinkedList<>();
-        String _x = x.getName();
-
-        for (Node z : nodes) {
-            String _z = z.getName();
-
-            if (possibleParentOf(_z, _x, knowledge)) {
-                possibleParents.add(z);
-            }
-        }
-
-        return possibleParents;
-    }
-
-    private boolean possibleParentOf(String _z, String _x, IKnowledge bk) {
-        return !(bk.isForbidden(_z, _x) || bk.isRequired(_x, _z));
-    }
-
-    /**
-     * A variable v is in Possible-D-Sep(A,B) iff
-     * <pre>
-     * 	(i) v != A & v != B
-     * 	(ii) there is an undirected path U between A and v such that for every
-     * 		 subpath <X,Y,Z> of U either:
-     * 		(a) Y is a collider on the subpath, or
-     * 		(b) X is adjacent to Z.
-     * </pre>
-     */
-    private Set<Node> getPossibleDsep(Node node1, Node node2, int maxPathLength) {
-        Set<Node> dsep = GraphUtils.possibleDsep(node1, node2, graph, maxPathLength);
-
-        dsep.remove(node1);
-        dsep.remove(node2);
-
-//        TetradLogger.getInstance().log("details", "Possible-D-Sep(" + node1 + ", " + node2 + ") = " + dsep);
-
-        return dsep;
+    public List<Node> getSepset(Node node1, Node node2) {
+        return possibleDsep.getSepset(node1, node2);
     }
 
     public int getDepth() {
-        return depth;
+        return possibleDsep.getDepth();
     }
 
     public void setDepth(int depth) {
-        if (depth < -1) {
-            throw new IllegalArgumentException(
-                    "Depth must be -1 (unlimited) or >= 0: " + depth);
-        }
-
-        this.depth = depth;
+        possibleDsep.setDepth(depth);
     }
 
     public IKnowledge getKnowledge() {
-        return knowledge;
+        return possibleDsep.getKnowledge();
     }
 
     public void setKnowledge(IKnowledge knowledge) {
-        this.knowledge = knowledge;
+        possibleDsep.setKnowledge(knowledge);
     }
 
     public int getMaxReachablePathLength() {
-        return maxReachablePathLength == Integer.MAX_VALUE ? -1 : maxReachablePathLength;
+        return possibleDsep.getMaxPathLength();
     }
 
     public void setMaxPathLength(int maxReachablePathLength) {
-        if (maxReachablePathLength < -1) {
-            throw new IllegalArgumentException("Max path length must be -1 (unlimited) or >= 0: " + maxReachablePathLength);
-        }
+        possibleDsep.setMaxPathLength(maxReachablePathLength);
+    }
 
-        this.maxReachablePathLength = maxReachablePathLength == -1 ? Integer.MAX_VALUE : maxReachablePathLength;
+    /**
+     * @param timeBudget the most milliseconds spent looking for a sepset of a pair, or -1 if unlimited. A pair that
+     *                   runs out of time keeps its edge.
+     */
+    public void setTimeBudget(long timeBudget) {
+        possibleDsep.setTimeBudget(timeBudget);
     }
 }
-
-
-
-
@@ -24,6 +24,7 @@ package edu.cmu.tetrad.search;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.graph.NodePair;
+import edu.cmu.tetrad.util.PValues;
 import edu.cmu.tetrad.util.ProbUtils;
 import edu.cmu.tetrad.util.RandomUtil;
 import edu.cmu.tetrad.util.TetradLogger;
@@ -267,7 +268,7 @@ public final class ResolveSepsets {
             independenceTest.isIndependent(independenceTest.getVariable(x.getName()), independenceTest.getVariable(y.getName()), localCondSet);
             tf += -2.0 * Math.log(independenceTest.getPValue());
         }
-        double p = 1.0 - ProbUtils.chisqCdf(tf, 2 * independenceTests.size());
+        double p = PValues.chiSquare(tf, 2 * independenceTests.size());
         return (p > alpha);
     }
 
@@ -288,7 +289,7 @@ public final class ResolveSepsets {
 //            }
         }
 
-        double p = 1.0 - ProbUtils.chisqCdf(tf, 2 * numPValues);
+        double p = PValues.chiSquare(tf, 2 * numPValues);
 
         return (p > alpha);
     }
@@ -407,7 +408,7 @@ public final class ResolveSepsets {
                 tm += -c * Math.log(pk / (1 - pk));
             }
         }
-        double p = 2.0 * (1.0 - ProbUtils.tCdf(Math.abs(tm), 5 * independenceTests.size() + 4));
+        double p = PValues.tTwoTailed(tm, 5 * independenceTests.size() + 4);
         return (p > alpha);
     }
 
@@ -422,7 +423,7 @@ public final class ResolveSepsets {
         for (double pk : pValues) {
             tm += -c * Math.log(pk / (1 - pk));
         }
-        double p = 2.0 * (1.0 - ProbUtils.tCdf(Math.abs(tm), 5 * pValues.size() + 4));
+        double p = PValues.tTwoTailed(tm, 5 * pValues.size() + 4);
         return (p > alpha);
     }
 
@@ -516,7 +517,7 @@ public final class ResolveSepsets {
             df += ((IndTestChiSquare) independenceTest).getDf();
         }
         df = df / independenceTests.size();
-        double p = 1.0 - ProbUtils.chisqCdf(ts, df);
+        double p = PValues.chiSquare(ts, df);
         return (p > alpha);
     }
 
@@ -35,6 +35,14 @@ public interface Score {
 
     double localScoreDiff(int x, int y);
 
+    /**
+     * Scores the addition of each of the xs as a parent of y, given the
+     * parents z; that is, diffs[i] = localScoreDiff(xs[i], y, z), or
+     * localScoreDiff(xs[i], y) if z is empty. Scores that can share the work
+     * for y and z across the xs should do so.
+     */
+    double[] localScoreDiffs(int[] xs, int y, int[] z);
+
     double localScore(int node, int parent);
 
     double localScore(int node);
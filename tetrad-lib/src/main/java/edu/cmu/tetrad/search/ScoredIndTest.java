@@ -85,6 +85,17 @@ public class ScoredIndTest implements Score {
         return localScore(y, x) - localScore(y);
     }
 
+    @Override
+    public double[] localScoreDiffs(int[] xs, int y, int[] z) {
+        double[] diffs = new double[xs.length];
+
+        for (int i = 0; i < xs.length; i++) {
+            diffs[i] = z.length == 0 ? localScoreDiff(xs[i], y) : localScoreDiff(xs[i], y, z);
+        }
+
+        return diffs;
+    }
+
 
     int[] append(int[] parents, int extra) {
         int[] all = new int[parents.length + 1];
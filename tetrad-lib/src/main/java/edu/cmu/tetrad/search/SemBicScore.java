@@ -63,6 +63,10 @@ public class SemBicScore implements Score {
     // True if verbose output should be sent to out.
     private boolean verbose = false;
     private Set<Integer> forbidden = new HashSet<>();
+
+    // In localScoreDiffs, a variance left after conditioning that is at most this fraction
+    // of the original is taken to signal linear dependence, which localScore handles.
+    private static final double NEAR_SINGULAR = 1e-10;
     private final double logn;
 
     /**
@@ -136,6 +140,135 @@ public class SemBicScore implements Score {
         return localScore(y, x) - localScore(y);
     }
 
+    /**
+     * Factors the covariance matrix of z once, as L L', and then for each x
+     * gets the residual variance of y given z and x from the Schur
+     * complements cov(x, x | z) and cov(x, y | z), which take a triangular
+     * solve for x apiece. Falls back to localScoreDiff for any x that is
+     * forbidden, makes the parents linearly dependent or leaves y next to no
+     * residual variance, and for every x if z already is linearly dependent,
+     * holds a forbidden variable or leaves y next to no variance, so that
+     * each difference is localScoreDiff(xs[i], y, z), up to rounding.
+     */
+    @Override
+    public double[] localScoreDiffs(int[] xs, int y, int[] z) {
+        double[] diffs = new double[xs.length];
+        double[][] l = choleskyOfSelection(z);
+
+        ICovarianceMatrix cov = getCovariances();
+        int n = getSampleSize();
+        int p = z.length;
+        double c = getPenaltyDiscount();
+
+        double[] a = new double[p];
+        double[] b = new double[p];
+        double varY = cov.getValue(y, y);
+
+        if (l != null) {
+            solveLower(l, z, y, a);
+
+            for (int j = 0; j < p; j++) {
+                varY -= a[j] * a[j];
+            }
+        }
+
+        double score = score(varY, n, logn, p, c);
+
+        // Falling back may find a linear dependence and forbid one of z, after
+        // which the rest fall back too.
+        boolean fallBack = l == null || !(varY > NEAR_SINGULAR * cov.getValue(y, y)) || containsForbidden(z);
+
+        for (int i = 0; i < xs.length; i++) {
+            int x = xs[i];
+
+            // As localScore(y, z + x) is NaN; without z, localScore(y, x)
+            // does not look at what is forbidden, so that falls back.
+            if (!fallBack && forbidden.contains(x) && z.length > 0) {
+                diffs[i] = Double.NaN;
+                continue;
+            }
+
+            double varX = cov.getValue(x, x);
+            double covXY = cov.getValue(x, y);
+
+            if (!fallBack) {
+                solveLower(l, z, x, b);
+
+                for (int j = 0; j < p; j++) {
+                    varX -= b[j] * b[j];
+                    covXY -= a[j] * b[j];
+                }
+            }
+
+            double residualVariance = varY - covXY * covXY / varX;
+
+            if (fallBack || forbidden.contains(x) || !(varX > NEAR_SINGULAR * cov.getValue(x, x))
+                    || !(residualVariance > NEAR_SINGULAR * cov.getValue(y, y))) {
+                diffs[i] = z.length == 0 ? localScoreDiff(x, y) : localScoreDiff(x, y, z);
+                fallBack = fallBack || containsForbidden(z);
+                continue;
+            }
+
+            diffs[i] = score(residualVariance, n, logn, p + 1, c) - score;
+        }
+
+        return diffs;
+    }
+
+    private boolean containsForbidden(int[] z) {
+        for (int p : z) {
+            if (forbidden.contains(p)) return true;
+        }
+
+        return false;
+    }
+
+    // The lower triangular Cholesky factor of cov(z, z), by rows, or null if
+    // that is not positive definite, or nearly not.
+    private double[][] choleskyOfSelection(int[] z) {
+        ICovarianceMatrix cov = getCovariances();
+        double[][] l = new double[z.length][];
+
+        for (int k = 0; k < z.length; k++) {
+            double[] row = l[k] = new double[k + 1];
+            double d = cov.getValue(z[k], z[k]);
+
+            for (int i = 0; i < k; i++) {
+                double s = cov.getValue(z[i], z[k]);
+
+                for (int j = 0; j < i; j++) {
+                    s -= l[i][j] * row[j];
+                }
+
+                row[i] = s / l[i][i];
+                d -= row[i] * row[i];
+            }
+
+            if (!(d > NEAR_SINGULAR * cov.getValue(z[k], z[k]))) {
+                return null;
+            }
+
+            row[k] = Math.sqrt(d);
+        }
+
+        return l;
+    }
+
+    // Solves L v = cov(z, x) for v.
+    private double[] solveLower(double[][] l, int[] z, int x, double[] v) {
+        for (int i = 0; i < z.length; i++) {
+            double s = getCovariances().getValue(z[i], x);
+
+            for (int j = 0; j < i; j++) {
+                s -= l[i][j] * v[j];
+            }
+
+            v[i] = s / l[i][i];
+        }
+
+        return v;
+    }
+
     private int[] append(int[] parents, int extra) {
         int[] all = new int[parents.length + 1];
         System.arraycopy(parents, 0, all, 0, parents.length);
@@ -127,6 +127,29 @@ public class SemBicScoreImages implements ISemBicScore, Score {
         return localScoreDiff(x, y, new int[0]);
     }
 
+    @Override
+    public double[] localScoreDiffs(int[] xs, int y, int[] z) {
+        double[] sums = new double[xs.length];
+        int[] counts = new int[xs.length];
+
+        for (SemBicScore score : semBicScores) {
+            double[] _scores = score.localScoreDiffs(xs, y, z);
+
+            for (int i = 0; i < xs.length; i++) {
+                if (!Double.isNaN(_scores[i])) {
+                    sums[i] += _scores[i];
+                    counts[i]++;
+                }
+            }
+        }
+
+        for (int i = 0; i < xs.length; i++) {
+            sums[i] /= counts[i];
+        }
+
+        return sums;
+    }
+
     /**
      * Calculates the sample likelihood and BIC score for i given its parents in a simple SEM model
      */
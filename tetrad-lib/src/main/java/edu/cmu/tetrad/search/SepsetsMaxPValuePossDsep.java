@@ -133,96 +133,7 @@ public class SepsetsMaxPValuePossDsep implements SepsetProducer {
     }
 
     public static Set<Node> possibleDsep(Node x, Node y, Graph graph, int maxPathLength) {
-        Set<Node> dsep = new HashSet<>();
-
-        Queue<OrderedPair<Node>> Q = new ArrayDeque<>();
-        Set<OrderedPair<Node>> V = new HashSet<>();
-
-        Map<Node, List<Node>> previous = new HashMap<>();
-        previous.put(x, null);
-
-        OrderedPair e = null;
-        int distance = 0;
-
-        for (Node b : graph.getAdjacentNodes(x)) {
-            if (b == y) continue;
-            OrderedPair<Node> edge = new OrderedPair<>(x, b);
-            if (e == null) e = edge;
-            Q.offer(edge);
-            V.add(edge);
-            addToList(previous, b, x);
-            dsep.add(b);
-        }
-
-        while (!Q.isEmpty()) {
-            OrderedPair<Node> t = Q.poll();
-
-            if (e == t) {
-                e = null;
-                distance++;
-                if (distance > 0 && distance > (maxPathLength == -1 ? 1000 : maxPathLength)) break;
-            }
-
-            Node a = t.getFirst();
-            Node b = t.getSecond();
-
-            if (existOnePathWithPossibleParents(previous, b, x, b, graph)) {
-                dsep.add(b);
-            }
-
-            for (Node c : graph.getAdjacentNodes(b)) {
-                if (c == a) continue;
-                if (c == x) continue;
-                if (c == y) continue;
-
-                addToList(previous, b, c);
-
-                if (graph.isDefCollider(a, b, c) || graph.isAdjacentTo(a, c)) {
-                    OrderedPair<Node> u = new OrderedPair<>(a, c);
-                    if (V.contains(u)) continue;
-
-                    V.add(u);
-                    Q.offer(u);
-
-                    if (e == null) {
-                        e = u;
-                    }
-                }
-            }
-        }
-
-        dsep.remove(x);
-        dsep.remove(y);
-        return dsep;
-    }
-
-    private static boolean existOnePathWithPossibleParents(Map<Node, List<Node>> previous, Node w, Node x, Node b, Graph graph) {
-        if (w == x) return true;
-        final List<Node> p = previous.get(w);
-        if (p == null) return false;
-
-        for (Node r : p) {
-            if (r == b || r == x) continue;
-
-            if ((existsSemidirectedPath(r, x, graph)) ||
-                    existsSemidirectedPath(r, b, graph)) {
-                if (existOnePathWithPossibleParents(previous, r, x, b, graph)) {
-                    return true;
-                }
-            }
-        }
-
-        return false;
-    }
-
-    private static void addToList(Map<Node, List<Node>> previous, Node b, Node c) {
-        List<Node> list = previous.get(c);
-
-        if (list == null) {
-            list = new ArrayList<>();
-        }
-
-        list.add(b);
+        return GraphUtils.possibleDsep(x, y, graph, maxPathLength);
     }
 
     public static boolean existsSemidirectedPath(Node from, Node to, Graph G) {
@@ -24,14 +24,9 @@ package edu.cmu.tetrad.search;
 import edu.cmu.tetrad.data.IKnowledge;
 import edu.cmu.tetrad.data.Knowledge2;
 import edu.cmu.tetrad.graph.Graph;
-import edu.cmu.tetrad.graph.GraphUtils;
 import edu.cmu.tetrad.graph.Node;
-import edu.cmu.tetrad.util.ChoiceGenerator;
 
-import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
 
 public class SepsetsPossibleDsep implements SepsetProducer {
     private Graph graph;
@@ -41,6 +36,11 @@ public class SepsetsPossibleDsep implements SepsetProducer {
     private int depth = -1;
     private boolean verbose = false;
 
+    /**
+     * Finds the sepsets from among the subsets of Possible-D-Sep, in parallel.
+     */
+    private final PossibleDsepConcurrent possibleDsep;
+
     public SepsetsPossibleDsep(Graph graph, IndependenceTest independenceTest, IKnowledge knowledge,
                                int depth, int maxPathLength) {
         this.graph = graph;
@@ -48,19 +48,22 @@ public class SepsetsPossibleDsep implements SepsetProducer {
         this.maxPathLength = maxPathLength;
         this.knowledge = knowledge;
         this.depth = depth;
+
+        this.possibleDsep = new PossibleDsepConcurrent(graph, independenceTest);
+        this.possibleDsep.setKnowledge(knowledge);
+        this.possibleDsep.setDepth(depth);
+        this.possibleDsep.setMaxPathLength(maxPathLength);
     }
 
     /**
-     * Pick out the sepset from among adj(i) or adj(k) with the highest p value.
+     * Pick out the first sepset from among the subsets of Possible-D-Sep(i, k) or Possible-D-Sep(k, i).
      */
     public List<Node> getSepset(Node i, Node k) {
-        List<Node> condSet = getCondSet(i, k, maxPathLength);
-
-        if (condSet == null) {
-            condSet = getCondSet(k, i, maxPathLength);
+        if (verbose) {
+            System.out.println("Possible-D-Sep(" + i + ", " + k + ") = " + possibleDsep.getPossibleDsep(i, k));
         }
 
-        return condSet;
+        return possibleDsep.getSepset(i, k);
     }
 
     public boolean isCollider(Node i, Node j, Node k) {
@@ -78,65 +81,12 @@ public class SepsetsPossibleDsep implements SepsetProducer {
         return independenceTest.isIndependent(a, b, c);
     }
 
-    private List<Node> getCondSet(Node node1, Node node2, int maxPathLength) {
-        final Set<Node> possibleDsepSet = getPossibleDsep(node1, node2, maxPathLength);
-        List<Node> possibleDsep = new ArrayList<>(possibleDsepSet);
-        boolean noEdgeRequired = knowledge.noEdgeRequired(node1.getName(), node2.getName());
-
-        List<Node> possParents = possibleParents(node1, possibleDsep, knowledge);
-
-        int _depth = depth == -1 ? 1000 : depth;
-
-        for (int d = 0; d <= Math.min(_depth, possParents.size()); d++) {
-            ChoiceGenerator cg = new ChoiceGenerator(possParents.size(), d);
-            int[] choice;
-
-            while ((choice = cg.next()) != null) {
-                List<Node> condSet = GraphUtils.asList(choice, possParents);
-                boolean independent = independenceTest.isIndependent(node1, node2, condSet);
-
-                if (independent && noEdgeRequired) {
-                    return condSet;
-                }
-            }
-        }
-
-        return null;
-    }
-
-    private Set<Node> getPossibleDsep(Node x, Node y, int maxPathLength) {
-        Set<Node> dsep = GraphUtils.possibleDsep(x, y, graph, maxPathLength);
-//        TetradLogger.getInstance().log("details", "Possible-D-Sep(" + x + ", " + y + ") = " + dsep);
-
-        if (verbose) {
-            System.out.println("Possible-D-Sep(" + x + ", " + y + ") = " + dsep);
-        }
-
-        return dsep;
-
-    }
-
     /**
-     * Removes from the list of nodes any that cannot be parents of x given the background knowledge.
+     * @param timeBudget the most milliseconds spent looking for a sepset of a pair, or -1 if unlimited. A pair that
+     *                   runs out of time is taken to have no sepset.
      */
-    private List<Node> possibleParents(Node x, List<Node> nodes,
-                                       IKnowledge knowledge) {
-        List<Node> possibleParents = new LinkedList<>();
-        String _x = x.getName();
-
-        for (Node z : nodes) {
-            String _z = z.getName();
-
-            if (possibleParentOf(_z, _x, knowledge)) {
-                possibleParents.add(z);
-            }
-        }
-
-        return possibleParents;
-    }
-
-    private boolean possibleParentOf(String _z, String _x, IKnowledge bk) {
-        return !(bk.isForbidden(_z, _x) || bk.isRequired(_x, _z));
+    public void setTimeBudget(long timeBudget) {
+        possibleDsep.setTimeBudget(timeBudget);
     }
 
     @Override
@@ -0,0 +1,169 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.graph.Triple;
+import edu.cmu.tetrad.util.ChoiceGenerator;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Finds and classifies the unshielded triples of a graph, in parallel if the independence test allows. Deciding
+ * whether x *-* y *-* z is a collider takes independence tests of x and z given many subsets of their adjacents, and
+ * the triples do not depend on one another for this, so they can all be classified at once on a fork/join pool: the
+ * pool of the calling task, if there is one, otherwise the shared pool. The results come back in the order of the
+ * triples, and the caller then orients them one at a time, so the graph is the same whatever the number of threads.
+ * <p>
+ * The classifications may depend on the adjacencies of the graph, which must not change while they are made, but not
+ * on its endpoints. They should only be made in parallel if the independence test is a ThreadSafeIndependenceTest.
+ */
+public final class UnshieldedTriples {
+
+    /**
+     * Something to be worked out for each of a list of items, possibly from several threads at once.
+     */
+    public interface Classifier<S, T> {
+        T classify(S item);
+    }
+
+    private UnshieldedTriples() {
+    }
+
+    /**
+     * @return the unshielded triples x *-* y *-* z of the graph, in the order in which the searches in this package
+     * visit them: by y, in the order of the nodes of the graph, then by pairs of adjacents of y, in the order
+     * ChoiceGenerator gives them.
+     */
+    public static List<Triple> getUnshieldedTriples(Graph graph) {
+        List<Triple> triples = new ArrayList<>();
+
+        for (Node y : graph.getNodes()) {
+            List<Node> adjacentNodes = graph.getAdjacentNodes(y);
+
+            if (adjacentNodes.size() < 2) {
+                continue;
+            }
+
+            ChoiceGenerator cg = new ChoiceGenerator(adjacentNodes.size(), 2);
+            int[] combination;
+
+            while ((combination = cg.next()) != null) {
+                Node x = adjacentNodes.get(combination[0]);
+                Node z = adjacentNodes.get(combination[1]);
+
+                if (!graph.isAdjacentTo(x, z)) {
+                    triples.add(new Triple(x, y, z));
+                }
+            }
+        }
+
+        return triples;
+    }
+
+    /**
+     * @return the pairs of nodes at the ends of the given triples, each once, in the order in which they first
+     * appear. The triples with the same ends share whatever is found out about x and z.
+     */
+    public static List<List<Node>> getEnds(List<Triple> triples) {
+        List<List<Node>> ends = new ArrayList<>();
+        Set<List<Node>> seen = new HashSet<>();
+
+        for (Triple triple : triples) {
+            List<Node> pair = Arrays.asList(triple.getX(), triple.getZ());
+
+            if (seen.add(pair)) {
+                ends.add(pair);
+            }
+        }
+
+        return ends;
+    }
+
+    /**
+     * @return the classification of each item, in the order of the items. The items are classified in parallel if
+     * so requested, otherwise one at a time in this thread.
+     */
+    public static <S, T> List<T> classify(final List<S> items, final Classifier<S, T> classifier,
+                                          boolean parallel) {
+        if (!parallel) {
+            List<T> classified = new ArrayList<>(items.size());
+
+            for (S item : items) {
+                classified.add(classifier.classify(item));
+            }
+
+            return classified;
+        }
+
+        final Object[] classes = new Object[items.size()];
+        ForkJoinPool pool = ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool()
+                : ForkJoinPoolInstance.getInstance().getPool();
+        final int chunk = Math.max(1, items.size() / (8 * pool.getParallelism()));
+
+        class ClassifyTask extends RecursiveTask<Boolean> {
+            private int from;
+            private int to;
+
+            public ClassifyTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected Boolean compute() {
+                if (to - from <= chunk) {
+                    for (int i = from; i < to; i++) {
+                        classes[i] = classifier.classify(items.get(i));
+                    }
+
+                    return true;
+                } else {
+                    final int mid = (to + from) / 2;
+
+                    ClassifyTask left = new ClassifyTask(from, mid);
+                    left.fork();
+                    ClassifyTask right = new ClassifyTask(mid, to);
+                    right.compute();
+                    left.join();
+
+                    return true;
+                }
+            }
+        }
+
+        pool.invoke(new ClassifyTask(0, items.size()));
+
+        List<T> classified = new ArrayList<>(classes.length);
+
+        for (Object c : classes) {
+            classified.add((T) c);
+        }
+
+        return classified;
+    }
+}
@@ -84,7 +84,9 @@ public final class KernelGaussian implements Kernel {
 
 
     /**
-     * Sets the bandwidth of the kernel to median distance between two points in the given vector
+     * Sets the bandwidth of the kernel to median distance between two points in the given vector. The median is taken
+     * over the first m pairwise distances, in the order (0, 1), (0, 2), ..., (1, 2), ..., so only those are computed
+     * and the cost is linear in the sample size m.
      *
      * @param dataset dataet containing variable used to set bandwidth
      * @param node    variable used to set bandwidth
@@ -93,10 +95,10 @@ public final class KernelGaussian implements Kernel {
         int col = dataset.getColumn(node);
         int m = dataset.getNumRows();
 
-        double[] diff = new double[(int) Math.pow(m, 2) - m];
+        double[] diff = new double[m];
         int c = 0;
-        for (int i = 0; i < (m - 1); i++) {
-            for (int j = (i + 1); j < m; j++) {
+        for (int i = 0; i < (m - 1) && c < m; i++) {
+            for (int j = (i + 1); j < m && c < m; j++) {
                 diff[c] = Math.abs(dataset.getDouble(i, col) - dataset.getDouble(j, col));
                 c++;
             }
@@ -25,6 +25,7 @@ import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.util.TetradMatrix;
 
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -186,6 +187,96 @@ public class KernelUtils {
         return Gm;
     }
 
+    /**
+     * Computes a low-rank factor G of the Gram matrix, so that K is approximately G G', by pivoted incomplete Cholesky
+     * factorization. Columns are added until the largest remaining diagonal element of K - G G' is no greater than the
+     * precision, or until maxRank columns have been computed. Unlike incompleteCholeskyGramMatrix, the m x m Gram
+     * matrix is never formed and the rows of G are in the order of the rows of the dataset; time is O(m r^2) and
+     * memory O(m r) for a factor of rank r.
+     *
+     * @param kernels   the kernels for each variable
+     * @param dataset   the dataset containing each variable
+     * @param nodes     the variables to construct the Gram matrix for
+     * @param precision the residual diagonal at which the factorization stops
+     * @param maxRank   the maximum number of columns of the factor
+     * @return the columns of G, each of length m.
+     */
+    public static double[][] lowRankGramFactor(List<Kernel> kernels, DataSet dataset, List<Node> nodes,
+                                               double precision, int maxRank) {
+        if (precision < 0) {
+            throw new IllegalArgumentException("Precision must be >= 0");
+        }
+
+        if (maxRank < 1) {
+            throw new IllegalArgumentException("Rank must be >= 1");
+        }
+
+        int m = dataset.getNumRows();
+        double[][] data = new double[nodes.size()][m];
+
+        for (int k = 0; k < nodes.size(); k++) {
+            int col = dataset.getColumn(nodes.get(k));
+
+            for (int i = 0; i < m; i++) {
+                data[k][i] = dataset.getDouble(i, col);
+            }
+        }
+
+        // residual diagonal of the Gram matrix
+        double[] d = new double[m];
+        for (int i = 0; i < m; i++) {
+            d[i] = evaluate(kernels, data, i, i);
+        }
+
+        double[][] g = new double[Math.min(maxRank, m)][];
+        int rank = 0;
+
+        while (rank < g.length) {
+            int pivot = 0;
+            for (int i = 1; i < m; i++) {
+                if (d[i] > d[pivot]) {
+                    pivot = i;
+                }
+            }
+
+            if (!(d[pivot] > precision)) {
+                break;
+            }
+
+            double diag = Math.sqrt(d[pivot]);
+            double[] column = new double[m];
+
+            for (int i = 0; i < m; i++) {
+                double s = evaluate(kernels, data, i, pivot);
+                for (int l = 0; l < rank; l++) {
+                    s -= g[l][i] * g[l][pivot];
+                }
+                column[i] = s / diag;
+            }
+
+            column[pivot] = diag;
+
+            for (int i = 0; i < m; i++) {
+                d[i] -= column[i] * column[i];
+            }
+
+            d[pivot] = 0;
+            g[rank++] = column;
+        }
+
+        return Arrays.copyOf(g, rank);
+    }
+
+    // evaluates tensor product for kernels
+
+    private static double evaluate(List<Kernel> kernels, double[][] data, int i, int j) {
+        double keval = kernels.get(0).eval(data[0][i], data[0][j]);
+        for (int k = 1; k < data.length; k++) {
+            keval *= kernels.get(k).eval(data[k][i], data[k][j]);
+        }
+        return keval;
+    }
+
     // evaluates tensor product for kernels
 
     private static double evaluate(List<Kernel> kernels, DataSet dataset, List<Node> vars, int i, int j) {
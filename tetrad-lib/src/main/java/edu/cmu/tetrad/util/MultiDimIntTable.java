@@ -21,6 +21,7 @@
 
 package edu.cmu.tetrad.util;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -36,6 +37,12 @@ import java.util.Map;
  */
 public class MultiDimIntTable {
 
+    /**
+     * Tables with at most this many cells keep their cells in an array;
+     * larger (usually very sparse) ones keep them in a map.
+     */
+    private static final int MAX_DENSE_CELLS = 1 << 20;
+
     /**
      * A single-dimension array containing all of the cells of the table. Must
      * be at least long enough to contain data for each cell allowed for by the
@@ -44,6 +51,12 @@ public class MultiDimIntTable {
      */
     private Map<Integer, Long> cells;
 
+    /**
+     * The cells, by cell index, for tables small enough to store densely;
+     * otherwise null. May be longer than numCells, since it is reused.
+     */
+    private long[] denseCells;
+
     /**
      * The number of cells in the table. (May be different from the length of
      * cells[].
@@ -114,7 +127,17 @@ public class MultiDimIntTable {
      * @return the new value at that table cell.
      */
     public long increment(int[] coords, int value) {
-        int cellIndex = getCellIndex(coords);
+        return increment(getCellIndex(coords), value);
+    }
+
+    /**
+     * Increments the value at the given cell index (see getCellIndex) by the
+     * specified amount, returning the new value.
+     */
+    public long increment(int cellIndex, int value) {
+        if (denseCells != null) {
+            return denseCells[cellIndex] += value;
+        }
 
         if (!cells.containsKey(cellIndex)) {
             cells.put(cellIndex, 0L);
@@ -124,6 +147,26 @@ public class MultiDimIntTable {
         return cells.get(cellIndex);
     }
 
+    /**
+     * Adds the cells of the given table, which must have the same dimensions,
+     * to the cells of this one.
+     */
+    public void add(MultiDimIntTable table) {
+        if (!Arrays.equals(dims, table.dims)) {
+            throw new IllegalArgumentException("Tables have different dimensions.");
+        }
+
+        if (denseCells != null) {
+            for (int i = 0; i < numCells; i++) {
+                denseCells[i] += table.denseCells[i];
+            }
+        } else {
+            for (Map.Entry<Integer, Long> entry : table.cells.entrySet()) {
+                increment(entry.getKey(), entry.getValue().intValue());
+            }
+        }
+    }
+
     /**
      * Sets the value at the given coordinates to the given value,
      * returning the new value.
@@ -136,6 +179,11 @@ public class MultiDimIntTable {
     @SuppressWarnings({"UnusedDeclaration"})
     public long setValue(int[] coords, int value) {
         int cellIndex = getCellIndex(coords);
+
+        if (denseCells != null) {
+            return denseCells[cellIndex] = value;
+        }
+
         cells.put(cellIndex, (long) value);
         return cells.get(cellIndex);
     }
@@ -147,7 +195,9 @@ public class MultiDimIntTable {
     public long getValue(int[] coords) {
         int cellIndex = getCellIndex(coords);
 
-        if (cells == null || !cells.containsKey(cellIndex)) {
+        if (denseCells != null) {
+            return denseCells[cellIndex];
+        } else if (cells == null || !cells.containsKey(cellIndex)) {
             return 0L;
         } else {
             return cells.get(cellIndex);
@@ -195,6 +245,7 @@ public class MultiDimIntTable {
     public final void reset(int[] dims) {
         if (dims == null) {
             cells = null;
+            denseCells = null;
         } else {
             if (dims.length < 1) {
                 throw new IllegalArgumentException(
@@ -210,13 +261,26 @@ public class MultiDimIntTable {
 
             // Calculate length of cells[] array.
             this.numCells = 1;
+            long size = 1;
 
             for (int dim : dims) {
                 this.numCells *= dim;
+                size = Math.min(size * dim, MAX_DENSE_CELLS + 1L);
             }
 
             // Construct (or reset) cells array.
-            cells = new HashMap<>();
+            if (size <= MAX_DENSE_CELLS) {
+                if (denseCells == null || denseCells.length < size) {
+                    denseCells = new long[(int) size];
+                } else {
+                    Arrays.fill(denseCells, 0, (int) size, 0L);
+                }
+
+                cells = null;
+            } else {
+                denseCells = null;
+                cells = new HashMap<>();
+            }
 
             // Store the dimensions, making a copy for security.
             this.dims = new int[dims.length];
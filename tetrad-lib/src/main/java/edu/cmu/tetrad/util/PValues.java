@@ -0,0 +1,229 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.util;
+
+import cern.jet.stat.Gamma;
+import cern.jet.stat.Probability;
+
+import java.util.Arrays;
+
+/**
+ * <p>P values and critical values for the normal, chi square and t statistics
+ * used by the independence and tetrad tests. These are static and allocate
+ * nothing, so they may be called freely from inner loops and from several
+ * threads at once; constructing an Apache distribution object for each p
+ * value, by contrast, also constructs a random number generator.</p>
+ *
+ * <p>P values are computed directly as upper tail areas rather than as one
+ * minus a CDF, so that small p values keep their relative precision instead
+ * of rounding to zero below about 1e-16. Accuracies, as documented for the
+ * underlying algorithms:</p>
+ *
+ * <ul>
+ * <li>Normal: the Cephes rational approximations to erf and erfc, relative
+ * error about 1e-15 down to the underflow of the tail near |z| = 38.</li>
+ * <li>Chi square: the Cephes complemented incomplete gamma function (series
+ * or continued fraction), relative error about 1e-14 for df up to a few
+ * thousand.</li>
+ * <li>t: the Cephes incomplete beta function, relative error about 1e-13.</li>
+ * </ul>
+ *
+ * <p>Tests that only need to know whether p &gt; alpha may instead compare
+ * the statistic against a cutoff. Cutoffs are accurate to about 1e-12 in the
+ * statistic. Chi square cutoffs are memoized by degrees of freedom for the
+ * most recently used alpha.</p>
+ */
+public final class PValues {
+
+    /**
+     * Chi square cutoffs for the alpha last asked for, indexed by degrees of
+     * freedom; NaN where not computed yet.
+     */
+    private static volatile CutoffTable chiSquareCutoffs = new CutoffTable(Double.NaN, 0);
+
+    private PValues() {
+    }
+
+    /**
+     * @return P(Z &gt; z) for standard normal Z.
+     */
+    public static double normalUpperTail(double z) {
+        return Probability.normal(-z);
+    }
+
+    /**
+     * @return P(|Z| &gt; |z|) for standard normal Z.
+     */
+    public static double normalTwoTailed(double z) {
+        return 2.0 * Probability.normal(-Math.abs(z));
+    }
+
+    /**
+     * @return P(X &gt; x) for X chi square with df degrees of freedom; 1 for x
+     * &lt;= 0.
+     */
+    public static double chiSquare(double x, double df) {
+        if (!(x > 0)) {
+            return Double.isNaN(x) ? Double.NaN : 1.0;
+        }
+
+        return Gamma.incompleteGammaComplement(0.5 * df, 0.5 * x);
+    }
+
+    /**
+     * @return P(|T| &gt; |t|) for T t-distributed with df degrees of freedom.
+     */
+    public static double tTwoTailed(double t, double df) {
+        if (Double.isNaN(t)) {
+            return Double.NaN;
+        }
+
+        if (Double.isInfinite(t)) {
+            return 0.0;
+        }
+
+        return Gamma.incompleteBeta(0.5 * df, 0.5, df / (df + t * t));
+    }
+
+    /**
+     * @return the z &gt; 0 for which P(|Z| &gt; z) = alpha, so that a
+     * two-tailed normal test is independent just when |z| &lt; the cutoff.
+     * This is infinite for alpha = 0 and 0 for alpha = 1.
+     */
+    public static double normalCutoff(double alpha) {
+        checkAlpha(alpha);
+
+        if (alpha == 0) {
+            return Double.POSITIVE_INFINITY;
+        } else if (alpha == 1) {
+            return 0.0;
+        }
+
+        return -Probability.normalInverse(0.5 * alpha);
+    }
+
+    /**
+     * @return the x for which P(X &gt; x) = alpha for X chi square with df
+     * degrees of freedom, so that p &gt; alpha just when the statistic is
+     * less than the cutoff. This is infinite for alpha = 0 and 0 for
+     * alpha = 1.
+     */
+    public static double chiSquareCutoff(double alpha, int df) {
+        if (df < 1) {
+            throw new IllegalArgumentException("Degrees of freedom must be positive: " + df);
+        }
+
+        CutoffTable table = chiSquareCutoffs;
+
+        if (table.alpha != alpha || df >= table.cutoffs.length) {
+            checkAlpha(alpha);
+            boolean sameAlpha = table.alpha == alpha;
+            int size = Math.max(df + 1, sameAlpha ? 2 * table.cutoffs.length : 64);
+            CutoffTable grown = new CutoffTable(alpha, size);
+
+            if (sameAlpha) {
+                System.arraycopy(table.cutoffs, 0, grown.cutoffs, 0, table.cutoffs.length);
+            }
+
+            table = grown;
+            chiSquareCutoffs = table;
+        }
+
+        double cutoff = table.cutoffs[df];
+
+        if (Double.isNaN(cutoff)) {
+            cutoff = chiSquareQuantile(alpha, df);
+            table.cutoffs[df] = cutoff;
+        }
+
+        return cutoff;
+    }
+
+    //==========================PRIVATE METHODS==========================//
+
+    /**
+     * Newton's method on log P(X &gt; x), started from the Wilson-Hilferty
+     * approximation and kept within a bracket.
+     */
+    private static double chiSquareQuantile(double alpha, double df) {
+        if (alpha == 0) {
+            return Double.POSITIVE_INFINITY;
+        } else if (alpha == 1) {
+            return 0.0;
+        }
+
+        double z = -Probability.normalInverse(alpha);
+        double h = 2.0 / (9.0 * df);
+        double w = 1.0 - h + z * Math.sqrt(h);
+        double x = w > 0 ? df * w * w * w : 0.5 * df;
+
+        double lo = 0.0;
+        double hi = Double.POSITIVE_INFINITY;
+        double logAlpha = Math.log(alpha);
+        double a = 0.5 * df;
+        double logGammaA = Gamma.logGamma(a);
+
+        for (int i = 0; i < 100; i++) {
+            double p = chiSquare(x, df);
+            double f = Math.log(p) - logAlpha;
+
+            if (f > 0) {
+                lo = x;
+            } else {
+                hi = x;
+            }
+
+            // d/dx log P(X > x) = -pdf(x) / P(X > x).
+            double logPdf = (a - 1) * Math.log(x) - 0.5 * x - a * Math.log(2.0) - logGammaA;
+            double next = x + f * p / Math.exp(logPdf);
+
+            if (!(next > lo && next < hi)) {
+                next = Double.isInfinite(hi) ? 2.0 * x + 1.0 : 0.5 * (lo + hi);
+            }
+
+            if (Math.abs(next - x) <= 1e-13 * Math.max(1.0, x)) {
+                return next;
+            }
+
+            x = next;
+        }
+
+        return x;
+    }
+
+    private static void checkAlpha(double alpha) {
+        if (!(alpha >= 0 && alpha <= 1)) {
+            throw new IllegalArgumentException("Alpha must be between 0 and 1: " + alpha);
+        }
+    }
+
+    private static class CutoffTable {
+        private final double alpha;
+        private final double[] cutoffs;
+
+        private CutoffTable(double alpha, int size) {
+            this.alpha = alpha;
+            this.cutoffs = new double[size];
+            Arrays.fill(cutoffs, Double.NaN);
+        }
+    }
+}
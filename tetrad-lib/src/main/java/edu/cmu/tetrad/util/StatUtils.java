@@ -24,7 +24,6 @@ package edu.cmu.tetrad.util;
 import cern.colt.list.DoubleArrayList;
 import cern.jet.stat.Descriptive;
 import org.apache.commons.math3.distribution.ChiSquaredDistribution;
-import org.apache.commons.math3.distribution.NormalDistribution;
 
 import java.util.*;
 
@@ -1950,23 +1949,12 @@ public final class StatUtils {
         return c * factorial(c - 1);
     }
 
+    /**
+     * @return the z for which a two-tailed standard normal test has p value alpha.
+     * @see PValues#normalCutoff(double)
+     */
     public static double getZForAlpha(double alpha) {
-        double low = 0.0;
-        double high = 20.0;
-        double mid = 5.0;
-        NormalDistribution dist = new NormalDistribution(0, 1);
-
-        while (high - low > 1e-4) {
-            mid = (high + low) / 2.0;
-            double _alpha = 2.0 * (1.0 - dist.cumulativeProbability(Math.abs(mid)));
-
-            if (_alpha > alpha) {
-                low = mid;
-            } else {
-                high = mid;
-            }
-        }
-        return mid;
+        return PValues.normalCutoff(alpha);
     }
 
     public static double getChiSquareCutoff(double alpha, int df) {
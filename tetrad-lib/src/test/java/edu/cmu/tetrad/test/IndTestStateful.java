@@ -0,0 +1,132 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.DataModel;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.ICovarianceMatrix;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.IndependenceTest;
+import edu.cmu.tetrad.util.TetradMatrix;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Wraps an independence test, keeping the p value of the last test in a field and reading it back to decide, as many
+ * tests do, but yielding in between. Called from several threads at once it gives wrong answers, so the tests use it
+ * to check that searches and wrappers don't call tests that aren't thread-safe concurrently.
+ */
+public final class IndTestStateful implements IndependenceTest {
+    private final IndependenceTest test;
+    private double pValue = Double.NaN;
+
+    public IndTestStateful(IndependenceTest test) {
+        this.test = test;
+    }
+
+    public IndependenceTest indTestSubset(List<Node> vars) {
+        return new IndTestStateful(test.indTestSubset(vars));
+    }
+
+    public boolean isIndependent(Node x, Node y, List<Node> z) {
+        double pValue;
+
+        synchronized (test) {
+            test.isIndependent(x, y, z);
+            pValue = test.getPValue();
+        }
+
+        this.pValue = pValue;
+
+        for (int i = 0; i < 10; i++) {
+            Thread.yield();
+        }
+
+        return this.pValue > test.getAlpha();
+    }
+
+    public boolean isIndependent(Node x, Node y, Node... z) {
+        return isIndependent(x, y, Arrays.asList(z));
+    }
+
+    public boolean isDependent(Node x, Node y, List<Node> z) {
+        return !isIndependent(x, y, z);
+    }
+
+    public boolean isDependent(Node x, Node y, Node... z) {
+        return !isIndependent(x, y, z);
+    }
+
+    public double getPValue() {
+        return pValue;
+    }
+
+    public List<Node> getVariables() {
+        return test.getVariables();
+    }
+
+    public Node getVariable(String name) {
+        return test.getVariable(name);
+    }
+
+    public List<String> getVariableNames() {
+        return test.getVariableNames();
+    }
+
+    public boolean determines(List<Node> z, Node y) {
+        return test.determines(z, y);
+    }
+
+    public double getAlpha() {
+        return test.getAlpha();
+    }
+
+    public void setAlpha(double alpha) {
+        test.setAlpha(alpha);
+    }
+
+    public DataModel getData() {
+        return test.getData();
+    }
+
+    public ICovarianceMatrix getCov() {
+        return test.getCov();
+    }
+
+    public List<DataSet> getDataSets() {
+        return test.getDataSets();
+    }
+
+    public int getSampleSize() {
+        return test.getSampleSize();
+    }
+
+    public List<TetradMatrix> getCovMatrices() {
+        return test.getCovMatrices();
+    }
+
+    public double getScore() {
+        return -(pValue - getAlpha());
+    }
+}
@@ -0,0 +1,138 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.bayes.BayesPm;
+import edu.cmu.tetrad.bayes.MlBayesIm;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.DiscreteVariable;
+import edu.cmu.tetrad.graph.Dag;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.search.BDeuScore;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.apache.commons.math3.special.Gamma;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the BDeu score's counting paths against a direct calculation.
+ */
+public class TestBDeuScore {
+
+    @Test
+    public void testCountingPaths() {
+        RandomUtil.getInstance().setSeed(39482934L);
+
+        Dag dag = new Dag(GraphUtils.randomGraph(8, 0, 10, 30, 15, 15, false));
+        DataSet data = new MlBayesIm(new BayesPm(dag, 3, 4), MlBayesIm.RANDOM).simulateData(200, false);
+
+        BDeuScore score = new BDeuScore(data);
+        BDeuScore adTreeScore = new BDeuScore(data);
+        adTreeScore.setUseAdLeafTree(true);
+
+        // From no parents (dense) to 7 parents, with far more parent states
+        // than records (sparse).
+        for (int numParents = 0; numParents < 8; numParents++) {
+            int[] parents = new int[numParents];
+
+            for (int p = 0; p < numParents; p++) {
+                parents[p] = p + 1;
+            }
+
+            double expected = bdeu(data, 0, parents);
+            double tolerance = 1e-9 * Math.abs(expected);
+
+            assertEquals(expected, score.localScore(0, parents), tolerance);
+            assertEquals(expected, adTreeScore.localScore(0, parents), tolerance);
+        }
+    }
+
+    // Batched score differences count the same cells as localScoreDiff, on
+    // both sides of the switch to sparse counting.
+    @Test
+    public void testLocalScoreDiffs() {
+        RandomUtil.getInstance().setSeed(59382012L);
+
+        Dag dag = new Dag(GraphUtils.randomGraph(10, 0, 12, 30, 15, 15, false));
+        DataSet data = new MlBayesIm(new BayesPm(dag, 3, 4), MlBayesIm.RANDOM).simulateData(300, false);
+
+        BDeuScore score = new BDeuScore(data);
+        int[] xs = {5, 6, 7, 8, 9};
+
+        for (int numParents = 0; numParents < 5; numParents++) {
+            int[] z = new int[numParents];
+
+            for (int p = 0; p < numParents; p++) {
+                z[p] = p + 1;
+            }
+
+            double[] diffs = score.localScoreDiffs(xs, 0, z);
+
+            for (int i = 0; i < xs.length; i++) {
+                assertEquals(score.localScoreDiff(xs[i], 0, z), diffs[i], 1e-9);
+            }
+        }
+    }
+
+    // The BDeu score computed directly over all parent states.
+    private double bdeu(DataSet data, int node, int[] parents) {
+        int c = ((DiscreteVariable) data.getVariable(node)).getNumCategories();
+        int[] dims = new int[parents.length];
+        int r = 1;
+
+        for (int p = 0; p < parents.length; p++) {
+            dims[p] = ((DiscreteVariable) data.getVariable(parents[p])).getNumCategories();
+            r *= dims[p];
+        }
+
+        int[][] n_jk = new int[r][c];
+        int[] n_j = new int[r];
+
+        for (int i = 0; i < data.getNumRows(); i++) {
+            int j = 0;
+
+            for (int p = 0; p < parents.length; p++) {
+                j = j * dims[p] + data.getInt(i, parents[p]);
+            }
+
+            n_jk[j][data.getInt(i, node)]++;
+            n_j[j]++;
+        }
+
+        int vm = data.getNumColumns() - 1;
+        double score = parents.length * Math.log(1.0 / vm) + (vm - parents.length) * Math.log(1.0 - 1.0 / vm);
+        double cellPrior = 1.0 / (c * r);
+        double rowPrior = 1.0 / r;
+
+        for (int j = 0; j < r; j++) {
+            score += Gamma.logGamma(rowPrior) - Gamma.logGamma(rowPrior + n_j[j]);
+
+            for (int k = 0; k < c; k++) {
+                score += Gamma.logGamma(cellPrior + n_jk[j][k]) - Gamma.logGamma(cellPrior);
+            }
+        }
+
+        return score;
+    }
+}
@@ -0,0 +1,256 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.bayes.BayesPm;
+import edu.cmu.tetrad.bayes.MlBayesIm;
+import edu.cmu.tetrad.data.*;
+import edu.cmu.tetrad.graph.Dag;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.io.BinaryDataReader;
+import edu.cmu.tetrad.io.BinaryDataWriter;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the binary data format against data written out and read back in.
+ *
+ * @author Joseph Ramsey
+ */
+public class TestBinaryData {
+
+    private Path setUp(String name) {
+        RandomUtil.getInstance().setSeed(302040392L);
+
+        File dir = new File("target/test_data");
+
+        if (!dir.exists()) {
+            dir.mkdir();
+        }
+
+        return new File(dir, name).toPath();
+    }
+
+    @Test
+    public void testContinuousRoundtrip() throws IOException {
+        Path file = setUp("roundtrip_continuous.bin");
+
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < 5; i++) {
+            nodes.add(new ContinuousVariable("X" + (i + 1)));
+        }
+
+        Graph graph = new Dag(GraphUtils.randomGraph(nodes, 0, 5, 30, 15, 15, false));
+        DataSet dataSet = new SemIm(new SemPm(graph)).simulateData(100, false);
+        dataSet.setDouble(3, 2, Double.NaN);
+
+        BinaryDataWriter.write(dataSet, file);
+        assertTrue(BinaryDataReader.isBinaryDataFile(file));
+
+        DataSet _dataSet = new BinaryDataReader(file).readInData();
+        assertEquals(dataSet, _dataSet);
+
+        _dataSet = new BinaryDataReader(file).readInData(Collections.singleton("X2"));
+        assertEquals(4, _dataSet.getNumColumns());
+        assertNull(_dataSet.getVariable("X2"));
+        assertEquals(dataSet.getDouble(7, 4), _dataSet.getDouble(7, 3), 0.0);
+    }
+
+    @Test
+    public void testDiscreteRoundtrip() throws IOException {
+        Path file = setUp("roundtrip_discrete.bin");
+
+        List<Node> nodes = new ArrayList<>();
+
+        for (int j = 0; j < 5; j++) {
+            nodes.add(new ContinuousVariable("X" + (j + 1)));
+        }
+
+        Dag dag = new Dag(GraphUtils.randomGraph(nodes, 0, 8, 30, 15, 15, false));
+        MlBayesIm bayesIm = new MlBayesIm(new BayesPm(dag), MlBayesIm.RANDOM);
+        DataSet dataSet = bayesIm.simulateData(100, false);
+
+        BinaryDataWriter.write(dataSet, file);
+        DataSet _dataSet = new BinaryDataReader(file).readInData();
+
+        assertEquals(dataSet, _dataSet);
+    }
+
+    @Test
+    public void testMixedRoundtrip() throws IOException {
+        Path file = setUp("roundtrip_mixed.bin");
+
+        List<Node> nodes = new ArrayList<>();
+        nodes.add(new ContinuousVariable("X1"));
+        nodes.add(new DiscreteVariable("X2", Arrays.asList("low", "medium", "high")));
+        nodes.add(new ContinuousVariable("X3"));
+
+        DataSet dataSet = new BoxDataSet(new MixedDataBox(nodes, 10), nodes);
+
+        for (int i = 0; i < 10; i++) {
+            dataSet.setDouble(i, 0, RandomUtil.getInstance().nextNormal(0, 1));
+            dataSet.setInt(i, 1, i % 3);
+            dataSet.setDouble(i, 2, i);
+        }
+
+        BinaryDataWriter.write(dataSet, file);
+        DataSet _dataSet = new BinaryDataReader(file).readInData();
+
+        assertEquals(dataSet.getVariables(), _dataSet.getVariables());
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(dataSet.getDouble(i, 0), _dataSet.getDouble(i, 0), 0.0);
+            assertEquals(dataSet.getInt(i, 1), _dataSet.getInt(i, 1));
+            assertEquals(dataSet.getDouble(i, 2), _dataSet.getDouble(i, 2), 0.0);
+        }
+    }
+
+    @Test
+    public void testCovarianceRoundtrip() throws IOException {
+        Path file = setUp("roundtrip_cov.bin");
+
+        Graph graph = GraphUtils.randomGraph(6, 0, 6, 30, 15, 15, false);
+        DataSet dataSet = new SemIm(new SemPm(graph)).simulateData(200, false);
+        ICovarianceMatrix cov = new CovarianceMatrix(dataSet);
+
+        BinaryDataWriter.write(cov, file);
+        ICovarianceMatrix _cov = new BinaryDataReader(file).readInCovarianceMatrix();
+
+        assertEquals(cov.getVariableNames(), _cov.getVariableNames());
+        assertEquals(cov.getSampleSize(), _cov.getSampleSize());
+        assertTrue(cov.getMatrix().equals(_cov.getMatrix(), 0.0));
+
+        try {
+            new BinaryDataReader(file).readInData();
+            fail("Should not read a covariance matrix as tabular data.");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Blocks are read a window at a time if they are larger than the most
+     * that is mapped at once; windows that end partway through a column or a
+     * row of the covariance matrix are read the same.
+     */
+    @Test
+    public void testMapWindows() throws IOException {
+        Path file = setUp("windows_mixed.bin");
+
+        List<Node> nodes = new ArrayList<>();
+        nodes.add(new ContinuousVariable("X1"));
+        nodes.add(new DiscreteVariable("X2", Arrays.asList("low", "medium", "high")));
+        nodes.add(new ContinuousVariable("X3"));
+
+        DataSet dataSet = new BoxDataSet(new MixedDataBox(nodes, 101), nodes);
+
+        for (int i = 0; i < 101; i++) {
+            dataSet.setDouble(i, 0, RandomUtil.getInstance().nextNormal(0, 1));
+            dataSet.setInt(i, 1, i % 3);
+            dataSet.setDouble(i, 2, i);
+        }
+
+        BinaryDataWriter.write(dataSet, file);
+
+        for (long maxMapSize : new long[]{8, 24, 100, 808}) {
+            BinaryDataReader reader = new BinaryDataReader(file);
+            reader.setMaxMapSize(maxMapSize);
+            DataSet _dataSet = reader.readInData();
+
+            for (int i = 0; i < 101; i++) {
+                assertEquals(dataSet.getDouble(i, 0), _dataSet.getDouble(i, 0), 0.0);
+                assertEquals(dataSet.getInt(i, 1), _dataSet.getInt(i, 1));
+                assertEquals(dataSet.getDouble(i, 2), _dataSet.getDouble(i, 2), 0.0);
+            }
+        }
+
+        file = setUp("windows_cov.bin");
+
+        Graph graph = GraphUtils.randomGraph(7, 0, 7, 30, 15, 15, false);
+        ICovarianceMatrix cov = new CovarianceMatrix(new SemIm(new SemPm(graph)).simulateData(200, false));
+        BinaryDataWriter.write(cov, file);
+
+        for (long maxMapSize : new long[]{8, 40, 56, 400}) {
+            BinaryDataReader reader = new BinaryDataReader(file);
+            reader.setMaxMapSize(maxMapSize);
+
+            assertTrue(cov.getMatrix().equals(reader.readInCovarianceMatrix().getMatrix(), 0.0));
+        }
+    }
+
+    /**
+     * Counts and lengths in the header that don't fit the file are reported
+     * as a corrupted header.
+     */
+    @Test
+    public void testCorruptedHeader() throws IOException {
+        Path file = setUp("corrupted.bin");
+
+        List<Node> nodes = new ArrayList<>();
+        nodes.add(new DiscreteVariable("X1", Arrays.asList("low", "high")));
+        nodes.add(new ContinuousVariable("X2"));
+
+        DataSet dataSet = new BoxDataSet(new MixedDataBox(nodes, 10), nodes);
+
+        // The number of columns is at 16, the length of the first name at 33 and the number of categories of X1 at
+        // 39.
+        int[][] corruptions = {
+                {16, -1}, {16, 1 << 20}, {33, -1}, {33, 1 << 30}, {39, -5}, {39, 1 << 30}
+        };
+
+        for (int[] corruption : corruptions) {
+            BinaryDataWriter.write(dataSet, file);
+
+            try (FileChannel fc = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(corruption[1]).flip();
+                fc.write(buffer, corruption[0]);
+            }
+
+            try {
+                new BinaryDataReader(file).readInData();
+                fail("Should not read a corrupted header.");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains("corrupted header"));
+            }
+        }
+    }
+}
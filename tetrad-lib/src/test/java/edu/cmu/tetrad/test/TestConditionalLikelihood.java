@@ -10,10 +10,14 @@ import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.search.ConditionalGaussianLikelihood;
 import edu.cmu.tetrad.sem.GeneralizedSemIm;
 import edu.cmu.tetrad.sem.GeneralizedSemPm;
+import edu.cmu.tetrad.util.TetradMatrix;
 import edu.pitt.csb.mgm.MixedUtils;
+import org.apache.commons.math3.stat.correlation.Covariance;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 
@@ -70,4 +74,107 @@ public class TestConditionalLikelihood {
         assertEquals(ret1.getLik() + ret2.getLik(), ret3.getLik() + ret4.getLik(), 0.001);
         assertEquals(ret1.getDof() + ret2.getDof(), ret3.getDof() + ret4.getDof(), 0.001);
     }
+
+    // Likelihood ratios from the cached partitions and cell statistics, with and without evictions, agree with
+    // those computed from scratch.
+    @Test
+    public void testCachedCellStatistics() {
+        Graph dag = new EdgeListGraph();
+        HashMap<String, Integer> nd = new HashMap<>();
+
+        for (int i = 0; i < 6; i++) {
+            Node node = new GraphNode("X" + i);
+            dag.addNode(node);
+            nd.put(node.getName(), i % 2 == 0 ? 3 : 0);
+        }
+
+        for (int i = 0; i < 5; i++) {
+            dag.addDirectedEdge(dag.getNodes().get(i), dag.getNodes().get(i + 1));
+        }
+        dag.addDirectedEdge(dag.getNodes().get(0), dag.getNodes().get(3));
+
+        Graph graph = MixedUtils.makeMixedGraph(dag, nd);
+        GeneralizedSemPm pm = MixedUtils.GaussianCategoricalPm(graph, "Split(-1.5,-.5,.5,1.5)");
+        GeneralizedSemIm im = MixedUtils.GaussianCategoricalIm(pm);
+        DataSet data = MixedUtils.makeMixedData(im.simulateDataAvoidInfinity(500, false), nd);
+
+        ConditionalGaussianLikelihood lik = new ConditionalGaussianLikelihood(data);
+        ConditionalGaussianLikelihood evicting = new ConditionalGaussianLikelihood(data, 1);
+
+        int[][] parentSets = {{}, {1}, {2}, {1, 3}, {2, 4}, {1, 2, 3}, {0, 3, 5}, {3, 1}};
+
+        for (int rep = 0; rep < 2; rep++) {
+            for (int i = 0; i < 6; i++) {
+                for (int[] parents : parentSets) {
+                    if (contains(parents, i)) continue;
+
+                    int[] all = new int[parents.length + 1];
+                    System.arraycopy(parents, 0, all, 0, parents.length);
+                    all[parents.length] = i;
+                    double expected = jointLikelihood(data, all) - jointLikelihood(data, parents);
+
+                    ConditionalGaussianLikelihood.Ret ret = lik.getLikelihoodRatio(i, parents);
+                    assertEquals(expected, ret.getLik(), 1e-8 * Math.abs(expected));
+                    assertEquals(expected, evicting.getLikelihoodRatio(i, parents).getLik(),
+                            1e-8 * Math.abs(expected));
+                }
+            }
+        }
+    }
+
+    private static boolean contains(int[] a, int v) {
+        for (int x : a) if (x == v) return true;
+        return false;
+    }
+
+    private static double jointLikelihood(DataSet data, int[] cols) {
+        List<Integer> continuous = new ArrayList<>();
+        List<Integer> discrete = new ArrayList<>();
+
+        for (int col : cols) {
+            if (data.getVariable(col) instanceof ContinuousVariable) continuous.add(col);
+            else discrete.add(col);
+        }
+
+        int n = data.getNumRows();
+        int p = continuous.size();
+        HashMap<List<Integer>, List<Integer>> cells = new HashMap<>();
+
+        for (int i = 0; i < n; i++) {
+            List<Integer> values = new ArrayList<>();
+            for (int col : discrete) values.add(data.getInt(i, col));
+            if (!cells.containsKey(values)) cells.put(values, new ArrayList<Integer>());
+            cells.get(values).add(i);
+        }
+
+        double lik = 0.0;
+
+        for (List<Integer> cell : cells.values()) {
+            int r = cell.size();
+
+            if (!discrete.isEmpty()) {
+                lik += r * Math.log(r / (double) n);
+            }
+
+            if (p > 0) {
+                if (r > 3 * p) {
+                    TetradMatrix subset = new TetradMatrix(r, p);
+
+                    for (int i = 0; i < r; i++) {
+                        for (int j = 0; j < p; j++) {
+                            subset.set(i, j, data.getDouble(cell.get(i), continuous.get(j)));
+                        }
+                    }
+
+                    double det = new TetradMatrix(new Covariance(subset.getRealMatrix(), false)
+                            .getCovarianceMatrix()).det();
+                    lik -= 0.5 * r * Math.log(det);
+                }
+
+                lik -= 0.5 * r * p * (1.0 + Math.log(2.0 * Math.PI));
+            }
+        }
+
+        return lik;
+    }
 }
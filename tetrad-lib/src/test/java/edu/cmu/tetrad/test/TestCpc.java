@@ -29,12 +29,17 @@ import edu.cmu.tetrad.graph.*;
 import edu.cmu.tetrad.search.*;
 import edu.cmu.tetrad.sem.SemIm;
 import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.RandomUtil;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
 
 import static junit.framework.TestCase.fail;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -102,6 +107,50 @@ public class TestCpc {
 
     }
 
+    /**
+     * With an oracle CPC, which classifies the unshielded triples in parallel, should give the pattern of the true
+     * graph.
+     */
+    @Test
+    public void test8() {
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < 30; i++) {
+            nodes.add(new ContinuousVariable("X" + (i + 1)));
+        }
+
+        Dag dag = new Dag(GraphUtils.randomGraph(nodes, 0, 45, 6, 4, 4, false));
+        Graph pattern = SearchGraphUtils.patternForDag(dag);
+
+        IndependenceTest test = new IndTestDSep(dag);
+
+        Graph cpc = new Cpc(test).search();
+
+        assertEquals(new HashSet<>(pattern.getEdges()), new HashSet<>(cpc.getEdges()));
+    }
+
+    /**
+     * The colliders are classified in parallel only if the independence test is thread-safe, so a search gives the
+     * same pattern however many threads there are, with a test that isn't as well.
+     */
+    @Test
+    public void testThreads() throws Exception {
+        RandomUtil.getInstance().setSeed(3302948L);
+
+        Graph dag = GraphUtils.randomGraph(12, 0, 15, 10, 10, 10, false);
+        DataSet data = new SemIm(new SemPm(dag)).simulateData(500, false);
+
+        Graph pattern = searchWithThreads(new Cpc(new IndTestFisherZ(data, 0.05)), 1);
+        assertEquals(pattern, searchWithThreads(new Cpc(new IndTestFisherZ(data, 0.05)), 4));
+
+        Graph tPattern = searchWithThreads(new Cpc(new IndTestCorrelationT(data, 0.05)), 1);
+        assertEquals(tPattern, searchWithThreads(new Cpc(new IndTestCorrelationT(data, 0.05)), 4));
+
+        // This gives wrong answers if called from several threads at once.
+        IndependenceTest stateful = new IndTestStateful(new IndTestCorrelationT(data, 0.05));
+        assertEquals(tPattern, searchWithThreads(new Cpc(stateful), 4));
+    }
+
     /**
      * Presents the input graph to FCI and checks to make sure the output of FCI is equivalent to the given output
      * graph.
@@ -155,7 +204,20 @@ public class TestCpc {
         // Do test.
         assertTrue(resultGraph.equals(trueGraph));
     }
-}
-
-
 
+    // Runs the search as a task in a pool with the given number of threads, so that the parallel parts of it use that
+    // pool.
+    private Graph searchWithThreads(final GraphSearch search, int numThreads) throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+
+        try {
+            return pool.submit(new Callable<Graph>() {
+                public Graph call() {
+                    return search.search();
+                }
+            }).get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -231,7 +231,18 @@ public class TestDagInPatternIterator {
 
         assertEquals(6, count);
     }
-}
 
+    @Test
+    public void test6() {
+        RandomUtil.getInstance().setSeed(2938402L);
+
+        // Big enough, and sparse enough, for Meek's rules to orient components in parallel.
+        Graph dag = GraphUtils.randomGraph(800, 0, 800, 10, 10, 10, false);
+        Graph pattern = SearchGraphUtils.patternForDag(dag);
 
+        DagInPatternIterator iterator = new DagInPatternIterator(pattern);
+        Graph dag2 = iterator.next();
 
+        assertEquals(pattern, SearchGraphUtils.patternForDag(dag2));
+    }
+}
@@ -22,6 +22,12 @@
 package edu.cmu.tetrad.test;
 
 import edu.cmu.tetrad.data.*;
+import edu.cmu.tetrad.io.ConcurrentTabularContinuousDataReader;
+import edu.cmu.tetrad.io.ConcurrentVerticalTabularDiscreteDataReader;
+import edu.cmu.tetrad.io.TabularContinuousDataReader;
+import edu.cmu.tetrad.io.VerticalTabularDiscreteDataReader;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.StatUtils;
 import edu.cmu.tetrad.util.TetradLogger;
 import org.junit.Test;
 
@@ -29,8 +35,17 @@ import java.io.CharArrayWriter;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public final class TestDataReader {
 
@@ -91,6 +106,254 @@ public final class TestDataReader {
 
     }
 
+    // Column types are inferred as the data is scanned; a column that looks
+    // continuous until its last value is still read as discrete.
+    @Test
+    public void testTypeInference() {
+        StringBuilder buf = new StringBuilder("X1\tX2\tX3\tX4\tX5\n");
+
+        for (int i = 0; i < 20; i++) {
+            buf.append(0.1 * i - 0.35).append('\t')
+                    .append(i % 3).append('\t')
+                    .append(10 * i).append('\t')
+                    .append(i == 19 ? "high" : Double.toString(0.5 * i)).append('\t')
+                    .append(i == 7 ? "*" : "1.0e-3").append('\n');
+        }
+
+        DataReader reader = new DataReader();
+        reader.setDelimiter(DelimiterType.TAB);
+        reader.setMaxIntegralDiscrete(5);
+
+        DataSet data = reader.parseTabular(buf.toString().toCharArray());
+
+        assertEquals(20, data.getNumRows());
+        assertTrue(data.getVariable(0) instanceof ContinuousVariable);
+        assertTrue(data.getVariable(1) instanceof DiscreteVariable);
+        assertEquals(3, ((DiscreteVariable) data.getVariable(1)).getNumCategories());
+        assertTrue(data.getVariable(2) instanceof ContinuousVariable);
+        assertTrue(data.getVariable(3) instanceof DiscreteVariable);
+        assertEquals(20, ((DiscreteVariable) data.getVariable(3)).getNumCategories());
+        assertTrue(data.getVariable(4) instanceof ContinuousVariable);
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals(0.1 * i - 0.35, data.getDouble(i, 0), 0.0);
+            assertEquals(10 * i, data.getDouble(i, 2), 0.0);
+        }
+
+        assertEquals(2, data.getInt(5, 1));
+        assertEquals("high", ((DiscreteVariable) data.getVariable(3)).getCategory(data.getInt(19, 3)));
+        assertTrue(Double.isNaN(data.getDouble(7, 4)));
+        assertEquals(1.0e-3, data.getDouble(8, 4), 0.0);
+    }
+
+    // The concurrent continuous reader should read quoted values, CRLF line breaks and a last line without a line
+    // break as the serial one does, with the file cut into many more chunks than lines, so that most cuts fall
+    // inside a token, quoted or not.
+    @Test
+    public void testConcurrentContinuousReader() throws IOException {
+        Random random = new Random(2738L);
+
+        for (String lineBreak : new String[]{"\n", "\r\n"}) {
+            for (boolean lastLineBreak : new boolean[]{false, true}) {
+                StringBuilder buf = new StringBuilder("X1,\"X2\",X3,'X4'").append(lineBreak);
+
+                for (int i = 0; i < 200; i++) {
+                    buf.append(random.nextGaussian()).append(',')
+                            .append('"').append(random.nextInt(1000) - 500).append('"').append(',')
+                            .append(' ').append(random.nextDouble() * 1e-5).append(' ').append(',')
+                            .append('\'').append(random.nextGaussian() * 1e8).append('\'');
+
+                    if (i < 199 || lastLineBreak) {
+                        buf.append(lineBreak);
+                    }
+                }
+
+                Path file = writeTempFile(buf.toString());
+
+                try {
+                    for (Set<String> excluded : new Set[]{Collections.EMPTY_SET, Collections.singleton("X2")}) {
+                        DataSet expected = new TabularContinuousDataReader(file, ',').readInData(excluded);
+
+                        for (int numOfThreads : new int[]{1, 3, 64}) {
+                            DataSet data = new ConcurrentTabularContinuousDataReader(file, ',', numOfThreads)
+                                    .readInData(excluded);
+                            assertSameData(expected, data);
+                        }
+                    }
+                } finally {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    // The variances kept while the data are read in should be those of the columns, and exactly zero for constant
+    // columns that aren't whole numbers. The lines are all as long, so that the 96 rows are cut into 4 chunks per
+    // thread of 24, 12, 6 or 3 rows, for which 3.3 * n / n is not 3.3.
+    @Test
+    public void testConcurrentContinuousReaderVariances() throws IOException {
+        Random random = new Random(5529L);
+        double[] constants = {3.3, 0.1, -2.7e-3, 7};
+        StringBuilder buf = new StringBuilder("X1,X2,X3,X4,X5\n");
+
+        for (int i = 0; i < 96; i++) {
+            buf.append(String.format(Locale.US, "%.6f", random.nextDouble()));
+
+            for (double constant : constants) {
+                buf.append(',').append(constant);
+            }
+
+            buf.append('\n');
+        }
+
+        Path file = writeTempFile(buf.toString());
+
+        try {
+            for (int numOfThreads : new int[]{1, 2, 4, 8, 64}) {
+                ConcurrentTabularContinuousDataReader reader
+                        = new ConcurrentTabularContinuousDataReader(file, ',', numOfThreads);
+                DataSet data = reader.readInData();
+                double[] variances = reader.getVariances();
+
+                assertEquals(StatUtils.variance(data.getDoubleData().getColumn(0).toArray()), variances[0], 1e-12);
+
+                for (int j = 1; j < 5; j++) {
+                    assertEquals(0.0, variances[j], 0.0);
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    // Missing and unparsable values should be reported as by the serial continuous reader.
+    @Test
+    public void testConcurrentContinuousReaderErrors() throws IOException {
+        String[] contents = {
+                "X1,X2\n1,2\n3,\n5,6\n",
+                "X1,X2\n1,2\r\n3,4\r\n,6",
+                "X1,X2\n1,2\n3,4\n5,",
+                "X1,X2\n1,2\n3,*\n5,6\n",
+                "X1,X2\n1,2\n3\n5,6\n",
+                "X1,X2\n1,2\n3,4,5\n5,6\n"
+        };
+
+        for (String content : contents) {
+            Path file = writeTempFile(content);
+
+            try {
+                String expected = readError(new TabularContinuousDataReader(file, ','));
+
+                for (int numOfThreads : new int[]{1, 8}) {
+                    assertEquals(expected, readError(new ConcurrentTabularContinuousDataReader(file, ',', numOfThreads)));
+                }
+            } finally {
+                Files.delete(file);
+            }
+        }
+    }
+
+    // As for the continuous reader, with categories that are sometimes quoted.
+    @Test
+    public void testConcurrentDiscreteReader() throws IOException {
+        Random random = new Random(9281L);
+        String[] categories = {"low", "\"mid\"", "'high'", "0", "1"};
+
+        for (String lineBreak : new String[]{"\n", "\r\n"}) {
+            for (boolean lastLineBreak : new boolean[]{false, true}) {
+                StringBuilder buf = new StringBuilder("A\t\"B\"\tC").append(lineBreak);
+
+                for (int i = 0; i < 200; i++) {
+                    buf.append(categories[random.nextInt(3)]).append('\t')
+                            .append(categories[random.nextInt(5)]).append('\t')
+                            .append(' ').append(categories[3 + random.nextInt(2)]);
+
+                    if (i < 199 || lastLineBreak) {
+                        buf.append(lineBreak);
+                    }
+                }
+
+                Path file = writeTempFile(buf.toString());
+
+                try {
+                    for (Set<String> excluded : new Set[]{Collections.EMPTY_SET, Collections.singleton("A")}) {
+                        DataSet expected = new VerticalTabularDiscreteDataReader(file, '\t').readInData(excluded);
+
+                        for (int numOfThreads : new int[]{1, 3, 64}) {
+                            DataSet data = new ConcurrentVerticalTabularDiscreteDataReader(file, '\t', numOfThreads)
+                                    .readInData(excluded);
+                            assertSameData(expected, data);
+                        }
+                    }
+                } finally {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    // Missing values should be reported as by the serial discrete reader.
+    @Test
+    public void testConcurrentDiscreteReaderErrors() throws IOException {
+        String[] contents = {
+                "A\tB\na\tb\nc\t\na\tb\n",
+                "A\tB\na\tb\r\nc\td\r\n\tb",
+                "A\tB\na\tb\nc\td\na\t",
+                "A\tB\na\tb\nc\na\tb\n"
+        };
+
+        for (String content : contents) {
+            Path file = writeTempFile(content);
+
+            try {
+                String expected = readError(new VerticalTabularDiscreteDataReader(file, '\t'));
+
+                for (int numOfThreads : new int[]{1, 8}) {
+                    assertEquals(expected, readError(new ConcurrentVerticalTabularDiscreteDataReader(file, '\t', numOfThreads)));
+                }
+            } finally {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private Path writeTempFile(String content) throws IOException {
+        Path file = Files.createTempFile("tetrad-reader", ".txt");
+        Files.write(file, content.getBytes(StandardCharsets.US_ASCII));
+        return file;
+    }
+
+    // Reads the data, which should fail, and returns the message.
+    private String readError(edu.cmu.tetrad.io.DataReader reader) {
+        try {
+            reader.readInData();
+        } catch (IOException e) {
+            return e.getMessage();
+        }
+
+        fail("Expected the data not to be read.");
+        return null;
+    }
+
+    private void assertSameData(DataSet expected, DataSet data) {
+        assertEquals(expected.getNumRows(), data.getNumRows());
+        assertEquals(expected.getNumColumns(), data.getNumColumns());
+
+        for (int j = 0; j < expected.getNumColumns(); j++) {
+            Node variable = expected.getVariable(j);
+            assertEquals(variable.getName(), data.getVariable(j).getName());
+
+            for (int i = 0; i < expected.getNumRows(); i++) {
+                if (variable instanceof DiscreteVariable) {
+                    assertEquals(((DiscreteVariable) variable).getCategory(expected.getInt(i, j)),
+                            ((DiscreteVariable) data.getVariable(j)).getCategory(data.getInt(i, j)));
+                } else {
+                    assertEquals(expected.getDouble(i, j), data.getDouble(i, j), 0.0);
+                }
+            }
+        }
+    }
+
     private char[] fileToCharArray(File file) {
         try {
             FileReader reader = new FileReader(file);
@@ -22,16 +22,24 @@
 package edu.cmu.tetrad.test;
 
 import edu.cmu.tetrad.data.ContinuousVariable;
+import edu.cmu.tetrad.data.CovarianceMatrix;
+import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.graph.Graph;
 import edu.cmu.tetrad.graph.GraphUtils;
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.search.*;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.RandomUtil;
 import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author Joseph Ramsey
@@ -58,6 +66,100 @@ public class TestFas {
 
         assertEquals(fasGraph, GraphUtils.undirectedGraph(pcGraph));
     }
+
+    @Test
+    public void test2() {
+        RandomUtil.getInstance().setSeed(4938223L);
+
+        List<Node> vars = new ArrayList<>();
+
+        for (int i = 0; i < 40; i++) {
+            vars.add(new ContinuousVariable("X" + i));
+        }
+
+        Graph graph = GraphUtils.randomGraph(vars, 0, 80, 30, 15, 15, false);
+        DataSet data = new SemIm(new SemPm(graph)).simulateData(500, false);
+        IndependenceTest test = new IndTestFisherZ(new CovarianceMatrix(data), 0.05);
+
+        // The two may find different sepsets for an edge, but should remove the same edges.
+        FasStableConcurrent fas = new FasStableConcurrent(test);
+        Graph fasGraph = fas.search();
+        Graph fasStableGraph = new FasStable(test).search();
+
+        assertEquals(fasStableGraph, fasGraph);
+
+        for (Node x : test.getVariables()) {
+            for (Node y : test.getVariables()) {
+                if (x != y && !fasGraph.isAdjacentTo(x, y)) {
+                    assertTrue(test.isIndependent(x, y, fas.getSepsets().get(x, y)));
+                }
+            }
+        }
+    }
+
+    /**
+     * The nodes are searched in parallel only if the independence test is thread-safe, so the adjacencies and sepsets
+     * are the same however many threads there are, with a test that isn't as well.
+     */
+    @Test
+    public void testThreads() throws Exception {
+        RandomUtil.getInstance().setSeed(5820394L);
+
+        Graph graph = GraphUtils.randomGraph(30, 0, 45, 30, 15, 15, false);
+        DataSet data = new SemIm(new SemPm(graph)).simulateData(500, false);
+
+        IndependenceTest[] tests = {
+                new IndTestFisherZ(data, 0.05),
+                new IndTestCorrelationT(data, 0.05),
+
+                // This gives wrong answers if called from several threads at once.
+                new IndTestStateful(new IndTestCorrelationT(data, 0.05))
+        };
+
+        FasStableConcurrent tFas = null;
+
+        for (IndependenceTest test : tests) {
+            FasStableConcurrent fas = new FasStableConcurrent(test);
+            FasStableConcurrent fas4 = new FasStableConcurrent(test);
+            assertSameSearch(searchWithThreads(fas, 1), fas, searchWithThreads(fas4, 4), fas4);
+
+            if (test instanceof IndTestCorrelationT) {
+                tFas = fas;
+            } else if (test instanceof IndTestStateful) {
+                assertSameSearch(searchWithThreads(tFas, 1), tFas, searchWithThreads(fas, 1), fas);
+            }
+        }
+    }
+
+    private void assertSameSearch(Graph graph1, FasStableConcurrent fas1, Graph graph2, FasStableConcurrent fas2) {
+        assertEquals(graph1, graph2);
+
+        List<Node> nodes = graph1.getNodes();
+
+        for (Node x : nodes) {
+            for (Node y : nodes) {
+                if (x != y && !graph1.isAdjacentTo(x, y)) {
+                    assertEquals(fas1.getSepsets().get(x, y), fas2.getSepsets().get(x, y));
+                }
+            }
+        }
+    }
+
+    // Runs the search as a task in a pool with the given number of threads, so that the parallel parts of it use that
+    // pool.
+    private Graph searchWithThreads(final FasStableConcurrent fas, int numThreads) throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+
+        try {
+            return pool.submit(new Callable<Graph>() {
+                public Graph call() {
+                    return fas.search();
+                }
+            }).get();
+        } finally {
+            pool.shutdown();
+        }
+    }
 }
 
 
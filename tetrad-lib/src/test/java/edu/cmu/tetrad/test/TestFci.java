@@ -27,6 +27,7 @@ import edu.cmu.tetrad.search.*;
 import edu.cmu.tetrad.sem.SemIm;
 import edu.cmu.tetrad.sem.SemPm;
 import edu.cmu.tetrad.util.ChoiceGenerator;
+import edu.cmu.tetrad.util.RandomUtil;
 import edu.cmu.tetrad.util.TetradLogger;
 import edu.cmu.tetrad.util.TextTable;
 import org.junit.Ignore;
@@ -35,6 +36,8 @@ import org.junit.Test;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -223,6 +226,48 @@ public class TestFci {
         search.search();
     }
 
+    /**
+     * R0 and the possible dsep search are done in parallel only if the independence test is thread-safe, so a search
+     * gives the same PAG however many threads there are, with a test that isn't as well.
+     */
+    @Test
+    public void testThreads() throws Exception {
+        RandomUtil.getInstance().setSeed(8829301L);
+
+        Graph dag = GraphUtils.randomGraph(12, 3, 15, 10, 10, 10, false);
+        DataSet data = DataUtils.restrictToMeasured(new SemIm(new SemPm(dag)).simulateData(500, false));
+
+        IndependenceTest[] tests = {
+                new IndTestFisherZ(data, 0.05),
+                new IndTestCorrelationT(data, 0.05),
+
+                // This gives wrong answers if called from several threads at once.
+                new IndTestStateful(new IndTestCorrelationT(data, 0.05))
+        };
+
+        Graph tPag = null;
+        Graph tCfciPag = null;
+
+        for (IndependenceTest test : tests) {
+            Fci fci = new Fci(test);
+            fci.setCompleteRuleSetUsed(true);
+            Graph pag = searchWithThreads(fci, 1);
+            assertEquals(pag, searchWithThreads(fci, 4));
+
+            Cfci cfci = new Cfci(test);
+            Graph cfciPag = searchWithThreads(cfci, 1);
+            assertEquals(cfciPag, searchWithThreads(cfci, 4));
+
+            if (test instanceof IndTestCorrelationT) {
+                tPag = pag;
+                tCfciPag = cfciPag;
+            } else if (test instanceof IndTestStateful) {
+                assertEquals(tPag, pag);
+                assertEquals(tCfciPag, cfciPag);
+            }
+        }
+    }
+
     /**
      * Presents the input graph to FCI and checks to make sure the output of FCI is equivalent to the given output
      * graph.
@@ -483,9 +528,19 @@ public class TestFci {
         return pathThrough;
     }
 
-}
-
-
-
-
+    // Runs the search as a task in a pool with the given number of threads, so that the parallel parts of it use that
+    // pool.
+    private Graph searchWithThreads(final GraphSearch search, int numThreads) throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
 
+        try {
+            return pool.submit(new Callable<Graph>() {
+                public Graph call() {
+                    return search.search();
+                }
+            }).get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
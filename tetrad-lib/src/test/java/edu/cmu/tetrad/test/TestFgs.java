@@ -40,9 +40,13 @@ import java.io.*;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * @author Joseph Ramsey
@@ -213,6 +217,117 @@ public class TestFgs {
     }
 
 
+    // Batched score differences agree with one at a time, including for a
+    // candidate parent that is a linear function of the others.
+    @Test
+    public void testLocalScoreDiffs() {
+        RandomUtil.getInstance().setSeed(49203948L);
+
+        Graph graph = GraphUtils.randomGraph(8, 0, 10, 30, 15, 15, false);
+        DataSet simulated = new SemIm(new SemPm(graph)).simulateData(500, false);
+
+        List<Node> variables = new ArrayList<>(simulated.getVariables());
+        variables.add(new ContinuousVariable("Sum"));
+        DataSet data = new BoxDataSet(new DoubleDataBox(500, 9), variables);
+
+        for (int i = 0; i < 500; i++) {
+            for (int j = 0; j < 8; j++) {
+                data.setDouble(i, j, simulated.getDouble(i, j));
+            }
+
+            data.setDouble(i, 8, data.getDouble(i, 1) + data.getDouble(i, 2));
+        }
+
+        ICovarianceMatrix cov = new CovarianceMatrix(data);
+        int[] xs = {3, 4, 5, 6, 7, 8};
+
+        // The score learns to avoid linearly dependent parents as it goes, so
+        // each calculation starts over.
+        for (int[] z : new int[][]{{}, {1}, {1, 2}}) {
+            double[] diffs = new SemBicScore(cov).localScoreDiffs(xs, 0, z);
+
+            for (int i = 0; i < xs.length; i++) {
+                SemBicScore score = new SemBicScore(cov);
+                double expected = z.length == 0 ? score.localScoreDiff(xs[i], 0) : score.localScoreDiff(xs[i], 0, z);
+
+                if (Double.isNaN(expected)) {
+                    assertTrue(Double.isNaN(diffs[i]));
+                } else {
+                    assertEquals(expected, diffs[i], 1e-6 * Math.abs(expected) + 1e-9);
+                }
+            }
+        }
+    }
+
+    // Once the score has found a linear dependence and forbidden a
+    // variable, each batched difference is still the one at a time one, for
+    // the forbidden variable too, whether there are other parents or not, and
+    // for a y that the parents leave next to no variance.
+    @Test
+    public void testLocalScoreDiffsForbidden() {
+        RandomUtil.getInstance().setSeed(2938402L);
+
+        Graph graph = GraphUtils.randomGraph(8, 0, 10, 30, 15, 15, false);
+        DataSet simulated = new SemIm(new SemPm(graph)).simulateData(500, false);
+
+        List<Node> variables = new ArrayList<>(simulated.getVariables());
+        variables.add(new ContinuousVariable("Sum"));
+        DataSet data = new BoxDataSet(new DoubleDataBox(500, 9), variables);
+
+        for (int i = 0; i < 500; i++) {
+            for (int j = 0; j < 8; j++) {
+                data.setDouble(i, j, simulated.getDouble(i, j));
+            }
+
+            data.setDouble(i, 8, data.getDouble(i, 1) + data.getDouble(i, 2));
+        }
+
+        SemBicScore score = new SemBicScore(new CovarianceMatrix(data));
+        score.setOut(new PrintStream(new ByteArrayOutputStream()));
+
+        // Forbids Sum.
+        assertTrue(Double.isNaN(score.localScore(0, 8, 1, 2)));
+        assertTrue(Double.isNaN(score.localScore(0, new int[]{8, 3})));
+
+        for (int y : new int[]{0, 8}) {
+            for (int[] z : new int[][]{{}, {3}, {3, 4}, {1}, {8}}) {
+                List<Integer> _xs = new ArrayList<>();
+
+                for (int x = 0; x < 9; x++) {
+                    if (x != y && !contains(z, x)) _xs.add(x);
+                }
+
+                int[] xs = new int[_xs.size()];
+                for (int i = 0; i < xs.length; i++) xs[i] = _xs.get(i);
+
+                double[] diffs = score.localScoreDiffs(xs, y, z);
+
+                for (int i = 0; i < xs.length; i++) {
+                    double expected = z.length == 0 ? score.localScoreDiff(xs[i], y)
+                            : score.localScoreDiff(xs[i], y, z);
+
+                    assertEquals(Double.isNaN(expected), Double.isNaN(diffs[i]));
+
+                    if (!Double.isNaN(expected)) {
+                        assertEquals(expected, diffs[i], 1e-6 * Math.abs(expected) + 1e-9);
+                    }
+                }
+            }
+        }
+
+        // Without other parents the forbidden variable is scored, as one at a
+        // time.
+        assertFalse(Double.isNaN(score.localScoreDiffs(new int[]{8}, 0, new int[0])[0]));
+    }
+
+    private static boolean contains(int[] z, int x) {
+        for (int v : z) {
+            if (v == x) return true;
+        }
+
+        return false;
+    }
+
     @Test
     public void testFromGraphSimpleFgs() {
 
@@ -612,6 +727,234 @@ public class TestFgs {
 
     }
 
+    @Test
+    public void testWarmStart() {
+        RandomUtil.getInstance().setSeed(4829304L);
+
+        List<Node> variables = new ArrayList<>();
+
+        for (int i = 0; i < 40; i++) {
+            variables.add(new ContinuousVariable("X" + (i + 1)));
+        }
+
+        Graph dag = GraphUtils.randomGraphRandomForwardEdges(variables, 0, 40, 10, 10, 10, false, false);
+        DataSet all = new LargeSemSimulator(dag).simulateDataAcyclic(4000);
+        int[] firstHalf = new int[2000];
+        for (int i = 0; i < firstHalf.length; i++) firstHalf[i] = i;
+        DataSet data = all.subsetRows(firstHalf);
+
+        SemBicScore score = new SemBicScore(new CovarianceMatrixOnTheFly(data));
+        Graph pattern = new Fgs(score).search();
+
+        // Nothing has changed, so nothing should move.
+        Fgs same = new Fgs(score);
+        same.setWarmStart(pattern, score);
+        assertEquals(pattern, same.search());
+
+        // With all of the data, the warm start should find about what a search from scratch does.
+        SemBicScore allScore = new SemBicScore(new CovarianceMatrixOnTheFly(all));
+
+        Fgs warm = new Fgs(allScore);
+        warm.setWarmStart(pattern, score);
+        Graph warmPattern = GraphUtils.replaceNodes(warm.search(), dag.getNodes());
+        Graph scratch = GraphUtils.replaceNodes(new Fgs(allScore).search(), dag.getNodes());
+
+        int differences = 0;
+
+        for (Edge edge : scratch.getEdges()) {
+            if (!warmPattern.isAdjacentTo(edge.getNode1(), edge.getNode2())) differences++;
+        }
+
+        for (Edge edge : warmPattern.getEdges()) {
+            if (!scratch.isAdjacentTo(edge.getNode1(), edge.getNode2())) differences++;
+        }
+
+        assertTrue(differences <= 4);
+    }
+
+    @Test
+    public void testSpilledArrows() {
+        RandomUtil.getInstance().setSeed(9938204L);
+
+        Graph dag = GraphUtils.randomGraph(30, 0, 45, 10, 10, 10, false);
+        DataSet data = new SemIm(new SemPm(dag)).simulateData(1000, false);
+        SemBicScore score = new SemBicScore(new CovarianceMatrix(data));
+
+        Graph pattern = new Fgs(score).search();
+
+        // Spilling nearly every arrow to disk should not change the result.
+        Set<String> before = spilledArrowFiles();
+        Fgs fgs = new Fgs(score);
+        fgs.setMaxArrowsInMemory(4);
+        assertEquals(pattern, fgs.search());
+        assertEquals(before, spilledArrowFiles());
+    }
+
+    /**
+     * Spilled arrows are deleted when a search fails as well.
+     */
+    @Test
+    public void testSpilledArrowsDeletedOnFailure() {
+        RandomUtil.getInstance().setSeed(2293810L);
+
+        Graph dag = GraphUtils.randomGraph(30, 0, 45, 10, 10, 10, false);
+        DataSet data = new SemIm(new SemPm(dag)).simulateData(1000, false);
+        final Set<String> before = spilledArrowFiles();
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicBoolean spilled = new AtomicBoolean();
+
+        SemBicScore score = new SemBicScore(new CovarianceMatrix(data)) {
+            public double localScoreDiff(int x, int y, int[] z) {
+                if (calls.incrementAndGet() == 500) {
+                    spilled.set(!before.containsAll(spilledArrowFiles()));
+                    throw new IllegalStateException("Score failed.");
+                }
+
+                return super.localScoreDiff(x, y, z);
+            }
+        };
+
+        Fgs fgs = new Fgs(score);
+        fgs.setMaxArrowsInMemory(4);
+
+        try {
+            fgs.search();
+            fail("The score should have failed.");
+        } catch (RuntimeException e) {
+            // Expected.
+        }
+
+        assertTrue(spilled.get());
+        assertEquals(before, spilledArrowFiles());
+    }
+
+    private Set<String> spilledArrowFiles() {
+        Set<String> names = new HashSet<>();
+        File[] files = new File(System.getProperty("java.io.tmpdir")).listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.startsWith("fgs-arrows") && name.endsWith(".run")) names.add(name);
+            }
+        }
+
+        return names;
+    }
+
+    /**
+     * Fgs on fixed problems, continuous and discrete, with knowledge, a bound graph or an initial
+     * graph, and with and without the faithfulness assumption; the expected patterns are those
+     * found by the implementation on Node-keyed graphs that the indexed one replaced.
+     */
+    @Test
+    public void testFixedPatterns() {
+        String[] expected = {
+                "X1-->X10,X1-->X3,X11-->X10,X11-->X3,X11-->X7,X2---X6,X3-->X10,X3-->X12,X3-->X7,X4-->X7,X4-->X8,X5-->X11,X5-->X12,X5-->X8,X6---X9,X7-->X10,X8-->X10,X8-->X11,X8-->X12,X8-->X3,X9-->X10,X9-->X11,X9-->X12,X9-->X3",
+                "X1-->X10,X1-->X2,X11-->X12,X2-->X10,X3---X9,X3-->X10,X3-->X11,X3-->X12,X3-->X4,X3-->X7,X4-->X1,X4-->X6,X5-->X11,X7-->X1,X7-->X6,X8-->X11,X8-->X4,X8-->X6,X8-->X7,X9-->X10,X9-->X4,X9-->X7",
+                "X1-->X9,X2---X5,X2---X7,X3-->X10,X3-->X9,X4-->X10,X5---X8,X5-->X11,X6-->X11,X9-->X6",
+                "X1---X2,X1---X6,X1---X9,X10---X7,X10-->X11,X11-->X8,X12-->X5,X2---X6,X3---X9,X3-->X12,X5-->X11,X6-->X12,X9-->X11",
+                "X1---X3,X1-->X5,X1-->X6,X10-->X12,X2---X4,X2-->X10,X2-->X6,X3-->X10,X3-->X11,X3-->X8,X5-->X10,X5-->X11,X5-->X12,X6-->X11,X8-->X11,X8-->X12,X8-->X9,X9-->X12",
+                "X1-->X12,X1-->X9,X10---X5,X11---X8,X2-->X7,X6-->X7,X6-->X9,X8-->X7,X9-->X12",
+                "X1-->X12,X1-->X6,X1-->X7,X1-->X8,X2---X5,X2---X9,X2-->X8,X3---X9,X3-->X12,X3-->X6,X4-->X7,X5-->X10,X6-->X7,X6-->X8,X7-->X11,X9-->X10,X9-->X11",
+                "X1-->X27,X1-->X3,X10-->X1,X10-->X25,X11---X5,X11-->X21,X11-->X28,X11-->X4,X12-->X30,X13-->X18,X13-->X21,X14-->X15,X14-->X25,X14-->X26,X14-->X27,X16-->X17,X17-->X20,X18-->X27,X18-->X4,X19-->X25,X19-->X26,X19-->X30,X2---X7,X2-->X24,X2-->X30,X20-->X24,X20-->X26,X21-->X18,X21-->X28,X21-->X4,X22---X6,X22-->X23,X22-->X25,X23-->X24,X29---X5,X29-->X1,X3-->X16,X5-->X1,X6-->X17,X6-->X26,X7-->X23,X7-->X28,X8-->X17,X8-->X18,X8-->X4,X9-->X15,X9-->X20,X9-->X24"
+        };
+
+        for (int problem = 0; problem < expected.length; problem++) {
+            assertEquals("Problem " + problem, expected[problem], edgeString(searchRegressionProblem(problem)));
+        }
+    }
+
+    // Problems 2 and 3 are discrete, 4 has knowledge, 5 a bound graph, 6 an initial graph, and 7 is
+    // larger; even problems assume faithfulness.
+    private Graph searchRegressionProblem(int problem) {
+        RandomUtil.getInstance().setSeed(582034L + problem);
+
+        int numNodes = problem == 7 ? 30 : 12;
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < numNodes; i++) {
+            nodes.add(new GraphNode("X" + (i + 1)));
+        }
+
+        Graph dag = GraphUtils.randomGraph(nodes, 0, numNodes * 3 / 2, 4, 4, 4, false);
+        Score score;
+
+        if (problem == 2 || problem == 3) {
+            BayesIm im = new MlBayesIm(new BayesPm(dag, 2, 3), MlBayesIm.RANDOM);
+            score = new BDeuScore(im.simulateData(1000, false));
+        } else {
+            DataSet data = new SemIm(new SemPm(dag)).simulateData(500, false);
+            score = new SemBicScore(new CovarianceMatrix(data));
+        }
+
+        List<Node> variables = score.getVariables();
+        Fgs fgs = new Fgs(score);
+        fgs.setFaithfulnessAssumed(problem % 2 == 0);
+
+        if (problem == 4) {
+            IKnowledge knowledge = new Knowledge2();
+            knowledge.setTier(0, Arrays.asList("X1", "X2", "X3", "X4"));
+            knowledge.setTier(1, Arrays.asList("X5", "X6", "X7", "X8"));
+            knowledge.setTier(2, Arrays.asList("X9", "X10", "X11", "X12"));
+            knowledge.setForbidden("X5", "X9");
+            knowledge.setRequired("X1", "X5");
+            fgs.setKnowledge(knowledge);
+        } else if (problem == 5) {
+            Graph bound = new EdgeListGraph(variables);
+
+            for (Edge edge : dag.getEdges()) {
+                int i = nodes.indexOf(edge.getNode1());
+                int j = nodes.indexOf(edge.getNode2());
+                if ((i + j) % 3 != 0) bound.addUndirectedEdge(variables.get(i), variables.get(j));
+            }
+
+            if (!bound.isAdjacentTo(variables.get(0), variables.get(11))) {
+                bound.addUndirectedEdge(variables.get(0), variables.get(11));
+            }
+
+            fgs.setBoundGraph(bound);
+        } else if (problem == 6) {
+            Graph initial = new EdgeListGraph(variables);
+
+            for (Edge edge : dag.getEdges()) {
+                int i = nodes.indexOf(Edges.getDirectedEdgeTail(edge));
+                int j = nodes.indexOf(Edges.getDirectedEdgeHead(edge));
+                if ((i + j) % 2 == 0) initial.addDirectedEdge(variables.get(i), variables.get(j));
+            }
+
+            fgs.setInitialGraph(initial);
+        }
+
+        return fgs.search();
+    }
+
+    // The edges of the graph, as X-->Y or X---Y, in order of their names.
+    private String edgeString(Graph graph) {
+        List<String> edges = new ArrayList<>();
+
+        for (Edge edge : graph.getEdges()) {
+            if (Edges.isDirectedEdge(edge)) {
+                edges.add(Edges.getDirectedEdgeTail(edge).getName() + "-->"
+                        + Edges.getDirectedEdgeHead(edge).getName());
+            } else {
+                String a = edge.getNode1().getName();
+                String b = edge.getNode2().getName();
+                edges.add(a.compareTo(b) < 0 ? a + "---" + b : b + "---" + a);
+            }
+        }
+
+        Collections.sort(edges);
+        StringBuilder buf = new StringBuilder();
+
+        for (String edge : edges) {
+            if (buf.length() > 0) buf.append(",");
+            buf.append(edge);
+        }
+
+        return buf.toString();
+    }
+
     private Graph getSubgraph(Graph graph, boolean discrete1, boolean discrete2, DataSet dataSet) {
         Graph newGraph = new EdgeListGraph(graph.getNodes());
 
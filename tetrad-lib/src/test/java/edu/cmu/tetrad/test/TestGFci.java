@@ -27,6 +27,8 @@ import edu.cmu.tetrad.data.*;
 import edu.cmu.tetrad.graph.*;
 import edu.cmu.tetrad.search.*;
 import edu.cmu.tetrad.sem.LargeSemSimulator;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
 import edu.cmu.tetrad.util.RandomUtil;
 import org.junit.Test;
 
@@ -34,6 +36,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -204,6 +208,91 @@ public class TestGFci {
         }
     }
 
+    /**
+     * The final orientation is done for each connected component separately; with an oracle the PAG should still be
+     * that of the true graph, with the complete rule set as well.
+     */
+    @Test
+    public void testComponents() {
+        RandomUtil.getInstance().setSeed(3829384L);
+
+        for (int i = 0; i < 5; i++) {
+            Graph dag = new EdgeListGraph();
+
+            for (int j = 0; j < 4; j++) {
+                Graph part = GraphUtils.randomGraph(12, 2, 16, 10, 10, 10, false);
+
+                for (Node node : part.getNodes()) {
+                    node.setName("C" + (j + 1) + node.getName());
+                    dag.addNode(node);
+                }
+
+                for (Edge edge : part.getEdges()) {
+                    dag.addEdge(edge);
+                }
+            }
+
+            GFci gfci = new GFci(new IndTestDSep(dag), new GraphScore(dag));
+            gfci.setCompleteRuleSetUsed(true);
+            Graph pag1 = gfci.search();
+
+            DagToPag dagToPag = new DagToPag(dag);
+            dagToPag.setCompleteRuleSetUsed(true);
+            Graph pag2 = dagToPag.convert();
+
+            assertEquals(pag2, pag1);
+        }
+    }
+
+    /**
+     * The sepsets for the pruning are found, and the components oriented, in parallel only if the independence test is
+     * thread-safe, so the PAG from data is the same however many threads there are, with a test that isn't as well.
+     */
+    @Test
+    public void testThreads() throws Exception {
+        RandomUtil.getInstance().setSeed(4829103L);
+
+        Graph dag = new EdgeListGraph();
+
+        for (int j = 0; j < 3; j++) {
+            Graph part = GraphUtils.randomGraph(8, 2, 10, 10, 10, 10, false);
+
+            for (Node node : part.getNodes()) {
+                node.setName("C" + (j + 1) + node.getName());
+                dag.addNode(node);
+            }
+
+            for (Edge edge : part.getEdges()) {
+                dag.addEdge(edge);
+            }
+        }
+
+        DataSet data = DataUtils.restrictToMeasured(new SemIm(new SemPm(dag)).simulateData(500, false));
+
+        IndependenceTest[] tests = {
+                new IndTestFisherZ(data, 0.05),
+                new IndTestCorrelationT(data, 0.05),
+
+                // This gives wrong answers if called from several threads at once.
+                new IndTestStateful(new IndTestCorrelationT(data, 0.05))
+        };
+
+        Graph tPag = null;
+
+        for (IndependenceTest test : tests) {
+            GFci gfci = new GFci(test, new SemBicScore(new CovarianceMatrix(data)));
+            gfci.setCompleteRuleSetUsed(true);
+            Graph pag = searchWithThreads(gfci, 1);
+            assertEquals(pag, searchWithThreads(gfci, 4));
+
+            if (test instanceof IndTestCorrelationT) {
+                tPag = pag;
+            } else if (test instanceof IndTestStateful) {
+                assertEquals(tPag, pag);
+            }
+        }
+    }
+
     @Test
     public void testFromData() {
         int numNodes = 1000;
@@ -249,6 +338,22 @@ public class TestGFci {
         System.out.println(MisclassificationUtils.edgeMisclassifications(graph, dagToPag.convert()));
 
     }
+
+    // Runs the search as a task in a pool with the given number of threads, so that the parallel parts of it use that
+    // pool.
+    private Graph searchWithThreads(final GraphSearch search, int numThreads) throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+
+        try {
+            return pool.submit(new Callable<Graph>() {
+                public Graph call() {
+                    return search.search();
+                }
+            }).get();
+        } finally {
+            pool.shutdown();
+        }
+    }
 }
 
 
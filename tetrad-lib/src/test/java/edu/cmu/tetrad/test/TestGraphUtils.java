@@ -254,6 +254,36 @@ public final class TestGraphUtils {
         assertTrue(graph.isDConnectedTo(c, a, Collections.singletonList(b)));
     }
 
+    @Test
+    public void testPossibleDsep() {
+        Node x = new ContinuousVariable("X");
+        Node y = new ContinuousVariable("Y");
+        Node b = new ContinuousVariable("B");
+        Node c = new ContinuousVariable("C");
+        Node d = new ContinuousVariable("D");
+        Node e = new ContinuousVariable("E");
+
+        Graph graph = new EdgeListGraph(Arrays.asList(x, y, b, c, d, e));
+
+        // B is a collider on X o-> B <-o C, and B is adjacent to D, so X, B, C, D is a possible-d-sep path.
+        graph.addEdge(Edges.nondirectedEdge(x, y));
+        graph.addEdge(Edges.partiallyOrientedEdge(x, b));
+        graph.addEdge(Edges.partiallyOrientedEdge(c, b));
+        graph.addEdge(Edges.nondirectedEdge(c, d));
+        graph.addEdge(Edges.nondirectedEdge(b, d));
+        graph.addEdge(Edges.nondirectedEdge(x, e));
+
+        assertEquals(Arrays.asList(b, c, d, e), new ArrayList<>(GraphUtils.possibleDsep(x, y, graph, -1)));
+        assertEquals(Arrays.asList(b, c, e), new ArrayList<>(GraphUtils.possibleDsep(x, y, graph, 2)));
+        assertEquals(Arrays.asList(b, e), new ArrayList<>(GraphUtils.possibleDsep(x, y, graph, 1)));
+        assertTrue(GraphUtils.possibleDsep(y, x, graph, -1).isEmpty());
+
+        // Without the collider at B, C and D can no longer be reached.
+        graph.setEndpoint(c, b, Endpoint.CIRCLE);
+
+        assertEquals(Arrays.asList(b, e), new ArrayList<>(GraphUtils.possibleDsep(x, y, graph, -1)));
+    }
+
 
     public void test8() {
         int numNodes = 5;
@@ -0,0 +1,175 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.IndTestCached;
+import edu.cmu.tetrad.search.IndTestCorrelationT;
+import edu.cmu.tetrad.search.IndTestFisherZ;
+import edu.cmu.tetrad.search.IndependenceTest;
+import edu.cmu.tetrad.search.Pc;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the caching independence test wrapper.
+ */
+public class TestIndTestCached {
+
+    private DataSet simulate() {
+        RandomUtil.getInstance().setSeed(59382039L);
+        Graph graph = GraphUtils.randomGraph(15, 0, 20, 30, 15, 15, false);
+        return new SemIm(new SemPm(graph)).simulateData(500, false);
+    }
+
+    @Test
+    public void testSameResults() {
+        DataSet data = simulate();
+
+        Graph expected = new Pc(new IndTestFisherZ(data, 0.05)).search();
+
+        IndTestCached test = new IndTestCached(new IndTestFisherZ(data, 0.05));
+        assertEquals(expected, new Pc(test).search());
+
+        long misses = test.getMisses();
+        assertTrue(misses > 0);
+        assertEquals(misses, test.size());
+
+        // A second search asks only questions that have been asked already.
+        assertEquals(expected, new Pc(test).search());
+        assertEquals(misses, test.getMisses());
+        assertTrue(test.getHits() >= misses);
+    }
+
+    @Test
+    public void testKey() {
+        DataSet data = simulate();
+        IndependenceTest fisherZ = new IndTestFisherZ(data, 0.05);
+        IndTestCached test = new IndTestCached(fisherZ);
+        List<Node> v = data.getVariables();
+
+        boolean independent = test.isIndependent(v.get(0), v.get(1), v.get(2), v.get(3));
+        double score = test.getScore();
+
+        // The order of the conditioning set doesn't matter.
+        assertEquals(independent, test.isIndependent(v.get(0), v.get(1), v.get(3), v.get(2)));
+        assertEquals(score, test.getScore(), 0.0);
+        assertEquals(1, test.getHits());
+
+        // x and y are not swapped.
+        test.isIndependent(v.get(1), v.get(0), Arrays.asList(v.get(2), v.get(3)));
+        assertEquals(2, test.getMisses());
+
+        test.setAlpha(0.01);
+        assertEquals(0, test.size());
+        assertEquals(0.01, fisherZ.getAlpha(), 0.0);
+    }
+
+    @Test
+    public void testEviction() {
+        DataSet data = simulate();
+        IndTestCached test = new IndTestCached(new IndTestFisherZ(data, 0.05), 10);
+        List<Node> v = data.getVariables();
+
+        for (int i = 0; i < v.size(); i++) {
+            for (int j = 0; j < v.size(); j++) {
+                if (i != j) test.isIndependent(v.get(i), v.get(j));
+            }
+        }
+
+        assertEquals(10, test.size());
+        assertEquals(test.getMisses() - 10, test.getEvictions());
+    }
+
+    // The wrapped test keeps its last p value in a field, so if misses weren't run one at a time, another thread's p
+    // value could be cached for a test.
+    @Test
+    public void testConcurrentMissesWithStatefulTest() throws Exception {
+        DataSet data = simulate();
+        IndependenceTest reference = new IndTestCorrelationT(data, 0.05);
+        final IndTestCached test = new IndTestCached(new IndTestStateful(new IndTestCorrelationT(data, 0.05)));
+        final List<Node> v = data.getVariables();
+
+        List<Callable<double[]>> tasks = new ArrayList<>();
+
+        for (int t = 0; t < 8; t++) {
+            tasks.add(new Callable<double[]>() {
+                public double[] call() {
+                    double[] pValues = new double[v.size() * v.size()];
+
+                    for (int i = 0; i < v.size(); i++) {
+                        for (int j = 0; j < v.size(); j++) {
+                            if (i == j) continue;
+                            test.isIndependent(v.get(i), v.get(j), v.get(conditioner(i, j)));
+                            pValues[i * v.size() + j] = test.getPValue();
+                        }
+                    }
+
+                    return pValues;
+                }
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try {
+            for (Future<double[]> future : executor.invokeAll(tasks)) {
+                double[] pValues = future.get();
+
+                for (int i = 0; i < v.size(); i++) {
+                    for (int j = 0; j < v.size(); j++) {
+                        if (i == j) continue;
+                        reference.isIndependent(v.get(i), v.get(j), v.get(conditioner(i, j)));
+                        assertEquals(reference.getPValue(), pValues[i * v.size() + j], 0.0);
+                    }
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(v.size() * (v.size() - 1), test.size());
+    }
+
+    // The first variable other than i and j.
+    private static int conditioner(int i, int j) {
+        int k = 0;
+        while (k == i || k == j) k++;
+        return k;
+    }
+}
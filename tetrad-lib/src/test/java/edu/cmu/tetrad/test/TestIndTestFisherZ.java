@@ -21,16 +21,31 @@
 
 package edu.cmu.tetrad.test;
 
+import edu.cmu.tetrad.data.CovarianceMatrix;
 import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.ICovarianceMatrix;
 import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.search.CholeskyPartialCorrelation;
 import edu.cmu.tetrad.search.IndTestFisherZ;
 import edu.cmu.tetrad.search.IndependenceTest;
 import edu.cmu.tetrad.sem.SemIm;
 import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.ChoiceGenerator;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
 import edu.cmu.tetrad.util.RandomUtil;
+import edu.cmu.tetrad.util.StatUtils;
 import org.junit.Test;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 
 /**
@@ -92,6 +107,88 @@ public class TestIndTestFisherZ {
         assertEquals(0, p2, 0.01);
         assertEquals(0, p3, 0.01);
     }
-}
 
+    // Conditioning sets are enumerated as PC does, so that consecutive sets
+    // share prefixes of different lengths with the cached factor.
+    @Test
+    public void testCholeskyPartialCorrelation() {
+        RandomUtil.getInstance().setSeed(29304829L);
+
+        Graph graph = GraphUtils.randomGraph(10, 0, 15, 30, 15, 15, false);
+        DataSet data = new SemIm(new SemPm(graph)).simulateData(500, false);
+        ICovarianceMatrix cov = new CovarianceMatrix(data);
+        CholeskyPartialCorrelation partialCorrelations = new CholeskyPartialCorrelation(cov);
+
+        for (int depth = 0; depth <= 4; depth++) {
+            ChoiceGenerator gen = new ChoiceGenerator(8, depth);
+            int[] choice;
+
+            while ((choice = gen.next()) != null) {
+                int[] z = new int[depth];
+                int[] indices = new int[depth + 2];
+                indices[0] = 0;
+                indices[1] = 1;
+
+                for (int i = 0; i < depth; i++) {
+                    z[i] = choice[i] + 2;
+                    indices[i + 2] = z[i];
+                }
+
+                double expected = StatUtils.partialCorrelation(cov.getSubmatrix(indices).getMatrix());
+
+                assertEquals(Arrays.toString(z), expected, partialCorrelations.corr(0, 1, z), 1e-10);
+            }
+        }
+    }
+
+    // Each test leaves a factor in every pool thread that used it. Once the tests are dropped, their covariance
+    // matrices should still be collected.
+    @Test
+    public void testCholeskyFactorsDoNotPinCovariances() throws InterruptedException, ExecutionException {
+        RandomUtil.getInstance().setSeed(3928211L);
+
+        Graph graph = GraphUtils.randomGraph(10, 0, 15, 30, 15, 15, false);
+        DataSet data = new SemIm(new SemPm(graph)).simulateData(200, false);
+        List<WeakReference<ICovarianceMatrix>> refs = new ArrayList<>();
+
+        for (int i = 0; i < 50; i++) {
+            ICovarianceMatrix cov = new CovarianceMatrix(data);
+            refs.add(new WeakReference<>(cov));
+            useOnPool(new IndTestFisherZ(cov, 0.05));
+        }
+
+        for (int i = 0; i < 20 && !allCleared(refs); i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+
+        for (WeakReference<ICovarianceMatrix> ref : refs) {
+            assertNull(ref.get());
+        }
+    }
+
+    private void useOnPool(final IndependenceTest test) throws InterruptedException, ExecutionException {
+        final List<Node> nodes = test.getVariables();
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+
+        for (int i = 0; i < 16; i++) {
+            tasks.add(new Callable<Boolean>() {
+                public Boolean call() {
+                    return test.isIndependent(nodes.get(0), nodes.get(1), nodes.subList(2, 5));
+                }
+            });
+        }
+
+        for (Future<Boolean> future : ForkJoinPoolInstance.getInstance().getPool().invokeAll(tasks)) {
+            future.get();
+        }
+    }
+
+    private boolean allCleared(List<WeakReference<ICovarianceMatrix>> refs) {
+        for (WeakReference<ICovarianceMatrix> ref : refs) {
+            if (ref.get() != null) return false;
+        }
 
+        return true;
+    }
+}
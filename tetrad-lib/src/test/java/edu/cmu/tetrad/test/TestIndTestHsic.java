@@ -0,0 +1,195 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.ColtDataSet;
+import edu.cmu.tetrad.data.ContinuousVariable;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.IndTestHsic;
+import edu.cmu.tetrad.search.kernel.Kernel;
+import edu.cmu.tetrad.search.kernel.KernelGaussian;
+import edu.cmu.tetrad.search.kernel.KernelUtils;
+import edu.cmu.tetrad.util.RandomUtil;
+import edu.cmu.tetrad.util.TetradMatrix;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the low-rank mode of IndTestHsic.
+ */
+public class TestIndTestHsic {
+
+    @Test
+    public void testLowRankFactor() {
+        DataSet data = simulate(80, 1.0);
+        List<Node> nodes = data.getVariables().subList(0, 2);
+        List<Kernel> kernels = kernels(data, nodes);
+
+        double[][] g = KernelUtils.lowRankGramFactor(kernels, data, nodes, 1e-12, 80);
+
+        for (int i = 0; i < 80; i++) {
+            for (int j = 0; j < 80; j++) {
+                double k = 1.0;
+                for (int v = 0; v < 2; v++) {
+                    k *= kernels.get(v).eval(data.getDouble(i, v), data.getDouble(j, v));
+                }
+
+                double gg = 0.0;
+                for (double[] column : g) {
+                    gg += column[i] * column[j];
+                }
+
+                assertEquals(k, gg, 1e-5);
+            }
+        }
+
+        assertEquals(5, KernelUtils.lowRankGramFactor(kernels, data, nodes, 0, 5).length);
+    }
+
+    // With factors of full rank, the low-rank statistics agree with those computed from the m x m Gram matrices.
+    @Test
+    public void testLowRankStatistic() {
+        int m = 60;
+        DataSet data = simulate(m, 0.3);
+        Node x = data.getVariable("X");
+        Node y = data.getVariable("Y");
+        Node z = data.getVariable("Z");
+        double regularizer = 0.0001;
+
+        IndTestHsic test = new IndTestHsic(data, 0.05);
+        test.setPerms(10);
+        test.setIncompleteCholesky(1e-12);
+        test.setRegularizer(regularizer);
+        test.setRank(m);
+
+        TetradMatrix Ky = centeredGram(data, y);
+        TetradMatrix Kx = centeredGram(data, x);
+        TetradMatrix Kz = centeredGram(data, z);
+
+        test.isIndependent(y, x, Collections.<Node>emptyList());
+        double expected = trace(Ky.times(Kx)) / Math.pow(m - 1, 2);
+        assertEquals(expected, test.getHsic(), 1e-6 * expected);
+
+        TetradMatrix R = Kz.copy();
+        for (int i = 0; i < m; i++) {
+            R.set(i, i, R.get(i, i) + regularizer);
+        }
+        R = R.inverse();
+        TetradMatrix P = Kz.times(R).times(R).times(Kz);
+        double betaz = 0.0;
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < m; j++) {
+                if (i != j) betaz += Math.pow(Kz.get(i, j), 2);
+            }
+        }
+
+        test.isIndependent(y, x, Collections.singletonList(z));
+        expected = (trace(Ky.times(Kx)) - 2 * trace(Ky.times(P).times(Kx))
+                + trace(Ky.times(P).times(Kx).times(P))) * m / (betaz * (m - 1));
+        assertEquals(expected, test.getHsic(), 1e-4 * Math.abs(expected));
+    }
+
+    @Test
+    public void testLowRankDecisions() {
+        RandomUtil.getInstance().setSeed(49203482L);
+        DataSet data = simulate(2000, 0.3);
+        Node x = data.getVariable("X");
+        Node y = data.getVariable("Y");
+        Node z = data.getVariable("Z");
+        Node w = data.getVariable("W");
+
+        IndTestHsic test = new IndTestHsic(data, 0.01);
+        test.setPerms(50);
+        test.setRank(20);
+
+        assertFalse(test.isIndependent(x, y));
+        assertFalse(test.isIndependent(x, z));
+        assertTrue(test.isIndependent(x, w));
+        assertTrue(test.isIndependent(x, y, z));
+    }
+
+    // X -> Z -> Y, with Z = X^2 + e and Y = sin(Z) + e; W independent.
+    private static DataSet simulate(int m, double noise) {
+        List<Node> nodes = new ArrayList<>();
+        for (String name : Arrays.asList("X", "Z", "Y", "W")) {
+            nodes.add(new ContinuousVariable(name));
+        }
+
+        DataSet data = new ColtDataSet(m, nodes);
+        RandomUtil random = RandomUtil.getInstance();
+
+        for (int i = 0; i < m; i++) {
+            double x = random.nextNormal(0, 1);
+            double z = x * x + noise * random.nextNormal(0, 1);
+            double y = Math.sin(2 * z) + noise * random.nextNormal(0, 1);
+            data.setDouble(i, 0, x);
+            data.setDouble(i, 1, z);
+            data.setDouble(i, 2, y);
+            data.setDouble(i, 3, random.nextNormal(0, 1));
+        }
+
+        return data;
+    }
+
+    private static List<Kernel> kernels(DataSet data, List<Node> nodes) {
+        List<Kernel> kernels = new ArrayList<>();
+        for (Node node : nodes) {
+            kernels.add(new KernelGaussian(data, node));
+        }
+        return kernels;
+    }
+
+    private static TetradMatrix centeredGram(DataSet data, Node node) {
+        int m = data.getNumRows();
+        int col = data.getColumn(node);
+        Kernel kernel = new KernelGaussian(data, node);
+        TetradMatrix K = new TetradMatrix(m, m);
+        TetradMatrix H = new TetradMatrix(m, m);
+
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < m; j++) {
+                K.set(i, j, kernel.eval(data.getDouble(i, col), data.getDouble(j, col)));
+                H.set(i, j, (i == j ? 1.0 : 0.0) - 1.0 / m);
+            }
+        }
+
+        return H.times(K).times(H);
+    }
+
+    private static double trace(TetradMatrix A) {
+        double trace = 0.0;
+        for (int i = 0; i < A.rows(); i++) {
+            trace += A.get(i, i);
+        }
+        return trace;
+    }
+}
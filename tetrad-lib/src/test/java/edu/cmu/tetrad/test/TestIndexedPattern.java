@@ -0,0 +1,286 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.search.IndexedPattern;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the int-indexed pattern that Fgs and MeekRules work on.
+ */
+public class TestIndexedPattern {
+
+    @Test
+    public void testKinds() {
+        Endpoint[] endpoints = {Endpoint.TAIL, Endpoint.ARROW, Endpoint.CIRCLE};
+        Set<Byte> kinds = new HashSet<>();
+
+        for (Endpoint atI : endpoints) {
+            for (Endpoint atJ : endpoints) {
+                byte kind = IndexedPattern.kind(atI, atJ);
+                assertTrue(kinds.add(kind));
+                assertEquals(IndexedPattern.kind(atJ, atI), IndexedPattern.reverse(kind));
+                assertEquals(kind, IndexedPattern.reverse(IndexedPattern.reverse(kind)));
+            }
+        }
+
+        assertEquals(IndexedPattern.UNDIRECTED, IndexedPattern.kind(Endpoint.TAIL, Endpoint.TAIL));
+        assertEquals(IndexedPattern.OUT, IndexedPattern.kind(Endpoint.TAIL, Endpoint.ARROW));
+        assertEquals(IndexedPattern.IN, IndexedPattern.kind(Endpoint.ARROW, Endpoint.TAIL));
+        assertEquals(IndexedPattern.BIDIRECTED, IndexedPattern.kind(Endpoint.ARROW, Endpoint.ARROW));
+
+        IndexedPattern pattern = new IndexedPattern(3);
+        pattern.addDirectedEdge(2, 0);
+        pattern.addUndirectedEdge(1, 2);
+
+        assertEquals(IndexedPattern.IN, pattern.getKind(0, 0));
+        assertEquals(IndexedPattern.OUT, pattern.getKind(2, 0));
+        assertEquals(IndexedPattern.UNDIRECTED, pattern.getKind(2, 1));
+        assertTrue(pattern.isParentOf(2, 0));
+        assertFalse(pattern.isParentOf(0, 2));
+        assertTrue(pattern.isArrowheadAt(2, 0));
+        assertFalse(pattern.isArrowheadAt(0, 2));
+        assertTrue(pattern.isUndirected(2, 1));
+        assertTrue(pattern.isUndirected(1, 2));
+        assertArrayEquals(new int[]{2}, pattern.getParents(0));
+        assertArrayEquals(new int[]{0}, pattern.getChildren(2));
+        assertArrayEquals(new int[]{1}, pattern.getNeighbors(2));
+
+        // Adding an edge that is there already changes its kind.
+        pattern.addDirectedEdge(0, 2);
+        assertEquals(2, pattern.getNumEdges());
+        assertTrue(pattern.isParentOf(0, 2));
+        assertFalse(pattern.isParentOf(2, 0));
+    }
+
+    /**
+     * Random insertions and removals, checked against a matrix of kinds.
+     */
+    @Test
+    public void testInsertAndRemove() {
+        RandomUtil.getInstance().setSeed(3920148L);
+
+        int n = 20;
+        IndexedPattern pattern = new IndexedPattern(n);
+        byte[][] kinds = new byte[n][n];
+        int numEdges = 0;
+
+        for (byte[] row : kinds) {
+            Arrays.fill(row, (byte) -1);
+        }
+
+        for (int step = 0; step < 5000; step++) {
+            int i = RandomUtil.getInstance().nextInt(n);
+            int j = RandomUtil.getInstance().nextInt(n);
+            if (i == j) continue;
+
+            int action = RandomUtil.getInstance().nextInt(3);
+
+            if (action == 0) {
+                if (kinds[i][j] != -1) numEdges--;
+                pattern.removeEdge(i, j);
+                kinds[i][j] = kinds[j][i] = -1;
+            } else {
+                if (kinds[i][j] == -1) numEdges++;
+
+                if (action == 1) {
+                    pattern.addDirectedEdge(i, j);
+                    kinds[i][j] = IndexedPattern.OUT;
+                    kinds[j][i] = IndexedPattern.IN;
+                } else {
+                    pattern.addUndirectedEdge(i, j);
+                    kinds[i][j] = kinds[j][i] = IndexedPattern.UNDIRECTED;
+                }
+            }
+
+            assertEquals(numEdges, pattern.getNumEdges());
+
+            for (int node : new int[]{i, j}) {
+                int[] adjacents = pattern.getAdjacents(node);
+                assertEquals(adjacents.length, pattern.getDegree(node));
+                int k = 0;
+
+                for (int other = 0; other < n; other++) {
+                    assertEquals(kinds[node][other] != -1, pattern.isAdjacentTo(node, other));
+                    if (kinds[node][other] == -1) continue;
+
+                    // Adjacents are kept in increasing order.
+                    assertEquals(other, adjacents[k]);
+                    assertEquals(other, pattern.getAdjacent(node, k));
+                    assertEquals(kinds[node][other], pattern.getKind(node, k));
+                    k++;
+                }
+
+                assertEquals(adjacents.length, k);
+            }
+        }
+
+        // A copy has the same edges and can be changed apart from the original.
+        IndexedPattern copy = new IndexedPattern(pattern);
+
+        for (int i = 0; i < n; i++) {
+            assertArrayEquals(pattern.getAdjacents(i), copy.getAdjacents(i));
+        }
+
+        for (int i = 0; i < n; i++) {
+            for (int j : copy.getAdjacents(i)) {
+                copy.removeEdge(i, j);
+            }
+        }
+
+        assertEquals(0, copy.getNumEdges());
+        assertEquals(numEdges, pattern.getNumEdges());
+    }
+
+    /**
+     * A pattern made from a graph keeps the order of each node's edges in the graph, and an edge
+     * whose kind is changed moves to the end, as in the graph when it is removed and added again.
+     */
+    @Test
+    public void testOrder() {
+        RandomUtil.getInstance().setSeed(5839201L);
+
+        Graph graph = GraphUtils.randomGraph(15, 0, 30, 10, 10, 10, false);
+        List<Node> nodes = graph.getNodes();
+        Map<Node, Integer> indices = indices(nodes);
+
+        // Shuffle the order of the edges.
+        List<Edge> edges = new ArrayList<>(graph.getEdges());
+
+        for (int k = edges.size() - 1; k > 0; k--) {
+            Collections.swap(edges, k, RandomUtil.getInstance().nextInt(k + 1));
+        }
+
+        for (Edge edge : edges) {
+            graph.removeEdge(edge);
+        }
+
+        for (Edge edge : edges) {
+            graph.addEdge(edge);
+        }
+
+        IndexedPattern pattern = IndexedPattern.fromGraphInOrder(graph, indices);
+        assertNotNull(pattern);
+        assertEquals(graph.getNumEdges(), pattern.getNumEdges());
+        checkOrder(graph, pattern, indices);
+
+        for (int step = 0; step < 20; step++) {
+            Edge edge = edges.get(RandomUtil.getInstance().nextInt(edges.size()));
+            Node x = edge.getNode1();
+            Node y = edge.getNode2();
+
+            graph.removeEdge(x, y);
+            graph.addUndirectedEdge(x, y);
+            pattern.addUndirectedEdge(indices.get(x), indices.get(y));
+            checkOrder(graph, pattern, indices);
+        }
+
+        // Without kept order, adjacents come in increasing order.
+        IndexedPattern unordered = IndexedPattern.fromGraph(graph, indices);
+
+        for (int i = 0; i < nodes.size(); i++) {
+            assertArrayEquals(unordered.getAdjacents(i), unordered.getAdjacentsInOrder(i));
+        }
+
+        // Two edges between the same nodes can't be indexed.
+        Graph multigraph = new EdgeListGraph(graph);
+        multigraph.addBidirectedEdge(edges.get(0).getNode1(), edges.get(0).getNode2());
+        assertNull(IndexedPattern.fromGraphInOrder(multigraph, indices));
+    }
+
+    /**
+     * Every kind of edge survives the trip to a pattern and back.
+     */
+    @Test
+    public void testToGraph() {
+        RandomUtil.getInstance().setSeed(1203984L);
+
+        Graph dag = GraphUtils.randomGraph(20, 0, 40, 10, 10, 10, false);
+        List<Node> nodes = dag.getNodes();
+        Graph graph = new EdgeListGraph(nodes);
+
+        for (Edge edge : dag.getEdges()) {
+            Node x = edge.getNode1();
+            Node y = edge.getNode2();
+
+            switch (RandomUtil.getInstance().nextInt(5)) {
+                case 0:
+                    graph.addDirectedEdge(x, y);
+                    break;
+                case 1:
+                    graph.addUndirectedEdge(x, y);
+                    break;
+                case 2:
+                    graph.addBidirectedEdge(x, y);
+                    break;
+                case 3:
+                    graph.addPartiallyOrientedEdge(x, y);
+                    break;
+                default:
+                    graph.addNondirectedEdge(x, y);
+            }
+        }
+
+        Map<Node, Integer> indices = indices(nodes);
+        IndexedPattern pattern = IndexedPattern.fromGraphInOrder(graph, indices);
+        assertEquals(new HashSet<>(graph.getEdges()), new HashSet<>(pattern.toGraph(nodes).getEdges()));
+
+        // Made without kept order, only directed edges stay directed.
+        Graph simple = IndexedPattern.fromGraph(graph, indices).toGraph(nodes);
+        assertEquals(graph.getNumEdges(), simple.getNumEdges());
+
+        for (Edge edge : graph.getEdges()) {
+            Edge other = simple.getEdge(edge.getNode1(), edge.getNode2());
+            assertEquals(Edges.isDirectedEdge(edge) ? edge : Edges.undirectedEdge(edge.getNode1(), edge.getNode2()),
+                    other);
+        }
+    }
+
+    private static Map<Node, Integer> indices(List<Node> nodes) {
+        Map<Node, Integer> indices = new HashMap<>();
+
+        for (int i = 0; i < nodes.size(); i++) {
+            indices.put(nodes.get(i), i);
+        }
+
+        return indices;
+    }
+
+    private static void checkOrder(Graph graph, IndexedPattern pattern, Map<Node, Integer> indices) {
+        for (Node node : graph.getNodes()) {
+            List<Edge> edges = graph.getEdges(node);
+            int[] ordered = pattern.getAdjacentsInOrder(indices.get(node));
+            assertEquals(edges.size(), ordered.length);
+
+            for (int k = 0; k < ordered.length; k++) {
+                assertEquals((int) indices.get(edges.get(k).getDistalNode(node)), ordered[k]);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.CovarianceMatrixOnTheFly;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.search.CachedScore;
+import edu.cmu.tetrad.search.Fgs;
+import edu.cmu.tetrad.search.LocalScoreCache;
+import edu.cmu.tetrad.search.SemBicScore;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the local score cache and the caching score wrapper.
+ */
+public class TestLocalScoreCache {
+
+    @Test
+    public void testKeys() {
+        LocalScoreCache cache = new LocalScoreCache(100);
+
+        cache.add(3, new int[]{5, 1, 2}, -10.5);
+        cache.add(1, 3, new int[]{5, 2}, 2.25);
+
+        // The order of the parents doesn't matter.
+        assertEquals(-10.5, cache.get(3, new int[]{1, 2, 5}), 0.0);
+        assertEquals(2.25, cache.get(1, 3, new int[]{2, 5}), 0.0);
+
+        // Local scores and differences are kept apart.
+        assertTrue(Double.isNaN(cache.get(3, new int[]{1, 2})));
+        assertTrue(Double.isNaN(cache.get(3, new int[]{1, 2, 5, 6})));
+        assertTrue(Double.isNaN(cache.get(5, 3, new int[]{1, 2})));
+        assertTrue(Double.isNaN(cache.get(2, new int[]{1, 3, 5})));
+
+        assertEquals(2, cache.getHits());
+        assertEquals(4, cache.getMisses());
+
+        cache.clear();
+        assertTrue(Double.isNaN(cache.get(3, new int[]{1, 2, 5})));
+    }
+
+    @Test
+    public void testEviction() {
+        LocalScoreCache cache = new LocalScoreCache(64);
+        assertEquals(64, cache.getCapacity());
+
+        for (int i = 0; i < 1000; i++) {
+            cache.add(i, new int[]{i + 1}, i);
+        }
+
+        assertEquals(1000 - 64, cache.getEvictions());
+
+        int found = 0;
+
+        for (int i = 0; i < 1000; i++) {
+            double score = cache.get(i, new int[]{i + 1});
+
+            if (!Double.isNaN(score)) {
+                assertEquals(i, score, 0.0);
+                found++;
+            }
+        }
+
+        assertEquals(64, found);
+    }
+
+    @Test
+    public void testFgs() {
+        RandomUtil.getInstance().setSeed(38493029L);
+
+        Graph graph = GraphUtils.randomGraph(20, 0, 30, 30, 15, 15, false);
+        DataSet data = new SemIm(new SemPm(graph)).simulateData(1000, false);
+
+        Graph expected = new Fgs(new SemBicScore(new CovarianceMatrixOnTheFly(data))).search();
+
+        CachedScore score = new CachedScore(new SemBicScore(new CovarianceMatrixOnTheFly(data)));
+        assertEquals(expected, new Fgs(score).search());
+        assertTrue(score.getCache().getMisses() > 0);
+
+        long misses = score.getCache().getMisses();
+        assertEquals(expected, new Fgs(score).search());
+        assertEquals(misses, score.getCache().getMisses());
+    }
+}
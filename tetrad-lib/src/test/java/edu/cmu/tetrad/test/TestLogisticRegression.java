@@ -0,0 +1,89 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.BoxDataSet;
+import edu.cmu.tetrad.data.ContinuousVariable;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.DiscreteVariable;
+import edu.cmu.tetrad.data.MixedDataBox;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.regression.LogisticRegression;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests LogisticRegression.
+ */
+public class TestLogisticRegression {
+
+    // A fit started from a nested model converges to the same estimates as one started from scratch, over few rows
+    // and over enough rows for the sums to be accumulated in parallel.
+    @Test
+    public void testWarmStart() {
+        RandomUtil.getInstance().setSeed(3829441L);
+
+        for (int n : new int[]{500, LogisticRegression.PARALLEL_ROWS + 2000}) {
+            DiscreteVariable y = new DiscreteVariable("Y", 2);
+            Node x1 = new ContinuousVariable("X1");
+            Node x2 = new ContinuousVariable("X2");
+            Node x3 = new DiscreteVariable("X3", 2);
+            List<Node> nodes = new ArrayList<>(Arrays.asList(y, x1, x2, x3));
+            DataSet data = new BoxDataSet(new MixedDataBox(nodes, n), nodes);
+
+            for (int i = 0; i < n; i++) {
+                double v1 = RandomUtil.getInstance().nextNormal(0, 1);
+                double v2 = RandomUtil.getInstance().nextNormal(0, 1) + 0.5 * v1;
+                int v3 = RandomUtil.getInstance().nextDouble() < 0.3 ? 1 : 0;
+                double eta = -0.5 + 0.8 * v1 - 0.6 * v2 + 1.2 * v3;
+                int v = RandomUtil.getInstance().nextDouble() < 1.0 / (1.0 + Math.exp(-eta)) ? 1 : 0;
+                data.setInt(i, 0, v);
+                data.setDouble(i, 1, v1);
+                data.setDouble(i, 2, v2);
+                data.setInt(i, 3, v3);
+            }
+
+            LogisticRegression regression = new LogisticRegression(data);
+            LogisticRegression.Result nested = regression.regress(y, Arrays.asList(x1, x3));
+            List<Node> regressors = Arrays.asList(x2, x1, x3);
+            LogisticRegression.Result cold = regression.regress(y, regressors);
+            LogisticRegression.Result warm = regression.regress(y, regressors, nested);
+
+            assertEquals(cold.getLogLikelihood(), warm.getLogLikelihood(), 1e-6);
+
+            for (int j = 0; j < cold.getCoefs().length; j++) {
+                assertEquals(cold.getCoefs()[j], warm.getCoefs()[j], 1e-4);
+                assertEquals(cold.getStdErrs()[j], warm.getStdErrs()[j], 1e-4);
+            }
+
+            assertEquals(0.8, cold.getCoefs()[2], n < 1000 ? 0.4 : 0.1);
+            assertEquals(-0.6, cold.getCoefs()[1], n < 1000 ? 0.4 : 0.1);
+        }
+    }
+}
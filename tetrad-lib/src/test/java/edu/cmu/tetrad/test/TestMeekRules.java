@@ -0,0 +1,172 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.IKnowledge;
+import edu.cmu.tetrad.data.Knowledge2;
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.search.MeekRules;
+import edu.cmu.tetrad.search.SearchGraphUtils;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that MeekRules orients the same edges, and visits the same nodes, whether it works on an
+ * indexed copy of the graph or on the graph itself.
+ */
+public class TestMeekRules {
+
+    @Test
+    public void testPatterns() {
+        RandomUtil.getInstance().setSeed(4820193L);
+
+        for (int i = 0; i < 50; i++) {
+            Graph graph = GraphUtils.randomGraph(20, 0, 20 + i, 10, 10, 10, false);
+            SearchGraphUtils.basicPattern(graph, false);
+            checkSame(graph, graph.getNodes(), new Knowledge2(), false);
+        }
+    }
+
+    /**
+     * Arbitrary orientations, possibly cyclic, with unforced parents undirected first, as in Fgs.
+     */
+    @Test
+    public void testUndirectUnforcedEdges() {
+        RandomUtil.getInstance().setSeed(7392011L);
+
+        for (int i = 0; i < 50; i++) {
+            Graph graph = randomlyOriented(GraphUtils.randomGraph(20, 0, 30, 10, 10, 10, false));
+            checkSame(graph, graph.getNodes(), new Knowledge2(), true);
+            checkSame(graph, graph.getNodes(), new Knowledge2(), false);
+        }
+    }
+
+    @Test
+    public void testKnowledgeAndAmbiguousTriples() {
+        RandomUtil.getInstance().setSeed(1193820L);
+
+        for (int i = 0; i < 50; i++) {
+            Graph graph = GraphUtils.randomGraph(20, 0, 30, 10, 10, 10, false);
+            SearchGraphUtils.basicPattern(graph, false);
+            List<Node> nodes = graph.getNodes();
+
+            IKnowledge knowledge = new Knowledge2();
+
+            for (Edge edge : graph.getEdges()) {
+                if (RandomUtil.getInstance().nextInt(4) == 0) {
+                    knowledge.setForbidden(edge.getNode1().getName(), edge.getNode2().getName());
+                }
+            }
+
+            for (Node node : nodes) {
+                List<Node> adjacents = graph.getAdjacentNodes(node);
+
+                if (adjacents.size() >= 2 && RandomUtil.getInstance().nextInt(3) == 0) {
+                    Node x = adjacents.get(0);
+                    Node z = adjacents.get(1);
+                    if (!graph.isAdjacentTo(x, z)) graph.addAmbiguousTriple(x, node, z);
+                }
+            }
+
+            checkSame(graph, nodes, knowledge, false);
+        }
+    }
+
+    /**
+     * Starting from some of the nodes only.
+     */
+    @Test
+    public void testStartingNodes() {
+        RandomUtil.getInstance().setSeed(6620184L);
+
+        for (int i = 0; i < 50; i++) {
+            Graph graph = randomlyOriented(GraphUtils.randomGraph(20, 0, 30, 10, 10, 10, false));
+            List<Node> start = new ArrayList<>();
+
+            for (Node node : graph.getNodes()) {
+                if (RandomUtil.getInstance().nextInt(4) == 0) start.add(node);
+            }
+
+            checkSame(graph, start, new Knowledge2(), i % 2 == 0);
+        }
+    }
+
+    /**
+     * Large enough that the components are oriented in parallel.
+     */
+    @Test
+    public void testLargeGraph() {
+        RandomUtil.getInstance().setSeed(2093841L);
+
+        Graph graph = randomlyOriented(GraphUtils.randomGraph(600, 0, 500, 10, 10, 10, false));
+        checkSame(graph, graph.getNodes(), new Knowledge2(), true);
+
+        graph = GraphUtils.randomGraph(600, 0, 700, 10, 10, 10, false);
+        SearchGraphUtils.basicPattern(graph, false);
+        checkSame(graph, graph.getNodes(), new Knowledge2(), false);
+    }
+
+    private static Graph randomlyOriented(Graph graph) {
+        Graph oriented = new EdgeListGraph(graph.getNodes());
+
+        for (Edge edge : graph.getEdges()) {
+            Node x = edge.getNode1();
+            Node y = edge.getNode2();
+            int choice = RandomUtil.getInstance().nextInt(3);
+
+            if (choice == 0) {
+                oriented.addUndirectedEdge(x, y);
+            } else if (choice == 1) {
+                oriented.addDirectedEdge(x, y);
+            } else {
+                oriented.addDirectedEdge(y, x);
+            }
+        }
+
+        return oriented;
+    }
+
+    private static void checkSame(Graph graph, List<Node> start, IKnowledge knowledge,
+                                  boolean undirectUnforcedEdges) {
+        Graph indexedGraph = new EdgeListGraph(graph);
+        Graph directGraph = new EdgeListGraph(graph);
+
+        MeekRules indexed = new MeekRules();
+        indexed.setUndirectUnforcedEdges(undirectUnforcedEdges);
+        indexed.setKnowledge(knowledge);
+        indexed.orientImplied(indexedGraph, start);
+
+        MeekRules direct = new MeekRules();
+        direct.setIndexed(false);
+        direct.setUndirectUnforcedEdges(undirectUnforcedEdges);
+        direct.setKnowledge(knowledge);
+        direct.orientImplied(directGraph, start);
+
+        assertEquals(new HashSet<>(directGraph.getEdges()), new HashSet<>(indexedGraph.getEdges()));
+        assertEquals(direct.getVisited(), indexed.getVisited());
+    }
+}
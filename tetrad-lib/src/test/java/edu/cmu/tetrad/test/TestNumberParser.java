@@ -0,0 +1,210 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.NumberParser;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks NumberParser against Double.parseDouble and Integer.parseInt, bit for bit.
+ */
+public final class TestNumberParser {
+
+    private static final String[] EDGES = {
+            "0", "-0", "+0", "0.0", "-0.0", "0e-400", "0e400", "000.000e5",
+            "4.9e-324", "4.9E-324", "5e-324", "2e-324", "3e-324", "1e-325", "1e-340", "1e-400",
+            "2.4703282292062327e-324", "2.4703282292062328e-324", "2.4703282292062327208828439643e-324",
+            "2.2250738585072011e-308", "2.2250738585072012e-308", "2.2250738585072014e-308",
+            "2.225073858507201136057409796709131975934819546351645648e-308",
+            "1.7976931348623157e308", "1.7976931348623158e308", "1.7976931348623159e308",
+            "1.797693134862315807e308", "1e308", "1e309", "1e310", "-1e310", "1e400",
+            "9007199254740992", "9007199254740993", "9007199254740993.0", "9007199254740993e0",
+            "9007199254740994", "9007199254740995", "18014398509481985", "1.00000000000000011102230246251565404",
+            "123456789012345678", "1234567890123456789", "12345678901234567890", "123456789012345678901234567890",
+            "0.1", "0.2", "0.3", "1e22", "1e23", "8.41e21", "7.3177701707893310e15", "+1.5", "+.5", "-.5e1", "5.",
+            "1e-0", "1e+0", "1e+010", "00001", ".00001e5",
+            "NaN", "-NaN", "+NaN", "Infinity", "-Infinity", "+Infinity", "infinity", "Inf",
+            "0x1p3", "0x1.8p1", "1d", "1f", "1.5D", "1e5F", " 1.5", "1.5 ", "\t2\n",
+            "", " ", "-", "+", ".", "-.", "e5", "1e", "1e+", "1e-", "1.2.3", "1e5e5", "--1", "+-1", "1-",
+            "abc", "1x", "1,5", "1_000", "١", "0.5e99999999999", "1e-99999999999"
+    };
+
+    @Test
+    public void testEdges() {
+        for (String s : EDGES) {
+            checkDouble(s);
+            checkInt(s);
+        }
+    }
+
+    @Test
+    public void testRandomDoubles() {
+        Random random = new Random(73219L);
+
+        for (int i = 0; i < 100000; i++) {
+            double value = Double.longBitsToDouble(random.nextLong());
+
+            if (Double.isNaN(value)) {
+                continue;
+            }
+
+            checkDouble(Double.toString(value));
+            checkDouble(String.format("%." + random.nextInt(20) + "e", value));
+            checkDouble(new BigDecimal(value).round(new java.math.MathContext(1 + random.nextInt(25))).toString());
+        }
+    }
+
+    // Decimal strings with random digits, decimal points and exponents, including mantissas of more than 19
+    // digits and exponents past either end of the range of doubles.
+    @Test
+    public void testRandomDecimals() {
+        Random random = new Random(48213L);
+
+        for (int i = 0; i < 200000; i++) {
+            StringBuilder buf = new StringBuilder();
+
+            int sign = random.nextInt(3);
+            if (sign == 1) buf.append('-');
+            if (sign == 2) buf.append('+');
+
+            int numDigits = 1 + random.nextInt(random.nextBoolean() ? 19 : 30);
+            int point = random.nextInt(numDigits + 2) - 1;
+
+            for (int j = 0; j < numDigits; j++) {
+                if (j == point) buf.append('.');
+                buf.append((char) ('0' + random.nextInt(10)));
+            }
+
+            if (random.nextBoolean()) {
+                buf.append(random.nextBoolean() ? 'e' : 'E');
+                int exponent = random.nextInt(random.nextBoolean() ? 50 : 700) - (random.nextBoolean() ? 0 : 350);
+                buf.append(exponent < 0 || !random.nextBoolean() ? "" : "+").append(exponent);
+            }
+
+            checkDouble(buf.toString());
+            checkInt(buf.toString());
+        }
+    }
+
+    // Decimal strings exactly halfway between two neighbouring doubles, and just above and below, which can't be
+    // rounded from a 64-bit mantissa and have to fall back.
+    @Test
+    public void testHalfwayCases() {
+        Random random = new Random(9982L);
+        List<Double> values = new ArrayList<>();
+
+        for (int i = 0; i < 10000; i++) {
+            values.add(Math.abs(Double.longBitsToDouble(random.nextLong())));
+            values.add(random.nextInt(1 << 20) * Math.pow(2, random.nextInt(120) - 60));
+        }
+
+        values.add(Double.MIN_VALUE);
+        values.add(Double.MIN_NORMAL);
+        values.add(Math.nextDown(Double.MIN_NORMAL));
+        values.add(Math.nextDown(Double.MAX_VALUE));
+
+        for (double value : values) {
+            if (Double.isNaN(value) || Double.isInfinite(value) || value == Double.MAX_VALUE) {
+                continue;
+            }
+
+            BigDecimal low = new BigDecimal(value);
+            BigDecimal high = new BigDecimal(Math.nextUp(value));
+            BigDecimal halfway = low.add(high).divide(BigDecimal.valueOf(2));
+            BigDecimal ulp = high.subtract(low).movePointLeft(30);
+
+            checkDouble(halfway.toString());
+            checkDouble(halfway.add(ulp).toString());
+            checkDouble(halfway.subtract(ulp).toString());
+            checkDouble(halfway.round(new java.math.MathContext(17)).toString());
+            checkDouble(halfway.round(new java.math.MathContext(19)).toString());
+        }
+    }
+
+    @Test
+    public void testRandomInts() {
+        Random random = new Random(1288L);
+
+        for (int i = 0; i < 100000; i++) {
+            long value = random.nextBoolean() ? random.nextInt() : random.nextLong() >> random.nextInt(64);
+            checkInt(Long.toString(value));
+            checkInt((value >= 0 ? "+" : "") + value);
+        }
+
+        checkInt(Integer.toString(Integer.MAX_VALUE));
+        checkInt(Integer.toString(Integer.MIN_VALUE));
+        checkInt(Long.toString(Integer.MAX_VALUE + 1L));
+        checkInt(Long.toString(Integer.MIN_VALUE - 1L));
+    }
+
+    // The string is parsed from the middle of a longer sequence, as the readers do.
+    private void checkDouble(String s) {
+        String chars = "7,\t" + s + "\t,9";
+        int start = 3;
+        int end = 3 + s.length();
+
+        double expected;
+
+        try {
+            expected = Double.parseDouble(s);
+        } catch (NumberFormatException e) {
+            assertTrue(s, !NumberParser.isDouble(chars, start, end));
+
+            try {
+                NumberParser.parseDouble(chars, start, end);
+                fail("Expected \"" + s + "\" not to parse.");
+            } catch (NumberFormatException e2) {
+                // Expected.
+            }
+
+            return;
+        }
+
+        assertTrue(s, NumberParser.isDouble(chars, start, end));
+        assertEquals(s, Double.doubleToRawLongBits(expected),
+                Double.doubleToRawLongBits(NumberParser.parseDouble(chars, start, end)));
+    }
+
+    private void checkInt(String s) {
+        String chars = "7," + s + ",9";
+        boolean expected;
+
+        try {
+            Integer.parseInt(s);
+            expected = true;
+        } catch (NumberFormatException e) {
+            expected = false;
+        }
+
+        assertEquals(s, expected, NumberParser.isInt(chars, 2, 2 + s.length()));
+    }
+}
@@ -0,0 +1,179 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.*;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the packed discrete data box, and counting from it into cell tables.
+ */
+public final class TestPackedIntDataBox {
+
+    @Test
+    public void testSetAndGet() {
+        PackedIntDataBox box = new PackedIntDataBox(new int[][]{{0, 1, -99, 1, 0}, {2, 0, 1, -99, 2}});
+
+        assertEquals(5, box.numRows());
+        assertEquals(2, box.numCols());
+        assertEquals(2, box.getBitsPerValue(0));
+        assertEquals(2, box.getBitsPerValue(1));
+        assertNull(box.get(2, 0));
+        assertEquals(2, box.get(4, 1).intValue());
+
+        // Setting a value too big for the column widens it.
+        box.set(1, 1, 300);
+        assertEquals(16, box.getBitsPerValue(1));
+        assertEquals(300, box.get(1, 1).intValue());
+        assertEquals(2, box.get(0, 1).intValue());
+        assertNull(box.get(3, 1));
+
+        box.set(3, 1, null);
+        assertNull(box.get(3, 1));
+
+        int[] column = new int[5];
+        box.getColumn(1, column);
+        assertArrayEquals(new int[]{2, 300, 1, -99, 2}, column);
+
+        try {
+            box.set(0, 0, -1);
+            fail("Should not store negative values other than -99.");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCellIndices() {
+        PackedIntDataBox box = new PackedIntDataBox(new int[][]{{0, 1, 2, -99}, {1, 0, 1, 1}});
+
+        int[] indices = new int[4];
+        box.updateCellIndices(0, 3, indices);
+        box.updateCellIndices(1, 2, indices);
+
+        assertArrayEquals(new int[]{1, 2, 5, -1}, indices);
+    }
+
+    @Test
+    public void testCellTableCounts() {
+        RandomUtil.getInstance().setSeed(4939492L);
+
+        List<Node> variables = new ArrayList<>();
+        int[] numCategories = {2, 3, 5, 17};
+
+        for (int j = 0; j < numCategories.length; j++) {
+            variables.add(new DiscreteVariable("X" + (j + 1), numCategories[j]));
+        }
+
+        DataSet dataSet = new BoxDataSet(new VerticalIntDataBox(1000, numCategories.length), variables);
+
+        for (int i = 0; i < 1000; i++) {
+            for (int j = 0; j < numCategories.length; j++) {
+                int value = RandomUtil.getInstance().nextInt(numCategories[j]);
+                dataSet.setInt(i, j, i % 97 == j ? -99 : value);
+            }
+        }
+
+        DataSet packed = new BoxDataSet(new PackedIntDataBox(((BoxDataSet) dataSet).getDataBox()), variables);
+
+        int[] indices = {3, 0, 2};
+        CellTable table1 = new CellTable(null);
+        CellTable table2 = new CellTable(null);
+        table1.addToTable(dataSet, indices);
+        table2.addToTable(packed, indices);
+
+        int[] coords = new int[3];
+
+        for (coords[0] = 0; coords[0] < 17; coords[0]++) {
+            for (coords[1] = 0; coords[1] < 2; coords[1]++) {
+                for (coords[2] = 0; coords[2] < 5; coords[2]++) {
+                    assertEquals(table1.getValue(coords), table2.getValue(coords));
+                }
+            }
+        }
+
+        assertEquals(table1.calcMargin(new int[]{-1, -1, -1}), table2.calcMargin(new int[]{-1, -1, -1}));
+    }
+
+    // Counting with the trailing columns already folded, over enough rows to
+    // be split into ranges, matches counting all of the columns at once.
+    @Test
+    public void testTrailingCellIndices() {
+        RandomUtil.getInstance().setSeed(2939493L);
+
+        int numRows = PackedIntDataBox.PARALLEL_ROWS + 1001;
+        int[] numCategories = {3, 2, 4, 5};
+        int[][] data = new int[numCategories.length][numRows];
+
+        for (int j = 0; j < numCategories.length; j++) {
+            for (int i = 0; i < numRows; i++) {
+                int value = RandomUtil.getInstance().nextInt(numCategories[j]);
+                data[j][i] = i % 89 == j ? -99 : value;
+            }
+        }
+
+        PackedIntDataBox box = new PackedIntDataBox(data);
+
+        int[] indices = {1, 3, 0, 2};
+        int[] dims = {2, 5, 3, 4};
+
+        // Folding a range at a time is the same as folding all of the rows.
+        int[] trailing = new int[numRows];
+        box.updateCellIndices(new int[]{0, 2}, new int[]{3, 4}, trailing);
+
+        int[] ranges = new int[numRows];
+
+        for (int from = 0; from < numRows; from += 1000) {
+            box.updateCellIndices(0, 3, ranges, from, Math.min(numRows, from + 1000));
+            box.updateCellIndices(2, 4, ranges, from, Math.min(numRows, from + 1000));
+        }
+
+        assertArrayEquals(trailing, ranges);
+
+        CellTable table1 = new CellTable(null);
+        CellTable table2 = new CellTable(null);
+        table1.addToTable(box, indices, dims);
+        table2.addToTable(box, indices, dims, 2, trailing);
+
+        int[] coords = new int[4];
+
+        for (coords[0] = 0; coords[0] < 2; coords[0]++) {
+            for (coords[1] = 0; coords[1] < 5; coords[1]++) {
+                for (coords[2] = 0; coords[2] < 3; coords[2]++) {
+                    for (coords[3] = 0; coords[3] < 4; coords[3]++) {
+                        assertEquals(table1.getValue(coords), table2.getValue(coords));
+                    }
+                }
+            }
+        }
+
+        assertEquals(numRows - 4 * (numRows / 89 + 1), table2.calcMargin(new int[]{-1, -1, -1, -1}));
+    }
+}
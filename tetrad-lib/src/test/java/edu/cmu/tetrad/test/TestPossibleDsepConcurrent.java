@@ -0,0 +1,261 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.graph.EdgeListGraph;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphNode;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.IndTestDSep;
+import edu.cmu.tetrad.search.PossibleDsepConcurrent;
+import edu.cmu.tetrad.search.ThreadSafeIndependenceTest;
+import edu.cmu.tetrad.util.ChoiceGenerator;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the sepsets PossibleDsepConcurrent finds among the subsets of Possible-D-Sep for different numbers of threads,
+ * that it stops testing once it has one, and that it gives up on a pair when its time budget runs out.
+ */
+public class TestPossibleDsepConcurrent {
+    private Graph graph;
+    private Node x;
+    private Node y;
+
+    // Possible-D-Sep(x, y), in order.
+    private List<Node> a;
+
+    /**
+     * x o-o y, and x o-o a1, ..., x o-o a10, so that Possible-D-Sep(x, y) is a1, ..., a10 and Possible-D-Sep(y, x)
+     * is empty.
+     */
+    @Before
+    public void setUp() {
+        graph = new EdgeListGraph();
+        x = new GraphNode("X");
+        y = new GraphNode("Y");
+        a = new ArrayList<>();
+        graph.addNode(x);
+        graph.addNode(y);
+        graph.addNondirectedEdge(x, y);
+
+        for (int i = 1; i <= 10; i++) {
+            Node node = new GraphNode("A" + i);
+            graph.addNode(node);
+            graph.addNondirectedEdge(x, node);
+            a.add(node);
+        }
+    }
+
+    /**
+     * Several subsets separate x and y; the first of them in order is the sepset however many threads test them, and
+     * whether or not they are tested concurrently.
+     */
+    @Test
+    public void testFirstSepset() throws Exception {
+        List<List<Node>> separating = Arrays.asList(
+                Collections.singletonList(a.get(2)),
+                Collections.singletonList(a.get(8)),
+                Arrays.asList(a.get(3), a.get(5), a.get(9)),
+                Arrays.asList(a.get(6), a.get(7))
+        );
+
+        for (int minSize = 1; minSize <= 3; minSize++) {
+            for (List<Node> containing : separating) {
+                for (boolean threadSafe : new boolean[]{true, false}) {
+                    SeparatedBy test = threadSafe ? new ThreadSafeSeparatedBy(graph, containing, minSize, 0)
+                            : new SeparatedBy(graph, containing, minSize, 0);
+                    List<Node> expected = firstSeparating(test);
+
+                    assertEquals(a, new PossibleDsepConcurrent(graph, test).getPossibleDsep(x, y));
+
+                    for (int numThreads : new int[]{1, 2, 4}) {
+                        List<Node> sepset = sepsetWithThreads(new PossibleDsepConcurrent(graph, test), numThreads);
+                        assertEquals(expected, sepset);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Once a sepset is found no larger subsets are tested; tested one at a time, none after it are.
+     */
+    @Test
+    public void testStopsAtSepset() throws Exception {
+        List<Node> containing = Collections.singletonList(a.get(4));
+        List<Node> sepset = Arrays.asList(a.get(0), a.get(4));
+
+        SeparatedBy test = new SeparatedBy(graph, containing, 2, 0);
+        assertEquals(sepset, sepsetWithThreads(new PossibleDsepConcurrent(graph, test), 4));
+
+        // The empty set, the 10 singletons, and then {a1, a2}, ..., {a1, a5}.
+        assertEquals(1 + 10 + 4, test.getTested().size());
+
+        test = new ThreadSafeSeparatedBy(graph, containing, 2, 0);
+        assertEquals(sepset, sepsetWithThreads(new PossibleDsepConcurrent(graph, test), 4));
+
+        assertTrue(test.getTested().size() < 1 + 10 + 45);
+
+        for (List<Node> z : test.getTested()) {
+            assertTrue(z.size() <= 2);
+        }
+    }
+
+    /**
+     * A pair that runs out of time has no sepset, even if one was found in the block being tested when the time ran
+     * out.
+     */
+    @Test
+    public void testTimeBudget() throws Exception {
+        for (boolean threadSafe : new boolean[]{true, false}) {
+
+            // Only {a10} separates x and y, and it's the first subset of size 1 tested in parallel, but the others
+            // take longer than the budget to test.
+            List<Node> sepset = Collections.singletonList(a.get(9));
+            SeparatedBy test = threadSafe ? new ThreadSafeSeparatedBy(graph, sepset, 1, 10)
+                    : new SeparatedBy(graph, sepset, 1, 10);
+
+            PossibleDsepConcurrent possibleDsep = new PossibleDsepConcurrent(graph, test);
+            possibleDsep.setTimeBudget(15);
+
+            assertNull(sepsetWithThreads(possibleDsep, 4));
+            assertEquals(1, possibleDsep.getNumTimedOut());
+
+            // Without a budget it is found.
+            possibleDsep.setTimeBudget(-1);
+            assertEquals(sepset, sepsetWithThreads(possibleDsep, 4));
+            assertEquals(1, possibleDsep.getNumTimedOut());
+
+            // Nothing separates x and y; the search gives up well before testing all 1024 subsets.
+            test = threadSafe ? new ThreadSafeSeparatedBy(graph, Collections.<Node>emptyList(), 0, 10)
+                    : new SeparatedBy(graph, Collections.<Node>emptyList(), 0, 10);
+
+            possibleDsep = new PossibleDsepConcurrent(graph, test);
+            possibleDsep.setTimeBudget(30);
+
+            assertNull(sepsetWithThreads(possibleDsep, 4));
+            assertEquals(1, possibleDsep.getNumTimedOut());
+            assertTrue(test.getTested().size() < 100);
+        }
+    }
+
+    // The first subset of Possible-D-Sep(x, y), by size and then in ChoiceGenerator order, that the test says
+    // separates x and y, found one at a time.
+    private List<Node> firstSeparating(SeparatedBy test) {
+        for (int d = 0; d <= a.size(); d++) {
+            ChoiceGenerator cg = new ChoiceGenerator(a.size(), d);
+            int[] choice;
+
+            while ((choice = cg.next()) != null) {
+                List<Node> z = new ArrayList<>();
+
+                for (int i : choice) {
+                    z.add(a.get(i));
+                }
+
+                if (test.separates(z)) {
+                    return z;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    // Looks for a sepset of x and y as a task in a pool with the given number of threads, so that the subsets are
+    // tested in that pool.
+    private List<Node> sepsetWithThreads(final PossibleDsepConcurrent possibleDsep, int numThreads) throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+
+        try {
+            return pool.submit(new Callable<List<Node>>() {
+                public List<Node> call() {
+                    return possibleDsep.getSepset(x, y);
+                }
+            }).get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Says x and y are independent given just the sets of at least the given size that contain one of the given
+     * nodes, taking the given number of milliseconds to say they are dependent, and records the sets it is asked
+     * about.
+     */
+    private static class SeparatedBy extends IndTestDSep {
+        private final List<Node> containing;
+        private final int minSize;
+        private final long delay;
+        private final List<List<Node>> tested = Collections.synchronizedList(new ArrayList<List<Node>>());
+
+        SeparatedBy(Graph graph, List<Node> containing, int minSize, long delay) {
+            super(graph);
+            this.containing = containing;
+            this.minSize = minSize;
+            this.delay = delay;
+        }
+
+        @Override
+        public boolean isIndependent(Node x, Node y, List<Node> z) {
+            tested.add(new ArrayList<>(z));
+
+            if (separates(z)) {
+                return true;
+            }
+
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+
+            return false;
+        }
+
+        boolean separates(List<Node> z) {
+            return z.size() >= minSize && !Collections.disjoint(z, containing);
+        }
+
+        List<List<Node>> getTested() {
+            return tested;
+        }
+    }
+
+    private static class ThreadSafeSeparatedBy extends SeparatedBy implements ThreadSafeIndependenceTest {
+        ThreadSafeSeparatedBy(Graph graph, List<Node> containing, int minSize, long delay) {
+            super(graph, containing, minSize, delay);
+        }
+    }
+}
@@ -26,12 +26,16 @@ import edu.cmu.tetrad.graph.Dag;
 import edu.cmu.tetrad.graph.Graph;
 import edu.cmu.tetrad.graph.GraphUtils;
 import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.IndTestFisherZ;
 import edu.cmu.tetrad.sem.SemIm;
 import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.PValues;
 import edu.cmu.tetrad.util.RandomUtil;
 import edu.cmu.tetrad.util.StatUtils;
 import edu.cmu.tetrad.util.TetradMatrix;
 import org.apache.commons.math3.distribution.ChiSquaredDistribution;
+import org.apache.commons.math3.distribution.NormalDistribution;
+import org.apache.commons.math3.distribution.TDistribution;
 import org.junit.Test;
 
 import java.text.DecimalFormat;
@@ -41,6 +45,9 @@ import java.util.List;
 
 import static java.lang.Math.*;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 
 /**
@@ -110,6 +117,81 @@ public class TestStatUtils {
         assertEquals(0.008, p, 0.001);
     }
 
+    /**
+     * Checks the allocation-free p values and cutoffs against the Apache distributions.
+     */
+    @Test
+    public void testPValues() {
+        NormalDistribution normal = new NormalDistribution(0, 1);
+
+        for (double z = -8; z <= 8; z += 0.37) {
+            double p = 2.0 * normal.cumulativeProbability(-abs(z));
+            assertEquals(p, PValues.normalTwoTailed(z), 1e-14);
+        }
+
+        for (int df = 1; df <= 200; df += 7) {
+            ChiSquaredDistribution chiSquare = new ChiSquaredDistribution(df);
+            TDistribution t = new TDistribution(df);
+
+            for (double x = 0.1; x < 3 * df + 20; x *= 1.7) {
+                assertEquals(1.0 - chiSquare.cumulativeProbability(x), PValues.chiSquare(x, df), 1e-12);
+                assertEquals(2.0 * t.cumulativeProbability(-x), PValues.tTwoTailed(x, df), 1e-12);
+            }
+
+            for (double alpha : new double[]{0.1, 0.05, 0.01, 1e-4}) {
+                double cutoff = PValues.chiSquareCutoff(alpha, df);
+                assertEquals(alpha, PValues.chiSquare(cutoff, df), 1e-10 * alpha);
+                assertEquals(chiSquare.inverseCumulativeProbability(1.0 - alpha), cutoff, 1e-6 * cutoff);
+            }
+        }
+
+        // Far tails keep their relative precision.
+        assertEquals(7.619853024160593e-24, PValues.normalUpperTail(10), 1e-36);
+        assertEquals(PValues.normalCutoff(0.05), 1.959963984540054, 1e-12);
+        assertEquals(1.0, PValues.chiSquare(0, 3), 0.0);
+    }
+
+    /**
+     * At alpha = 0 everything is independent and at alpha = 1 nothing is, as the setAlpha methods of the tests allow.
+     */
+    @Test
+    public void testCutoffEndpoints() {
+        assertEquals(Double.POSITIVE_INFINITY, PValues.normalCutoff(0.0), 0.0);
+        assertEquals(0.0, PValues.normalCutoff(1.0), 0.0);
+        assertEquals(Double.POSITIVE_INFINITY, StatUtils.getZForAlpha(0.0), 0.0);
+        assertEquals(0.0, StatUtils.getZForAlpha(1.0), 0.0);
+
+        for (int df : new int[]{1, 2, 10, 100}) {
+            assertEquals(Double.POSITIVE_INFINITY, PValues.chiSquareCutoff(0.0, df), 0.0);
+            assertEquals(0.0, PValues.chiSquareCutoff(1.0, df), 0.0);
+        }
+
+        // The memoized cutoffs for an endpoint don't leak into those for another alpha.
+        assertEquals(new ChiSquaredDistribution(4).inverseCumulativeProbability(0.95),
+                PValues.chiSquareCutoff(0.05, 4), 1e-6);
+
+        for (double alpha : new double[]{-0.1, 1.1, Double.NaN}) {
+            try {
+                PValues.normalCutoff(alpha);
+                fail("Expected alpha " + alpha + " to be rejected.");
+            } catch (IllegalArgumentException e) {
+                // Expected.
+            }
+        }
+
+        IndTestFisherZ test = new IndTestFisherZ(new CovarianceMatrix(simulateForCutoffs()), 0.0);
+        List<Node> v = test.getVariables();
+        assertTrue(test.isIndependent(v.get(0), v.get(1)));
+        test.setAlpha(1.0);
+        assertFalse(test.isIndependent(v.get(0), v.get(1)));
+    }
+
+    private DataSet simulateForCutoffs() {
+        RandomUtil.getInstance().setSeed(2910384L);
+        Graph graph = GraphUtils.randomGraph(4, 0, 4, 30, 15, 15, false);
+        return new SemIm(new SemPm(graph)).simulateData(200, false);
+    }
+
     @Test
     public void testSpecial() {
         RandomUtil.getInstance().setSeed(3829483L);